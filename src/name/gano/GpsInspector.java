@@ -75,8 +75,8 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Enumeration;
-import java.util.GregorianCalendar;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
@@ -2882,7 +2882,7 @@ public class GpsInspector extends javax.swing.JFrame implements PropertyChangeLi
         }
         else if (name.equals(GPSDataProcessor.FIXTIME))
         {
-            fixTimeTextField.setText(timeDateFormat.format(((GregorianCalendar) value).getTime()));
+            fixTimeTextField.setText(timeDateFormat.format(new Date(((Long) value).longValue())));
         }
         else if (name.equals(GPSDataProcessor.FIX_INFO))
         {
@@ -0,0 +1,236 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+//----------------------------------------------------------------------
+/**
+ * A clock disciplined by the UTC time the gps device reports. The
+ * clock is fed with the time of day of every fix (and the date
+ * whenever the device reports it) together with the {@link
+ * System#nanoTime()} the sentence/packet was received. It keeps
+ *
+ * <ul>
+ * <li>the UTC midnight of the current date, so the time of a fix is
+ * calculated by a single addition (the date is only recalculated if
+ * it changes or the time of day wraps at midnight), and</li>
+ * <li>a smoothed offset between UTC and {@link System#nanoTime()}, so
+ * any component can convert its own {@link System#nanoTime()}
+ * timestamps to UTC with a single addition (see {@link
+ * #toUTCNanos(long)}).</li>
+ * </ul>
+ *
+ * The offset includes the delay between the fix and the reception of
+ * the sentence, which is roughly constant for a device. The first
+ * report of every fix is used for the offset; the offset follows the
+ * reports by exponential smoothing, a jump larger than {@link
+ * #setMaxOffsetStep(long) the maximum step} resets it.
+ * <p>
+ * The updating methods must only be called by one thread (the thread
+ * reading the gps device), the other methods may be called by any
+ * thread.
+ */
+
+public class GPSClock
+{
+  /** the default maximum difference (in nanoseconds) that is smoothed */
+  public static final long DEFAULT_MAX_OFFSET_STEP = 1000L * 1000 * 1000;
+  /** the default weight of a new offset (1/n) */
+  public static final int DEFAULT_SMOOTHING = 8;
+
+  protected static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+  protected static final long NANOS_PER_MILLI = 1000L * 1000;
+
+  protected long max_offset_step_ = DEFAULT_MAX_OFFSET_STEP;
+  protected int smoothing_ = DEFAULT_SMOOTHING;
+
+  /** the utc midnight (millis since 1970) of the current date or -1 */
+  protected long midnight_ = -1;
+  protected int year_ = -1;
+  protected int month_ = -1;
+  protected int day_ = -1;
+  /** the time of day of the last fix or -1 */
+  protected int last_time_of_day_ = -1;
+
+  /** the utc time (millis since 1970) of the last fix or -1 */
+  protected volatile long fix_time_ = -1;
+  /** utc nanos minus System.nanoTime() */
+  protected volatile long offset_nanos_;
+  protected volatile boolean synchronized_;
+
+//----------------------------------------------------------------------
+/**
+ * Sets the maximum difference between the smoothed and a new offset
+ * that is smoothed. Larger differences (e.g. after the system was
+ * suspended) reset the offset.
+ *
+ * @param max_step the maximum step in nanoseconds.
+ */
+  public void setMaxOffsetStep(long max_step)
+  {
+    max_offset_step_ = max_step;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets how strong the offset is smoothed: a new offset is taken into
+ * account with the weight 1/smoothing.
+ *
+ * @param smoothing the smoothing factor (1 for no smoothing).
+ */
+  public void setSmoothing(int smoothing)
+  {
+    smoothing_ = Math.max(smoothing,1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the UTC date reported by the device. The midnight of the date
+ * is only calculated if the date changed.
+ *
+ * @param year the year (e.g. 2010).
+ * @param month the month (1 to 12).
+ * @param day the day of the month (1 to 31).
+ */
+  public void setDate(int year, int month, int day)
+  {
+    if((year == year_) && (month == month_) && (day == day_))
+      return;
+    year_ = year;
+    month_ = month;
+    day_ = day;
+    midnight_ = GPSFixAggregator.daysSinceEpoch(year,month,day) * MILLIS_PER_DAY;
+    last_time_of_day_ = -1; // no midnight wrap to the new date
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the UTC time of a fix reported by the device. If no date was
+ * reported yet, only the time of day is known and the clock is not
+ * updated.
+ *
+ * @param time_of_day the milliseconds since midnight (UTC).
+ * @param receive_nanos the {@link System#nanoTime()} the time was
+ * received.
+ * @return the UTC time of the fix in milliseconds since 1970 or -1 if
+ * the date is not known.
+ */
+  public long update(int time_of_day, long receive_nanos)
+  {
+    if((midnight_ < 0) || (time_of_day < 0))
+      return(-1);
+    if((last_time_of_day_ >= 0) && (time_of_day < last_time_of_day_ - MILLIS_PER_DAY / 2))
+    {
+          // wrapped at midnight, the date is not reported by every sentence:
+      midnight_ += MILLIS_PER_DAY;
+      year_ = -1;
+    }
+    last_time_of_day_ = time_of_day;
+    long fix_time = midnight_ + time_of_day;
+    if(fix_time == fix_time_)
+      return(fix_time);  // only the first report of a fix is used
+    fix_time_ = fix_time;
+
+    long offset = fix_time * NANOS_PER_MILLI - receive_nanos;
+    long difference = offset - offset_nanos_;
+    if(!synchronized_ || (difference > max_offset_step_) || (difference < -max_offset_step_))
+    {
+      offset_nanos_ = offset;
+      synchronized_ = true;
+    }
+    else
+      offset_nanos_ += difference / smoothing_;
+    return(fix_time);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the clock received a complete (date and time) fix
+ * time.
+ *
+ * @return true if the clock is synchronized.
+ */
+  public boolean isSynchronized()
+  {
+    return(synchronized_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the UTC time of the last fix.
+ *
+ * @return the milliseconds since 1970 or -1 if unknown.
+ */
+  public long getFixTime()
+  {
+    return(fix_time_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the smoothed offset between UTC and {@link
+ * System#nanoTime()}.
+ *
+ * @return the offset in nanoseconds.
+ */
+  public long getOffsetNanos()
+  {
+    return(offset_nanos_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Converts a {@link System#nanoTime()} timestamp to UTC.
+ *
+ * @param nano_time the timestamp.
+ * @return the UTC nanoseconds since 1970 (meaningless if the clock is
+ * not synchronized).
+ */
+  public long toUTCNanos(long nano_time)
+  {
+    return(nano_time + offset_nanos_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the current UTC time as known by the gps device.
+ *
+ * @return the UTC nanoseconds since 1970 or -1 if the clock is not
+ * synchronized.
+ */
+  public long currentTimeNanos()
+  {
+    if(!synchronized_)
+      return(-1);
+    return(System.nanoTime() + offset_nanos_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the current UTC time as known by the gps device.
+ *
+ * @return the UTC milliseconds since 1970 or -1 if the clock is not
+ * synchronized.
+ */
+  public long currentTimeMillis()
+  {
+    if(!synchronized_)
+      return(-1);
+    return((System.nanoTime() + offset_nanos_) / NANOS_PER_MILLI);
+  }
+}
@@ -0,0 +1,80 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+//----------------------------------------------------------------------
+/**
+ * An empty implementation of the {@link GPSDataListener}, so
+ * listeners only need to override the methods they are interested in.
+ */
+
+public abstract class GPSDataAdapter implements GPSDataListener
+{
+  public void onPosition(double latitude, double longitude, long time_nanos)
+  {
+  }
+
+  public void onAltitude(float altitude)
+  {
+  }
+
+  public void onSpeed(float speed)
+  {
+  }
+
+  public void onHeading(float heading)
+  {
+  }
+
+  public void onDop(float pdop, float hdop, float vdop)
+  {
+  }
+
+  public void onSatellitesUsed(int satellites_used)
+  {
+  }
+
+  public void onSatelliteIds(int[] satellite_ids, int count)
+  {
+  }
+
+  public void onSatellites(SatelliteInfo[] satellites)
+  {
+  }
+
+  public void onFixQuality(int fix_quality)
+  {
+  }
+
+  public void onFixType(int fix_type)
+  {
+  }
+
+  public void onFixTime(long fix_time)
+  {
+  }
+
+  public void onDepth(float depth)
+  {
+  }
+
+  public void onPositionError(double spherical_error, double horizontal_error, double vertical_error)
+  {
+  }
+}
@@ -0,0 +1,156 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+//----------------------------------------------------------------------
+/**
+ * Classes implementing this interface are informed about the gps data
+ * as primitive values, one method per kind of data. Compared to the
+ * {@link java.beans.PropertyChangeListener}s, no values are boxed, no
+ * keys have to be compared and no event objects are created. The
+ * methods are called by the thread reading the gps device, so they
+ * should return quickly. Extend {@link GPSDataAdapter} to implement
+ * only some of the methods.
+ *
+ * @see GPSDataProcessor#addGPSDataListener(GPSDataListener)
+ */
+
+public interface GPSDataListener
+{
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about a new position.
+ *
+ * @param latitude the latitude in degrees (WGS84).
+ * @param longitude the longitude in degrees (WGS84).
+ * @param time_nanos the {@link System#nanoTime()} the position was
+ * received (see {@link GPSClock#toUTCNanos(long)}).
+ */
+  public void onPosition(double latitude, double longitude, long time_nanos);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about a new altitude.
+ *
+ * @param altitude the altitude in meters.
+ */
+  public void onAltitude(float altitude);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about a new speed over ground.
+ *
+ * @param speed the speed in km/h.
+ */
+  public void onSpeed(float speed);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about a new heading (course over ground).
+ *
+ * @param heading the heading in degrees.
+ */
+  public void onHeading(float heading);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about new dilutions of precision. Values that
+ * were not reported (e.g. pdop and vdop by a NMEA GGA sentence) are
+ * NaN.
+ *
+ * @param pdop the position dilution of precision.
+ * @param hdop the horizontal dilution of precision.
+ * @param vdop the vertical dilution of precision.
+ */
+  public void onDop(float pdop, float hdop, float vdop);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about the number of satellites used for the
+ * fix.
+ *
+ * @param satellites_used the number of satellites.
+ */
+  public void onSatellitesUsed(int satellites_used);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about the ids (prns) of the satellites used
+ * for the fix.
+ *
+ * @param satellite_ids the ids (the array is reused, so it must be
+ * copied to keep it).
+ * @param count the number of ids in the array.
+ */
+  public void onSatelliteIds(int[] satellite_ids, int count);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about the satellites in view.
+ *
+ * @param satellites the satellites (must not be changed, see {@link
+ * GPSSatelliteTable#getSatelliteInfos()}).
+ */
+  public void onSatellites(SatelliteInfo[] satellites);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about the quality of the fix.
+ *
+ * @param fix_quality the fix quality (0 = invalid, 1 = GPS fix, 2 =
+ * DGPS fix, ... as in the NMEA GGA sentence).
+ */
+  public void onFixQuality(int fix_quality);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about the type of the fix.
+ *
+ * @param fix_type the fix type ({@link GPSFix#FIX_TYPE_NONE}, {@link
+ * GPSFix#FIX_TYPE_2D} or {@link GPSFix#FIX_TYPE_3D}).
+ */
+  public void onFixType(int fix_type);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about the UTC time of the fix.
+ *
+ * @param fix_time the milliseconds since 1970.
+ */
+  public void onFixTime(long fix_time);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about a new depth.
+ *
+ * @param depth the depth in meters.
+ */
+  public void onDepth(float depth);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about the estimated position error.
+ *
+ * @param spherical_error the spherical error in meters.
+ * @param horizontal_error the horizontal error in meters.
+ * @param vertical_error the vertical error in meters.
+ */
+  public void onPositionError(double spherical_error, double horizontal_error, double vertical_error);
+}
@@ -53,6 +53,7 @@ import org.dinopolis.util.ProgressListener;
  * <li><code>PDOP</code>: a Float indicating the quality of the gps signal.</li>
  * <li><code>HDOP</code>: a Float indicating the quality of the gps signal in horizontal direction.</li>
  * <li><code>VDOP</code>: a Float indicating the quality of the gps signal in vertical direction.</li>
+ * <li><code>FIXTIME</code>: a Long holding the UTC time of the fix in milliseconds since 1970.</li>
  * <ul>
  * <p>
  
@@ -200,6 +201,16 @@ public interface GPSDataProcessor
  * @return a map containing all key-value pairs of GPS data.  */
   public Map getGPSData();
 
+//----------------------------------------------------------------------
+/**
+ * Returns an immutable snapshot of the last received data from the
+ * GPSDevice. Reading the snapshot does not block the thread receiving
+ * the data.
+ *
+ * @return the snapshot of the gps data.
+ */
+  public GPSDataSnapshot getGPSDataSnapshot();
+
 
 //--------------------------------------------------------------------------------
 /**
@@ -386,6 +397,29 @@ public interface GPSDataProcessor
   public void removeGPSRawDataListener(GPSRawDataListener listener)
     throws IllegalArgumentException;
 
+//----------------------------------------------------------------------
+/**
+ * Adds a listener for the raw bytes read from the gps device (for
+ * logging or forwarding without conversion to characters).
+ *
+ * @param listener the listener to be added.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public void addGPSRawByteListener(GPSRawByteListener listener)
+    throws IllegalArgumentException;
+
+//----------------------------------------------------------------------
+/**
+ * Removes a listener for the raw bytes read from the gps device.
+ *
+ * @param listener the listener to be removed.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public void removeGPSRawByteListener(GPSRawByteListener listener)
+    throws IllegalArgumentException;
+
 //----------------------------------------------------------------------
 /**
  * Removes a listener for GPS data change events.
@@ -397,6 +431,86 @@ public interface GPSDataProcessor
   public void removeGPSDataChangeListener(PropertyChangeListener listener)
     throws IllegalArgumentException;
 
+//----------------------------------------------------------------------
+/**
+ * Adds a listener that is informed about the gps data as primitive
+ * values (see {@link GPSDataListener}).
+ *
+ * @param listener the listener to be added.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public void addGPSDataListener(GPSDataListener listener)
+    throws IllegalArgumentException;
+
+//----------------------------------------------------------------------
+/**
+ * Removes a listener for gps data as primitive values.
+ *
+ * @param listener the listener to be removed.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public void removeGPSDataListener(GPSDataListener listener)
+    throws IllegalArgumentException;
+
+//----------------------------------------------------------------------
+/**
+ * Subscribes a listener to the gps data with the given keys. The
+ * listener is not informed by the thread reading the gps device, but
+ * at most once per interval about the newest values (changes in
+ * between are coalesced).
+ *
+ * @param keys the keys of the gps data.
+ * @param listener the listener.
+ * @param min_interval the minimum time between two deliveries in
+ * milliseconds.
+ * @return the subscription (to cancel it).
+ * @exception IllegalArgumentException if <code>keys</code> or
+ * <code>listener</code> is <code>null</code>.
+ */
+  public GPSDataSubscription subscribe(String[] keys, PropertyChangeListener listener, long min_interval)
+    throws IllegalArgumentException;
+
+//----------------------------------------------------------------------
+/**
+ * Subscribes a listener to the fixes. The listener is not informed by
+ * the thread reading the gps device, but at most once per interval
+ * about the newest fix (older fixes are skipped).
+ *
+ * @param listener the listener.
+ * @param min_interval the minimum time between two deliveries in
+ * milliseconds.
+ * @return the subscription (to cancel it).
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public GPSDataSubscription subscribe(GPSFixListener listener, long min_interval)
+    throws IllegalArgumentException;
+
+//----------------------------------------------------------------------
+/**
+ * Adds a listener that is informed once per fix epoch with all
+ * information of this epoch (see {@link GPSFix}).
+ *
+ * @param listener the listener to be added.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.  
+ */
+  public void addGPSFixListener(GPSFixListener listener)
+    throws IllegalArgumentException;
+
+//----------------------------------------------------------------------
+/**
+ * Removes a listener for fixes.
+ *
+ * @param listener the listener to be removed.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.  
+ */
+  public void removeGPSFixListener(GPSFixListener listener)
+    throws IllegalArgumentException;
+
 //----------------------------------------------------------------------
 /**
  * Adds a listener for transfer progress (for transfer or
@@ -0,0 +1,205 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+//----------------------------------------------------------------------
+/**
+ * An immutable snapshot of the gps data of a {@link
+ * GPSGeneralDataProcessor}. Every change of the gps data creates a
+ * new snapshot with a higher version, so a reader holding a snapshot
+ * sees all values as they were at one moment, without any locking.
+ * <p>
+ * The keys defined in {@link GPSDataProcessor} have a fixed slot in
+ * an array (see {@link #getSlot(String)}); the slots of the constants
+ * are found by identity, so no hash is calculated. Other keys are kept
+ * in a map.
+ */
+
+public class GPSDataSnapshot
+{
+  /** the keys with a fixed slot, the index is the slot */
+  protected static final String[] KEYS = new String[]
+  { GPSDataProcessor.LOCATION, GPSDataProcessor.HEADING, GPSDataProcessor.SPEED,
+    GPSDataProcessor.NUMBER_SATELLITES, GPSDataProcessor.IDS_SATELLITES,
+    GPSDataProcessor.PDOP, GPSDataProcessor.HDOP, GPSDataProcessor.VDOP,
+    GPSDataProcessor.ALTITUDE, GPSDataProcessor.SATELLITE_INFO, GPSDataProcessor.DEPTH,
+    GPSDataProcessor.EPE, GPSDataProcessor.FIXTIME, GPSDataProcessor.FIX_INFO,
+    GPSDataProcessor.FIX_QUALITY };
+
+  /** the number of keys with a fixed slot */
+  public static final int SLOT_COUNT = KEYS.length;
+
+  /** the snapshot without any data */
+  public static final GPSDataSnapshot EMPTY = new GPSDataSnapshot(0,new Object[KEYS.length],null);
+
+  protected long version_;
+  protected Object[] values_;
+  /** the values of keys without slot or null */
+  protected Map other_values_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a snapshot. The arrays and the map are not copied.
+ *
+ * @param version the version of the snapshot.
+ * @param values the values of the slots.
+ * @param other_values the values of keys without slot or null.
+ */
+  protected GPSDataSnapshot(long version, Object[] values, Map other_values)
+  {
+    version_ = version;
+    values_ = values;
+    other_values_ = other_values;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the slot of a key.
+ *
+ * @param key the key (e.g. {@link GPSDataProcessor#LOCATION}).
+ * @return the slot or -1 if the key has no fixed slot.
+ */
+  public static int getSlot(String key)
+  {
+    for(int slot = 0; slot < KEYS.length; slot++)
+    {
+      if(KEYS[slot] == key)
+        return(slot);
+    }
+    for(int slot = 0; slot < KEYS.length; slot++)
+    {
+      if(KEYS[slot].equals(key))
+        return(slot);
+    }
+    return(-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the version of this snapshot. The version is incremented on
+ * every change, so two snapshots with the same version hold the same
+ * data.
+ *
+ * @return the version.
+ */
+  public long getVersion()
+  {
+    return(version_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the value of the given key.
+ *
+ * @param key the key.
+ * @return the value or <code>null</code> if there is none.
+ */
+  public Object get(String key)
+  {
+    int slot = getSlot(key);
+    if(slot >= 0)
+      return(values_[slot]);
+    if(other_values_ == null)
+      return(null);
+    return(other_values_.get(key));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the value of the given slot.
+ *
+ * @param slot the slot (see {@link #getSlot(String)}).
+ * @return the value or <code>null</code> if there is none.
+ */
+  public Object get(int slot)
+  {
+    return(values_[slot]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns a snapshot with the value of the given key changed (this
+ * snapshot is not changed).
+ *
+ * @param key the key.
+ * @param value the new value or <code>null</code> to remove the key.
+ * @return the new snapshot.
+ */
+  public GPSDataSnapshot with(String key, Object value)
+  {
+    int slot = getSlot(key);
+    if(slot >= 0)
+    {
+      Object[] values = (Object[])values_.clone();
+      values[slot] = value;
+      return(new GPSDataSnapshot(version_ + 1,values,other_values_));
+    }
+    HashMap other_values = (other_values_ == null) ? new HashMap() : new HashMap(other_values_);
+    if(value == null)
+      other_values.remove(key);
+    else
+      other_values.put(key,value);
+    return(new GPSDataSnapshot(version_ + 1,values_,other_values.isEmpty() ? null : other_values));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Copies all key-value pairs of this snapshot into a new map.
+ *
+ * @return the map.
+ */
+  public Map toMap()
+  {
+    HashMap map = new HashMap();
+    for(int slot = 0; slot < KEYS.length; slot++)
+    {
+      if(values_[slot] != null)
+        map.put(KEYS[slot],values_[slot]);
+    }
+    if(other_values_ != null)
+      map.putAll(other_values_);
+    return(map);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns a string representation of this snapshot.
+ *
+ * @return a string representation of this snapshot.
+ */
+  public String toString()
+  {
+    StringBuffer buffer = new StringBuffer("GPSDataSnapshot[version=");
+    buffer.append(version_);
+    Map map = toMap();
+    Iterator keys = map.keySet().iterator();
+    Object key;
+    while(keys.hasNext())
+    {
+      key = keys.next();
+      buffer.append(", ").append(key).append("=").append(map.get(key));
+    }
+    buffer.append("]");
+    return(buffer.toString());
+  }
+}
@@ -0,0 +1,261 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+
+//----------------------------------------------------------------------
+/**
+ * A subscription for consumers that only need the newest gps data a
+ * few times per second (e.g. a remote status panel or a slow logger).
+ * The data is delivered by a thread of the subscription, not by the
+ * thread reading the gps device, at most once per interval: changes
+ * in between are coalesced, so the consumer always gets the newest
+ * value and never a backlog of old ones. If the consumer is slower
+ * than the interval, it simply gets the newest value when it is ready
+ * again.
+ * <p>
+ * A subscription either delivers gps data (as {@link
+ * PropertyChangeEvent}s, taken from the {@link GPSDataSnapshot} of the
+ * processor) or fixes (the last fix of the processor). The reading
+ * thread does no work for the subscriptions.
+ *
+ * @see GPSDataProcessor#subscribe(String[],PropertyChangeListener,long)
+ * @see GPSDataProcessor#subscribe(GPSFixListener,long)
+ */
+
+public class GPSDataSubscription implements Runnable
+{
+  protected GPSGeneralDataProcessor processor_;
+  protected String[] keys_;
+  protected PropertyChangeListener data_listener_;
+  protected GPSFixListener fix_listener_;
+  protected long min_interval_;
+
+  protected volatile boolean cancelled_ = false;
+  protected Thread delivery_thread_;
+  protected volatile long delivery_count_;
+
+  /** the version of the snapshot delivered last */
+  protected long delivered_version_ = -1;
+  /** the values delivered last, per key */
+  protected Object[] delivered_values_;
+  /** the fix delivered last */
+  protected GPSFix delivered_fix_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a subscription for gps data. Call {@link #start()} to start
+ * the delivery.
+ *
+ * @param processor the processor holding the gps data.
+ * @param keys the keys of the gps data to deliver.
+ * @param listener the listener to deliver to.
+ * @param min_interval the minimum time between two deliveries in
+ * milliseconds.
+ */
+  protected GPSDataSubscription(GPSGeneralDataProcessor processor, String[] keys,
+                                PropertyChangeListener listener, long min_interval)
+  {
+    processor_ = processor;
+    keys_ = (String[])keys.clone();
+    data_listener_ = listener;
+    min_interval_ = Math.max(min_interval,1);
+    delivered_values_ = new Object[keys_.length];
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates a subscription for fixes. Call {@link #start()} to start the
+ * delivery.
+ *
+ * @param processor the processor receiving the fixes.
+ * @param listener the listener to deliver to.
+ * @param min_interval the minimum time between two deliveries in
+ * milliseconds.
+ */
+  protected GPSDataSubscription(GPSGeneralDataProcessor processor, GPSFixListener listener,
+                                long min_interval)
+  {
+    processor_ = processor;
+    fix_listener_ = listener;
+    min_interval_ = Math.max(min_interval,1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Starts the thread delivering the data.
+ */
+  protected void start()
+  {
+    delivery_thread_ = new Thread(this,"GPSDataSubscription");
+    delivery_thread_.setDaemon(true);
+    delivery_thread_.start();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Stops the delivery. The listener may be called once more if a
+ * delivery is in progress.
+ */
+  public void cancel()
+  {
+    cancelled_ = true;
+    processor_.removeSubscription(this);
+    if(delivery_thread_ != null)
+      delivery_thread_.interrupt();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the subscription was cancelled.
+ *
+ * @return true if the subscription was cancelled.
+ */
+  public boolean isCancelled()
+  {
+    return(cancelled_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if this subscription delivers the gps data with the
+ * given key.
+ *
+ * @param key the key of the gps data.
+ * @return true if the key is delivered.
+ */
+  public boolean isSubscribed(String key)
+  {
+    if(keys_ == null)
+      return(false);
+    for(int index = 0; index < keys_.length; index++)
+    {
+      if(keys_[index].equals(key))
+        return(true);
+    }
+    return(false);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if this subscription delivers fixes.
+ *
+ * @return true for a subscription of fixes.
+ */
+  public boolean isFixSubscription()
+  {
+    return(fix_listener_ != null);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the minimum time between two deliveries.
+ *
+ * @return the minimum time in milliseconds.
+ */
+  public long getMinInterval()
+  {
+    return(min_interval_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of events (data changes or fixes) delivered.
+ *
+ * @return the number of events delivered.
+ */
+  public long getDeliveryCount()
+  {
+    return(delivery_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Delivers the newest data once per interval until the subscription
+ * is cancelled.
+ */
+  public void run()
+  {
+    while(!cancelled_)
+    {
+      long start = System.currentTimeMillis();
+      try
+      {
+        deliver();
+      }
+      catch(RuntimeException e)
+      {
+        System.out.println("ERROR: Exception thrown by subscriber of gps data:");
+        e.printStackTrace();
+      }
+      long sleep_time = min_interval_ - (System.currentTimeMillis() - start);
+      if(sleep_time > 0)
+      {
+        try
+        {
+          Thread.sleep(sleep_time);
+        }
+        catch(InterruptedException ie)
+        {
+              // cancelled
+        }
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Delivers the data that changed since the last delivery.
+ */
+  protected void deliver()
+  {
+    if(data_listener_ != null)
+    {
+      GPSDataSnapshot snapshot = processor_.getGPSDataSnapshot();
+      if(snapshot.getVersion() == delivered_version_)
+        return;
+      delivered_version_ = snapshot.getVersion();
+      Object value;
+      Object old_value;
+      for(int index = 0; index < keys_.length; index++)
+      {
+        value = snapshot.get(keys_[index]);
+        old_value = delivered_values_[index];
+        if(value == old_value)
+          continue;
+        delivered_values_[index] = value;
+        if(cancelled_)
+          return;
+        data_listener_.propertyChange(new PropertyChangeEvent(processor_,keys_[index],old_value,value));
+        delivery_count_++;
+      }
+    }
+    else
+    {
+      GPSFix fix = processor_.getLastGPSFix();
+      if((fix == null) || (fix == delivered_fix_) || cancelled_)
+        return;
+      delivered_fix_ = fix;
+      fix_listener_.gpsFixReceived(fix);
+      delivery_count_++;
+    }
+  }
+}
@@ -0,0 +1,322 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+//----------------------------------------------------------------------
+/**
+ * Holds all information a gps device reported for one fix epoch (the
+ * sentences/packets that share the same UTC time). Instances are
+ * created by a {@link GPSFixAggregator} and never change after they
+ * were passed to the {@link GPSFixListener}s.
+ * <p>
+ * Not every device reports every value, so the values that are
+ * present are marked in a bit mask (see {@link #hasField(int)}).
+ * Missing float values are {@link Float#NaN}, missing int values are
+ * -1.
+ */
+
+public class GPSFix
+{
+  /** the UTC time of day of the fix is known */
+  public static final int TIME = 1 << 0;
+  /** the date of the fix is known (so {@link #getTime()} is valid) */
+  public static final int DATE = 1 << 1;
+  /** the position is known */
+  public static final int POSITION = 1 << 2;
+  /** the altitude is known */
+  public static final int ALTITUDE = 1 << 3;
+  /** the speed over ground is known */
+  public static final int SPEED = 1 << 4;
+  /** the course over ground is known */
+  public static final int COURSE = 1 << 5;
+  /** the horizontal dilution of precision is known */
+  public static final int HDOP = 1 << 6;
+  /** the position dilution of precision is known */
+  public static final int PDOP = 1 << 7;
+  /** the vertical dilution of precision is known */
+  public static final int VDOP = 1 << 8;
+  /** the fix quality (as in NMEA GGA) is known */
+  public static final int FIX_QUALITY = 1 << 9;
+  /** the fix type (none, 2D, 3D) is known */
+  public static final int FIX_TYPE = 1 << 10;
+  /** the number of satellites used is known */
+  public static final int SATELLITES_USED = 1 << 11;
+  /** the ids of the satellites used are known */
+  public static final int SATELLITE_IDS = 1 << 12;
+  /** the geoid separation is known */
+  public static final int GEOID_SEPARATION = 1 << 13;
+
+  /** fix type: no fix */
+  public static final int FIX_TYPE_NONE = 1;
+  /** fix type: two dimensional fix */
+  public static final int FIX_TYPE_2D = 2;
+  /** fix type: three dimensional fix */
+  public static final int FIX_TYPE_3D = 3;
+
+  /** an empty array of satellite ids */
+  protected static final int[] NO_SATELLITE_IDS = new int[0];
+
+  int fields_;
+  int time_of_day_ = -1;
+  long time_ = -1;
+  GPSPosition position_;
+  float altitude_ = Float.NaN;
+  float geoid_separation_ = Float.NaN;
+  float speed_ = Float.NaN;
+  float course_ = Float.NaN;
+  float hdop_ = Float.NaN;
+  float pdop_ = Float.NaN;
+  float vdop_ = Float.NaN;
+  int fix_quality_ = -1;
+  int fix_type_ = -1;
+  int satellites_used_ = -1;
+  int[] satellite_ids_ = NO_SATELLITE_IDS;
+
+//----------------------------------------------------------------------
+/**
+ * Creates an empty fix. The values are set by the {@link
+ * GPSFixAggregator} before the fix is published.
+ */
+  protected GPSFix()
+  {
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the given value (or all values if more than one bit
+ * is set) was reported for this fix.
+ *
+ * @param field the bit(s) of the value(s) (e.g. {@link #POSITION}).
+ * @return true if the value is present.
+ */
+  public boolean hasField(int field)
+  {
+    return((fields_ & field) == field);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the bit mask of the values that were reported for this fix.
+ *
+ * @return the bit mask of the values present.
+ */
+  public int getFields()
+  {
+    return(fields_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the UTC time of the fix in milliseconds since midnight.
+ *
+ * @return the time of day or -1 if unknown.
+ */
+  public int getTimeOfDay()
+  {
+    return(time_of_day_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the UTC time of the fix in milliseconds since 1970-01-01.
+ * If the epoch did not contain a date, the date of an earlier epoch is
+ * used.
+ *
+ * @return the time of the fix or -1 if the date is unknown.
+ */
+  public long getTime()
+  {
+    return(time_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the position.
+ *
+ * @return the position or <code>null</code> if unknown.
+ */
+  public GPSPosition getPosition()
+  {
+    return(position_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the altitude in meters.
+ *
+ * @return the altitude or NaN if unknown.
+ */
+  public float getAltitude()
+  {
+    return(altitude_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the height of the geoid (mean sea level) above the WGS84
+ * ellipsoid in meters, so the height above the ellipsoid is the
+ * altitude plus the geoid separation.
+ *
+ * @return the geoid separation or NaN if unknown.
+ */
+  public float getGeoidSeparation()
+  {
+    return(geoid_separation_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the speed over ground in km/h.
+ *
+ * @return the speed or NaN if unknown.
+ */
+  public float getSpeed()
+  {
+    return(speed_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the course over ground in degrees.
+ *
+ * @return the course or NaN if unknown.
+ */
+  public float getCourse()
+  {
+    return(course_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the horizontal dilution of precision.
+ *
+ * @return the hdop or NaN if unknown.
+ */
+  public float getHDOP()
+  {
+    return(hdop_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the position dilution of precision.
+ *
+ * @return the pdop or NaN if unknown.
+ */
+  public float getPDOP()
+  {
+    return(pdop_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the vertical dilution of precision.
+ *
+ * @return the vdop or NaN if unknown.
+ */
+  public float getVDOP()
+  {
+    return(vdop_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the fix quality (0 = invalid, 1 = GPS fix, 2 = DGPS fix,
+ * ... as in the NMEA GGA sentence).
+ *
+ * @return the fix quality or -1 if unknown.
+ */
+  public int getFixQuality()
+  {
+    return(fix_quality_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the fix type ({@link #FIX_TYPE_NONE}, {@link #FIX_TYPE_2D}
+ * or {@link #FIX_TYPE_3D}).
+ *
+ * @return the fix type or -1 if unknown.
+ */
+  public int getFixType()
+  {
+    return(fix_type_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of satellites used for the fix.
+ *
+ * @return the number of satellites used or -1 if unknown.
+ */
+  public int getSatellitesUsed()
+  {
+    return(satellites_used_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the ids (prns) of the satellites used for the fix.
+ *
+ * @return a copy of the satellite ids (an empty array if unknown).
+ */
+  public int[] getSatelliteIds()
+  {
+    return((int[])satellite_ids_.clone());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns a string representation of this fix.
+ *
+ * @return a string representation of this fix.
+ */
+  public String toString()
+  {
+    StringBuffer tostring = new StringBuffer("GPSFix[");
+    tostring.append("time: ").append(time_of_day_);
+    if(hasField(DATE))
+      tostring.append(", utc: ").append(time_);
+    if(hasField(POSITION))
+      tostring.append(", lat: ").append(position_.getLatitude())
+        .append(", long: ").append(position_.getLongitude());
+    if(hasField(ALTITUDE))
+      tostring.append(", alt: ").append(altitude_);
+    if(hasField(GEOID_SEPARATION))
+      tostring.append(", geoid: ").append(geoid_separation_);
+    if(hasField(SPEED))
+      tostring.append(", speed: ").append(speed_);
+    if(hasField(COURSE))
+      tostring.append(", course: ").append(course_);
+    if(hasField(HDOP))
+      tostring.append(", hdop: ").append(hdop_);
+    if(hasField(PDOP))
+      tostring.append(", pdop: ").append(pdop_);
+    if(hasField(VDOP))
+      tostring.append(", vdop: ").append(vdop_);
+    if(hasField(FIX_QUALITY))
+      tostring.append(", quality: ").append(fix_quality_);
+    if(hasField(FIX_TYPE))
+      tostring.append(", type: ").append(fix_type_);
+    if(hasField(SATELLITES_USED))
+      tostring.append(", sats: ").append(satellites_used_);
+    tostring.append("]");
+    return(tostring.toString());
+  }
+}
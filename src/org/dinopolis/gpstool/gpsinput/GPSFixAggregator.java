@@ -0,0 +1,538 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+//----------------------------------------------------------------------
+/**
+ * Collects the values of the sentences (or packets) of one fix epoch
+ * into a {@link GPSFix} and publishes it once to a {@link
+ * GPSFixListener}. An epoch is identified by the UTC time of day the
+ * device sends in most sentences (e.g. GGA and RMC); sentences without
+ * time (e.g. GSA) belong to the current epoch.
+ * <p>
+ * The fix of an epoch is published as soon as
+ * <ul>
+ * <li>it contains all required values (see {@link
+ * #setRequiredFields(int)}),</li>
+ * <li>a sentence with a different time starts the next epoch, or</li>
+ * <li>the epoch timeout elapsed (see {@link #setEpochTimeout(long)};
+ * checked whenever a sentence was processed).</li>
+ * </ul>
+ * By default the required values are learned: an epoch is complete if
+ * it contains all values the previous epoch contained. Values arriving
+ * after the fix was published are not added to it.
+ * <p>
+ * The satellite ids of consecutive sentences (e.g. one GSA sentence per
+ * constellation of a multi-GNSS receiver) are added up; they count as
+ * complete when a sentence without satellite ids follows or the epoch
+ * ends.
+ * <p>
+ * This class is not thread safe, it is meant to be used by the thread
+ * reading from the gps device.
+ */
+
+public class GPSFixAggregator
+{
+  /** required fields value: learn them from the previous epoch */
+  public static final int LEARN_REQUIRED_FIELDS = -1;
+  /** the default epoch timeout in milliseconds */
+  public static final long DEFAULT_EPOCH_TIMEOUT = 1500;
+
+  protected static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  protected GPSFixListener publisher_;
+  protected int required_fields_ = LEARN_REQUIRED_FIELDS;
+  protected long epoch_timeout_ = DEFAULT_EPOCH_TIMEOUT;
+
+  /** the fix of the current epoch or <code>null</code> */
+  protected GPSFix fix_;
+  /** true if the fix of the current epoch was already published */
+  protected boolean published_;
+  /** the fields reported in the current epoch (also after publishing) */
+  protected int epoch_fields_;
+  /** the fields reported in the previous epoch */
+  protected int previous_epoch_fields_;
+  /** the system time the current epoch started */
+  protected long epoch_start_;
+  /** true if the current sentence set satellite ids */
+  protected boolean ids_in_sentence_;
+  /** true if the last sentence set satellite ids (more may follow) */
+  protected boolean ids_open_;
+
+  /** utc midnight (millis since 1970) of the last date reported */
+  protected long last_date_ = -1;
+  /** the time of day of the epoch the last date belongs to */
+  protected int last_date_time_of_day_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates an aggregator that passes the complete fixes to the given
+ * listener.
+ *
+ * @param publisher the listener to publish the fixes to.
+ */
+  public GPSFixAggregator(GPSFixListener publisher)
+  {
+    publisher_ = publisher;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the values that must be present before a fix is published
+ * before the epoch ends.
+ *
+ * @param required_fields the bit mask of the required values (e.g.
+ * <code>GPSFix.POSITION | GPSFix.ALTITUDE</code>), 0 to publish only
+ * at the end of an epoch or {@link #LEARN_REQUIRED_FIELDS} to require
+ * the values of the previous epoch.
+ */
+  public void setRequiredFields(int required_fields)
+  {
+    required_fields_ = required_fields;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the values that must be present before a fix is published.
+ *
+ * @return the bit mask of the required values or {@link
+ * #LEARN_REQUIRED_FIELDS}.
+ */
+  public int getRequiredFields()
+  {
+    return(required_fields_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the time after which an incomplete fix is published.
+ *
+ * @param timeout the timeout in milliseconds (0 to disable).
+ */
+  public void setEpochTimeout(long timeout)
+  {
+    epoch_timeout_ = timeout;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the time after which an incomplete fix is published.
+ *
+ * @return the timeout in milliseconds (0 if disabled).
+ */
+  public long getEpochTimeout()
+  {
+    return(epoch_timeout_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Must be called before the values of a sentence are set. If the
+ * time of the sentence differs from the time of the current epoch, the
+ * current epoch is finished (and published if this did not happen
+ * yet) and a new one is started.
+ *
+ * @param time_of_day the UTC time of the sentence in milliseconds
+ * since midnight or -1 if the sentence contains no time.
+ */
+  public void beginSentence(int time_of_day)
+  {
+    if((time_of_day < 0) || ((fix_ != null) && (fix_.time_of_day_ == time_of_day)))
+      return;
+
+    endEpoch();
+    fix_ = new GPSFix();
+    fix_.time_of_day_ = time_of_day;
+    fix_.fields_ = GPSFix.TIME;
+    epoch_fields_ = GPSFix.TIME;
+    published_ = false;
+    ids_open_ = false;
+    epoch_start_ = System.currentTimeMillis();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Must be called after the values of a sentence were set. Publishes
+ * the fix if it is complete or the epoch timed out.
+ */
+  public void endSentence()
+  {
+    ids_open_ = ids_in_sentence_;
+    ids_in_sentence_ = false;
+    if((fix_ == null) || published_)
+      return;
+    int required = required_fields_;
+    if(required == LEARN_REQUIRED_FIELDS)
+      required = previous_epoch_fields_;
+    int fields = fix_.fields_;
+    if(ids_open_)
+      fields &= ~GPSFix.SATELLITE_IDS;
+    if(((required != 0) && ((fields & required) == required))
+       || ((epoch_timeout_ > 0) && (System.currentTimeMillis() - epoch_start_ >= epoch_timeout_)))
+      publish();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Finishes the current epoch and publishes its fix if this did not
+ * happen yet (e.g. when the device is closed).
+ */
+  public void flush()
+  {
+    endEpoch();
+    fix_ = null;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Throws away the current epoch without publishing its fix.
+ */
+  public void discardEpoch()
+  {
+    fix_ = null;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the UTC time of day of the current epoch.
+ *
+ * @return the milliseconds since midnight or -1 if no epoch was
+ * started.
+ */
+  public int getEpochTimeOfDay()
+  {
+    if(fix_ == null)
+      return(-1);
+    return(fix_.time_of_day_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Finishes the current epoch.
+ */
+  protected void endEpoch()
+  {
+    if(fix_ == null)
+      return;
+    if(!published_)
+      publish();
+    previous_epoch_fields_ = epoch_fields_;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Publishes the fix of the current epoch.
+ */
+  protected void publish()
+  {
+    published_ = true;
+    if((last_date_ >= 0) && !fix_.hasField(GPSFix.DATE))
+    {
+          // use the date of an earlier epoch (after midnight the next day)
+      long date = last_date_;
+      if(fix_.time_of_day_ < last_date_time_of_day_)
+        date += MILLIS_PER_DAY;
+      fix_.time_ = date + fix_.time_of_day_;
+      fix_.fields_ |= GPSFix.DATE;
+    }
+    publisher_.gpsFixReceived(fix_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if values set now are added to the fix.
+ *
+ * @param field the bit of the value.
+ * @return true if the value is added.
+ */
+  protected boolean accept(int field)
+  {
+    if(fix_ == null)
+      return(false);
+    epoch_fields_ |= field;
+    if(published_)
+      return(false);
+    fix_.fields_ |= field;
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the UTC date of the current epoch.
+ *
+ * @param year the year (e.g. 2010).
+ * @param month the month (1 to 12).
+ * @param day the day of the month (1 to 31).
+ */
+  public void setDate(int year, int month, int day)
+  {
+    if(!accept(GPSFix.DATE))
+      return;
+    last_date_ = daysSinceEpoch(year,month,day) * MILLIS_PER_DAY;
+    last_date_time_of_day_ = fix_.time_of_day_;
+    fix_.time_ = last_date_ + fix_.time_of_day_;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the position of the current epoch.
+ *
+ * @param position the position.
+ */
+  public void setPosition(GPSPosition position)
+  {
+    if(accept(GPSFix.POSITION))
+      fix_.position_ = position;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the altitude of the current epoch.
+ *
+ * @param altitude the altitude in meters.
+ */
+  public void setAltitude(float altitude)
+  {
+    if(accept(GPSFix.ALTITUDE))
+      fix_.altitude_ = altitude;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the geoid separation of the current epoch.
+ *
+ * @param geoid_separation the height of the geoid above the WGS84
+ * ellipsoid in meters.
+ */
+  public void setGeoidSeparation(float geoid_separation)
+  {
+    if(accept(GPSFix.GEOID_SEPARATION))
+      fix_.geoid_separation_ = geoid_separation;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the speed over ground of the current epoch.
+ *
+ * @param speed the speed in km/h.
+ */
+  public void setSpeed(float speed)
+  {
+    if(accept(GPSFix.SPEED))
+      fix_.speed_ = speed;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the course over ground of the current epoch.
+ *
+ * @param course the course in degrees.
+ */
+  public void setCourse(float course)
+  {
+    if(accept(GPSFix.COURSE))
+      fix_.course_ = course;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the horizontal dilution of precision of the current epoch.
+ *
+ * @param hdop the hdop.
+ */
+  public void setHDOP(float hdop)
+  {
+    if(accept(GPSFix.HDOP))
+      fix_.hdop_ = hdop;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the position dilution of precision of the current epoch.
+ *
+ * @param pdop the pdop.
+ */
+  public void setPDOP(float pdop)
+  {
+    if(accept(GPSFix.PDOP))
+      fix_.pdop_ = pdop;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the vertical dilution of precision of the current epoch.
+ *
+ * @param vdop the vdop.
+ */
+  public void setVDOP(float vdop)
+  {
+    if(accept(GPSFix.VDOP))
+      fix_.vdop_ = vdop;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the fix quality of the current epoch.
+ *
+ * @param fix_quality the fix quality (as in the NMEA GGA sentence).
+ */
+  public void setFixQuality(int fix_quality)
+  {
+    if(accept(GPSFix.FIX_QUALITY))
+      fix_.fix_quality_ = fix_quality;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the fix type of the current epoch.
+ *
+ * @param fix_type the fix type (e.g. {@link GPSFix#FIX_TYPE_3D}).
+ */
+  public void setFixType(int fix_type)
+  {
+    if(accept(GPSFix.FIX_TYPE))
+      fix_.fix_type_ = fix_type;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the number of satellites used in the current epoch.
+ *
+ * @param satellites_used the number of satellites used.
+ */
+  public void setSatellitesUsed(int satellites_used)
+  {
+    if(accept(GPSFix.SATELLITES_USED))
+      fix_.satellites_used_ = satellites_used;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the ids of the satellites used in the current epoch. The ids
+ * are copied. If the previous sentence set satellite ids as well, the
+ * ids are added to its ids.
+ *
+ * @param satellite_ids the satellite ids.
+ * @param count the number of ids to use from the array.
+ */
+  public void setSatelliteIds(int[] satellite_ids, int count)
+  {
+    ids_in_sentence_ = true;
+    if(!accept(GPSFix.SATELLITE_IDS))
+      return;
+    int offset = 0;
+    if(ids_open_ && (fix_.satellite_ids_ != null))
+      offset = fix_.satellite_ids_.length;
+    int[] ids = new int[offset + count];
+    if(offset > 0)
+      System.arraycopy(fix_.satellite_ids_,0,ids,0,offset);
+    System.arraycopy(satellite_ids,0,ids,offset,count);
+    fix_.satellite_ids_ = ids;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of days between 1970-01-01 and the given date
+ * (proleptic gregorian calendar).
+ *
+ * @param year the year.
+ * @param month the month (1 to 12).
+ * @param day the day of the month.
+ * @return the number of days since 1970-01-01.
+ */
+  protected static long daysSinceEpoch(int year, int month, int day)
+  {
+    if(month <= 2)
+      year--;
+    long era = (year >= 0 ? year : year - 399) / 400;
+    long year_of_era = year - era * 400;
+    long day_of_year = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    long day_of_era = year_of_era * 365 + year_of_era / 4 - year_of_era / 100 + day_of_year;
+    return(era * 146097 + day_of_era - 719468);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Aggregates epochs of a multi-GNSS receiver (a GGA, one GSA per
+ * constellation and an RMC sentence) and checks that every published
+ * fix holds the used satellites of all GSA sentences.
+ *
+ * @param args not used.
+ */
+  public static void main(String[] args)
+  {
+    final int[][] gsa_ids = new int[][] {{2,5,12,25},{65,71,80},{301,305,311,327}};
+    final int[] failed = new int[1];
+    final int[] published = new int[1];
+    GPSFixAggregator aggregator = new GPSFixAggregator(new GPSFixListener()
+      {
+        public void gpsFixReceived(GPSFix fix)
+        {
+          published[0]++;
+          int[] ids = fix.getSatelliteIds();
+          int index = 0;
+          boolean equal = true;
+          for(int gsa = 0; gsa < gsa_ids.length; gsa++)
+          {
+            for(int id = 0; id < gsa_ids[gsa].length; id++)
+            {
+              if((index >= ids.length) || (ids[index++] != gsa_ids[gsa][id]))
+                equal = false;
+            }
+          }
+          if(!equal || (index != ids.length))
+          {
+            failed[0]++;
+            System.out.println("fix "+published[0]+": "+ids.length+" satellite ids");
+          }
+        }
+      });
+
+    int[] ids = new int[12];
+    for(int epoch = 0; epoch < 5; epoch++)
+    {
+      int time_of_day = 43200000 + epoch * 1000;
+          // GGA:
+      aggregator.beginSentence(time_of_day);
+      aggregator.setPosition(new GPSPosition(47.0 + epoch * 0.0001,15.0));
+      aggregator.setAltitude(350.0f);
+      aggregator.endSentence();
+          // GNGSA for every constellation:
+      for(int gsa = 0; gsa < gsa_ids.length; gsa++)
+      {
+        aggregator.beginSentence(-1);
+        aggregator.setFixType(GPSFix.FIX_TYPE_3D);
+        System.arraycopy(gsa_ids[gsa],0,ids,0,gsa_ids[gsa].length);
+        aggregator.setSatelliteIds(ids,gsa_ids[gsa].length);
+        aggregator.endSentence();
+      }
+          // RMC (in every second epoch, so the GSA sentences end some
+          // epochs):
+      if(epoch % 2 == 0)
+      {
+        aggregator.beginSentence(time_of_day);
+        aggregator.setSpeed(1.0f);
+        aggregator.setCourse(90.0f);
+        aggregator.endSentence();
+      }
+    }
+    aggregator.flush();
+    System.out.println("fixes: "+published[0]+", with missing satellite ids: "+failed[0]);
+  }
+}
@@ -0,0 +1,511 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+//----------------------------------------------------------------------
+/**
+ * Stores a track of {@link GPSFix}es column by column: one primitive
+ * array per value instead of one object per fix. Long tracks (e.g.
+ * decoded from a capture file) need much less memory this way and
+ * the values of one column can be processed without touching the
+ * others.
+ * <p>
+ * Missing values are stored as in {@link GPSFix}: NaN for floating
+ * point values, -1 for times. The values present in a row are marked
+ * in a bit mask (see {@link #getFields(int)}).
+ * <p>
+ * This class is not thread safe.
+ */
+
+public class GPSFixColumns implements GPSFixListener
+{
+  protected static final int INITIAL_CAPACITY = 1024;
+  protected static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  protected int size_;
+  protected int[] fields_;
+  protected int[] time_of_day_;
+  protected long[] time_;
+  protected double[] latitude_;
+  protected double[] longitude_;
+  protected float[] altitude_;
+  protected float[] speed_;
+  protected float[] course_;
+  protected float[] hdop_;
+  protected float[] pdop_;
+  protected float[] vdop_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates an empty track.
+ */
+  public GPSFixColumns()
+  {
+    this(INITIAL_CAPACITY);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates an empty track with room for the given number of fixes.
+ *
+ * @param capacity the initial capacity.
+ */
+  public GPSFixColumns(int capacity)
+  {
+    allocate(Math.max(capacity,1));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a fix to the end of the track. Fixes without time are ignored,
+ * as they cannot be ordered.
+ *
+ * @param fix the fix.
+ */
+  public void gpsFixReceived(GPSFix fix)
+  {
+    add(fix);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a fix to the end of the track. Fixes without time are ignored,
+ * as they cannot be ordered.
+ *
+ * @param fix the fix.
+ */
+  public void add(GPSFix fix)
+  {
+    if(!fix.hasField(GPSFix.TIME))
+      return;
+    ensureCapacity(size_ + 1);
+    int row = size_++;
+    fields_[row] = fix.getFields() & ~(GPSFix.SATELLITE_IDS);
+    time_of_day_[row] = fix.getTimeOfDay();
+    time_[row] = fix.getTime();
+    GPSPosition position = fix.getPosition();
+    if(position != null)
+    {
+      latitude_[row] = position.getLatitude();
+      longitude_[row] = position.getLongitude();
+    }
+    else
+    {
+      latitude_[row] = Double.NaN;
+      longitude_[row] = Double.NaN;
+    }
+    altitude_[row] = fix.getAltitude();
+    speed_[row] = fix.getSpeed();
+    course_[row] = fix.getCourse();
+    hdop_[row] = fix.getHDOP();
+    pdop_[row] = fix.getPDOP();
+    vdop_[row] = fix.getVDOP();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends all fixes of the given track. If the first fix of the given
+ * track has the same time as the last fix of this track (an epoch that
+ * was split, e.g. at a chunk boundary of a capture file), the two are
+ * merged: the values missing in the last fix are taken from the other
+ * one. Fixes without date get the date of the fixes before (as done by
+ * the {@link GPSFixAggregator}).
+ *
+ * @param track the track to append.
+ */
+  public void append(GPSFixColumns track)
+  {
+    int first = 0;
+    if((size_ > 0) && (track.size_ > 0)
+       && (time_of_day_[size_ - 1] == track.time_of_day_[0]))
+    {
+      mergeRow(size_ - 1,track,0);
+      first = 1;
+    }
+    int count = track.size_ - first;
+    if(count <= 0)
+      return;
+    ensureCapacity(size_ + count);
+    System.arraycopy(track.fields_,first,fields_,size_,count);
+    System.arraycopy(track.time_of_day_,first,time_of_day_,size_,count);
+    System.arraycopy(track.time_,first,time_,size_,count);
+    System.arraycopy(track.latitude_,first,latitude_,size_,count);
+    System.arraycopy(track.longitude_,first,longitude_,size_,count);
+    System.arraycopy(track.altitude_,first,altitude_,size_,count);
+    System.arraycopy(track.speed_,first,speed_,size_,count);
+    System.arraycopy(track.course_,first,course_,size_,count);
+    System.arraycopy(track.hdop_,first,hdop_,size_,count);
+    System.arraycopy(track.pdop_,first,pdop_,size_,count);
+    System.arraycopy(track.vdop_,first,vdop_,size_,count);
+    int start = size_;
+    size_ += count;
+    fillMissingDates(start);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Copies the values missing in a row of this track from a row of
+ * another track.
+ *
+ * @param row the row of this track.
+ * @param track the other track.
+ * @param other_row the row of the other track.
+ */
+  protected void mergeRow(int row, GPSFixColumns track, int other_row)
+  {
+    int missing = track.fields_[other_row] & ~fields_[row];
+    if((missing & GPSFix.DATE) != 0)
+      time_[row] = track.time_[other_row];
+    if((missing & GPSFix.POSITION) != 0)
+    {
+      latitude_[row] = track.latitude_[other_row];
+      longitude_[row] = track.longitude_[other_row];
+    }
+    if((missing & GPSFix.ALTITUDE) != 0)
+      altitude_[row] = track.altitude_[other_row];
+    if((missing & GPSFix.SPEED) != 0)
+      speed_[row] = track.speed_[other_row];
+    if((missing & GPSFix.COURSE) != 0)
+      course_[row] = track.course_[other_row];
+    if((missing & GPSFix.HDOP) != 0)
+      hdop_[row] = track.hdop_[other_row];
+    if((missing & GPSFix.PDOP) != 0)
+      pdop_[row] = track.pdop_[other_row];
+    if((missing & GPSFix.VDOP) != 0)
+      vdop_[row] = track.vdop_[other_row];
+    fields_[row] |= missing;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the time of the rows without date (starting at the given row),
+ * using the date of the row before (the next day after midnight).
+ *
+ * @param start the first row to check.
+ */
+  protected void fillMissingDates(int start)
+  {
+    if(start == 0)
+      return;
+    long date = -1;
+    int date_time_of_day = 0;
+    if((fields_[start - 1] & GPSFix.DATE) != 0)
+    {
+      date_time_of_day = time_of_day_[start - 1];
+      date = time_[start - 1] - date_time_of_day;
+    }
+    for(int row = start; row < size_; row++)
+    {
+      if((fields_[row] & GPSFix.DATE) != 0)
+        return;  // the aggregator already dated the following rows
+      if(date < 0)
+        return;
+      if(time_of_day_[row] < date_time_of_day)
+        date += MILLIS_PER_DAY;
+      date_time_of_day = time_of_day_[row];
+      time_[row] = date + date_time_of_day;
+      fields_[row] |= GPSFix.DATE;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Makes sure the columns can hold the given number of rows.
+ *
+ * @param capacity the number of rows.
+ */
+  protected void ensureCapacity(int capacity)
+  {
+    if(capacity <= fields_.length)
+      return;
+    int old_size = size_;
+    int[] fields = fields_;
+    int[] time_of_day = time_of_day_;
+    long[] time = time_;
+    double[] latitude = latitude_;
+    double[] longitude = longitude_;
+    float[] altitude = altitude_;
+    float[] speed = speed_;
+    float[] course = course_;
+    float[] hdop = hdop_;
+    float[] pdop = pdop_;
+    float[] vdop = vdop_;
+    allocate(Math.max(capacity,fields_.length * 2));
+    System.arraycopy(fields,0,fields_,0,old_size);
+    System.arraycopy(time_of_day,0,time_of_day_,0,old_size);
+    System.arraycopy(time,0,time_,0,old_size);
+    System.arraycopy(latitude,0,latitude_,0,old_size);
+    System.arraycopy(longitude,0,longitude_,0,old_size);
+    System.arraycopy(altitude,0,altitude_,0,old_size);
+    System.arraycopy(speed,0,speed_,0,old_size);
+    System.arraycopy(course,0,course_,0,old_size);
+    System.arraycopy(hdop,0,hdop_,0,old_size);
+    System.arraycopy(pdop,0,pdop_,0,old_size);
+    System.arraycopy(vdop,0,vdop_,0,old_size);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Allocates the columns.
+ *
+ * @param capacity the number of rows.
+ */
+  protected void allocate(int capacity)
+  {
+    fields_ = new int[capacity];
+    time_of_day_ = new int[capacity];
+    time_ = new long[capacity];
+    latitude_ = new double[capacity];
+    longitude_ = new double[capacity];
+    altitude_ = new float[capacity];
+    speed_ = new float[capacity];
+    course_ = new float[capacity];
+    hdop_ = new float[capacity];
+    pdop_ = new float[capacity];
+    vdop_ = new float[capacity];
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Releases the unused capacity of the columns.
+ */
+  public void trimToSize()
+  {
+    if(size_ == fields_.length)
+      return;
+    GPSFixColumns copy = new GPSFixColumns(size_);
+    copy.append(this);
+    fields_ = copy.fields_;
+    time_of_day_ = copy.time_of_day_;
+    time_ = copy.time_;
+    latitude_ = copy.latitude_;
+    longitude_ = copy.longitude_;
+    altitude_ = copy.altitude_;
+    speed_ = copy.speed_;
+    course_ = copy.course_;
+    hdop_ = copy.hdop_;
+    pdop_ = copy.pdop_;
+    vdop_ = copy.vdop_;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of fixes in the track.
+ *
+ * @return the number of fixes.
+ */
+  public int size()
+  {
+    return(size_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the bit mask of the values present in the given row (see
+ * {@link GPSFix#getFields()}).
+ *
+ * @param row the row.
+ * @return the bit mask of the values present.
+ */
+  public int getFields(int row)
+  {
+    return(fields_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the UTC time of day of the given row.
+ *
+ * @param row the row.
+ * @return the milliseconds since midnight.
+ */
+  public int getTimeOfDay(int row)
+  {
+    return(time_of_day_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the UTC time of the given row.
+ *
+ * @param row the row.
+ * @return the milliseconds since 1970-01-01 or -1 if the date is
+ * unknown.
+ */
+  public long getTime(int row)
+  {
+    return(time_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the latitude of the given row.
+ *
+ * @param row the row.
+ * @return the latitude or NaN if unknown.
+ */
+  public double getLatitude(int row)
+  {
+    return(latitude_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the longitude of the given row.
+ *
+ * @param row the row.
+ * @return the longitude or NaN if unknown.
+ */
+  public double getLongitude(int row)
+  {
+    return(longitude_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the altitude of the given row.
+ *
+ * @param row the row.
+ * @return the altitude in meters or NaN if unknown.
+ */
+  public float getAltitude(int row)
+  {
+    return(altitude_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the speed over ground of the given row.
+ *
+ * @param row the row.
+ * @return the speed in km/h or NaN if unknown.
+ */
+  public float getSpeed(int row)
+  {
+    return(speed_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the course over ground of the given row.
+ *
+ * @param row the row.
+ * @return the course in degrees or NaN if unknown.
+ */
+  public float getCourse(int row)
+  {
+    return(course_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the horizontal dilution of precision of the given row.
+ *
+ * @param row the row.
+ * @return the hdop or NaN if unknown.
+ */
+  public float getHDOP(int row)
+  {
+    return(hdop_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the position dilution of precision of the given row.
+ *
+ * @param row the row.
+ * @return the pdop or NaN if unknown.
+ */
+  public float getPDOP(int row)
+  {
+    return(pdop_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the vertical dilution of precision of the given row.
+ *
+ * @param row the row.
+ * @return the vdop or NaN if unknown.
+ */
+  public float getVDOP(int row)
+  {
+    return(vdop_[row]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the latitude column. The array is not copied and may be
+ * longer than the track (see {@link #size()}, {@link #trimToSize()}).
+ *
+ * @return the latitudes.
+ */
+  public double[] getLatitudeColumn()
+  {
+    return(latitude_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the longitude column. The array is not copied and may be
+ * longer than the track (see {@link #size()}, {@link #trimToSize()}).
+ *
+ * @return the longitudes.
+ */
+  public double[] getLongitudeColumn()
+  {
+    return(longitude_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the time column. The array is not copied and may be longer
+ * than the track (see {@link #size()}, {@link #trimToSize()}).
+ *
+ * @return the times in milliseconds since 1970-01-01.
+ */
+  public long[] getTimeColumn()
+  {
+    return(time_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the altitude column. The array is not copied and may be
+ * longer than the track (see {@link #size()}, {@link #trimToSize()}).
+ *
+ * @return the altitudes.
+ */
+  public float[] getAltitudeColumn()
+  {
+    return(altitude_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the speed column. The array is not copied and may be longer
+ * than the track (see {@link #size()}, {@link #trimToSize()}).
+ *
+ * @return the speeds.
+ */
+  public float[] getSpeedColumn()
+  {
+    return(speed_);
+  }
+}
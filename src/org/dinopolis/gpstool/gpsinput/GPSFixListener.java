@@ -0,0 +1,41 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+//----------------------------------------------------------------------
+/**
+ * Classes implementing this interface are informed once per fix epoch
+ * with all information the gps device reported for this epoch, instead
+ * of one {@link java.beans.PropertyChangeEvent} per value.
+ *
+ * @see GPSDataProcessor#addGPSFixListener(GPSFixListener)
+ */
+
+public interface GPSFixListener
+{
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about a new fix. The fix is immutable, so it
+ * may be kept or passed to other threads.
+ *
+ * @param fix the fix.
+ */
+  public void gpsFixReceived(GPSFix fix);
+}
@@ -0,0 +1,796 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//----------------------------------------------------------------------
+/**
+ * A ring of pre-allocated, mutable fix slots that passes every fix
+ * from one producer (the data processor, the ring is added as {@link
+ * GPSFixListener}) to any number of consumer threads. The fix is
+ * copied once into the next slot and published by advancing the
+ * cursor; every {@link Consumer} reads the slots at its own sequence,
+ * so there is no queue per consumer and nothing is allocated per fix.
+ * <p>
+ * A consumer can depend on other consumers: it only sees a slot after
+ * all of its dependencies released it, e.g. a consumer logging the
+ * fixes may depend on a consumer that {@link Slot#setAttachment(Object)
+ * enriches} them. Every consumer has its own wait strategy ({@link
+ * #WAIT_BLOCKING}, {@link #WAIT_YIELDING} or {@link #WAIT_BUSY_SPIN}),
+ * trading cpu time for latency.
+ * <p>
+ * A slot is only reused after all consumers released it. If the
+ * slowest consumer is a whole ring behind, the {@link
+ * #setOverflowPolicy(int) overflow policy} decides what happens:
+ * {@link #OVERFLOW_BLOCK} makes the producer wait, {@link
+ * #OVERFLOW_DROP_NEWEST} throws the new fix away, so the thread
+ * reading the gps device never waits.
+ * <p>
+ * Consumers should be added before fixes are published; a consumer
+ * added later starts with the next fix published.
+ */
+
+public class GPSFixRing implements GPSFixListener
+{
+  /** overflow policy: the producer waits for a free slot */
+  public static final int OVERFLOW_BLOCK = 0;
+  /** overflow policy: the new fix is thrown away */
+  public static final int OVERFLOW_DROP_NEWEST = 1;
+
+  /** wait strategy: the consumer thread is parked (lowest cpu usage) */
+  public static final int WAIT_BLOCKING = 0;
+  /** wait strategy: the consumer thread yields while waiting */
+  public static final int WAIT_YIELDING = 1;
+  /** wait strategy: the consumer thread spins (lowest latency) */
+  public static final int WAIT_BUSY_SPIN = 2;
+
+  /** the default number of slots */
+  public static final int DEFAULT_CAPACITY = 256;
+  /** the nanoseconds a waiting thread sleeps before checking again */
+  protected static final long PARK_NANOS = 10L * 1000 * 1000;
+  /** the number of times a blocking thread yields before it is parked */
+  protected static final int SPIN_TRIES = 100;
+
+  protected static final Consumer[] NO_CONSUMERS = new Consumer[0];
+
+  protected Slot[] slots_;
+  protected int mask_;
+
+  /** the sequence of the last published fix */
+  protected AtomicLong cursor_ = new AtomicLong(-1);
+  /** the consumers (copy on write) */
+  protected volatile Consumer[] consumers_ = NO_CONSUMERS;
+  protected Object consumer_lock_ = new Object();
+
+  protected volatile int overflow_policy_ = OVERFLOW_BLOCK;
+  protected volatile boolean closed_;
+  protected volatile Thread waiting_producer_;
+
+  protected volatile long dropped_count_;
+  protected volatile long blocked_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a ring with the default number of slots.
+ */
+  public GPSFixRing()
+  {
+    this(DEFAULT_CAPACITY);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates a ring.
+ *
+ * @param capacity the number of slots (rounded up to a power of two).
+ */
+  public GPSFixRing(int capacity)
+  {
+    int size = 1;
+    while(size < capacity)
+      size <<= 1;
+    slots_ = new Slot[size];
+    for(int index = 0; index < size; index++)
+      slots_[index] = new Slot();
+    mask_ = size - 1;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets what happens if the slowest consumer is a whole ring behind.
+ *
+ * @param policy {@link #OVERFLOW_BLOCK} or {@link
+ * #OVERFLOW_DROP_NEWEST}.
+ */
+  public void setOverflowPolicy(int policy)
+  {
+    overflow_policy_ = policy;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the overflow policy.
+ *
+ * @return {@link #OVERFLOW_BLOCK} or {@link #OVERFLOW_DROP_NEWEST}.
+ */
+  public int getOverflowPolicy()
+  {
+    return(overflow_policy_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a consumer.
+ *
+ * @param wait_strategy {@link #WAIT_BLOCKING}, {@link #WAIT_YIELDING}
+ * or {@link #WAIT_BUSY_SPIN}.
+ * @param dependencies the consumers that must release a slot before
+ * the new consumer sees it or <code>null</code>.
+ * @return the consumer.
+ */
+  public Consumer addConsumer(int wait_strategy, Consumer[] dependencies)
+  {
+    Consumer consumer = new Consumer(wait_strategy,dependencies);
+    synchronized(consumer_lock_)
+    {
+      consumer.next_ = cursor_.get() + 1;
+      consumer.sequence_.set(consumer.next_ - 1);
+      Consumer[] consumers = new Consumer[consumers_.length + 1];
+      System.arraycopy(consumers_,0,consumers,0,consumers_.length);
+      consumers[consumers_.length] = consumer;
+      consumers_ = consumers;
+      if(dependencies != null)
+      {
+        for(int index = 0; index < dependencies.length; index++)
+          dependencies[index].has_dependents_ = true;
+      }
+    }
+    return(consumer);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes a consumer, so the producer does not wait for it any more.
+ * Consumers depending on the removed consumer must be removed as well.
+ *
+ * @param consumer the consumer.
+ */
+  public void removeConsumer(Consumer consumer)
+  {
+    synchronized(consumer_lock_)
+    {
+      int count = 0;
+      Consumer[] consumers = new Consumer[consumers_.length];
+      for(int index = 0; index < consumers_.length; index++)
+      {
+        if(consumers_[index] != consumer)
+          consumers[count++] = consumers_[index];
+      }
+      if(count == consumers_.length)
+        return;
+      Consumer[] remaining = new Consumer[count];
+      System.arraycopy(consumers,0,remaining,0,count);
+      consumers_ = remaining;
+    }
+    Thread producer = waiting_producer_;
+    if(producer != null)
+      LockSupport.unpark(producer);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Publishes a fix: copies it into the next slot. Must only be called
+ * by one thread (the thread informing the fix listeners).
+ *
+ * @param fix the fix.
+ */
+  public void gpsFixReceived(GPSFix fix)
+  {
+    publish(fix);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Publishes a fix: copies it into the next slot. Must only be called
+ * by one thread.
+ *
+ * @param fix the fix.
+ * @return false if the fix was dropped or the ring was closed while
+ * waiting for a free slot.
+ */
+  public boolean publish(GPSFix fix)
+  {
+    long sequence = cursor_.get() + 1;
+    long wrap = sequence - slots_.length;
+    boolean blocked = false;
+    int spins = 0;
+    while(getMinimumSequence() < wrap)
+    {
+      if(closed_)
+        return(false);
+      if(overflow_policy_ == OVERFLOW_DROP_NEWEST)
+      {
+        dropped_count_++;
+        return(false);
+      }
+      if(!blocked)
+      {
+        blocked_count_++;
+        blocked = true;
+      }
+      if(++spins < SPIN_TRIES)
+      {
+        Thread.yield();
+        continue;
+      }
+      waiting_producer_ = Thread.currentThread();
+      if(getMinimumSequence() < wrap)
+        LockSupport.parkNanos(PARK_NANOS);
+      waiting_producer_ = null;
+    }
+
+    slots_[(int)sequence & mask_].set(fix,sequence);
+    cursor_.set(sequence);
+
+    Consumer[] consumers = consumers_;
+    for(int index = 0; index < consumers.length; index++)
+    {
+      Thread consumer = consumers[index].waiting_;
+      if(consumer != null)
+        LockSupport.unpark(consumer);
+    }
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the lowest sequence released by all consumers.
+ *
+ * @return the sequence (the cursor if there are no consumers).
+ */
+  protected long getMinimumSequence()
+  {
+    long minimum = cursor_.get();
+    Consumer[] consumers = consumers_;
+    for(int index = 0; index < consumers.length; index++)
+    {
+      long sequence = consumers[index].sequence_.get();
+      if(sequence < minimum)
+        minimum = sequence;
+    }
+    return(minimum);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Closes the ring: waiting threads return, the consumers get the
+ * remaining fixes and then <code>null</code>.
+ */
+  public void close()
+  {
+    closed_ = true;
+    Consumer[] consumers = consumers_;
+    for(int index = 0; index < consumers.length; index++)
+    {
+      Thread consumer = consumers[index].waiting_;
+      if(consumer != null)
+        LockSupport.unpark(consumer);
+    }
+    Thread producer = waiting_producer_;
+    if(producer != null)
+      LockSupport.unpark(producer);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of slots.
+ *
+ * @return the capacity.
+ */
+  public int getCapacity()
+  {
+    return(slots_.length);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the sequence of the last published fix.
+ *
+ * @return the sequence or -1 if no fix was published yet.
+ */
+  public long getCursor()
+  {
+    return(cursor_.get());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of fixes thrown away because the ring was full
+ * (policy {@link #OVERFLOW_DROP_NEWEST}).
+ *
+ * @return the number of fixes dropped.
+ */
+  public long getDroppedCount()
+  {
+    return(dropped_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns how often the producer had to wait for a free slot (policy
+ * {@link #OVERFLOW_BLOCK}).
+ *
+ * @return the number of waits.
+ */
+  public long getBlockedCount()
+  {
+    return(blocked_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * A consumer of the ring, used by exactly one thread. The thread
+ * calls {@link #next()} to get the next slot; the slot stays valid
+ * until the following call of {@link #next()} or {@link #release()}.
+ */
+  public class Consumer
+  {
+    /** the last sequence released by this consumer */
+    protected AtomicLong sequence_ = new AtomicLong(-1);
+    /** the sequence of the next slot to read */
+    protected long next_;
+    protected int wait_strategy_;
+    protected Consumer[] dependencies_;
+    protected volatile boolean has_dependents_;
+    protected volatile Thread waiting_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a consumer.
+ *
+ * @param wait_strategy the wait strategy.
+ * @param dependencies the consumers this one depends on or
+ * <code>null</code>.
+ */
+    protected Consumer(int wait_strategy, Consumer[] dependencies)
+    {
+      wait_strategy_ = wait_strategy;
+      dependencies_ = (dependencies == null) ? NO_CONSUMERS : (Consumer[])dependencies.clone();
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Releases the slot returned last and returns the next one, waiting
+ * if no fix is available.
+ *
+ * @return the slot or <code>null</code> if the ring was closed and all
+ * fixes were read.
+ */
+    public Slot next()
+    {
+      release();
+      long sequence = next_;
+      int spins = 0;
+      while(getAvailableSequence() < sequence)
+      {
+        if(closed_ && (cursor_.get() < sequence))
+          return(null);
+        switch(wait_strategy_)
+        {
+        case WAIT_BUSY_SPIN:
+          break;
+        case WAIT_YIELDING:
+          Thread.yield();
+          break;
+        default:
+          if(++spins < SPIN_TRIES)
+            Thread.yield();
+          else
+          {
+            waiting_ = Thread.currentThread();
+            if((getAvailableSequence() < sequence) && !closed_)
+              LockSupport.parkNanos(PARK_NANOS);
+            waiting_ = null;
+          }
+        }
+      }
+      next_ = sequence + 1;
+      return(slots_[(int)sequence & mask_]);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Releases the slot returned last by {@link #next()}, so the producer
+ * may reuse it and depending consumers may read it.
+ */
+    public void release()
+    {
+      if(sequence_.get() == next_ - 1)
+        return;
+      sequence_.set(next_ - 1);
+      Thread producer = waiting_producer_;
+      if(producer != null)
+        LockSupport.unpark(producer);
+      if(has_dependents_)
+      {
+        Consumer[] consumers = consumers_;
+        for(int index = 0; index < consumers.length; index++)
+        {
+          Thread consumer = consumers[index].waiting_;
+          if(consumer != null)
+            LockSupport.unpark(consumer);
+        }
+      }
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the highest sequence this consumer may read: the cursor or
+ * the lowest sequence released by its dependencies.
+ *
+ * @return the sequence.
+ */
+    protected long getAvailableSequence()
+    {
+      long available = cursor_.get();
+      for(int index = 0; index < dependencies_.length; index++)
+      {
+        long sequence = dependencies_[index].sequence_.get();
+        if(sequence < available)
+          available = sequence;
+      }
+      return(available);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the last sequence released by this consumer.
+ *
+ * @return the sequence.
+ */
+    public long getSequence()
+    {
+      return(sequence_.get());
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of published fixes this consumer did not read
+ * yet.
+ *
+ * @return the number of fixes.
+ */
+    public long getLag()
+    {
+      return(cursor_.get() + 1 - next_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the wait strategy of this consumer.
+ *
+ * @return {@link #WAIT_BLOCKING}, {@link #WAIT_YIELDING} or {@link
+ * #WAIT_BUSY_SPIN}.
+ */
+    public int getWaitStrategy()
+    {
+      return(wait_strategy_);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * A slot of the ring: a mutable copy of a {@link GPSFix} with
+ * primitive values only. A slot is overwritten once all consumers
+ * released it, so its values must be copied if they are needed
+ * longer.
+ */
+  public static class Slot
+  {
+    protected long sequence_ = -1;
+    protected int fields_;
+    protected int time_of_day_;
+    protected long time_;
+    protected double latitude_;
+    protected double longitude_;
+    protected float altitude_;
+    protected float speed_;
+    protected float course_;
+    protected float hdop_;
+    protected float pdop_;
+    protected float vdop_;
+    protected int fix_quality_;
+    protected int fix_type_;
+    protected int satellites_used_;
+    protected int[] satellite_ids_ = new int[32];
+    protected int satellite_id_count_;
+    protected Object attachment_;
+
+//----------------------------------------------------------------------
+/**
+ * Copies the values of a fix into this slot.
+ *
+ * @param fix the fix.
+ * @param sequence the sequence of the fix.
+ */
+    protected void set(GPSFix fix, long sequence)
+    {
+      sequence_ = sequence;
+      fields_ = fix.fields_;
+      time_of_day_ = fix.time_of_day_;
+      time_ = fix.time_;
+      if(fix.position_ != null)
+      {
+        latitude_ = fix.position_.getLatitude();
+        longitude_ = fix.position_.getLongitude();
+      }
+      else
+      {
+        latitude_ = Double.NaN;
+        longitude_ = Double.NaN;
+      }
+      altitude_ = fix.altitude_;
+      speed_ = fix.speed_;
+      course_ = fix.course_;
+      hdop_ = fix.hdop_;
+      pdop_ = fix.pdop_;
+      vdop_ = fix.vdop_;
+      fix_quality_ = fix.fix_quality_;
+      fix_type_ = fix.fix_type_;
+      satellites_used_ = fix.satellites_used_;
+      int count = fix.satellite_ids_.length;
+      if(satellite_ids_.length < count)
+        satellite_ids_ = new int[count];
+      System.arraycopy(fix.satellite_ids_,0,satellite_ids_,0,count);
+      satellite_id_count_ = count;
+      attachment_ = null;
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the sequence of the fix held by this slot.
+ *
+ * @return the sequence.
+ */
+    public long getSequence()
+    {
+      return(sequence_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the given value (or all values if more than one bit
+ * is set) was reported for this fix.
+ *
+ * @param field the bit(s) of the value(s) (e.g. {@link
+ * GPSFix#POSITION}).
+ * @return true if the value is present.
+ */
+    public boolean hasField(int field)
+    {
+      return((fields_ & field) == field);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the bit mask of the values reported for this fix.
+ *
+ * @return the fields (see {@link GPSFix#getFields()}).
+ */
+    public int getFields()
+    {
+      return(fields_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the UTC time of day of the fix.
+ *
+ * @return the milliseconds since midnight or -1 if unknown.
+ */
+    public int getTimeOfDay()
+    {
+      return(time_of_day_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the UTC time of the fix.
+ *
+ * @return the milliseconds since 1970 or -1 if the date is unknown.
+ */
+    public long getTime()
+    {
+      return(time_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the latitude of the fix.
+ *
+ * @return the latitude (WGS84) or NaN if unknown.
+ */
+    public double getLatitude()
+    {
+      return(latitude_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the longitude of the fix.
+ *
+ * @return the longitude (WGS84) or NaN if unknown.
+ */
+    public double getLongitude()
+    {
+      return(longitude_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the altitude of the fix.
+ *
+ * @return the altitude or NaN if unknown.
+ */
+    public float getAltitude()
+    {
+      return(altitude_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the speed over ground.
+ *
+ * @return the speed or NaN if unknown.
+ */
+    public float getSpeed()
+    {
+      return(speed_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the course over ground.
+ *
+ * @return the course or NaN if unknown.
+ */
+    public float getCourse()
+    {
+      return(course_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the horizontal dilution of precision.
+ *
+ * @return the hdop or NaN if unknown.
+ */
+    public float getHDOP()
+    {
+      return(hdop_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the position dilution of precision.
+ *
+ * @return the pdop or NaN if unknown.
+ */
+    public float getPDOP()
+    {
+      return(pdop_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the vertical dilution of precision.
+ *
+ * @return the vdop or NaN if unknown.
+ */
+    public float getVDOP()
+    {
+      return(vdop_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the quality of the fix.
+ *
+ * @return the fix quality (see {@link GPSFix#getFixQuality()}) or -1
+ * if unknown.
+ */
+    public int getFixQuality()
+    {
+      return(fix_quality_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the type of the fix.
+ *
+ * @return {@link GPSFix#FIX_TYPE_NONE}, {@link GPSFix#FIX_TYPE_2D},
+ * {@link GPSFix#FIX_TYPE_3D} or -1 if unknown.
+ */
+    public int getFixType()
+    {
+      return(fix_type_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of satellites used for the fix.
+ *
+ * @return the number of satellites or -1 if unknown.
+ */
+    public int getSatellitesUsed()
+    {
+      return(satellites_used_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of ids of the satellites used for the fix.
+ *
+ * @return the number of ids.
+ */
+    public int getSatelliteIdCount()
+    {
+      return(satellite_id_count_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns an id of a satellite used for the fix.
+ *
+ * @param index the index (0 to {@link #getSatelliteIdCount()} - 1).
+ * @return the satellite id.
+ */
+    public int getSatelliteId(int index)
+    {
+      return(satellite_ids_[index]);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the object attached to this fix by a consumer.
+ *
+ * @return the attachment or <code>null</code>.
+ */
+    public Object getAttachment()
+    {
+      return(attachment_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Attaches an object to this fix, e.g. values calculated by a
+ * consumer that other consumers depend on. The attachment is removed
+ * when the slot is reused.
+ *
+ * @param attachment the attachment.
+ */
+    public void setAttachment(Object attachment)
+    {
+      attachment_ = attachment;
+    }
+  }
+}
@@ -28,11 +28,13 @@ package org.dinopolis.gpstool.gpsinput;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeListener;
 import java.beans.PropertyChangeSupport;
-import java.util.HashMap;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicReference;
 
 //import org.apache.log4j.Logger;
 import org.dinopolis.util.ProgressListener;
@@ -56,16 +58,81 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
 {
 /** the GPSDevice */
   protected GPSDevice gps_device_ = null;
-/** the map the gps data is stored in */
-  protected Map gps_data_ = new HashMap();
-/** the lock object for the gps data */
-  protected Object gps_data_lock_ = new Object();
+/** the current snapshot of the gps data (a {@link GPSDataSnapshot}) */
+  protected AtomicReference gps_data_ = new AtomicReference(GPSDataSnapshot.EMPTY);
 /** the gps data change listeners */
   protected PropertyChangeSupport property_change_support_;
-/** the raw data listener */
-  protected Vector raw_data_listener_;  
+/** the gps data listeners (copy on write, never changed in place) */
+  protected volatile GPSDataListener[] data_listeners_ = new GPSDataListener[0];
+/** the raw data listeners (copy on write, never changed in place) */
+  protected volatile GPSRawDataListener[] raw_data_listeners_ = new GPSRawDataListener[0];
+/** the buffer used to convert raw bytes for the raw data listeners */
+  protected char[] raw_char_buffer_;
+/** the raw byte listeners (copy on write, never changed in place) */
+  protected volatile GPSRawByteListener[] raw_byte_listeners_ = new GPSRawByteListener[0];
+/** the read-only buffer passed to the raw byte listeners */
+  protected ByteBuffer raw_byte_buffer_;
+/** the array wrapped by the raw byte buffer */
+  protected byte[] raw_byte_array_;
+/** the fix listeners (copy on write, never changed in place) */
+  protected volatile GPSFixListener[] fix_listeners_ = new GPSFixListener[0];
+/** the lock for adding and removing listeners */
+  protected Object listener_lock_ = new Object();
+/** the rate limited subscriptions (copy on write, never changed in place) */
+  protected volatile GPSDataSubscription[] subscriptions_ = new GPSDataSubscription[0];
+/** the last fix (delivered to the fix subscriptions) */
+  protected volatile GPSFix last_fix_;
+/** incremented whenever a data change or fix listener is added or
+ * removed (only while holding the listener lock) */
+  protected volatile int listener_modification_count_;
 /** the progress listener */
   protected Vector progress_listener_;
+
+/** the default maximum time (milliseconds) a deadband suppresses events */
+  public static final long DEFAULT_MAX_SILENCE = 10000;
+  protected static final int LOCATION_SLOT = GPSDataSnapshot.getSlot(LOCATION);
+  protected static final int HEADING_SLOT = GPSDataSnapshot.getSlot(HEADING);
+  protected static final int SPEED_SLOT = GPSDataSnapshot.getSlot(SPEED);
+  protected static final int ALTITUDE_SLOT = GPSDataSnapshot.getSlot(ALTITUDE);
+  protected static final int PDOP_SLOT = GPSDataSnapshot.getSlot(PDOP);
+  protected static final int HDOP_SLOT = GPSDataSnapshot.getSlot(HDOP);
+  protected static final int VDOP_SLOT = GPSDataSnapshot.getSlot(VDOP);
+  protected static final int NUMBER_SATELLITES_SLOT = GPSDataSnapshot.getSlot(NUMBER_SATELLITES);
+  protected static final int IDS_SATELLITES_SLOT = GPSDataSnapshot.getSlot(IDS_SATELLITES);
+  protected static final int SATELLITE_INFO_SLOT = GPSDataSnapshot.getSlot(SATELLITE_INFO);
+  protected static final int FIX_QUALITY_SLOT = GPSDataSnapshot.getSlot(FIX_QUALITY);
+  protected static final int FIX_INFO_SLOT = GPSDataSnapshot.getSlot(FIX_INFO);
+  protected static final int FIXTIME_SLOT = GPSDataSnapshot.getSlot(FIXTIME);
+  protected static final int DEPTH_SLOT = GPSDataSnapshot.getSlot(DEPTH);
+  protected static final int EPE_SLOT = GPSDataSnapshot.getSlot(EPE);
+  protected static final double EARTH_RADIUS = 6371000.0;
+
+/** the deadband per slot (0 = every change is fired), replaced as a whole */
+  protected volatile double[] deadbands_ = new double[GPSDataSnapshot.SLOT_COUNT];
+/** incremented whenever a deadband is set (only while holding the
+ * listener lock) */
+  protected volatile int deadband_generation_;
+/** the maximum time a deadband suppresses events (nanoseconds) */
+  protected volatile long max_silence_ = DEFAULT_MAX_SILENCE * 1000000L;
+/** the deadband generation the following arrays were reset for (the
+ * arrays are only used by the thread changing the gps data, -1 to
+ * reset them on the first change) */
+  protected int applied_deadband_generation_ = -1;
+/** the last non-numeric value fired per slot (only kept for slots with
+ * deadband) */
+  protected Object[] fired_values_ = new Object[GPSDataSnapshot.SLOT_COUNT];
+/** the last numeric value fired per slot or NaN (only kept for slots
+ * with deadband) */
+  protected double[] fired_numbers_ = new double[GPSDataSnapshot.SLOT_COUNT];
+/** the System.nanoTime() the last value was fired per slot */
+  protected long[] fired_nanos_ = new long[GPSDataSnapshot.SLOT_COUNT];
+/** true if the last change of the slot was within its deadband */
+  protected boolean[] suppressed_ = new boolean[GPSDataSnapshot.SLOT_COUNT];
+/** true per slot if its values are put into the gps data (only used by
+ * the thread changing the gps data) */
+  protected boolean[] stored_slots_ = new boolean[GPSDataSnapshot.SLOT_COUNT];
+/** the listener modification count the stored slots were computed for */
+  protected int stored_slots_count_ = -1;
   //private static Logger logger_ = Logger.getLogger(GPSGeneralDataProcessor.class);
 
 //----------------------------------------------------------------------
@@ -145,6 +212,10 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
  * key was retrieved until now. The naming scheme for the keys is
  * taken from the NMEA standard (e.g. GLL for location, HDG for
  * heading, ...)
+ * <p>
+ * Numeric values (e.g. the speed) are only kept while a property
+ * change listener or a subscription of their key is registered, the
+ * other listeners get them without boxing.
  *
  * @param key the name of the data.
  * @return the heading from the GPSDevice.
@@ -156,10 +227,7 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
   {
     if (key == null)
       throw new IllegalArgumentException("The key must not be <null>.");
-    synchronized(gps_data_lock_)
-    {
-      return(gps_data_.get(key));
-    }
+    return(((GPSDataSnapshot)gps_data_.get()).get(key));
   }
 
 //----------------------------------------------------------------------
@@ -167,15 +235,27 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
  * Returns a map containing the last received data from the GPSDevice
  * or <code>null</code>, if no data was retrieved until now. The
  * naming scheme for the keys is taken from the NMEA standard
- * (e.g. GLL for location, HDG for heading, ...)
+ * (e.g. GLL for location, HDG for heading, ...). Numeric values are
+ * only kept for some keys (see {@link #getGPSData(String)}).
  *
  * @return a map containing all key-value pairs of GPS data.  */
   public Map getGPSData()
   {
-    synchronized(gps_data_lock_)
-    {
-      return((Map)((HashMap)gps_data_).clone());
-    }
+    return(((GPSDataSnapshot)gps_data_.get()).toMap());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the current snapshot of the gps data. This is cheaper than
+ * {@link #getGPSData()} (nothing is copied or locked) and all values
+ * of the snapshot belong together. Numeric values are only kept for
+ * some keys (see {@link #getGPSData(String)}).
+ *
+ * @return the snapshot of the gps data.
+ */
+  public GPSDataSnapshot getGPSDataSnapshot()
+  {
+    return((GPSDataSnapshot)gps_data_.get());
   }
 
 //--------------------------------------------------------------------------------
@@ -318,9 +398,13 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
     if (listener == null)
       throw new IllegalArgumentException("The listener must not be <null>.");
 
-    if (property_change_support_ == null)
-      property_change_support_ = new PropertyChangeSupport(this);
-    property_change_support_.addPropertyChangeListener(key,listener);
+    synchronized(listener_lock_)
+    {
+      if (property_change_support_ == null)
+        property_change_support_ = new PropertyChangeSupport(this);
+      property_change_support_.addPropertyChangeListener(key,listener);
+      listener_modification_count_++;
+    }
   }
 
   
@@ -338,9 +422,13 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
     if (listener == null)
       throw new IllegalArgumentException("The listener must not be <null>.");
 
-    if (property_change_support_ == null)
-      property_change_support_ = new PropertyChangeSupport(this);
-    property_change_support_.addPropertyChangeListener(listener);
+    synchronized(listener_lock_)
+    {
+      if (property_change_support_ == null)
+        property_change_support_ = new PropertyChangeSupport(this);
+      property_change_support_.addPropertyChangeListener(listener);
+      listener_modification_count_++;
+    }
   }
   
 //----------------------------------------------------------------------
@@ -360,8 +448,12 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
     if (listener == null)
       throw new IllegalArgumentException("The listener must not be <null>.");
 
-    if (property_change_support_ != null)
-      property_change_support_.removePropertyChangeListener(key,listener);
+    synchronized(listener_lock_)
+    {
+      if (property_change_support_ != null)
+        property_change_support_.removePropertyChangeListener(key,listener);
+      listener_modification_count_++;
+    }
   }
 
 
@@ -379,8 +471,91 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
     if (listener == null)
       throw new IllegalArgumentException("The listener must not be <null>.");
 
-    if (property_change_support_ != null)
-      property_change_support_.removePropertyChangeListener(listener);
+    synchronized(listener_lock_)
+    {
+      if (property_change_support_ != null)
+        property_change_support_.removePropertyChangeListener(listener);
+      listener_modification_count_++;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the deadband of the gps data with the given key: changes
+ * smaller than the deadband (compared to the value last fired) update
+ * the gps data, but are not fired to the listeners, unless no event
+ * was fired for {@link #setMaxSilence(long) the maximum silence}. The
+ * deadband is given in
+ *
+ * <ul>
+ * <li>meters for {@link GPSDataProcessor#LOCATION} and
+ * {@link GPSDataProcessor#ALTITUDE},</li>
+ * <li>m/s for {@link GPSDataProcessor#SPEED},</li>
+ * <li>degrees for {@link GPSDataProcessor#HEADING} and</li>
+ * <li>the unit of the value for all other numeric values (e.g. the
+ * dilutions of precision).</li>
+ * </ul>
+ *
+ * Non-numeric values are always fired.
+ *
+ * @param key the key of the gps data.
+ * @param deadband the deadband or 0 to fire every change.
+ * @exception IllegalArgumentException if the key is not one of the
+ * keys defined in {@link GPSDataProcessor}.
+ */
+  public void setDeadband(String key, double deadband)
+    throws IllegalArgumentException
+  {
+    int slot = GPSDataSnapshot.getSlot(key);
+    if (slot < 0)
+      throw new IllegalArgumentException("No deadband possible for key '"+key+"'.");
+    synchronized(listener_lock_)
+    {
+      double[] deadbands = (double[])deadbands_.clone();
+      deadbands[slot] = Math.max(deadband,0.0);
+      deadbands_ = deadbands;
+      deadband_generation_++;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the deadband of the gps data with the given key.
+ *
+ * @param key the key of the gps data.
+ * @return the deadband or 0 if every change is fired.
+ */
+  public double getDeadband(String key)
+  {
+    int slot = GPSDataSnapshot.getSlot(key);
+    if (slot < 0)
+      return(0.0);
+    return(deadbands_[slot]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the maximum time a deadband suppresses the events of a gps
+ * data: after this time, the next change is fired, no matter how
+ * small it is.
+ *
+ * @param max_silence the maximum time in milliseconds.
+ */
+  public void setMaxSilence(long max_silence)
+  {
+    max_silence_ = max_silence * 1000000L;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the maximum time a deadband suppresses the events of a gps
+ * data.
+ *
+ * @return the maximum time in milliseconds.
+ */
+  public long getMaxSilence()
+  {
+    return(max_silence_ / 1000000L);
   }
 
 //----------------------------------------------------------------------
@@ -389,6 +564,8 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
  * with the given key, the new value replaces the old one. If the
  * value is set to <code>null</code> the gps data is deleted. If there
  * did not exist a gps data with the given key, it will be created.
+ * Changes within the deadband of the key are not fired (see {@link
+ * #setDeadband(String,double)}).
  *
  * @param key the key of the gps data to be changed.
  * @param value the value of the gps data to be changed, or
@@ -404,21 +581,255 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
     {
       throw new IllegalArgumentException("The key must not be <null>!");
     }
-    Object old_value;
-    synchronized(gps_data_lock_)
+    GPSDataSnapshot old_data;
+    GPSDataSnapshot new_data;
+    do
     {
-      old_value = gps_data_.get(key);
-      if (value == null)
-        gps_data_.remove(key);
-      else
-        gps_data_.put(key,value);
+      old_data = (GPSDataSnapshot)gps_data_.get();
+      new_data = old_data.with(key,value);
     }
+    while(!gps_data_.compareAndSet(old_data,new_data));
+    Object old_value = old_data.get(key);
+    int slot = GPSDataSnapshot.getSlot(key);
+    if ((slot >= 0) && isWithinDeadband(slot,value))
+      return;
 //    if (logger_.isDebugEnabled())
 //      logger_.debug("fire event for key "+key+" oldvalue="+old_value+" new="+value);
-    if (property_change_support_ != null)
+    if ((property_change_support_ != null) && property_change_support_.hasListeners(key))
       property_change_support_.firePropertyChange(key,old_value,value);
   }
 
+//----------------------------------------------------------------------
+/**
+ * Changes the gps data with the given key to a float value. The value
+ * is only boxed and put into the gps data if it is read from there
+ * (see {@link #isGPSDataStored(int)}), the typed listeners get it from
+ * the fire methods. Otherwise only its deadband is checked (for the
+ * fire methods).
+ *
+ * @param key the key of the gps data to be changed.
+ * @param value the value of the gps data.
+ */
+  protected void changeGPSData(String key, float value)
+  {
+    int slot = GPSDataSnapshot.getSlot(key);
+    if ((slot < 0) || isGPSDataStored(slot))
+      changeGPSData(key,new Float(value));
+    else
+      isWithinDeadband(slot,value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Changes the gps data with the given key to an int value (see {@link
+ * #changeGPSData(String,float)}).
+ *
+ * @param key the key of the gps data to be changed.
+ * @param value the value of the gps data.
+ */
+  protected void changeGPSData(String key, int value)
+  {
+    int slot = GPSDataSnapshot.getSlot(key);
+    if ((slot < 0) || isGPSDataStored(slot))
+      changeGPSData(key,new Integer(value));
+    else
+      isWithinDeadband(slot,value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Changes the gps data with the given key to a long value (see {@link
+ * #changeGPSData(String,float)}).
+ *
+ * @param key the key of the gps data to be changed.
+ * @param value the value of the gps data.
+ */
+  protected void changeGPSData(String key, long value)
+  {
+    int slot = GPSDataSnapshot.getSlot(key);
+    if ((slot < 0) || isGPSDataStored(slot))
+      changeGPSData(key,new Long(value));
+    else
+      isWithinDeadband(slot,value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the values of a slot are put into the gps data:
+ * someone reads them from there (see {@link
+ * #hasStoredDataListeners(String)}). The answer is cached until a
+ * listener is added or removed.
+ *
+ * @param slot the slot of the gps data.
+ * @return true if the values are put into the gps data.
+ */
+  protected boolean isGPSDataStored(int slot)
+  {
+    int count = listener_modification_count_;
+    if (count != stored_slots_count_)
+    {
+      stored_slots_count_ = count;
+      for (int index = 0; index < stored_slots_.length; index++)
+        stored_slots_[index] = hasStoredDataListeners(GPSDataSnapshot.KEYS[index]);
+    }
+    return(stored_slots_[slot]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if a listener reads the values of the given key from
+ * the gps data: a property change listener registered for this key
+ * or for all keys or a subscription of the key.
+ *
+ * @param key the key of the gps data.
+ * @return true if the values must be put into the gps data.
+ */
+  protected boolean hasStoredDataListeners(String key)
+  {
+    if ((property_change_support_ != null) && property_change_support_.hasListeners(key))
+      return(true);
+    GPSDataSubscription[] subscriptions = subscriptions_;
+    for(int index = 0; index < subscriptions.length; index++)
+    {
+      if (subscriptions[index].isSubscribed(key))
+        return(true);
+    }
+    return(false);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Checks if a new value is within the deadband of its slot and
+ * remembers the result for the fire methods. If not, the value is
+ * remembered as the value last fired.
+ *
+ * @param slot the slot of the gps data.
+ * @param value the new value.
+ * @return true if the change must not be fired.
+ */
+  protected boolean isWithinDeadband(int slot, Object value)
+  {
+    if (value instanceof Number)
+      return(isWithinDeadband(slot,((Number)value).doubleValue()));
+    if (!hasDeadband(slot))
+      return(false);
+    long now = System.nanoTime();
+    Object fired_value = fired_values_[slot];
+    suppressed_[slot] = (fired_value != null) && (value != null)
+                        && (now - fired_nanos_[slot] < max_silence_)
+                        && (getDifference(slot,fired_value,value) < deadbands_[slot]);
+    if (!suppressed_[slot])
+    {
+      fired_values_[slot] = value;
+      fired_nanos_[slot] = now;
+    }
+    return(suppressed_[slot]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Checks if a new numeric value is within the deadband of its slot
+ * (see {@link #isWithinDeadband(int,Object)}), without boxing.
+ *
+ * @param slot the slot of the gps data.
+ * @param value the new value.
+ * @return true if the change must not be fired.
+ */
+  protected boolean isWithinDeadband(int slot, double value)
+  {
+    if (!hasDeadband(slot))
+      return(false);
+    long now = System.nanoTime();
+    double fired_number = fired_numbers_[slot];
+    suppressed_[slot] = !Double.isNaN(fired_number) && !Double.isNaN(value)
+                        && (now - fired_nanos_[slot] < max_silence_)
+                        && (getDifference(slot,fired_number,value) < deadbands_[slot]);
+    if (!suppressed_[slot])
+    {
+      fired_numbers_[slot] = value;
+      fired_nanos_[slot] = now;
+    }
+    return(suppressed_[slot]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if a slot has a deadband. If a deadband was set since
+ * the last change, the values last fired are forgotten first.
+ *
+ * @param slot the slot of the gps data.
+ * @return true if the slot has a deadband.
+ */
+  protected boolean hasDeadband(int slot)
+  {
+    int generation = deadband_generation_;
+    if (generation != applied_deadband_generation_)
+    {
+          // a deadband was set, start over with the values last fired:
+      applied_deadband_generation_ = generation;
+      for (int index = 0; index < fired_values_.length; index++)
+      {
+        fired_values_[index] = null;
+        fired_numbers_[index] = Double.NaN;
+        suppressed_[index] = false;
+      }
+    }
+    return(deadbands_[slot] > 0.0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the difference of two values of a slot in the unit of the
+ * deadband (see {@link #setDeadband(String,double)}).
+ *
+ * @param slot the slot of the gps data.
+ * @param value1 the first value.
+ * @param value2 the second value.
+ * @return the difference or {@link Double#POSITIVE_INFINITY} if the
+ * values cannot be compared.
+ */
+  protected double getDifference(int slot, Object value1, Object value2)
+  {
+    if ((slot == LOCATION_SLOT) && (value1 instanceof GPSPosition) && (value2 instanceof GPSPosition))
+    {
+      GPSPosition position1 = (GPSPosition)value1;
+      GPSPosition position2 = (GPSPosition)value2;
+      double latitude1 = Math.toRadians(position1.getLatitude());
+      double latitude2 = Math.toRadians(position2.getLatitude());
+      double delta_x = Math.toRadians(position2.getLongitude() - position1.getLongitude())
+                       * Math.cos((latitude1 + latitude2) / 2.0);
+      double delta_y = latitude2 - latitude1;
+      return(Math.sqrt(delta_x * delta_x + delta_y * delta_y) * EARTH_RADIUS);
+    }
+    if (!(value1 instanceof Number) || !(value2 instanceof Number))
+      return(Double.POSITIVE_INFINITY);
+    return(getDifference(slot,((Number)value1).doubleValue(),((Number)value2).doubleValue()));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the difference of two numeric values of a slot in the unit
+ * of the deadband (see {@link #setDeadband(String,double)}).
+ *
+ * @param slot the slot of the gps data.
+ * @param value1 the first value.
+ * @param value2 the second value.
+ * @return the difference.
+ */
+  protected double getDifference(int slot, double value1, double value2)
+  {
+    double difference = Math.abs(value2 - value1);
+    if (slot == HEADING_SLOT)
+    {
+      difference = difference % 360.0;
+      if (difference > 180.0)
+        difference = 360.0 - difference;
+    }
+    else if (slot == SPEED_SLOT)
+      difference = difference / 3.6;  // km/h to m/s
+    return(difference);
+  }
+
 //----------------------------------------------------------------------
 /**
  * Fire the event for raw data that was received (for loggers etc.)
@@ -429,19 +840,129 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
 
   protected void fireRawDataReceived(char[] raw_data, int offset, int length)
   {
-    if (raw_data_listener_ == null)
+    GPSRawDataListener[] listeners = raw_data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].gpsRawDataReceived(raw_data,offset,length);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Fire the event for raw data that was received as bytes (for loggers
+ * etc.), using the current time as receive time.
+ *
+ * @param raw_data the raw_data
+ * @param offset the offset of the data in the raw_data array.
+ * @param length the number of bytes to use from the raw_data array.
+ * @see #fireRawDataReceived(byte[],int,int,long)
+ */
+
+  protected void fireRawDataReceived(byte[] raw_data, int offset, int length)
+  {
+    if (!hasRawDataListeners())
       return;
-    Iterator listeners;
-    synchronized(raw_data_listener_)
+    fireRawDataReceived(raw_data,offset,length,System.nanoTime());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Fire the event for raw data that was received as bytes (for loggers
+ * etc.) to the raw byte and raw data listeners. The bytes are only
+ * converted to characters if a raw data listener is registered. The
+ * buffers used are reused, so this method must only be called from
+ * one thread.
+ *
+ * @param raw_data the raw_data
+ * @param offset the offset of the data in the raw_data array.
+ * @param length the number of bytes to use from the raw_data array.
+ * @param timestamp the {@link System#nanoTime()} the data was
+ * received.
+ */
+
+  protected void fireRawDataReceived(byte[] raw_data, int offset, int length, long timestamp)
+  {
+    fireRawBytesReceived(raw_data,offset,length,timestamp);
+    if (!hasRawCharDataListeners())
+      return;
+    if ((raw_char_buffer_ == null) || (raw_char_buffer_.length < length))
+      raw_char_buffer_ = new char[length];
+    for(int index = 0; index < length; index++)
+      raw_char_buffer_[index] = (char)(raw_data[offset + index] & 0xff);
+    fireRawDataReceived(raw_char_buffer_,0,length);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Fire the event for raw data that was received as bytes to the raw
+ * byte listeners only. The bytes are not copied: every listener gets
+ * the same read-only buffer wrapping the given array, with position
+ * and limit set to the data. This method must only be called from one
+ * thread.
+ *
+ * @param raw_data the raw_data
+ * @param offset the offset of the data in the raw_data array.
+ * @param length the number of bytes to use from the raw_data array.
+ * @param timestamp the {@link System#nanoTime()} the data was
+ * received.
+ */
+
+  protected void fireRawBytesReceived(byte[] raw_data, int offset, int length, long timestamp)
+  {
+    GPSRawByteListener[] listeners = raw_byte_listeners_;
+    if (listeners.length == 0)
+      return;
+    if (raw_byte_array_ != raw_data)
     {
-      listeners = ((Vector)raw_data_listener_.clone()).iterator();
+      raw_byte_buffer_ = ByteBuffer.wrap(raw_data).asReadOnlyBuffer();
+      raw_byte_array_ = raw_data;
     }
-    while(listeners.hasNext())
+    ByteBuffer buffer = raw_byte_buffer_;
+    for(int index = 0; index < listeners.length; index++)
     {
-      ((GPSRawDataListener)listeners.next()).gpsRawDataReceived(raw_data,offset,length);
+      buffer.clear();
+      buffer.limit(offset + length);
+      buffer.position(offset);
+      listeners[index].gpsRawDataReceived(buffer,timestamp);
     }
   }
-  
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if at least one raw data or raw byte listener is
+ * registered.
+ *
+ * @return true if raw data listeners are registered.
+ */
+
+  protected boolean hasRawDataListeners()
+  {
+    return((raw_data_listeners_.length > 0) || (raw_byte_listeners_.length > 0));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if at least one raw data listener (receiving
+ * characters) is registered.
+ *
+ * @return true if raw data listeners are registered.
+ */
+
+  protected boolean hasRawCharDataListeners()
+  {
+    return(raw_data_listeners_.length > 0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if at least one raw byte listener is registered.
+ *
+ * @return true if raw byte listeners are registered.
+ */
+
+  protected boolean hasRawByteListeners()
+  {
+    return(raw_byte_listeners_.length > 0);
+  }
+
 //----------------------------------------------------------------------
 /**
  * Adds a listener for raw GPS data (for loggin purpose or similar).
@@ -455,11 +976,9 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
   {
     if (listener == null)
       throw new IllegalArgumentException("The listener must not be <null>.");
-    if (raw_data_listener_ == null)
-      raw_data_listener_ = new Vector();
-    synchronized(raw_data_listener_)
+    synchronized(listener_lock_)
     {
-      raw_data_listener_.addElement(listener);
+      raw_data_listeners_ = (GPSRawDataListener[])addToArray(raw_data_listeners_,listener);
     }
   }
 
@@ -476,13 +995,547 @@ public abstract class GPSGeneralDataProcessor implements GPSDataProcessor
   {
     if (listener == null)
       throw new IllegalArgumentException("The listener must not be <null>.");
-    if (raw_data_listener_ == null)
+    synchronized(listener_lock_)
+    {
+      raw_data_listeners_ = (GPSRawDataListener[])removeFromArray(raw_data_listeners_,listener);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a listener for the raw bytes read from the gps device (for
+ * logging or forwarding without conversion to characters).
+ *
+ * @param listener the listener to be added.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public void addGPSRawByteListener(GPSRawByteListener listener)
+    throws IllegalArgumentException
+  {
+    if (listener == null)
+      throw new IllegalArgumentException("The listener must not be <null>.");
+    synchronized(listener_lock_)
+    {
+      raw_byte_listeners_ = (GPSRawByteListener[])addToArray(raw_byte_listeners_,listener);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes a listener for the raw bytes read from the gps device.
+ *
+ * @param listener the listener to be removed.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public void removeGPSRawByteListener(GPSRawByteListener listener)
+    throws IllegalArgumentException
+  {
+    if (listener == null)
+      throw new IllegalArgumentException("The listener must not be <null>.");
+    synchronized(listener_lock_)
+    {
+      raw_byte_listeners_ = (GPSRawByteListener[])removeFromArray(raw_byte_listeners_,listener);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a listener that is informed once per fix epoch with all
+ * information of this epoch (see {@link GPSFix}).
+ *
+ * @param listener the listener to be added.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.  
+ */
+  public void addGPSFixListener(GPSFixListener listener)
+    throws IllegalArgumentException
+  {
+    if (listener == null)
+      throw new IllegalArgumentException("The listener must not be <null>.");
+    synchronized(listener_lock_)
+    {
+      fix_listeners_ = (GPSFixListener[])addToArray(fix_listeners_,listener);
+      listener_modification_count_++;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes a listener for fixes.
+ *
+ * @param listener the listener to be removed.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.  
+ */
+  public void removeGPSFixListener(GPSFixListener listener)
+    throws IllegalArgumentException
+  {
+    if (listener == null)
+      throw new IllegalArgumentException("The listener must not be <null>.");
+    synchronized(listener_lock_)
+    {
+      fix_listeners_ = (GPSFixListener[])removeFromArray(fix_listeners_,listener);
+      listener_modification_count_++;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if at least one fix listener is registered.
+ *
+ * @return true if fix listeners are registered.
+ */
+
+  protected boolean hasGPSFixListeners()
+  {
+    if (fix_listeners_.length > 0)
+      return(true);
+    GPSDataSubscription[] subscriptions = subscriptions_;
+    for(int index = 0; index < subscriptions.length; index++)
+    {
+      if (subscriptions[index].isFixSubscription())
+        return(true);
+    }
+    return(false);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if a listener is interested in changes of the gps data
+ * with the given key (a listener registered for this key or for all
+ * keys, a {@link GPSDataListener} or a subscription of the key).
+ *
+ * @param key the key of the gps data.
+ * @return true if a listener is interested in the key.
+ */
+
+  protected boolean hasGPSDataChangeListeners(String key)
+  {
+    return((data_listeners_.length > 0) || hasStoredDataListeners(key));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Fire the event for a complete fix.
+ *
+ * @param fix the fix.
+ */
+
+  protected void fireGPSFixReceived(GPSFix fix)
+  {
+    last_fix_ = fix;
+    GPSFixListener[] listeners = fix_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].gpsFixReceived(fix);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a listener that is informed about the gps data as primitive
+ * values (see {@link GPSDataListener}).
+ *
+ * @param listener the listener to be added.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public void addGPSDataListener(GPSDataListener listener)
+    throws IllegalArgumentException
+  {
+    if (listener == null)
+      throw new IllegalArgumentException("The listener must not be <null>.");
+    synchronized(listener_lock_)
+    {
+      data_listeners_ = (GPSDataListener[])addToArray(data_listeners_,listener);
+      listener_modification_count_++;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes a listener for gps data as primitive values.
+ *
+ * @param listener the listener to be removed.
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public void removeGPSDataListener(GPSDataListener listener)
+    throws IllegalArgumentException
+  {
+    if (listener == null)
+      throw new IllegalArgumentException("The listener must not be <null>.");
+    synchronized(listener_lock_)
+    {
+      data_listeners_ = (GPSDataListener[])removeFromArray(data_listeners_,listener);
+      listener_modification_count_++;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Subscribes a listener to the gps data with the given keys. The
+ * listener is informed by a thread of its own, at most once per
+ * interval, about the newest values (see {@link
+ * GPSDataSubscription}). Deadbands do not apply to subscriptions.
+ *
+ * @param keys the keys of the gps data.
+ * @param listener the listener.
+ * @param min_interval the minimum time between two deliveries in
+ * milliseconds.
+ * @return the subscription (to cancel it).
+ * @exception IllegalArgumentException if <code>keys</code> or
+ * <code>listener</code> is <code>null</code>.
+ */
+  public GPSDataSubscription subscribe(String[] keys, PropertyChangeListener listener, long min_interval)
+    throws IllegalArgumentException
+  {
+    if (keys == null)
+      throw new IllegalArgumentException("The keys must not be <null>.");
+    if (listener == null)
+      throw new IllegalArgumentException("The listener must not be <null>.");
+    GPSDataSubscription subscription = new GPSDataSubscription(this,keys,listener,min_interval);
+    addSubscription(subscription);
+    return(subscription);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Subscribes a listener to the fixes. The listener is informed by a
+ * thread of its own, at most once per interval, about the newest fix
+ * (see {@link GPSDataSubscription}).
+ *
+ * @param listener the listener.
+ * @param min_interval the minimum time between two deliveries in
+ * milliseconds.
+ * @return the subscription (to cancel it).
+ * @exception IllegalArgumentException if <code>listener</code> is
+ * <code>null</code>.
+ */
+  public GPSDataSubscription subscribe(GPSFixListener listener, long min_interval)
+    throws IllegalArgumentException
+  {
+    if (listener == null)
+      throw new IllegalArgumentException("The listener must not be <null>.");
+    GPSDataSubscription subscription = new GPSDataSubscription(this,listener,min_interval);
+    addSubscription(subscription);
+    return(subscription);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a subscription and starts its delivery.
+ *
+ * @param subscription the subscription.
+ */
+  protected void addSubscription(GPSDataSubscription subscription)
+  {
+    synchronized(listener_lock_)
+    {
+      subscriptions_ = (GPSDataSubscription[])addToArray(subscriptions_,subscription);
+      listener_modification_count_++;
+    }
+    subscription.start();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes a subscription (called by {@link
+ * GPSDataSubscription#cancel()}).
+ *
+ * @param subscription the subscription.
+ */
+  protected void removeSubscription(GPSDataSubscription subscription)
+  {
+    synchronized(listener_lock_)
+    {
+      subscriptions_ = (GPSDataSubscription[])removeFromArray(subscriptions_,subscription);
+      listener_modification_count_++;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the last fix received.
+ *
+ * @return the last fix or <code>null</code> if no fix was received (or
+ * nobody listens to fixes).
+ */
+  public GPSFix getLastGPSFix()
+  {
+    return(last_fix_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if at least one gps data listener is registered.
+ *
+ * @return true if gps data listeners are registered.
+ */
+
+  protected boolean hasGPSDataListeners()
+  {
+    return(data_listeners_.length > 0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about a new position.
+ *
+ * @param latitude the latitude in degrees.
+ * @param longitude the longitude in degrees.
+ * @param time_nanos the {@link System#nanoTime()} the position was received.
+ */
+
+  protected void firePosition(double latitude, double longitude, long time_nanos)
+  {
+    if (suppressed_[LOCATION_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onPosition(latitude,longitude,time_nanos);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about a new altitude.
+ *
+ * @param altitude the altitude in meters.
+ */
+
+  protected void fireAltitude(float altitude)
+  {
+    if (suppressed_[ALTITUDE_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onAltitude(altitude);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about a new speed.
+ *
+ * @param speed the speed in km/h.
+ */
+
+  protected void fireSpeed(float speed)
+  {
+    if (suppressed_[SPEED_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onSpeed(speed);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about a new heading.
+ *
+ * @param heading the heading in degrees.
+ */
+
+  protected void fireHeading(float heading)
+  {
+    if (suppressed_[HEADING_SLOT])
       return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onHeading(heading);
+  }
 
-    synchronized(raw_data_listener_)
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about new dilutions of precision
+ * (unless all reported values were within their deadbands).
+ *
+ * @param pdop the position dilution of precision or NaN.
+ * @param hdop the horizontal dilution of precision or NaN.
+ * @param vdop the vertical dilution of precision or NaN.
+ */
+
+  protected void fireDop(float pdop, float hdop, float vdop)
+  {
+    if ((Float.isNaN(pdop) || suppressed_[PDOP_SLOT]) && (Float.isNaN(hdop) || suppressed_[HDOP_SLOT])
+        && (Float.isNaN(vdop) || suppressed_[VDOP_SLOT]))
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onDop(pdop,hdop,vdop);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about the number of satellites used.
+ *
+ * @param satellites_used the number of satellites.
+ */
+
+  protected void fireSatellitesUsed(int satellites_used)
+  {
+    if (suppressed_[NUMBER_SATELLITES_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onSatellitesUsed(satellites_used);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about the ids of the satellites used.
+ *
+ * @param satellite_ids the ids.
+ * @param count the number of ids in the array.
+ */
+
+  protected void fireSatelliteIds(int[] satellite_ids, int count)
+  {
+    if (suppressed_[IDS_SATELLITES_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onSatelliteIds(satellite_ids,count);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about the satellites in view.
+ *
+ * @param satellites the satellites.
+ */
+
+  protected void fireSatellites(SatelliteInfo[] satellites)
+  {
+    if (suppressed_[SATELLITE_INFO_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onSatellites(satellites);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about the fix quality.
+ *
+ * @param fix_quality the fix quality.
+ */
+
+  protected void fireFixQuality(int fix_quality)
+  {
+    if (suppressed_[FIX_QUALITY_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onFixQuality(fix_quality);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about the fix type.
+ *
+ * @param fix_type the fix type.
+ */
+
+  protected void fireFixType(int fix_type)
+  {
+    if (suppressed_[FIX_INFO_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onFixType(fix_type);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about the time of the fix.
+ *
+ * @param fix_time the UTC milliseconds since 1970.
+ */
+
+  protected void fireFixTime(long fix_time)
+  {
+    if (suppressed_[FIXTIME_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onFixTime(fix_time);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about a new depth.
+ *
+ * @param depth the depth in meters.
+ */
+
+  protected void fireDepth(float depth)
+  {
+    if (suppressed_[DEPTH_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onDepth(depth);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the gps data listeners about the estimated position error.
+ *
+ * @param spherical_error the spherical error in meters.
+ * @param horizontal_error the horizontal error in meters.
+ * @param vertical_error the vertical error in meters.
+ */
+
+  protected void firePositionError(double spherical_error, double horizontal_error, double vertical_error)
+  {
+    if (suppressed_[EPE_SLOT])
+      return;
+    GPSDataListener[] listeners = data_listeners_;
+    for(int index = 0; index < listeners.length; index++)
+      listeners[index].onPositionError(spherical_error,horizontal_error,vertical_error);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns a copy of the given listener array with the listener added.
+ *
+ * @param listeners the listeners.
+ * @param listener the listener to add.
+ * @return the new array (of the same component type).
+ */
+  protected static Object[] addToArray(Object[] listeners, Object listener)
+  {
+    Object[] new_listeners =
+      (Object[])Array.newInstance(listeners.getClass().getComponentType(),listeners.length + 1);
+    System.arraycopy(listeners,0,new_listeners,0,listeners.length);
+    new_listeners[listeners.length] = listener;
+    return(new_listeners);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns a copy of the given listener array with the (first
+ * occurrence of the) listener removed.
+ *
+ * @param listeners the listeners.
+ * @param listener the listener to remove.
+ * @return the new array or the given array if the listener was not
+ * found.
+ */
+  protected static Object[] removeFromArray(Object[] listeners, Object listener)
+  {
+    for(int index = 0; index < listeners.length; index++)
     {
-      raw_data_listener_.remove(listener);
+      if(listeners[index].equals(listener))
+      {
+        Object[] new_listeners =
+          (Object[])Array.newInstance(listeners.getClass().getComponentType(),listeners.length - 1);
+        System.arraycopy(listeners,0,new_listeners,0,index);
+        System.arraycopy(listeners,index + 1,new_listeners,index,listeners.length - index - 1);
+        return(new_listeners);
+      }
     }
+    return(listeners);
   }
 
 //----------------------------------------------------------------------
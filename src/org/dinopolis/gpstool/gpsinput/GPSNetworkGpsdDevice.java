@@ -28,9 +28,10 @@ import java.io.InputStream;
 import java.io.BufferedInputStream;
 import java.io.OutputStream;
 import java.io.BufferedOutputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.util.Hashtable;
+import java.util.Timer;
+import java.util.TimerTask;
 import java.net.Socket;
 import java.net.UnknownHostException;
 
@@ -50,16 +51,43 @@ public class GPSNetworkGpsdDevice implements GPSDevice
   public final static String GPSD_HOST_KEY = "gps_host";
   public final static String GPSD_PORT_KEY = "gpsd_port";
   public final static String RAW_DATA_LOG_FILENAME_KEY = "data_logfile";
+  /** if set to Boolean.TRUE, gpsd is asked for its JSON reports
+   * instead of NMEA (use a {@link
+   * org.dinopolis.gpstool.gpsinput.gpsd.GPSGpsdDataProcessor}; if gpsd
+   * serves several receivers, route the reports to a processor per
+   * receiver with a {@link
+   * org.dinopolis.gpstool.gpsinput.gpsd.GpsdDeviceDemultiplexer}) */
+  public final static String GPSD_JSON_KEY = "gpsd_json";
+  /** the path of the receiver to watch (String), if gpsd serves
+   * several receivers and only one is wanted (NMEA is not tagged with
+   * the device by gpsd; POLL responses hold all receivers and are
+   * filtered by the {@link
+   * org.dinopolis.gpstool.gpsinput.gpsd.GPSGpsdDataProcessor}) */
+  public final static String GPSD_DEVICE_KEY = "gpsd_device";
+  /** if set (Integer, milliseconds), gpsd is not asked to stream its
+   * data, but polled in this interval: the reports of the last fix are
+   * received as one POLL response (use a {@link
+   * org.dinopolis.gpstool.gpsinput.gpsd.GPSGpsdDataProcessor}), the
+   * connection is idle in between */
+  public final static String GPSD_POLL_INTERVAL_KEY = "gpsd_poll_interval";
   
   protected final static String DEFAULT_GPSD_HOST = "localhost";
   protected final static int DEFAULT_GPSD_PORT = 2947;
 
   protected String gpsd_host_;
   protected int gpsd_port_;
+  protected boolean json_mode_;
+  protected String gpsd_device_;
+  protected int poll_interval_;
+  protected Timer poll_timer_;
   /*
    * This is to support gpsd's newer protocol
    */
   private final static String GPSD_290_RAW_COMMAND = "?WATCH={\"enable\":true,\"nmea\":true,\"json\":false}\n\r";
+  private final static String GPSD_290_JSON_COMMAND = "?WATCH={\"enable\":true,\"json\":true}\n\r";
+      // activates the devices without streaming:
+  private final static String GPSD_290_POLL_WATCH_COMMAND = "?WATCH={\"enable\":true,\"json\":false}\n\r";
+  private final static byte[] GPSD_290_POLL_COMMAND = new byte[] {'?','P','O','L','L',';','\n'};
 
   protected Socket gpsd_socket_;
 
@@ -91,6 +119,13 @@ public class GPSNetworkGpsdDevice implements GPSDevice
         gpsd_port_ = ((Integer)environment.get(GPSD_PORT_KEY)).intValue();
       else
         gpsd_port_ = DEFAULT_GPSD_PORT;
+
+      json_mode_ = Boolean.TRUE.equals(environment.get(GPSD_JSON_KEY));
+      gpsd_device_ = (String)environment.get(GPSD_DEVICE_KEY);
+      if(environment.containsKey(GPSD_POLL_INTERVAL_KEY))
+        poll_interval_ = ((Integer)environment.get(GPSD_POLL_INTERVAL_KEY)).intValue();
+      else
+        poll_interval_ = 0;
     }
     catch(Exception e)
     {
@@ -98,6 +133,18 @@ public class GPSNetworkGpsdDevice implements GPSDevice
     }
   }
     
+//----------------------------------------------------------------------
+/**
+ * Returns the path of the receiver watched (see {@link
+ * #GPSD_DEVICE_KEY}).
+ *
+ * @return the path or null if all receivers are watched.
+ */
+  public String getGpsdDevice()
+  {
+    return(gpsd_device_);
+  }
+
 //----------------------------------------------------------------------
 /**
  * Opens the gps device (e.g. serial connection to gps-receiver or
@@ -119,15 +166,24 @@ public class GPSNetworkGpsdDevice implements GPSDevice
 
           // start logging mode in gpsd with key 'R':
       OutputStreamWriter out = new OutputStreamWriter(out_stream_);
-      out.write(GPSD_290_RAW_COMMAND);
+      String command = json_mode_ ? GPSD_290_JSON_COMMAND : GPSD_290_RAW_COMMAND;
+      if(poll_interval_ > 0)
+        command = GPSD_290_POLL_WATCH_COMMAND;
+      if(gpsd_device_ != null)
+        command = command.substring(0,command.indexOf('}')) + ",\"device\":" + toJsonString(gpsd_device_)
+                  + command.substring(command.indexOf('}'));
+      out.write(command);
       out.flush();
-          // read answer from gpsd:
-      InputStreamReader in = new InputStreamReader(in_stream_);
+          // read the first line (the version) from gpsd byte by byte, so
+          // nothing of the following data is buffered elsewhere:
       int data;
-      while((data = in.read()) != 13)
+      while((data = in_stream_.read()) != 10)
       {
-//         System.out.println("GPSNetworkGpsdDrive: "+data);
+        if(data < 0)
+          throw new IOException("connection closed by gpsd");
       }
+      if(poll_interval_ > 0)
+        startPolling();
     }
     catch(UnknownHostException uhe)
     {
@@ -152,12 +208,14 @@ public class GPSNetworkGpsdDevice implements GPSDevice
   public void close()
     throws GPSException
   {
+    if(poll_timer_ != null)
+      poll_timer_.cancel();
+    poll_timer_ = null;
     try
     {
-      if (in_stream_ != null)
-        in_stream_.close();
-      if(out_stream_ != null)
-        out_stream_.close();
+          // closing the socket closes its streams (closing the input
+          // stream first closed the socket, so closing the output
+          // stream failed):
       if (gpsd_socket_ != null)
         gpsd_socket_.close();
     }
@@ -170,6 +228,66 @@ public class GPSNetworkGpsdDevice implements GPSDevice
     gpsd_socket_ = null;
   }
     
+//----------------------------------------------------------------------
+/**
+ * Starts a (daemon) timer thread that sends a POLL command to gpsd in
+ * the poll interval, beginning at once.
+ */
+
+  protected void startPolling()
+  {
+    final OutputStream out_stream = out_stream_;
+    poll_timer_ = new Timer("GPSNetworkGpsdDevice-poll",true);
+    poll_timer_.schedule(new TimerTask()
+      {
+        public void run()
+        {
+          try
+          {
+            synchronized(out_stream)
+            {
+              out_stream.write(GPSD_290_POLL_COMMAND);
+              out_stream.flush();
+            }
+          }
+          catch(IOException ioe)
+          {
+                // the connection was closed, the reader notices it:
+            cancel();
+          }
+        }
+      },0,poll_interval_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the given string as a quoted JSON string, quotes, backslashes
+ * and control characters escaped.
+ *
+ * @param value the string.
+ * @return the JSON string.
+ */
+  protected static String toJsonString(String value)
+  {
+    StringBuffer json = new StringBuffer(value.length() + 2);
+    json.append('"');
+    for(int index = 0; index < value.length(); index++)
+    {
+      char character = value.charAt(index);
+      if((character == '"') || (character == '\\'))
+        json.append('\\').append(character);
+      else if(character < 0x20)
+      {
+        String hex = Integer.toHexString(character);
+        json.append("\\u00").append(hex.length() < 2 ? "0" : "").append(hex);
+      }
+      else
+        json.append(character);
+    }
+    json.append('"');
+    return(json.toString());
+  }
+
 //----------------------------------------------------------------------
 /**
  * Returns an input stream from the gps device. If the port is
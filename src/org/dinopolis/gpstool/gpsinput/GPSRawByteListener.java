@@ -0,0 +1,51 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput;
+
+import java.nio.ByteBuffer;
+
+//----------------------------------------------------------------------
+/**
+ * Classes implementing this interface receive the raw bytes read from
+ * the gps device (one framed sentence or packet per call) without
+ * conversion to characters, e.g. to write them to a file or network
+ * channel as they are.
+ *
+ * @see GPSDataProcessor#addGPSRawByteListener(GPSRawByteListener)
+ * @see GPSRawDataListener
+ */
+
+public interface GPSRawByteListener
+{
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about raw data received from the gps device.
+ * The data are the bytes between the position and the limit of the
+ * read-only buffer. The buffer is reused and only valid during this
+ * call: its content must be copied (or written) before the method
+ * returns. The listener may change the position of the buffer.
+ *
+ * @param raw_data the buffer holding the raw data.
+ * @param timestamp the {@link System#nanoTime()} the data was
+ * received.
+ */
+  public void gpsRawDataReceived(ByteBuffer raw_data, long timestamp);
+}
@@ -0,0 +1,355 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput;
+
+//----------------------------------------------------------------------
+/**
+ * The satellites in view of all constellations, keyed by
+ * constellation and prn. The satellites are updated in place (no
+ * objects are created while the set of satellites stays the same)
+ * and the changes are only published if a value (elevation, azimuth,
+ * snr or used for the fix) actually changed.
+ * <p>
+ * The table is double buffered: the updates go to a working table,
+ * {@link #commit()} copies it into the {@link SatelliteInfo} array that
+ * is not published at the moment and publishes this array. So readers
+ * always see a consistent view. An array returned by {@link
+ * #getSatelliteInfos()} stays valid until the next but one commit, so
+ * readers must not keep it longer (or copy it).
+ * <p>
+ * The satellites of a constellation are reported in cycles (e.g. one
+ * block of GSV sentences): {@link #beginCycle(int)}, {@link
+ * #update(int,int,float,float,int)} for every satellite in view and
+ * {@link #endCycle(int)}, which removes the satellites of this
+ * constellation not reported in the cycle. The cycles of different
+ * constellations may interleave.
+ * <p>
+ * The updating methods must only be called by one thread (the thread
+ * reading the gps device).
+ */
+
+public class GPSSatelliteTable
+{
+  /** constellation value that stands for all constellations */
+  public static final int ALL_CONSTELLATIONS = -1;
+
+  protected static final int DEFAULT_CAPACITY = 64;
+
+  /** the working table */
+  protected int size_;
+  protected int[] constellation_;
+  protected int[] prn_;
+  protected float[] elevation_;
+  protected float[] azimuth_;
+  protected int[] snr_;
+  protected boolean[] used_;
+  protected boolean[] seen_;
+  protected boolean changed_;
+
+  /** the two buffers of satellite infos (for the published arrays) */
+  protected SatelliteInfo[][] info_pools_ = new SatelliteInfo[2][0];
+  /** the published arrays of each buffer, indexed by their length */
+  protected SatelliteInfo[][][] published_arrays_ = new SatelliteInfo[2][][];
+  protected int back_buffer_ = 0;
+  protected volatile SatelliteInfo[] published_ = new SatelliteInfo[0];
+
+//----------------------------------------------------------------------
+/**
+ * Creates an empty table.
+ */
+  public GPSSatelliteTable()
+  {
+    this(DEFAULT_CAPACITY);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates an empty table with room for the given number of satellites
+ * (more satellites grow the table).
+ *
+ * @param capacity the number of satellites.
+ */
+  public GPSSatelliteTable(int capacity)
+  {
+    allocate(Math.max(capacity,1));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Starts a cycle of satellite reports of a constellation.
+ *
+ * @param constellation the constellation (e.g. {@link
+ * SatelliteInfo#CONSTELLATION_GPS}) or {@link #ALL_CONSTELLATIONS}.
+ */
+  public void beginCycle(int constellation)
+  {
+    for(int index = 0; index < size_; index++)
+    {
+      if((constellation == ALL_CONSTELLATIONS) || (constellation_[index] == constellation))
+        seen_[index] = false;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Updates (or adds) a satellite.
+ *
+ * @param constellation the constellation of the satellite.
+ * @param prn the prn of the satellite.
+ * @param elevation the elevation in degrees.
+ * @param azimuth the azimuth in degrees.
+ * @param snr the signal to noise ratio (0 if not tracked).
+ */
+  public void update(int constellation, int prn, float elevation, float azimuth, int snr)
+  {
+    int index = indexOf(constellation,prn);
+    if(index < 0)
+    {
+      if(size_ == prn_.length)
+        grow();
+      index = size_++;
+      constellation_[index] = constellation;
+      prn_[index] = prn;
+      used_[index] = false;
+      changed_ = true;
+    }
+    else if((elevation_[index] != elevation) || (azimuth_[index] != azimuth) || (snr_[index] != snr))
+      changed_ = true;
+    elevation_[index] = elevation;
+    azimuth_[index] = azimuth;
+    snr_[index] = snr;
+    seen_[index] = true;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Ends a cycle of satellite reports of a constellation: the satellites
+ * of the constellation that were not updated since {@link
+ * #beginCycle(int)} are removed.
+ *
+ * @param constellation the constellation or {@link
+ * #ALL_CONSTELLATIONS}.
+ */
+  public void endCycle(int constellation)
+  {
+    int target = 0;
+    for(int index = 0; index < size_; index++)
+    {
+      if(!seen_[index] && ((constellation == ALL_CONSTELLATIONS) || (constellation_[index] == constellation)))
+      {
+        changed_ = true;
+        continue;
+      }
+      if(target != index)
+      {
+        constellation_[target] = constellation_[index];
+        prn_[target] = prn_[index];
+        elevation_[target] = elevation_[index];
+        azimuth_[target] = azimuth_[index];
+        snr_[target] = snr_[index];
+        used_[target] = used_[index];
+        seen_[target] = seen_[index];
+      }
+      target++;
+    }
+    size_ = target;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the satellites of a constellation that are used for the fix
+ * (all others of this constellation are marked as unused).
+ *
+ * @param constellation the constellation.
+ * @param prns the prns of the used satellites.
+ * @param count the number of prns to use from the array.
+ */
+  public void setUsed(int constellation, int[] prns, int count)
+  {
+    for(int index = 0; index < size_; index++)
+    {
+      if(constellation_[index] != constellation)
+        continue;
+      boolean used = false;
+      for(int prn_index = 0; prn_index < count; prn_index++)
+      {
+        if(prns[prn_index] == prn_[index])
+        {
+          used = true;
+          break;
+        }
+      }
+      if(used_[index] != used)
+      {
+        used_[index] = used;
+        changed_ = true;
+      }
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Publishes the working table if anything changed since the last
+ * commit.
+ *
+ * @return true if the table changed and was published.
+ */
+  public boolean commit()
+  {
+    if(!changed_)
+      return(false);
+    changed_ = false;
+
+    int buffer = back_buffer_;
+    SatelliteInfo[] pool = info_pools_[buffer];
+    if(pool.length < size_)
+    {
+      SatelliteInfo[] new_pool = new SatelliteInfo[prn_.length];
+      System.arraycopy(pool,0,new_pool,0,pool.length);
+      for(int index = pool.length; index < new_pool.length; index++)
+        new_pool[index] = new SatelliteInfo(0,0.0f,0.0f,0);
+      info_pools_[buffer] = new_pool;
+      pool = new_pool;
+    }
+    SatelliteInfo[][] arrays = published_arrays_[buffer];
+    if((arrays == null) || (arrays.length <= size_))
+    {
+      SatelliteInfo[][] new_arrays = new SatelliteInfo[prn_.length + 1][];
+      if(arrays != null)
+        System.arraycopy(arrays,0,new_arrays,0,arrays.length);
+      published_arrays_[buffer] = new_arrays;
+      arrays = new_arrays;
+    }
+    SatelliteInfo[] infos = arrays[size_];
+    if(infos == null)
+    {
+      infos = new SatelliteInfo[size_];
+      arrays[size_] = infos;
+    }
+
+    SatelliteInfo info;
+    for(int index = 0; index < size_; index++)
+    {
+      info = pool[index];
+      info.constellation_ = constellation_[index];
+      info.prn_ = prn_[index];
+      info.elevation_ = elevation_[index];
+      info.azimuth_ = azimuth_[index];
+      info.snr_ = snr_[index];
+      info.used_ = used_[index];
+      infos[index] = info;
+    }
+    published_ = infos;
+    back_buffer_ = 1 - buffer;
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the satellites published by the last commit. The array and
+ * its elements must not be changed and are reused by the next but one
+ * commit.
+ *
+ * @return the satellites in view.
+ */
+  public SatelliteInfo[] getSatelliteInfos()
+  {
+    return(published_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of satellites in the working table.
+ *
+ * @return the number of satellites.
+ */
+  public int size()
+  {
+    return(size_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes all satellites.
+ */
+  public void clear()
+  {
+    if(size_ > 0)
+      changed_ = true;
+    size_ = 0;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the index of a satellite in the working table.
+ *
+ * @param constellation the constellation.
+ * @param prn the prn.
+ * @return the index or -1 if not found.
+ */
+  protected int indexOf(int constellation, int prn)
+  {
+    for(int index = 0; index < size_; index++)
+    {
+      if((prn_[index] == prn) && (constellation_[index] == constellation))
+        return(index);
+    }
+    return(-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Doubles the capacity of the working table.
+ */
+  protected void grow()
+  {
+    int[] constellation = constellation_;
+    int[] prn = prn_;
+    float[] elevation = elevation_;
+    float[] azimuth = azimuth_;
+    int[] snr = snr_;
+    boolean[] used = used_;
+    boolean[] seen = seen_;
+    allocate(prn.length * 2);
+    System.arraycopy(constellation,0,constellation_,0,size_);
+    System.arraycopy(prn,0,prn_,0,size_);
+    System.arraycopy(elevation,0,elevation_,0,size_);
+    System.arraycopy(azimuth,0,azimuth_,0,size_);
+    System.arraycopy(snr,0,snr_,0,size_);
+    System.arraycopy(used,0,used_,0,size_);
+    System.arraycopy(seen,0,seen_,0,size_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Allocates the working table.
+ *
+ * @param capacity the number of satellites.
+ */
+  protected void allocate(int capacity)
+  {
+    constellation_ = new int[capacity];
+    prn_ = new int[capacity];
+    elevation_ = new float[capacity];
+    azimuth_ = new float[capacity];
+    snr_ = new int[capacity];
+    used_ = new boolean[capacity];
+    seen_ = new boolean[capacity];
+  }
+}
@@ -23,6 +23,11 @@
 
 package org.dinopolis.gpstool.gpsinput;
 
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+import org.dinopolis.gpstool.gpsinput.nmea.NMEA0183SentenceEncoder;
+
 //import org.apache.log4j.Logger;
 
 //----------------------------------------------------------------------
@@ -30,7 +35,9 @@ package org.dinopolis.gpstool.gpsinput;
  * This class simulates a gps device. It uses a given start point and
  * simulates the walk to a given destination point at some random
  * speed. The events it fires only containt location and heading. No
- * satellite information or similar is provided!
+ * satellite information or similar is provided! For raw data listeners
+ * (e.g. loggers) every step is encoded as RMC, GGA
+ * and VTG sentences.
  *
  * @author Christof Dallermassl
  * @version $Revision: 1.6 $ */
@@ -46,6 +53,12 @@ public class GPSSimulationDataProcessor extends GPSGeneralDataProcessor implemen
   float current_heading_;
   float speed_ = 1.0f;
   boolean stopped_ = false;
+  /** the speed of the last step in km/h */
+  float current_speed_;
+
+  NMEA0183SentenceEncoder nmea_encoder_ = new NMEA0183SentenceEncoder();
+  byte[] nmea_buffer_ = new byte[NMEA0183SentenceEncoder.MAX_ENCODED_LENGTH];
+  Calendar utc_calendar_ = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
 
   public static final int SLEEP_TIME = 2; // every SLEEP_TIME seconds one step
   public static final int SECONDS_TO_DESTINATION = 60;
@@ -186,7 +199,10 @@ public class GPSSimulationDataProcessor extends GPSGeneralDataProcessor implemen
     double last_longitude = current_position_.getLongitude();
 
     changeGPSData(GPSDataProcessor.LOCATION,current_position_);
-    changeGPSData(GPSDataProcessor.HEADING,new Float(current_heading_));
+    firePosition(current_position_.getLatitude(),current_position_.getLongitude(),System.nanoTime());
+    changeGPSData(GPSDataProcessor.HEADING,current_heading_);
+    fireHeading(current_heading_);
+    fireNmeaSentences();
 
     while(!stopped_)
     {
@@ -218,9 +234,18 @@ public class GPSSimulationDataProcessor extends GPSGeneralDataProcessor implemen
       
       last_latitude = current_position_.getLatitude();
       last_longitude = current_position_.getLongitude();
+
+          // km per degree (of latitude) * steps per hour:
+      double step_km_lat = step_lat * 111.195;
+      double step_km_long = step_long * 111.195 * Math.cos(Math.toRadians(last_latitude));
+      current_speed_ = (float)(Math.sqrt(step_km_lat * step_km_lat + step_km_long * step_km_long)
+                               * 3600.0 / SLEEP_TIME);
       
       changeGPSData(GPSDataProcessor.LOCATION,current_position_);
-      changeGPSData(GPSDataProcessor.HEADING,new Float(current_heading_));
+      firePosition(current_position_.getLatitude(),current_position_.getLongitude(),System.nanoTime());
+      changeGPSData(GPSDataProcessor.HEADING,current_heading_);
+      fireHeading(current_heading_);
+      fireNmeaSentences();
 
 //      if (logger_.isDebugEnabled())
 //        logger_.debug("GPSSimulationDataProcessor: new location"+current_position_);
@@ -239,6 +264,34 @@ public class GPSSimulationDataProcessor extends GPSGeneralDataProcessor implemen
     }
   }
 
+//----------------------------------------------------------------------
+/**
+ * Encodes the current position, heading and speed as RMC, GGA and VTG
+ * sentences and fires them as raw data (only if raw data listeners
+ * are registered).
+ */
+  protected void fireNmeaSentences()
+  {
+    if(!hasRawDataListeners())
+      return;
+    long now = System.currentTimeMillis();
+    utc_calendar_.setTimeInMillis(now);
+    int time_of_day = (int)(now % (24L * 60 * 60 * 1000));
+    double latitude = current_position_.getLatitude();
+    double longitude = current_position_.getLongitude();
+    int length = nmea_encoder_.encodeRMC(nmea_buffer_,0,time_of_day,true,latitude,longitude,
+                                         current_speed_,current_heading_,
+                                         utc_calendar_.get(Calendar.YEAR),
+                                         utc_calendar_.get(Calendar.MONTH) + 1,
+                                         utc_calendar_.get(Calendar.DAY_OF_MONTH));
+    fireRawDataReceived(nmea_buffer_,0,length);
+    length = nmea_encoder_.encodeGGA(nmea_buffer_,0,time_of_day,latitude,longitude,
+                                     1,-1,Float.NaN,Float.NaN,Float.NaN);
+    fireRawDataReceived(nmea_buffer_,0,length);
+    length = nmea_encoder_.encodeVTG(nmea_buffer_,0,current_heading_,current_speed_);
+    fireRawDataReceived(nmea_buffer_,0,length);
+  }
+
 //----------------------------------------------------------------------
 /**
  * Returns the last received position from the GPSDevice or
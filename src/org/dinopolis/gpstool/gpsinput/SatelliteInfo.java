@@ -32,10 +32,25 @@ package org.dinopolis.gpstool.gpsinput;
 
 public class SatelliteInfo  
 {
+  /** constellation: GPS (and SBAS) */
+  public static final int CONSTELLATION_GPS = 0;
+  /** constellation: GLONASS */
+  public static final int CONSTELLATION_GLONASS = 1;
+  /** constellation: Galileo */
+  public static final int CONSTELLATION_GALILEO = 2;
+  /** constellation: BeiDou */
+  public static final int CONSTELLATION_BEIDOU = 3;
+  /** constellation: QZSS */
+  public static final int CONSTELLATION_QZSS = 4;
+  /** the number of constellations known */
+  public static final int NUMBER_CONSTELLATIONS = 5;
+
   int prn_;
   float elevation_;
   float azimuth_;
   int snr_;
+  int constellation_ = CONSTELLATION_GPS;
+  boolean used_;
 
 
 //----------------------------------------------------------------------
@@ -55,73 +70,82 @@ public class SatelliteInfo
     azimuth_ = azimuth;
     snr_ = SNR;
   }
-  
+
 //----------------------------------------------------------------------
 /**
- * Get the prn (number of satellite)
+ * Craeates a new SatelliteInfo of the given constellation.
  *
- * @return the prn.
+ * @param constellation the constellation (e.g. {@link #CONSTELLATION_GLONASS})
+ * @param PRN the number of the satellite (in its constellation)
+ * @param elevation elevation in degrees (90 maximum)
+ * @param azimuth Azimuth, degrees from true north, 000 to 359
+ * @param SNR 00-99 dB (null when not tracking)
+ * @param used true if the satellite is used for the fix
  */
-  public int getPRN()
+
+  public SatelliteInfo(int constellation, int PRN, float elevation, float azimuth, int SNR,
+                       boolean used)
   {
-    return (prn_);
+    this(PRN,elevation,azimuth,SNR);
+    constellation_ = constellation;
+    used_ = used;
   }
-  
+
 //----------------------------------------------------------------------
 /**
- * Set the prn.
+ * Get the constellation the satellite belongs to.
  *
- * @param prn the prn.
+ * @return the constellation (e.g. {@link #CONSTELLATION_GPS}).
  */
-  public void setPRN(int prn)
+  public int getConstellation()
   {
-    prn_ = prn;
+    return (constellation_);
   }
 
 //----------------------------------------------------------------------
 /**
- * Get the elevation.
+ * Returns true if the satellite is used for the fix (as far as the gps
+ * device reported it).
  *
- * @return the elevation.
+ * @return true if the satellite is used for the fix.
  */
-  public float getElevation()
+  public boolean isUsed()
   {
-    return (elevation_);
+    return (used_);
   }
-  
+
 //----------------------------------------------------------------------
 /**
- * Set the elevation.
+ * Get the prn (number of satellite)
  *
- * @param elevation the elevation.
+ * @return the prn.
  */
-  public void setElevation(float elevation)
+  public int getPRN()
   {
-    elevation_ = elevation;
+    return (prn_);
   }
-
+  
 //----------------------------------------------------------------------
 /**
- * Get the azimuth.
+ * Get the elevation.
  *
- * @return the azimuth.
+ * @return the elevation.
  */
-  public float getAzimuth()
+  public float getElevation()
   {
-    return (azimuth_);
+    return (elevation_);
   }
   
 //----------------------------------------------------------------------
 /**
- * Set the azimuth.
+ * Get the azimuth.
  *
- * @param azimuth the azimuth.
+ * @return the azimuth.
  */
-  public void setAzimuth(float azimuth)
+  public float getAzimuth()
   {
-    azimuth_ = azimuth;
+    return (azimuth_);
   }
-
   
 //----------------------------------------------------------------------
 /**
@@ -134,18 +158,6 @@ public class SatelliteInfo
     return (snr_);
   }
   
-//----------------------------------------------------------------------
-/**
- * Set the snr.
- *
- * @param snr the snr.
- */
-  public void setSNR(int snr)
-  {
-    snr_ = snr;
-  }
-  
-
 //----------------------------------------------------------------------
 /**
  * Returns a string representation of this object.
@@ -164,6 +176,10 @@ public class SatelliteInfo
     buffer.append(azimuth_);
     buffer.append(", SNR: ");
     buffer.append(snr_);
+    buffer.append(", constellation: ");
+    buffer.append(constellation_);
+    buffer.append(", used: ");
+    buffer.append(used_);
     buffer.append("]");
     return(buffer.toString());
   }
@@ -90,6 +90,9 @@ public class GPSGarminDataProcessor extends GPSGeneralDataProcessor// implements
   /** helper variable to pass result packet id from reader thread to
    * writer thread */
   protected int send_packet_id_ = 0;
+  /** the buffer the received packets are framed in for the raw byte
+   * listeners (DLE stuffed, so twice the maximum size plus framing) */
+  protected byte[] raw_packet_buffer_ = new byte[2 * GarminPacket.GARMIN_MAX_PACKET_SIZE + 8];
 
   // lock objects and result objects for synchronous calls:
   protected List result_routes_;
@@ -1249,9 +1252,12 @@ public class GPSGarminDataProcessor extends GPSGeneralDataProcessor// implements
       out_stream_.write(ETX);
       out_stream_.flush();
 
-      // inform listeners:
-      String buffer_string = "sent: "+garmin_packet.toString()+"\n";
-      fireRawDataReceived(buffer_string.toCharArray(),0,buffer_string.length());
+      // inform listeners (only the text listeners get sent packets):
+      if(hasRawCharDataListeners())
+      {
+        String buffer_string = "sent: "+garmin_packet.toString()+"\n";
+        fireRawDataReceived(buffer_string.toCharArray(),0,buffer_string.length());
+      }
     }
     catch(IOException ioe)
     {
@@ -1299,6 +1305,46 @@ public class GPSGarminDataProcessor extends GPSGeneralDataProcessor// implements
     while(send_success_ && (send_packet_id_ == garmin_packet.getPacketId()));
   }
 
+//----------------------------------------------------------------------
+  /**
+   * Frames a received packet as it was sent by the device (with DLE
+   * stuffing) and passes the bytes to the raw byte listeners.
+   *
+   * @param garmin_packet the packet.
+   * @param receive_nanos the {@link System#nanoTime()} the packet
+   * started.
+   */
+  protected void fireRawPacketReceived(GarminPacket garmin_packet, long receive_nanos)
+  {
+    byte[] buffer = raw_packet_buffer_;
+    int packet_size = garmin_packet.getPacketSize();
+    if(buffer.length < 2 * packet_size + 8)
+    {
+      buffer = new byte[2 * packet_size + 8];
+      raw_packet_buffer_ = buffer;
+    }
+    int length = 0;
+    buffer[length++] = (byte)DLE;
+    buffer[length++] = (byte)garmin_packet.getPacketId();
+    buffer[length++] = (byte)packet_size;
+    if(packet_size == DLE)
+      buffer[length++] = (byte)DLE;
+    int[] data = garmin_packet.getRawData();
+    for(int index = 0; index < packet_size; index++)
+    {
+      buffer[length++] = (byte)data[index];
+      if((data[index] & 0xff) == DLE)
+        buffer[length++] = (byte)DLE;
+    }
+    byte checksum = garmin_packet.calcChecksum();
+    buffer[length++] = checksum;
+    if(checksum == DLE)
+      buffer[length++] = (byte)DLE;
+    buffer[length++] = (byte)DLE;
+    buffer[length++] = (byte)ETX;
+    fireRawBytesReceived(buffer,0,length,receive_nanos);
+  }
+
 //----------------------------------------------------------------------
   /**
    * Read a packet transmitted by the GARMIN-Device.
@@ -1340,6 +1386,7 @@ public class GPSGarminDataProcessor extends GPSGeneralDataProcessor// implements
         }
       }
 
+      long receive_nanos = System.nanoTime();
       watch_dog_.setPacketId(packet_id);
 
       // now, the packet starts:
@@ -1450,8 +1497,13 @@ public class GPSGarminDataProcessor extends GPSGeneralDataProcessor// implements
       watch_dog_.pauseWatching(true);
 
       // inform raw data listeners:
-      String buffer_string = "received: "+garmin_packet.toString()+"\n";
-      fireRawDataReceived(buffer_string.toCharArray(),0,buffer_string.length());
+      if(hasRawCharDataListeners())
+      {
+        String buffer_string = "received: "+garmin_packet.toString()+"\n";
+        fireRawDataReceived(buffer_string.toCharArray(),0,buffer_string.length());
+      }
+      if(hasRawByteListeners())
+        fireRawPacketReceived(garmin_packet,receive_nanos);
 
       return (garmin_packet); 
     }
@@ -2294,13 +2346,21 @@ public class GPSGarminDataProcessor extends GPSGeneralDataProcessor// implements
     {
       if((pvt != null) && (pvt.getFix() > 1))
       {
+        long time_nanos = System.nanoTime();
         changeGPSData(LOCATION,new GPSPosition(pvt.getLat(),pvt.getLon()));
-        changeGPSData(SPEED,new Float(calcSpeed(pvt.getNorth(),pvt.getEast())));
+        firePosition(pvt.getLat(),pvt.getLon(),time_nanos);
+        float speed = calcSpeed(pvt.getNorth(),pvt.getEast());
+        changeGPSData(SPEED,speed);
+        fireSpeed(speed);
         double altitude = pvt.getAlt() + pvt.getMslHeight();
-        changeGPSData(ALTITUDE,new Float(altitude));
-        changeGPSData(HEADING,new Float(calcHeading(pvt.getNorth(),pvt.getEast())));
+        changeGPSData(ALTITUDE,(float)altitude);
+        fireAltitude((float)altitude);
+        float heading = calcHeading(pvt.getNorth(),pvt.getEast());
+        changeGPSData(HEADING,heading);
+        fireHeading(heading);
         GPSPositionError pos_error = new GPSPositionError(pvt.getEpe(),pvt.getEph(),pvt.getEpv());
         changeGPSData(EPE,pos_error);
+        firePositionError(pvt.getEpe(),pvt.getEph(),pvt.getEpv());
       }
       pvt_sync_request_lock_.notify();
     }
@@ -0,0 +1,692 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+import java.io.InputStream;
+import org.dinopolis.gpstool.gpsinput.GPSException;
+import org.dinopolis.gpstool.gpsinput.GPSFix;
+import org.dinopolis.gpstool.gpsinput.GPSNetworkGpsdDevice;
+import org.dinopolis.gpstool.gpsinput.GPSPosition;
+import org.dinopolis.gpstool.gpsinput.GPSPositionError;
+import org.dinopolis.gpstool.gpsinput.GPSSatelliteTable;
+import org.dinopolis.gpstool.gpsinput.SatelliteInfo;
+import org.dinopolis.gpstool.gpsinput.nmea.GPSNmeaDataProcessor;
+import org.dinopolis.gpstool.gpsinput.nmea.NMEA0183Framer;
+
+//----------------------------------------------------------------------
+/**
+ * This data processor reads the native JSON reports of gpsd (see
+ * {@link org.dinopolis.gpstool.gpsinput.GPSNetworkGpsdDevice#GPSD_JSON_KEY}).
+ * gpsd already decoded the data of the device, so the TPV, SKY and GST
+ * reports are mapped to the gps data events directly by a {@link
+ * GpsdJsonDecoder} instead of decoding NMEA sentences again; the
+ * reports of a POLL response (see {@link
+ * org.dinopolis.gpstool.gpsinput.GPSNetworkGpsdDevice#GPSD_POLL_INTERVAL_KEY})
+ * are processed one by one, other reports are ignored. NMEA sentences in the stream (if gpsd is asked
+ * for both) are processed as by the {@link GPSNmeaDataProcessor}.
+ * <p>
+ * The reports take the same way as the sentences: they are framed by
+ * the reader thread, passed through the sentence ring and decoded by
+ * the decoder thread, which also fires the raw data events.
+ * <p>
+ * Instead of reading a device, the processor may be fed by a {@link
+ * GpsdClient} (see {@link #gpsdLineReceived(GpsdEndpoint,byte[],int,int,long)}):
+ * the lines are then decoded by the selector thread of the client, so
+ * no threads are started for the endpoint. A processor must not be fed
+ * by both.
+ */
+
+public class GPSGpsdDataProcessor extends GPSNmeaDataProcessor
+  implements GpsdEndpointListener
+{
+  /** the gnss ids of gpsd, the index is the constellation of {@link SatelliteInfo} */
+  protected static final int[] GNSS_IDS = new int[] {0, 6, 2, 3, 5};
+
+  protected GpsdJsonDecoder json_decoder_ = new GpsdJsonDecoder();
+  /** the prns of the satellites used for the fix */
+  protected int[] used_prns_ = new int[32];
+  protected int used_count_ = -1;
+  /** the constellations of the satellites used (same order as the
+   * prns) */
+  protected int[] used_constellations_ = new int[32];
+  /** the prns of one constellation of the satellites used */
+  protected int[] constellation_prns_ = new int[32];
+
+  protected long report_count_;
+  protected long invalid_report_count_;
+  /** true while the reports of a POLL response are processed */
+  protected boolean in_poll_;
+  /** the time of day of the TPV report of the POLL response or -1 */
+  protected int poll_time_of_day_ = -1;
+  /** the path of the device whose POLL reports are processed or null */
+  protected byte[] device_filter_;
+  /** the device path of the first report of the POLL response (if no
+   * device filter is set) */
+  protected int poll_device_start_;
+  protected int poll_device_length_;
+  /** the line received from a gpsd endpoint */
+  protected byte[] line_buffer_ = new byte[512];
+
+//----------------------------------------------------------------------
+/**
+ * Default constructor.
+ */
+  public GPSGpsdDataProcessor()
+  {
+    super();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates the framer that splits the stream of gpsd into JSON reports
+ * and NMEA sentences.
+ *
+ * @param in_stream the stream of the device.
+ * @return the framer.
+ */
+  protected NMEA0183Framer createFramer(InputStream in_stream)
+  {
+    return(new GpsdJsonFramer(in_stream));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Starts the data processing. If the device is a {@link
+ * GPSNetworkGpsdDevice} watching a single receiver and no device was
+ * set, the POLL responses are filtered for this receiver.
+ *
+ * @exception GPSException if an error occured on connecting.
+ */
+  public void open() throws GPSException
+  {
+    if((device_filter_ == null) && (gps_device_ instanceof GPSNetworkGpsdDevice))
+    {
+      String device = ((GPSNetworkGpsdDevice)gps_device_).getGpsdDevice();
+      if(device != null)
+        setDevice(device);
+    }
+    super.open();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the path of the receiver whose reports of a POLL response are
+ * processed (a POLL response holds the reports of all receivers of
+ * gpsd). If no device is set, the reports of the device of the first
+ * report are processed.
+ *
+ * @param device the path of the device (e.g. "/dev/ttyUSB0") or null.
+ */
+  public void setDevice(String device)
+  {
+    if(device == null)
+      device_filter_ = null;
+    else
+      device_filter_ = GpsdDeviceDemultiplexer.toBytes(device);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the path of the receiver whose reports of a POLL response
+ * are processed.
+ *
+ * @return the path of the device or null if not set.
+ */
+  public String getDevice()
+  {
+    if(device_filter_ == null)
+      return(null);
+    return(GpsdDeviceDemultiplexer.toString(device_filter_,0,device_filter_.length));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns information about the gps connected.
+ *
+ * @return information about the gps connected.
+ */
+  public String[] getGPSInfo()
+  {
+    return(new String[] {"gpsd (JSON)"});
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a message taken from the ring: JSON reports are decoded
+ * here, NMEA sentences are passed to the nmea processor.
+ *
+ * @param buffer the buffer holding the message.
+ * @param length the length of the message.
+ * @param checksum the checksum calculated by the framer or -1.
+ */
+  protected void decodeMessage(byte[] buffer, int length, int checksum)
+  {
+    if((length == 0) || (buffer[0] != '{'))
+    {
+      super.decodeMessage(buffer,length,checksum);
+      return;
+    }
+    fireRawReportReceived(buffer,length);
+    try
+    {
+      processReport(buffer,0,length);
+    }
+    catch(Exception e)
+    {
+      System.out.println("ERROR: Exception thrown on processing of gpsd report:");
+      e.printStackTrace();
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a line received from a gpsd endpoint (called by the selector
+ * thread of the {@link GpsdClient}).
+ *
+ * @param endpoint the endpoint the line was received from.
+ * @param buffer the buffer holding the line.
+ * @param offset the offset of the line in the buffer.
+ * @param length the length of the line (without CR/LF).
+ * @param timestamp the {@link System#nanoTime()} the line was
+ * received.
+ */
+  public void gpsdLineReceived(GpsdEndpoint endpoint, byte[] buffer, int offset, int length,
+                               long timestamp)
+  {
+    if(line_buffer_.length < length)
+      line_buffer_ = new byte[Math.max(length,line_buffer_.length * 2)];
+    System.arraycopy(buffer,offset,line_buffer_,0,length);
+    sentence_nanos_ = timestamp;
+    decodeMessage(line_buffer_,length,-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Publishes the fix of the current epoch if the connection to the
+ * gpsd endpoint was lost (called by the selector thread of the {@link
+ * GpsdClient}).
+ *
+ * @param endpoint the endpoint.
+ * @param connected true if the connection was established.
+ */
+  public void gpsdConnectionChanged(GpsdEndpoint endpoint, boolean connected)
+  {
+    if(!connected)
+      fix_aggregator_.flush();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Fires the raw data event for a report (with CR/LF appended, as it was
+ * sent by gpsd). The report is only copied if a raw data listener is
+ * registered.
+ *
+ * @param buffer the buffer holding the report.
+ * @param length the length of the report.
+ */
+  protected void fireRawReportReceived(byte[] buffer, int length)
+  {
+    if(!hasRawDataListeners())
+      return;
+    if(sentence_buffer_.length < length + 2)
+      sentence_buffer_ = new byte[length + 2];
+    System.arraycopy(buffer,0,sentence_buffer_,0,length);
+    sentence_buffer_[length] = 13;
+    sentence_buffer_[length + 1] = 10;
+    fireRawDataReceived(sentence_buffer_,0,length + 2,sentence_nanos_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a JSON report and fires the events about the information
+ * contained in it. After the report, the fix aggregator may publish
+ * the fix of the current epoch.
+ *
+ * @param buffer the buffer holding the report.
+ * @param offset the offset of the report.
+ * @param length the length of the report.
+ * @return the class of the report (e.g. {@link
+ * GpsdJsonDecoder#CLASS_TPV}) or -1 if it was invalid.
+ */
+  protected int processReport(byte[] buffer, int offset, int length)
+  {
+    int report_class = json_decoder_.decode(buffer,offset,length);
+    if(report_class < 0)
+    {
+      invalid_report_count_++;
+      return(report_class);
+    }
+    report_count_++;
+    switch(report_class)
+    {
+    case GpsdJsonDecoder.CLASS_TPV:
+      processTPV(json_decoder_);
+      break;
+    case GpsdJsonDecoder.CLASS_SKY:
+      processSKY(json_decoder_);
+      break;
+    case GpsdJsonDecoder.CLASS_GST:
+      processGST(json_decoder_);
+      break;
+    case GpsdJsonDecoder.CLASS_POLL:
+      processPoll(buffer,offset,length);
+      return(report_class);
+    default:
+      return(report_class);
+    }
+    fix_aggregator_.endSentence();
+    return(report_class);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Processes the reports held by a POLL response (the arrays "tpv",
+ * "gst" and "sky" of the response) in their order and publishes the
+ * fix at once, as the next response may only come much later. The
+ * response holds the last report of every class, which need not be of
+ * the same epoch (e.g. the SKY report is often a second older), so
+ * they are all taken as the epoch of the TPV report. Only the reports
+ * of one receiver are processed: of the device set by {@link
+ * #setDevice(String)} or else of the device of the first report.
+ *
+ * @param buffer the buffer holding the response.
+ * @param offset the offset of the response.
+ * @param length the length of the response.
+ */
+  protected void processPoll(byte[] buffer, int offset, int length)
+  {
+    int end = offset + length;
+    int depth = 0;
+    int start = -1;
+    boolean in_string = false;
+    byte value;
+    in_poll_ = true;
+    poll_time_of_day_ = -1;
+    poll_device_start_ = -1;
+    try
+    {
+      for(int index = offset; index < end; index++)
+      {
+        value = buffer[index];
+        if(in_string)
+        {
+          if(value == '\\')
+            index++;
+          else if(value == '"')
+            in_string = false;
+          continue;
+        }
+        switch(value)
+        {
+        case '"':
+          in_string = true;
+          break;
+        case '{':
+        case '[':
+          depth++;
+              // a report is an object in an array of the response:
+          if((depth == 3) && (value == '{'))
+            start = index;
+          break;
+        case '}':
+        case ']':
+          depth--;
+          if((depth == 2) && (start >= 0))
+          {
+            if(isPollDevice(buffer,start,index + 1 - start))
+              processReport(buffer,start,index + 1 - start);
+            start = -1;
+          }
+          break;
+        default:
+        }
+      }
+    }
+    finally
+    {
+      in_poll_ = false;
+    }
+    fix_aggregator_.flush();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if a report of a POLL response is of the receiver
+ * processed (reports without device are processed as well).
+ *
+ * @param buffer the buffer holding the report.
+ * @param offset the offset of the report.
+ * @param length the length of the report.
+ * @return true if the report is processed.
+ */
+  protected boolean isPollDevice(byte[] buffer, int offset, int length)
+  {
+    int start = GpsdDeviceDemultiplexer.findDevice(buffer,offset,length);
+    if(start < 0)
+      return(true);
+    int end = start;
+    int limit = offset + length;
+    while((end < limit) && (buffer[end] != '"') && (buffer[end] != '\\'))
+      end++;
+    if(device_filter_ != null)
+      return(GpsdDeviceDemultiplexer.equals(device_filter_,buffer,start,end - start));
+    if(poll_device_start_ < 0)
+    {
+      poll_device_start_ = start;
+      poll_device_length_ = end - start;
+      return(true);
+    }
+    if(poll_device_length_ != end - start)
+      return(false);
+    for(int index = 0; index < poll_device_length_; index++)
+    {
+      if(buffer[poll_device_start_ + index] != buffer[start + index])
+        return(false);
+    }
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the time of day of the epoch a report belongs to: its own
+ * time, or within a POLL response the time of the TPV report.
+ *
+ * @param report the report.
+ * @return the milliseconds since midnight or -1 if unknown.
+ */
+  protected int getEpochTimeOfDay(GpsdJsonDecoder report)
+  {
+    if(in_poll_ && (poll_time_of_day_ >= 0))
+      return(poll_time_of_day_);
+    return(report.getTimeOfDay());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Processes a TPV (time-position-velocity) report and fires the events
+ * about the information contained in it (property names
+ * GPSDataProcessor.FIXTIME, FIX_QUALITY, FIX_INFO, LOCATION, ALTITUDE,
+ * SPEED, HEADING and EPE).
+ *
+ * @param report the decoded report.
+ */
+  protected void processTPV(GpsdJsonDecoder report)
+  {
+    int time_of_day = report.getTimeOfDay();
+    if(in_poll_)
+      poll_time_of_day_ = time_of_day;
+    fix_aggregator_.beginSentence(time_of_day);
+    if(time_of_day >= 0)
+    {
+      fix_aggregator_.setDate(report.getYear(),report.getMonth(),report.getDay());
+      clock_.setDate(report.getYear(),report.getMonth(),report.getDay());
+      long fix_time = clock_.update(time_of_day,sentence_nanos_);
+      changeGPSData(FIXTIME,fix_time);
+      fireFixTime(fix_time);
+    }
+
+    if(!report.has(GpsdJsonDecoder.MODE))
+      return;
+    int mode = (int)report.get(GpsdJsonDecoder.MODE);
+    int fix_quality = 0;
+    if(mode >= GPSFix.FIX_TYPE_2D)
+      fix_quality = (report.get(GpsdJsonDecoder.STATUS) == 2.0) ? 2 : 1;
+    fix_aggregator_.setFixQuality(fix_quality);
+    changeGPSData(FIX_QUALITY,fix_quality);
+    fireFixQuality(fix_quality);
+    if(mode >= GPSFix.FIX_TYPE_NONE)
+    {
+      fix_aggregator_.setFixType(mode);
+      changeGPSData(FIX_INFO,mode);
+      fireFixType(mode);
+    }
+    if(mode < GPSFix.FIX_TYPE_2D)
+      return;
+
+    if(report.has(GpsdJsonDecoder.LAT) && report.has(GpsdJsonDecoder.LON))
+    {
+      GPSPosition pos = new GPSPosition(report.get(GpsdJsonDecoder.LAT),report.get(GpsdJsonDecoder.LON));
+      fix_aggregator_.setPosition(pos);
+      changeGPSData(LOCATION,pos);
+      firePosition(pos.getLatitude(),pos.getLongitude(),sentence_nanos_);
+    }
+
+        // altMSL since gpsd 3.20, before alt is the altitude above msl:
+    double altitude = report.get(GpsdJsonDecoder.ALT_MSL);
+    if(Double.isNaN(altitude))
+      altitude = report.get(GpsdJsonDecoder.ALT);
+    if(!Double.isNaN(altitude))
+    {
+      fix_aggregator_.setAltitude((float)altitude);
+      changeGPSData(ALTITUDE,(float)altitude);
+      fireAltitude((float)altitude);
+      double altitude_hae = report.get(GpsdJsonDecoder.ALT_HAE);
+      if(!Double.isNaN(altitude_hae))
+        fix_aggregator_.setGeoidSeparation((float)(altitude_hae - altitude));
+    }
+
+    double speed = report.get(GpsdJsonDecoder.SPEED);
+    if(!Double.isNaN(speed))
+    {
+      float speed_kmh = (float)(speed * 3.6);  // m/s to km/h
+      fix_aggregator_.setSpeed(speed_kmh);
+      changeGPSData(SPEED,speed_kmh);
+      fireSpeed(speed_kmh);
+    }
+
+    double track = report.get(GpsdJsonDecoder.TRACK);
+    if(!Double.isNaN(track))
+    {
+      fix_aggregator_.setCourse((float)track);
+      heading_ = (float)track;
+      changeGPSData(HEADING,heading_);
+      fireHeading((float)track);
+    }
+
+    double horizontal_error = report.get(GpsdJsonDecoder.EPH);
+    if(Double.isNaN(horizontal_error) && report.has(GpsdJsonDecoder.EPX) && report.has(GpsdJsonDecoder.EPY))
+    {
+      double epx = report.get(GpsdJsonDecoder.EPX);
+      double epy = report.get(GpsdJsonDecoder.EPY);
+      horizontal_error = Math.sqrt(epx * epx + epy * epy);
+    }
+    if(!Double.isNaN(horizontal_error))
+      changePositionError(horizontal_error,report.get(GpsdJsonDecoder.EPV));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Processes a SKY report and fires the events about the information
+ * contained in it (property names GPSDataProcessor.PDOP, HDOP, VDOP,
+ * and, if the report contains the satellites, SATELLITE_INFO,
+ * NUMBER_SATELLITES and IDS_SATELLITES). The used satellites are only
+ * fired if they changed.
+ *
+ * @param report the decoded report.
+ */
+  protected void processSKY(GpsdJsonDecoder report)
+  {
+    fix_aggregator_.beginSentence(getEpochTimeOfDay(report));
+
+    float pdop = (float)report.get(GpsdJsonDecoder.PDOP);
+    float hdop = (float)report.get(GpsdJsonDecoder.HDOP);
+    float vdop = (float)report.get(GpsdJsonDecoder.VDOP);
+    if(!Float.isNaN(pdop))
+    {
+      fix_aggregator_.setPDOP(pdop);
+      changeGPSData(PDOP,pdop);
+    }
+    if(!Float.isNaN(hdop))
+    {
+      fix_aggregator_.setHDOP(hdop);
+      changeGPSData(HDOP,hdop);
+    }
+    if(!Float.isNaN(vdop))
+    {
+      fix_aggregator_.setVDOP(vdop);
+      changeGPSData(VDOP,vdop);
+    }
+    if(!Float.isNaN(pdop) || !Float.isNaN(hdop) || !Float.isNaN(vdop))
+      fireDop(pdop,hdop,vdop);
+
+    if(!report.hasSatellites())
+      return;
+
+    int count = report.getSatelliteCount();
+    if(used_prns_.length < count)
+    {
+      used_prns_ = new int[count];
+      used_constellations_ = new int[count];
+      constellation_prns_ = new int[count];
+    }
+    boolean used_changed = false;
+    int used_count = 0;
+    satellite_table_.beginCycle(GPSSatelliteTable.ALL_CONSTELLATIONS);
+    for(int index = 0; index < count; index++)
+    {
+      int prn = report.getSatellitePRN(index);
+      float elevation = report.getSatelliteElevation(index);
+      float azimuth = report.getSatelliteAzimuth(index);
+      if(Float.isNaN(elevation) || Float.isNaN(azimuth))
+        continue;
+      int constellation = getConstellation(report.getSatelliteGnssId(index),prn);
+      satellite_table_.update(constellation,prn,elevation,azimuth,report.getSatelliteSNR(index));
+      if(report.isSatelliteUsed(index))
+      {
+        if((used_count >= used_count_) || (used_prns_[used_count] != prn))
+          used_changed = true;
+        used_constellations_[used_count] = constellation;
+        used_prns_[used_count++] = prn;
+      }
+    }
+    satellite_table_.endCycle(GPSSatelliteTable.ALL_CONSTELLATIONS);
+        // only the satellites filtered above (with position) are counted:
+    for(int constellation = 0; constellation < SatelliteInfo.NUMBER_CONSTELLATIONS; constellation++)
+    {
+      int constellation_count = 0;
+      for(int index = 0; index < used_count; index++)
+      {
+        if(used_constellations_[index] == constellation)
+          constellation_prns_[constellation_count++] = used_prns_[index];
+      }
+      satellite_table_.setUsed(constellation,constellation_prns_,constellation_count);
+    }
+    if(satellite_table_.commit())
+    {
+      changeGPSData(SATELLITE_INFO,satellite_table_.getSatelliteInfos());
+      fireSatellites(satellite_table_.getSatelliteInfos());
+    }
+
+    fix_aggregator_.setSatellitesUsed(used_count);
+    fix_aggregator_.setSatelliteIds(used_prns_,used_count);
+    if(!used_changed && (used_count == used_count_))
+      return;
+    used_count_ = used_count;
+    Integer[] satellite_ids = new Integer[used_count];
+    for(int index = 0; index < used_count; index++)
+      satellite_ids[index] = new Integer(used_prns_[index]);
+    changeGPSData(NUMBER_SATELLITES,used_count);
+    fireSatellitesUsed(used_count);
+    changeGPSData(IDS_SATELLITES,satellite_ids);
+    fireSatelliteIds(used_prns_,used_count);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Processes a GST (pseudorange noise) report and fires the event about
+ * the estimated position error (property name GPSDataProcessor.EPE)
+ * calculated from the standard deviations of latitude, longitude and
+ * altitude.
+ *
+ * @param report the decoded report.
+ */
+  protected void processGST(GpsdJsonDecoder report)
+  {
+    fix_aggregator_.beginSentence(getEpochTimeOfDay(report));
+    double latitude_error = report.get(GpsdJsonDecoder.LAT);
+    double longitude_error = report.get(GpsdJsonDecoder.LON);
+    if(Double.isNaN(latitude_error) || Double.isNaN(longitude_error))
+      return;
+    double horizontal_error = Math.sqrt(latitude_error * latitude_error + longitude_error * longitude_error);
+    changePositionError(horizontal_error,report.get(GpsdJsonDecoder.ALT));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Changes and fires the estimated position error.
+ *
+ * @param horizontal_error the horizontal error in meters.
+ * @param vertical_error the vertical error in meters or NaN if unknown
+ * (the spherical error is the horizontal error then).
+ */
+  protected void changePositionError(double horizontal_error, double vertical_error)
+  {
+    double spherical_error = horizontal_error;
+    if(!Double.isNaN(vertical_error))
+      spherical_error = Math.sqrt(horizontal_error * horizontal_error + vertical_error * vertical_error);
+    changeGPSData(EPE,new GPSPositionError(spherical_error,horizontal_error,vertical_error));
+    firePositionError(spherical_error,horizontal_error,vertical_error);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the constellation of a satellite from its gnss id or, if
+ * gpsd did not report it, from its prn. SBAS and IMES satellites are
+ * counted as GPS.
+ *
+ * @param gnss_id the gnss id or -1.
+ * @param prn the prn.
+ * @return the constellation (e.g. {@link SatelliteInfo#CONSTELLATION_GPS}).
+ */
+  protected static int getConstellation(int gnss_id, int prn)
+  {
+    if(gnss_id < 0)
+      return(getPrnConstellation(prn));
+    for(int constellation = 0; constellation < GNSS_IDS.length; constellation++)
+    {
+      if(GNSS_IDS[constellation] == gnss_id)
+        return(constellation);
+    }
+    return(SatelliteInfo.CONSTELLATION_GPS);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of JSON reports decoded.
+ *
+ * @return the number of reports.
+ */
+  public long getReportCount()
+  {
+    return(report_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of lines that looked like JSON reports but could
+ * not be decoded.
+ *
+ * @return the number of invalid reports.
+ */
+  public long getInvalidReportCount()
+  {
+    return(invalid_report_count_);
+  }
+}
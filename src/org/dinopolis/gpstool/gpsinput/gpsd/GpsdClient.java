@@ -0,0 +1,675 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+//----------------------------------------------------------------------
+/**
+ * A client watching any number of gpsd daemons with non-blocking
+ * connections that are all served by a single selector thread, so the
+ * number of threads does not grow with the number of endpoints and the
+ * memory per endpoint is a read buffer of a few kilobytes.
+ * <p>
+ * For every endpoint the client connects, sends the WATCH command
+ * (JSON or NMEA) and splits the received data into lines, which are
+ * passed to the {@link GpsdEndpointListener} of the endpoint (e.g. a
+ * {@link GPSGpsdDataProcessor}). If a connection fails, is closed by
+ * gpsd or stalls (no data for {@link #setStallTimeout(long) the stall
+ * timeout}), the client reconnects after an exponential backoff: the
+ * delay doubles with every failed attempt up to a maximum and is
+ * randomized between the half and the full delay, so many clients
+ * losing the same gpsd do not reconnect all at the same moment.
+ * <p>
+ * Endpoints may be added and removed by any thread at any time; the
+ * changes are handed over to the selector thread. The host names are
+ * resolved by a resolver thread, so a slow name server does not stall
+ * the other endpoints.
+ */
+
+public class GpsdClient implements Runnable
+{
+  /** the default delay (milliseconds) before the first reconnect */
+  public static final long DEFAULT_MIN_BACKOFF = 500;
+  /** the default maximum delay (milliseconds) between reconnects */
+  public static final long DEFAULT_MAX_BACKOFF = 60 * 1000;
+  /** the default time (milliseconds) without data after which a
+   * connection is considered stalled */
+  public static final long DEFAULT_STALL_TIMEOUT = 10 * 1000;
+  /** the initial size of the read buffer of an endpoint */
+  public static final int DEFAULT_BUFFER_SIZE = 4096;
+  /** the maximum length of a line */
+  public static final int MAX_LINE_LENGTH = 32768;
+
+  /** the command to watch the JSON reports */
+  public static final String WATCH_JSON_COMMAND = "?WATCH={\"enable\":true,\"json\":true}\n";
+  /** the command to watch the NMEA sentences */
+  public static final String WATCH_NMEA_COMMAND = "?WATCH={\"enable\":true,\"nmea\":true,\"json\":false}\n";
+
+  protected static final long NANOS_PER_MILLI = 1000L * 1000;
+  /** the maximum time (milliseconds) the selector waits */
+  protected static final long MAX_SELECT_TIMEOUT = 1000;
+
+  protected long min_backoff_nanos_ = DEFAULT_MIN_BACKOFF * NANOS_PER_MILLI;
+  protected long max_backoff_nanos_ = DEFAULT_MAX_BACKOFF * NANOS_PER_MILLI;
+  protected long stall_timeout_nanos_ = DEFAULT_STALL_TIMEOUT * NANOS_PER_MILLI;
+
+  protected Selector selector_;
+  protected Thread thread_;
+  protected Thread resolver_thread_;
+  protected volatile boolean running_;
+  protected Random random_ = new Random();
+
+  /** the endpoints (copy on write, changed under the lock) */
+  protected volatile GpsdEndpoint[] endpoints_ = new GpsdEndpoint[0];
+  protected Object endpoints_lock_ = new Object();
+  /** the removed endpoints whose connection must be closed */
+  protected ConcurrentLinkedQueue removed_endpoints_ = new ConcurrentLinkedQueue();
+  /** the endpoints whose host name is to be resolved by the resolver
+   * thread */
+  protected LinkedBlockingQueue resolve_queue_ = new LinkedBlockingQueue();
+  /** the endpoints whose host name was resolved (handed back to the
+   * selector thread) */
+  protected ConcurrentLinkedQueue resolved_endpoints_ = new ConcurrentLinkedQueue();
+
+//----------------------------------------------------------------------
+/**
+ * Sets the delays between the reconnects.
+ *
+ * @param min_backoff the delay before the first reconnect in
+ * milliseconds.
+ * @param max_backoff the maximum delay in milliseconds.
+ */
+  public void setBackoff(long min_backoff, long max_backoff)
+  {
+    min_backoff_nanos_ = Math.max(min_backoff,1) * NANOS_PER_MILLI;
+    max_backoff_nanos_ = Math.max(max_backoff,min_backoff) * NANOS_PER_MILLI;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the time without data after which a connection is closed and
+ * reestablished. The time also limits how long a connection may take
+ * to be established.
+ *
+ * @param stall_timeout the timeout in milliseconds (0 to disable).
+ */
+  public void setStallTimeout(long stall_timeout)
+  {
+    stall_timeout_nanos_ = Math.max(stall_timeout,0) * NANOS_PER_MILLI;
+    if(selector_ != null)
+      selector_.wakeup();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the time without data after which a connection is closed.
+ *
+ * @return the timeout in milliseconds (0 if disabled).
+ */
+  public long getStallTimeout()
+  {
+    return(stall_timeout_nanos_ / NANOS_PER_MILLI);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Starts the selector thread and the resolver thread (daemon threads).
+ *
+ * @exception IOException if the selector cannot be opened.
+ */
+  public synchronized void start()
+    throws IOException
+  {
+    if(running_)
+      return;
+    selector_ = Selector.open();
+    running_ = true;
+    resolve_queue_.clear();
+    resolved_endpoints_.clear();
+    resolver_thread_ = new Thread(new Runnable()
+      {
+        public void run()
+        {
+          resolveHosts();
+        }
+      },"GpsdClient resolver");
+    resolver_thread_.setDaemon(true);
+    resolver_thread_.start();
+    thread_ = new Thread(this,"GpsdClient");
+    thread_.setDaemon(true);
+    thread_.start();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Stops the selector thread and closes all connections. The listeners
+ * of connected endpoints are informed.
+ */
+  public synchronized void close()
+  {
+    if(!running_)
+      return;
+    running_ = false;
+    selector_.wakeup();
+    resolver_thread_.interrupt();
+    if(Thread.currentThread() == thread_)
+      return;
+    try
+    {
+      thread_.join();
+    }
+    catch(InterruptedException ignore) {}
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a gpsd endpoint. The connection is established by the selector
+ * thread.
+ *
+ * @param host the host of gpsd.
+ * @param port the port of gpsd.
+ * @param json if true, the JSON reports are watched, otherwise NMEA.
+ * @param listener the listener receiving the lines.
+ * @return the endpoint.
+ */
+  public GpsdEndpoint addEndpoint(String host, int port, boolean json,
+                                  GpsdEndpointListener listener)
+  {
+    GpsdEndpoint endpoint = new GpsdEndpoint(host,port,json,listener,
+                                             DEFAULT_BUFFER_SIZE,MAX_LINE_LENGTH);
+    endpoint.next_connect_nanos_ = System.nanoTime();
+    synchronized(endpoints_lock_)
+    {
+      GpsdEndpoint[] endpoints = new GpsdEndpoint[endpoints_.length + 1];
+      System.arraycopy(endpoints_,0,endpoints,0,endpoints_.length);
+      endpoints[endpoints_.length] = endpoint;
+      endpoints_ = endpoints;
+    }
+    if(selector_ != null)
+      selector_.wakeup();
+    return(endpoint);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes a gpsd endpoint. The connection is closed by the selector
+ * thread.
+ *
+ * @param endpoint the endpoint.
+ */
+  public void removeEndpoint(GpsdEndpoint endpoint)
+  {
+    synchronized(endpoints_lock_)
+    {
+      int index = indexOf(endpoint);
+      if(index < 0)
+        return;
+      GpsdEndpoint[] endpoints = new GpsdEndpoint[endpoints_.length - 1];
+      System.arraycopy(endpoints_,0,endpoints,0,index);
+      System.arraycopy(endpoints_,index + 1,endpoints,index,endpoints.length - index);
+      endpoints_ = endpoints;
+    }
+    removed_endpoints_.add(endpoint);
+    if(selector_ != null)
+      selector_.wakeup();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the endpoints of this client.
+ *
+ * @return the endpoints (a copy).
+ */
+  public GpsdEndpoint[] getEndpoints()
+  {
+    return((GpsdEndpoint[])endpoints_.clone());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the index of an endpoint in the endpoints.
+ *
+ * @param endpoint the endpoint.
+ * @return the index or -1.
+ */
+  protected int indexOf(GpsdEndpoint endpoint)
+  {
+    GpsdEndpoint[] endpoints = endpoints_;
+    for(int index = 0; index < endpoints.length; index++)
+    {
+      if(endpoints[index] == endpoint)
+        return(index);
+    }
+    return(-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * The loop of the selector thread.
+ */
+  public void run()
+  {
+    long now;
+    long timeout;
+    Iterator keys;
+    SelectionKey key;
+    GpsdEndpoint endpoint;
+    while(running_)
+    {
+      now = System.nanoTime();
+      closeRemovedEndpoints();
+      connectResolvedEndpoints(now);
+      timeout = serviceEndpoints(now);
+      try
+      {
+        selector_.select(Math.max(timeout / NANOS_PER_MILLI,1));
+      }
+      catch(IOException e)
+      {
+        System.err.println("ERROR: gpsd client selector failed: " + e.getMessage());
+        break;
+      }
+
+      now = System.nanoTime();
+      keys = selector_.selectedKeys().iterator();
+      while(keys.hasNext())
+      {
+        key = (SelectionKey)keys.next();
+        keys.remove();
+        endpoint = (GpsdEndpoint)key.attachment();
+        if(!key.isValid())
+          continue;
+        try
+        {
+          if(key.isConnectable())
+          {
+            if(endpoint.channel_.finishConnect())
+              connected(endpoint,now);
+          }
+          else
+          {
+            if(key.isWritable())
+              write(endpoint);
+            if(key.isReadable())
+              read(endpoint,now);
+          }
+        }
+        catch(IOException e)
+        {
+          disconnected(endpoint,now);
+        }
+      }
+    }
+
+    running_ = false;
+    closeRemovedEndpoints();
+    GpsdEndpoint[] endpoints = endpoints_;
+    for(int index = 0; index < endpoints.length; index++)
+    {
+      boolean was_connected = endpoints[index].state_ == GpsdEndpoint.STATE_CONNECTED;
+      closeChannel(endpoints[index]);
+      endpoints[index].state_ = GpsdEndpoint.STATE_DISCONNECTED;
+      if(was_connected)
+        fireConnectionChanged(endpoints[index],false);
+    }
+    try
+    {
+      selector_.close();
+    }
+    catch(IOException ignore) {}
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Starts the due connection attempts and closes stalled connections.
+ *
+ * @param now the current {@link System#nanoTime()}.
+ * @return the time in nanoseconds until the next attempt or stall
+ * check is due.
+ */
+  protected long serviceEndpoints(long now)
+  {
+    long timeout = MAX_SELECT_TIMEOUT * NANOS_PER_MILLI;
+    long stall_timeout = stall_timeout_nanos_;
+    long remaining;
+    GpsdEndpoint endpoint;
+    GpsdEndpoint[] endpoints = endpoints_;
+    for(int index = 0; index < endpoints.length; index++)
+    {
+      endpoint = endpoints[index];
+      if(endpoint.state_ == GpsdEndpoint.STATE_DISCONNECTED)
+      {
+        remaining = endpoint.next_connect_nanos_ - now;
+        if(remaining <= 0)
+        {
+          connect(endpoint,now);
+          remaining = (endpoint.state_ == GpsdEndpoint.STATE_DISCONNECTED)
+                      ? endpoint.next_connect_nanos_ - now : stall_timeout;
+        }
+      }
+      else if(stall_timeout > 0)
+      {
+        remaining = endpoint.last_receive_nanos_ + stall_timeout - now;
+        if(remaining <= 0)
+        {
+          endpoint.stall_count_++;
+          disconnected(endpoint,now);
+          remaining = endpoint.next_connect_nanos_ - now;
+        }
+      }
+      else
+        continue;
+      if(remaining < timeout)
+        timeout = remaining;
+    }
+    return(timeout);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Starts a connection attempt. If the address of the host is not known
+ * (first attempt or the last attempt failed, so a changed address is
+ * picked up), the endpoint is handed to the resolver thread first and
+ * the attempt continues when the host name was resolved (see {@link
+ * #connectResolvedEndpoints(long)}).
+ *
+ * @param endpoint the endpoint.
+ * @param now the current {@link System#nanoTime()}.
+ */
+  protected void connect(GpsdEndpoint endpoint, long now)
+  {
+    endpoint.last_receive_nanos_ = now;
+    if(endpoint.address_ == null)
+    {
+      endpoint.state_ = GpsdEndpoint.STATE_RESOLVING;
+      resolve_queue_.add(endpoint);
+      return;
+    }
+    openChannel(endpoint,now);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Starts the non-blocking connection to the resolved address of an
+ * endpoint.
+ *
+ * @param endpoint the endpoint.
+ * @param now the current {@link System#nanoTime()}.
+ */
+  protected void openChannel(GpsdEndpoint endpoint, long now)
+  {
+    SocketChannel channel = null;
+    try
+    {
+      InetSocketAddress address = new InetSocketAddress(endpoint.address_,endpoint.port_);
+      channel = SocketChannel.open();
+      channel.configureBlocking(false);
+      endpoint.channel_ = channel;
+      endpoint.state_ = GpsdEndpoint.STATE_CONNECTING;
+      endpoint.last_receive_nanos_ = now;
+      if(channel.connect(address))
+      {
+        endpoint.key_ = channel.register(selector_,0,endpoint);
+        connected(endpoint,now);
+      }
+      else
+        endpoint.key_ = channel.register(selector_,SelectionKey.OP_CONNECT,endpoint);
+    }
+    catch(IOException e)
+    {
+      disconnected(endpoint,now);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Continues the connection attempts of the endpoints whose host name
+ * was resolved by the resolver thread (unless the endpoint was removed
+ * or timed out meanwhile).
+ *
+ * @param now the current {@link System#nanoTime()}.
+ */
+  protected void connectResolvedEndpoints(long now)
+  {
+    GpsdEndpoint endpoint;
+    while((endpoint = (GpsdEndpoint)resolved_endpoints_.poll()) != null)
+    {
+      if(endpoint.state_ != GpsdEndpoint.STATE_RESOLVING)
+        continue;
+      if(endpoint.address_ == null)
+        disconnected(endpoint,now);
+      else
+        openChannel(endpoint,now);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * The loop of the resolver thread: resolves the host names of the
+ * endpoints handed over by the selector thread and hands them back.
+ */
+  protected void resolveHosts()
+  {
+    GpsdEndpoint endpoint;
+    while(running_)
+    {
+      try
+      {
+        endpoint = (GpsdEndpoint)resolve_queue_.take();
+      }
+      catch(InterruptedException e)
+      {
+        return;
+      }
+      try
+      {
+        endpoint.address_ = InetAddress.getByName(endpoint.host_);
+      }
+      catch(UnknownHostException e)
+      {
+        endpoint.address_ = null;
+      }
+      resolved_endpoints_.add(endpoint);
+      selector_.wakeup();
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Called when the connection of an endpoint was established: the
+ * WATCH command is queued and the listener is informed.
+ *
+ * @param endpoint the endpoint.
+ * @param now the current {@link System#nanoTime()}.
+ */
+  protected void connected(GpsdEndpoint endpoint, long now)
+  {
+    endpoint.state_ = GpsdEndpoint.STATE_CONNECTED;
+    endpoint.connect_count_++;
+    endpoint.last_receive_nanos_ = now;
+    endpoint.resetBuffer();
+    String command = endpoint.json_ ? WATCH_JSON_COMMAND : WATCH_NMEA_COMMAND;
+    byte[] bytes = new byte[command.length()];
+    for(int index = 0; index < bytes.length; index++)
+      bytes[index] = (byte)command.charAt(index);
+    endpoint.write_buffer_ = ByteBuffer.wrap(bytes);
+    endpoint.key_.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    fireConnectionChanged(endpoint,true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Writes the pending command of an endpoint.
+ *
+ * @param endpoint the endpoint.
+ * @exception IOException if the write failed.
+ */
+  protected void write(GpsdEndpoint endpoint)
+    throws IOException
+  {
+    if(endpoint.write_buffer_ != null)
+    {
+      endpoint.channel_.write(endpoint.write_buffer_);
+      if(endpoint.write_buffer_.hasRemaining())
+        return;
+      endpoint.write_buffer_ = null;
+    }
+    endpoint.key_.interestOps(SelectionKey.OP_READ);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Reads the available data of an endpoint and passes the complete
+ * lines to the listener.
+ *
+ * @param endpoint the endpoint.
+ * @param now the current {@link System#nanoTime()}.
+ * @exception IOException if the read failed or the connection was
+ * closed by gpsd.
+ */
+  protected void read(GpsdEndpoint endpoint, long now)
+    throws IOException
+  {
+    int count = endpoint.channel_.read(endpoint.read_buffer_);
+    if(count < 0)
+      throw new IOException("connection closed by gpsd");
+    if(count == 0)
+      return;
+    endpoint.byte_count_ += count;
+    endpoint.last_receive_nanos_ = now;
+    endpoint.failures_ = 0;
+    endpoint.scanLines(now);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Called when the connection of an endpoint failed, was closed or
+ * stalled: the connection is closed, the reconnect is scheduled and
+ * the listener is informed if the endpoint was connected.
+ *
+ * @param endpoint the endpoint.
+ * @param now the current {@link System#nanoTime()}.
+ */
+  protected void disconnected(GpsdEndpoint endpoint, long now)
+  {
+    boolean was_connected = endpoint.state_ == GpsdEndpoint.STATE_CONNECTED;
+    closeChannel(endpoint);
+    if(endpoint.state_ == GpsdEndpoint.STATE_CLOSED)
+      return;
+    if(!was_connected)
+      endpoint.address_ = null;  // resolve the host name again
+    endpoint.state_ = GpsdEndpoint.STATE_DISCONNECTED;
+    endpoint.failures_++;
+    endpoint.next_connect_nanos_ = now + getBackoff(endpoint.failures_);
+    if(was_connected)
+      fireConnectionChanged(endpoint,false);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the randomized delay before the next connection attempt.
+ *
+ * @param failures the number of failed attempts (at least 1).
+ * @return the delay in nanoseconds (between the half and the full
+ * exponential delay).
+ */
+  protected long getBackoff(int failures)
+  {
+    long delay = min_backoff_nanos_;
+    for(int count = 1; (count < failures) && (delay < max_backoff_nanos_); count++)
+      delay <<= 1;
+    delay = Math.min(delay,max_backoff_nanos_);
+    long half = delay / 2;
+    return(half + (long)(random_.nextDouble() * (delay - half)));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Closes the connections of the removed endpoints.
+ */
+  protected void closeRemovedEndpoints()
+  {
+    GpsdEndpoint endpoint;
+    while((endpoint = (GpsdEndpoint)removed_endpoints_.poll()) != null)
+    {
+      boolean was_connected = endpoint.state_ == GpsdEndpoint.STATE_CONNECTED;
+      endpoint.state_ = GpsdEndpoint.STATE_CLOSED;
+      closeChannel(endpoint);
+      if(was_connected)
+        fireConnectionChanged(endpoint,false);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Closes the channel of an endpoint (if open).
+ *
+ * @param endpoint the endpoint.
+ */
+  protected void closeChannel(GpsdEndpoint endpoint)
+  {
+    if(endpoint.key_ != null)
+      endpoint.key_.cancel();
+    if(endpoint.channel_ != null)
+    {
+      try
+      {
+        endpoint.channel_.close();
+      }
+      catch(IOException ignore) {}
+    }
+    endpoint.key_ = null;
+    endpoint.channel_ = null;
+    endpoint.resetBuffer();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener of an endpoint that the connection was
+ * established or lost.
+ *
+ * @param endpoint the endpoint.
+ * @param connected true if the connection was established.
+ */
+  protected void fireConnectionChanged(GpsdEndpoint endpoint, boolean connected)
+  {
+    try
+    {
+      endpoint.listener_.gpsdConnectionChanged(endpoint,connected);
+    }
+    catch(RuntimeException e)
+    {
+      System.out.println("ERROR: Exception thrown by gpsd endpoint listener:");
+      e.printStackTrace();
+    }
+  }
+}
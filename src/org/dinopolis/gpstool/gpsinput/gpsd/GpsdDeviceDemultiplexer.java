@@ -0,0 +1,713 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+//----------------------------------------------------------------------
+/**
+ * Routes the JSON reports of a gpsd serving several receivers to a
+ * listener (e.g. a {@link GPSGpsdDataProcessor}) per receiver, so one
+ * connection per gpsd host is enough while every receiver still has
+ * its own satellite, position and fix state.
+ * <p>
+ * gpsd tags the reports of a receiver (TPV, SKY, GST, ...) with the
+ * path of the device (e.g. <code>"device":"/dev/ttyUSB0"</code>); the
+ * path is found by a scan of the line bytes and compared with the
+ * paths of the known devices, so no string is created for a known
+ * device. A new device gets the listener registered by {@link
+ * #addDevice(String,GpsdEndpointListener)} or created by the {@link
+ * Factory}. Lines without device (e.g. VERSION or NMEA sentences,
+ * which gpsd does not tag) go to the default listener, if any.
+ * <p>
+ * A POLL response holds the last reports of all devices. It is split
+ * by the device of every report: each listener receives a POLL
+ * response holding only the reports of its device.
+ * <p>
+ * The demultiplexer is fed either as the listener of a {@link
+ * GpsdClient} endpoint watching JSON or by {@link
+ * #readStream(InputStream)} from the stream of a {@link
+ * org.dinopolis.gpstool.gpsinput.GPSNetworkGpsdDevice} opened in JSON
+ * mode. Devices may be added by any thread.
+ */
+
+public class GpsdDeviceDemultiplexer implements GpsdEndpointListener
+{
+  /** the key preceding the device path */
+  protected static final byte[] DEVICE_KEY = new byte[] {'"','d','e','v','i','c','e','"'};
+  protected static final byte[] CLASS_KEY = new byte[] {'"','c','l','a','s','s','"'};
+  protected static final byte[] POLL_CLASS = new byte[] {'"','P','O','L','L','"'};
+  protected static final int INITIAL_POLL_ENTRIES = 16;
+
+  /** the paths of the known devices (copy on write, changed under the lock) */
+  protected volatile byte[][] paths_ = new byte[0][];
+  /** the listeners of the known devices, same order as the paths */
+  protected volatile GpsdEndpointListener[] listeners_ = new GpsdEndpointListener[0];
+  protected Object devices_lock_ = new Object();
+
+  protected Factory factory_;
+  protected GpsdEndpointListener default_listener_;
+  /** the index of the device of the last line (reports come in bursts) */
+  protected int last_device_;
+  protected long unrouted_count_;
+
+  /** the reports of the POLL response being split (routing thread only) */
+  protected int poll_count_;
+  protected int[] poll_start_ = new int[INITIAL_POLL_ENTRIES];
+  protected int[] poll_end_ = new int[INITIAL_POLL_ENTRIES];
+  /** the array key ("tpv", "sky", ...) of the reports */
+  protected int[] poll_key_start_ = new int[INITIAL_POLL_ENTRIES];
+  protected int[] poll_key_end_ = new int[INITIAL_POLL_ENTRIES];
+  protected GpsdEndpointListener[] poll_listener_ = new GpsdEndpointListener[INITIAL_POLL_ENTRIES];
+  /** the POLL response built for one device */
+  protected byte[] poll_buffer_ = new byte[1024];
+  protected int poll_length_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a demultiplexer that only routes to the devices added by
+ * {@link #addDevice(String,GpsdEndpointListener)}.
+ */
+  public GpsdDeviceDemultiplexer()
+  {
+    this(null);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates a demultiplexer that asks the factory for the listener of
+ * every unknown device.
+ *
+ * @param factory the factory or null.
+ */
+  public GpsdDeviceDemultiplexer(Factory factory)
+  {
+    factory_ = factory;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the listener receiving the lines without device.
+ *
+ * @param listener the listener or null to drop these lines.
+ */
+  public void setDefaultListener(GpsdEndpointListener listener)
+  {
+    default_listener_ = listener;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a device (or replaces the listener of a known device).
+ *
+ * @param path the path of the device as reported by gpsd.
+ * @param listener the listener receiving the lines of the device.
+ */
+  public void addDevice(String path, GpsdEndpointListener listener)
+  {
+    byte[] bytes = toBytes(path);
+    synchronized(devices_lock_)
+    {
+      int index = indexOf(bytes,0,bytes.length);
+      GpsdEndpointListener[] listeners;
+      if(index >= 0)
+      {
+        listeners = (GpsdEndpointListener[])listeners_.clone();
+        listeners[index] = listener;
+        listeners_ = listeners;
+        return;
+      }
+      int count = paths_.length;
+      byte[][] paths = new byte[count + 1][];
+      listeners = new GpsdEndpointListener[count + 1];
+      System.arraycopy(paths_,0,paths,0,count);
+      System.arraycopy(listeners_,0,listeners,0,count);
+      paths[count] = bytes;
+      listeners[count] = listener;
+          // the listeners first, a reader seeing the new path finds its listener:
+      listeners_ = listeners;
+      paths_ = paths;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the listener of a device.
+ *
+ * @param path the path of the device.
+ * @return the listener or null if the device is not known.
+ */
+  public GpsdEndpointListener getListener(String path)
+  {
+    byte[] bytes = toBytes(path);
+    int index = indexOf(bytes,0,bytes.length);
+    if(index < 0)
+      return(null);
+    return(listeners_[index]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the paths of the known devices.
+ *
+ * @return the paths.
+ */
+  public String[] getDevices()
+  {
+    byte[][] paths = paths_;
+    String[] devices = new String[paths.length];
+    for(int index = 0; index < paths.length; index++)
+      devices[index] = toString(paths[index],0,paths[index].length);
+    return(devices);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of lines that were dropped, as they had no device
+ * and there is no default listener or their device had no listener.
+ *
+ * @return the number of lines dropped.
+ */
+  public long getUnroutedCount()
+  {
+    return(unrouted_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Passes a line to the listener of its device.
+ *
+ * @param endpoint the endpoint the line was received from.
+ * @param buffer the buffer holding the line.
+ * @param offset the offset of the line in the buffer.
+ * @param length the length of the line (without CR/LF).
+ * @param timestamp the {@link System#nanoTime()} the line was
+ * received.
+ */
+  public void gpsdLineReceived(GpsdEndpoint endpoint, byte[] buffer, int offset, int length,
+                               long timestamp)
+  {
+    GpsdEndpointListener listener = default_listener_;
+    if(buffer[offset] == '{')
+    {
+      if(isPoll(buffer,offset,length))
+      {
+        routePoll(endpoint,buffer,offset,length,timestamp);
+        return;
+      }
+      listener = findListener(buffer,offset,length);
+    }
+    if(listener == null)
+    {
+      unrouted_count_++;
+      return;
+    }
+    listener.gpsdLineReceived(endpoint,buffer,offset,length,timestamp);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listeners of all devices and the default listener about
+ * the connection.
+ *
+ * @param endpoint the endpoint.
+ * @param connected true if the connection was established.
+ */
+  public void gpsdConnectionChanged(GpsdEndpoint endpoint, boolean connected)
+  {
+    GpsdEndpointListener[] listeners = listeners_;
+    for(int index = 0; index < listeners.length; index++)
+    {
+      if(listeners[index] != null)
+        listeners[index].gpsdConnectionChanged(endpoint,connected);
+    }
+    if(default_listener_ != null)
+      default_listener_.gpsdConnectionChanged(endpoint,connected);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Reads the lines of a gpsd stream (e.g. of a {@link
+ * org.dinopolis.gpstool.gpsinput.GPSNetworkGpsdDevice} in JSON mode)
+ * and routes them, until the end of the stream is reached. The lines
+ * are routed by the calling thread.
+ *
+ * @param in_stream the stream.
+ * @exception IOException if the stream cannot be read.
+ */
+  public void readStream(InputStream in_stream)
+    throws IOException
+  {
+    GpsdEndpoint endpoint = new GpsdEndpoint(null,0,true,this,GpsdClient.DEFAULT_BUFFER_SIZE,
+                                             GpsdClient.MAX_LINE_LENGTH);
+    endpoint.state_ = GpsdEndpoint.STATE_CONNECTED;
+    endpoint.connect_count_++;
+    gpsdConnectionChanged(endpoint,true);
+    try
+    {
+      int count;
+      while(true)
+      {
+        count = in_stream.read(endpoint.read_buffer_.array(),endpoint.read_buffer_.position(),
+                               endpoint.read_buffer_.remaining());
+        if(count < 0)
+          break;
+        if(count == 0)
+          continue;
+        endpoint.read_buffer_.position(endpoint.read_buffer_.position() + count);
+        endpoint.byte_count_ += count;
+        endpoint.scanLines(System.nanoTime());
+      }
+    }
+    finally
+    {
+      endpoint.state_ = GpsdEndpoint.STATE_DISCONNECTED;
+      gpsdConnectionChanged(endpoint,false);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Splits a POLL response by the device of its reports and passes a
+ * POLL response holding only its reports to the listener of every
+ * device.
+ *
+ * @param endpoint the endpoint the response was received from.
+ * @param buffer the buffer holding the response.
+ * @param offset the offset of the response.
+ * @param length the length of the response.
+ * @param timestamp the time the response was received.
+ */
+  protected void routePoll(GpsdEndpoint endpoint, byte[] buffer, int offset, int length,
+                           long timestamp)
+  {
+        // find the reports (objects in the arrays of the response):
+    poll_count_ = 0;
+    int end = offset + length;
+    int depth = 0;
+    int start = -1;
+    int string_start = -1;
+    int key_start = -1;
+    int key_end = -1;
+    boolean in_string = false;
+    byte value;
+    for(int index = offset; index < end; index++)
+    {
+      value = buffer[index];
+      if(in_string)
+      {
+        if(value == '\\')
+          index++;
+        else if(value == '"')
+        {
+          in_string = false;
+          if(depth == 1)
+          {
+            key_start = string_start;
+            key_end = index;
+          }
+        }
+        continue;
+      }
+      switch(value)
+      {
+      case '"':
+        in_string = true;
+        string_start = index + 1;
+        break;
+      case '{':
+      case '[':
+        depth++;
+        if((depth == 3) && (value == '{'))
+          start = index;
+        break;
+      case '}':
+      case ']':
+        depth--;
+        if((depth == 2) && (start >= 0))
+        {
+          addPollReport(buffer,start,index + 1,key_start,key_end);
+          start = -1;
+        }
+        break;
+      default:
+      }
+    }
+
+        // a response per listener, in the order of their first report:
+    for(int entry = 0; entry < poll_count_; entry++)
+    {
+      GpsdEndpointListener listener = poll_listener_[entry];
+      if(listener == null)
+      {
+        unrouted_count_++;
+        continue;
+      }
+      boolean done = false;
+      for(int previous = 0; (previous < entry) && !done; previous++)
+        done = poll_listener_[previous] == listener;
+      if(done)
+        continue;
+
+      poll_length_ = 0;
+      appendPoll("{\"class\":\"POLL\"");
+      int open_key = -1;
+      for(int report = entry; report < poll_count_; report++)
+      {
+        if(poll_listener_[report] != listener)
+          continue;
+        if((open_key < 0) || !equalKeys(buffer,open_key,report))
+        {
+          if(open_key >= 0)
+            appendPoll("]");
+          appendPoll(",\"");
+          appendPoll(buffer,poll_key_start_[report],poll_key_end_[report] - poll_key_start_[report]);
+          appendPoll("\":[");
+          open_key = report;
+        }
+        else
+          appendPoll(",");
+        appendPoll(buffer,poll_start_[report],poll_end_[report] - poll_start_[report]);
+      }
+      appendPoll("]}");
+      listener.gpsdLineReceived(endpoint,poll_buffer_,0,poll_length_,timestamp);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a report of a POLL response to the reports to route.
+ *
+ * @param buffer the buffer holding the response.
+ * @param start the index of the report.
+ * @param end the index after the report.
+ * @param key_start the index of the key of the array holding the report.
+ * @param key_end the index after the key.
+ */
+  protected void addPollReport(byte[] buffer, int start, int end, int key_start, int key_end)
+  {
+    if(key_start < 0)
+      return;
+    if(poll_count_ == poll_start_.length)
+    {
+      int size = poll_count_ * 2;
+      int[] poll_start = new int[size];
+      int[] poll_end = new int[size];
+      int[] poll_key_start = new int[size];
+      int[] poll_key_end = new int[size];
+      GpsdEndpointListener[] poll_listener = new GpsdEndpointListener[size];
+      System.arraycopy(poll_start_,0,poll_start,0,poll_count_);
+      System.arraycopy(poll_end_,0,poll_end,0,poll_count_);
+      System.arraycopy(poll_key_start_,0,poll_key_start,0,poll_count_);
+      System.arraycopy(poll_key_end_,0,poll_key_end,0,poll_count_);
+      System.arraycopy(poll_listener_,0,poll_listener,0,poll_count_);
+      poll_start_ = poll_start;
+      poll_end_ = poll_end;
+      poll_key_start_ = poll_key_start;
+      poll_key_end_ = poll_key_end;
+      poll_listener_ = poll_listener;
+    }
+    poll_start_[poll_count_] = start;
+    poll_end_[poll_count_] = end;
+    poll_key_start_[poll_count_] = key_start;
+    poll_key_end_[poll_count_] = key_end;
+    poll_listener_[poll_count_] = findListener(buffer,start,end - start);
+    poll_count_++;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if two reports of a POLL response are in the same
+ * array.
+ *
+ * @param buffer the buffer holding the response.
+ * @param report the one report.
+ * @param other the other report.
+ * @return true if the keys of their arrays are equal.
+ */
+  protected boolean equalKeys(byte[] buffer, int report, int other)
+  {
+    int length = poll_key_end_[report] - poll_key_start_[report];
+    if(poll_key_end_[other] - poll_key_start_[other] != length)
+      return(false);
+    for(int index = 0; index < length; index++)
+    {
+      if(buffer[poll_key_start_[report] + index] != buffer[poll_key_start_[other] + index])
+        return(false);
+    }
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends bytes to the POLL response built for a device.
+ *
+ * @param buffer the buffer holding the bytes.
+ * @param offset the offset of the bytes.
+ * @param length the number of bytes.
+ */
+  protected void appendPoll(byte[] buffer, int offset, int length)
+  {
+    ensurePollCapacity(length);
+    System.arraycopy(buffer,offset,poll_buffer_,poll_length_,length);
+    poll_length_ += length;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends an ASCII string to the POLL response built for a device.
+ *
+ * @param string the string.
+ */
+  protected void appendPoll(String string)
+  {
+    int length = string.length();
+    ensurePollCapacity(length);
+    for(int index = 0; index < length; index++)
+      poll_buffer_[poll_length_++] = (byte)string.charAt(index);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Enlarges the buffer of the POLL response built for a device.
+ *
+ * @param length the number of bytes to append.
+ */
+  protected void ensurePollCapacity(int length)
+  {
+    if(poll_length_ + length <= poll_buffer_.length)
+      return;
+    byte[] poll_buffer = new byte[Math.max(poll_buffer_.length * 2,poll_length_ + length)];
+    System.arraycopy(poll_buffer_,0,poll_buffer,0,poll_length_);
+    poll_buffer_ = poll_buffer;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the report is a POLL response (gpsd sends the class
+ * as first member).
+ *
+ * @param buffer the buffer holding the report.
+ * @param offset the offset of the report (its '{').
+ * @param length the length of the report.
+ * @return true if the report is a POLL response.
+ */
+  protected static boolean isPoll(byte[] buffer, int offset, int length)
+  {
+    int limit = offset + length;
+    int index = skipWhitespace(buffer,offset + 1,limit);
+    if((limit - index < CLASS_KEY.length) || !equals(CLASS_KEY,buffer,index,CLASS_KEY.length))
+      return(false);
+    index = skipWhitespace(buffer,index + CLASS_KEY.length,limit);
+    if((index >= limit) || (buffer[index] != ':'))
+      return(false);
+    index = skipWhitespace(buffer,index + 1,limit);
+    return((limit - index >= POLL_CLASS.length) && equals(POLL_CLASS,buffer,index,POLL_CLASS.length));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Skips whitespace.
+ *
+ * @param buffer the buffer.
+ * @param index the index to start at.
+ * @param limit the index after the last byte.
+ * @return the index of the first byte that is no whitespace.
+ */
+  protected static int skipWhitespace(byte[] buffer, int index, int limit)
+  {
+    while((index < limit) && (buffer[index] <= ' ') && (buffer[index] >= 0))
+      index++;
+    return(index);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the listener for a report: the listener of its device or,
+ * if it has no device, the default listener.
+ *
+ * @param buffer the buffer holding the report.
+ * @param offset the offset of the report.
+ * @param length the length of the report.
+ * @return the listener or null.
+ */
+  protected GpsdEndpointListener findListener(byte[] buffer, int offset, int length)
+  {
+    int start = findDevice(buffer,offset,length);
+    if(start < 0)
+      return(default_listener_);
+    int end = start;
+    int limit = offset + length;
+    while((end < limit) && (buffer[end] != '"') && (buffer[end] != '\\'))
+      end++;
+    return(getListener(buffer,start,end - start));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the listener of the device with the given path, asks the
+ * factory for the listener if the device is not known.
+ *
+ * @param buffer the buffer holding the path.
+ * @param start the index of the path.
+ * @param length the length of the path.
+ * @return the listener or null.
+ */
+  protected GpsdEndpointListener getListener(byte[] buffer, int start, int length)
+  {
+    byte[][] paths = paths_;
+    int index = last_device_;
+    if((index >= paths.length) || !equals(paths[index],buffer,start,length))
+    {
+      index = indexOf(buffer,start,length);
+      if(index < 0)
+      {
+        if(factory_ == null)
+          return(null);
+        String path = toString(buffer,start,length);
+        GpsdEndpointListener listener = factory_.createListener(path);
+        addDevice(path,listener);
+        index = indexOf(buffer,start,length);
+      }
+      last_device_ = index;
+    }
+    return(listeners_[index]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Finds the value of the "device" key in a JSON report.
+ *
+ * @param buffer the buffer holding the report.
+ * @param offset the offset of the report.
+ * @param length the length of the report.
+ * @return the index of the first character of the device path or -1
+ * if the report has no device.
+ */
+  protected static int findDevice(byte[] buffer, int offset, int length)
+  {
+    int limit = offset + length - DEVICE_KEY.length;
+    for(int index = offset; index < limit; index++)
+    {
+      if((buffer[index] != '"') || !equals(DEVICE_KEY,buffer,index,DEVICE_KEY.length))
+        continue;
+      index += DEVICE_KEY.length;
+      limit = offset + length;
+      while((index < limit) && ((buffer[index] == ' ') || (buffer[index] == ':')))
+        index++;
+      if((index < limit) && (buffer[index] == '"'))
+        return(index + 1);
+      return(-1);
+    }
+    return(-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the index of the device with the given path.
+ *
+ * @param buffer the buffer holding the path.
+ * @param start the index of the path.
+ * @param length the length of the path.
+ * @return the index or -1 if the device is not known.
+ */
+  protected int indexOf(byte[] buffer, int start, int length)
+  {
+    byte[][] paths = paths_;
+    for(int index = 0; index < paths.length; index++)
+    {
+      if(equals(paths[index],buffer,start,length))
+        return(index);
+    }
+    return(-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Compares a path with the bytes in a buffer.
+ *
+ * @param path the path.
+ * @param buffer the buffer.
+ * @param start the index of the bytes to compare.
+ * @param length the number of bytes to compare.
+ * @return true if the bytes are identical.
+ */
+  protected static boolean equals(byte[] path, byte[] buffer, int start, int length)
+  {
+    if(path.length != length)
+      return(false);
+    for(int index = 0; index < length; index++)
+    {
+      if(path[index] != buffer[start + index])
+        return(false);
+    }
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Converts a path to bytes (gpsd sends the paths as ASCII).
+ *
+ * @param path the path.
+ * @return the bytes.
+ */
+  protected static byte[] toBytes(String path)
+  {
+    byte[] bytes = new byte[path.length()];
+    for(int index = 0; index < bytes.length; index++)
+      bytes[index] = (byte)path.charAt(index);
+    return(bytes);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Converts the bytes of a path to a string.
+ *
+ * @param buffer the buffer.
+ * @param start the index of the path.
+ * @param length the length of the path.
+ * @return the path.
+ */
+  protected static String toString(byte[] buffer, int start, int length)
+  {
+    char[] chars = new char[length];
+    for(int index = 0; index < length; index++)
+      chars[index] = (char)(buffer[start + index] & 0xff);
+    return(new String(chars));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates the listeners of devices that are not known yet.
+ */
+  public static interface Factory
+  {
+//----------------------------------------------------------------------
+/**
+ * Creates the listener of a device (e.g. a new {@link
+ * GPSGpsdDataProcessor}). Called by the thread routing the lines.
+ *
+ * @param path the path of the device.
+ * @return the listener or null to drop the lines of the device.
+ */
+    public GpsdEndpointListener createListener(String path);
+  }
+}
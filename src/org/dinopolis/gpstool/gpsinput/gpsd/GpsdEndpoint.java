@@ -0,0 +1,289 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+
+//----------------------------------------------------------------------
+/**
+ * A gpsd daemon watched by a {@link GpsdClient}: its address, the
+ * state of the connection and the buffer the received data is split
+ * into lines in. The connection is handled by the selector thread of
+ * the client only; the getters may be called by any thread.
+ */
+
+public class GpsdEndpoint
+{
+  /** state: not connected, waiting for the next connection attempt */
+  public static final int STATE_DISCONNECTED = 0;
+  /** state: the connection is being established */
+  public static final int STATE_CONNECTING = 1;
+  /** state: connected, the data is read */
+  public static final int STATE_CONNECTED = 2;
+  /** state: removed from the client */
+  public static final int STATE_CLOSED = 3;
+  /** state: the host name is being resolved */
+  public static final int STATE_RESOLVING = 4;
+
+  protected String host_;
+  protected int port_;
+  protected boolean json_;
+  protected GpsdEndpointListener listener_;
+
+  protected volatile int state_ = STATE_DISCONNECTED;
+  /** the resolved address of the host or null (set by the resolver
+   * thread before the endpoint is handed back to the selector thread) */
+  protected InetAddress address_;
+  protected SocketChannel channel_;
+  protected SelectionKey key_;
+  /** the received data (in write mode: the data is before the position) */
+  protected ByteBuffer read_buffer_;
+  /** the maximum length of a line, longer lines are thrown away */
+  protected int max_line_length_;
+  /** the index in the read buffer where scanning continues */
+  protected int scan_pos_;
+  /** true if the rest of a line that was too long is thrown away */
+  protected boolean skipping_;
+  /** the command that is still to be written or null */
+  protected ByteBuffer write_buffer_;
+
+  /** the number of failed connection attempts since data was received */
+  protected int failures_;
+  /** the System.nanoTime() of the next connection attempt */
+  protected long next_connect_nanos_;
+  /** the System.nanoTime() data was received the last time */
+  protected long last_receive_nanos_;
+
+  protected volatile long connect_count_;
+  protected volatile long stall_count_;
+  protected volatile long byte_count_;
+  protected volatile long line_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates an endpoint.
+ *
+ * @param host the host of gpsd.
+ * @param port the port of gpsd.
+ * @param json if true, the JSON reports are watched, otherwise NMEA.
+ * @param listener the listener receiving the lines.
+ * @param buffer_size the initial size of the read buffer.
+ * @param max_line_length the maximum length of a line.
+ */
+  protected GpsdEndpoint(String host, int port, boolean json, GpsdEndpointListener listener,
+                         int buffer_size, int max_line_length)
+  {
+    host_ = host;
+    port_ = port;
+    json_ = json;
+    listener_ = listener;
+    read_buffer_ = ByteBuffer.allocate(buffer_size);
+    max_line_length_ = Math.max(max_line_length,buffer_size);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Splits the data in the read buffer into lines and passes the JSON
+ * reports and NMEA sentences to the listener. The rest of an
+ * incomplete line is moved to the start of the buffer; if the buffer
+ * is full, it is enlarged up to the maximum line length.
+ *
+ * @param timestamp the {@link System#nanoTime()} the data was
+ * received.
+ */
+  protected void scanLines(long timestamp)
+  {
+    byte[] data = read_buffer_.array();
+    int limit = read_buffer_.position();
+    int start = 0;
+    byte value;
+    for(int index = scan_pos_; index < limit; index++)
+    {
+      value = data[index];
+      if((value != 10) && (value != 13))
+        continue;
+      int length = index - start;
+      if(skipping_)
+        skipping_ = false;
+      else if((length > 0) && ((data[start] == '{') || (data[start] == '$') || (data[start] == '!')))
+      {
+        line_count_++;
+        try
+        {
+          listener_.gpsdLineReceived(this,data,start,length,timestamp);
+        }
+        catch(RuntimeException e)
+        {
+          System.out.println("ERROR: Exception thrown by gpsd endpoint listener:");
+          e.printStackTrace();
+        }
+      }
+      start = index + 1;
+    }
+
+    if(start > 0)
+    {
+      System.arraycopy(data,start,data,0,limit - start);
+      read_buffer_.position(limit - start);
+    }
+    scan_pos_ = read_buffer_.position();
+    if(read_buffer_.hasRemaining())
+      return;
+    if(read_buffer_.capacity() < max_line_length_)
+    {
+      ByteBuffer buffer = ByteBuffer.allocate(Math.min(read_buffer_.capacity() * 2,max_line_length_));
+      buffer.put(data,0,read_buffer_.position());
+      read_buffer_ = buffer;
+    }
+    else
+    {
+      System.err.println("ERROR: max. line length exceeded! (" + max_line_length_ + ")");
+      read_buffer_.clear();
+      scan_pos_ = 0;
+      skipping_ = true;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Resets the line buffer (e.g. after the connection was lost).
+ */
+  protected void resetBuffer()
+  {
+    read_buffer_.clear();
+    scan_pos_ = 0;
+    skipping_ = false;
+    write_buffer_ = null;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the host of gpsd.
+ *
+ * @return the host.
+ */
+  public String getHost()
+  {
+    return(host_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the port of gpsd.
+ *
+ * @return the port.
+ */
+  public int getPort()
+  {
+    return(port_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the JSON reports are watched (otherwise NMEA).
+ *
+ * @return true for JSON.
+ */
+  public boolean isJson()
+  {
+    return(json_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the listener receiving the lines.
+ *
+ * @return the listener.
+ */
+  public GpsdEndpointListener getListener()
+  {
+    return(listener_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the state of the connection.
+ *
+ * @return the state (e.g. {@link #STATE_CONNECTED}).
+ */
+  public int getState()
+  {
+    return(state_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns how often the connection was established.
+ *
+ * @return the number of connections.
+ */
+  public long getConnectCount()
+  {
+    return(connect_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns how often the connection was closed because no data was
+ * received for the stall timeout.
+ *
+ * @return the number of stalls.
+ */
+  public long getStallCount()
+  {
+    return(stall_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of bytes received.
+ *
+ * @return the number of bytes.
+ */
+  public long getByteCount()
+  {
+    return(byte_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of lines passed to the listener.
+ *
+ * @return the number of lines.
+ */
+  public long getLineCount()
+  {
+    return(line_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns a string representation of this endpoint.
+ *
+ * @return a string representation of this endpoint.
+ */
+  public String toString()
+  {
+    return("GpsdEndpoint[" + host_ + ":" + port_ + ", state=" + state_ + "]");
+  }
+}
@@ -0,0 +1,59 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+//----------------------------------------------------------------------
+/**
+ * Classes implementing this interface receive the lines (JSON reports
+ * or NMEA sentences) read by a {@link GpsdClient} from a gpsd
+ * endpoint. All methods are called by the selector thread of the
+ * client, so they must return quickly and must not block.
+ *
+ * @see GpsdClient#addEndpoint(String,int,boolean,GpsdEndpointListener)
+ */
+
+public interface GpsdEndpointListener
+{
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener about a line received from gpsd. The buffer is
+ * reused, so the line must be copied if it is needed after the call.
+ *
+ * @param endpoint the endpoint the line was received from.
+ * @param buffer the buffer holding the line.
+ * @param offset the offset of the line in the buffer.
+ * @param length the length of the line (without CR/LF).
+ * @param timestamp the {@link System#nanoTime()} the line was
+ * received.
+ */
+  public void gpsdLineReceived(GpsdEndpoint endpoint, byte[] buffer, int offset, int length,
+                               long timestamp);
+
+//----------------------------------------------------------------------
+/**
+ * Informs the listener that the connection to the endpoint was
+ * established or lost (closed by gpsd, failed or stalled).
+ *
+ * @param endpoint the endpoint.
+ * @param connected true if the connection was established.
+ */
+  public void gpsdConnectionChanged(GpsdEndpoint endpoint, boolean connected);
+}
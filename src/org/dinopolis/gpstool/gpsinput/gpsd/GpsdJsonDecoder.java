@@ -0,0 +1,1024 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+//----------------------------------------------------------------------
+/**
+ * Decodes the JSON reports of gpsd (TPV, SKY and GST) in a single pass
+ * over the bytes of a report. No tree, map or string is built: the
+ * known keys are recognized while scanning and their values are
+ * stored in primitive fields, all other keys and values are skipped.
+ * <p>
+ * The numeric values of a report are accessed by their key constant
+ * (e.g. {@link #LAT}), see {@link #has(int)} and {@link #get(int)};
+ * their meaning depends on the {@link #getReportClass() class} of the
+ * report (e.g. "lat" is the latitude in a TPV report and its standard
+ * deviation in a GST report). The satellites of a SKY report are kept
+ * in arrays that are reused for the next report. Of a POLL response
+ * only the class is recognized, the reports it holds are decoded one
+ * by one (see {@link GPSGpsdDataProcessor#processPoll(byte[],int,int)}).
+ * The boolean members of a WATCH object (e.g. the argument of a
+ * ?WATCH command) are accessed by {@link #hasFlag(int)} and {@link
+ * #getFlag(int,boolean)}.
+ * <p>
+ * This class is not thread safe, it is meant to be used by the thread
+ * decoding the reports.
+ *
+ * @see <a href="https://gpsd.gitlab.io/gpsd/gpsd_json.html">gpsd JSON protocol</a>
+ */
+
+public class GpsdJsonDecoder
+{
+  /** a report of another class */
+  public static final int CLASS_OTHER = 0;
+  /** a time-position-velocity report */
+  public static final int CLASS_TPV = 1;
+  /** a sky view report (dops and satellites) */
+  public static final int CLASS_SKY = 2;
+  /** a pseudorange noise report (error estimates) */
+  public static final int CLASS_GST = 3;
+  /** a poll response (holding TPV, GST and SKY reports) */
+  public static final int CLASS_POLL = 4;
+
+  /** latitude (TPV, degrees) or its standard deviation (GST, meters) */
+  public static final int LAT = 0;
+  /** longitude (TPV, degrees) or its standard deviation (GST, meters) */
+  public static final int LON = 1;
+  /** altitude (TPV, meters) or its standard deviation (GST, meters) */
+  public static final int ALT = 2;
+  /** altitude above the ellipsoid (TPV, meters) */
+  public static final int ALT_HAE = 3;
+  /** altitude above mean sea level (TPV, meters) */
+  public static final int ALT_MSL = 4;
+  /** speed over ground (TPV, meters per second) */
+  public static final int SPEED = 5;
+  /** course over ground (TPV, degrees) */
+  public static final int TRACK = 6;
+  /** climb rate (TPV, meters per second) */
+  public static final int CLIMB = 7;
+  /** the fix mode (TPV, 0 unknown, 1 no fix, 2 2D, 3 3D) */
+  public static final int MODE = 8;
+  /** the fix status (TPV, e.g. 2 for DGPS) */
+  public static final int STATUS = 9;
+  /** the horizontal position error (TPV, meters) */
+  public static final int EPH = 10;
+  /** the vertical position error (TPV, meters) */
+  public static final int EPV = 11;
+  /** the longitude error (TPV, meters) */
+  public static final int EPX = 12;
+  /** the latitude error (TPV, meters) */
+  public static final int EPY = 13;
+  /** the horizontal dilution of precision (SKY) */
+  public static final int HDOP = 14;
+  /** the vertical dilution of precision (SKY) */
+  public static final int VDOP = 15;
+  /** the position dilution of precision (SKY) */
+  public static final int PDOP = 16;
+  /** the rms of the pseudorange residuals (GST) */
+  public static final int RMS = 17;
+  /** the semi-major axis of the error ellipse (GST, meters) */
+  public static final int MAJOR = 18;
+  /** the semi-minor axis of the error ellipse (GST, meters) */
+  public static final int MINOR = 19;
+  /** the orientation of the error ellipse (GST, degrees) */
+  public static final int ORIENT = 20;
+
+  /** boolean value: watching enabled (WATCH) */
+  public static final int FLAG_ENABLE = 0;
+  /** boolean value: json reports wanted (WATCH) */
+  public static final int FLAG_JSON = 1;
+  /** boolean value: nmea sentences wanted (WATCH) */
+  public static final int FLAG_NMEA = 2;
+
+  /** the keys of the numeric values, the index is the key constant */
+  protected static final byte[][] NUMBER_KEYS = new byte[][]
+  { bytes("lat"), bytes("lon"), bytes("alt"), bytes("altHAE"), bytes("altMSL"),
+    bytes("speed"), bytes("track"), bytes("climb"), bytes("mode"), bytes("status"),
+    bytes("eph"), bytes("epv"), bytes("epx"), bytes("epy"),
+    bytes("hdop"), bytes("vdop"), bytes("pdop"),
+    bytes("rms"), bytes("major"), bytes("minor"), bytes("orient") };
+  /** the keys of the boolean values, the index is the flag constant */
+  protected static final byte[][] BOOLEAN_KEYS = new byte[][]
+  { bytes("enable"), bytes("json"), bytes("nmea") };
+  protected static final byte[] TRUE = bytes("true");
+  protected static final byte[] FALSE = bytes("false");
+
+  protected static final byte[] CLASS_KEY = bytes("class");
+  protected static final byte[] TIME_KEY = bytes("time");
+  protected static final byte[] SATELLITES_KEY = bytes("satellites");
+  protected static final byte[][] CLASS_NAMES = new byte[][]
+  { null, bytes("TPV"), bytes("SKY"), bytes("GST"), bytes("POLL") };
+
+  protected static final byte[] PRN_KEY = bytes("PRN");
+  protected static final byte[] ELEVATION_KEY = bytes("el");
+  protected static final byte[] AZIMUTH_KEY = bytes("az");
+  protected static final byte[] SNR_KEY = bytes("ss");
+  protected static final byte[] USED_KEY = bytes("used");
+  protected static final byte[] GNSS_ID_KEY = bytes("gnssid");
+
+  /** exact powers of ten (as doubles) */
+  protected static final double[] POWERS_OF_TEN = new double[]
+  { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+    1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  protected static final int INITIAL_SATELLITES = 64;
+  protected static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+  protected byte[] buffer_;
+  /** the index of the next byte to scan */
+  protected int pos_;
+  protected int end_;
+  /** the start of the last string scanned */
+  protected int string_start_;
+
+  protected int report_class_;
+  protected double[] values_ = new double[NUMBER_KEYS.length];
+  /** the bits (1 << key) of the numeric values present */
+  protected int present_;
+  /** the bits (1 << flag) of the boolean values present */
+  protected int flags_present_;
+  /** the bits (1 << flag) of the boolean values that are true */
+  protected int flags_;
+
+  protected int year_;
+  protected int month_;
+  protected int day_;
+  protected int time_of_day_;
+
+  protected boolean satellites_present_;
+  protected int satellite_count_;
+  protected int[] prn_ = new int[INITIAL_SATELLITES];
+  protected float[] elevation_ = new float[INITIAL_SATELLITES];
+  protected float[] azimuth_ = new float[INITIAL_SATELLITES];
+  protected int[] snr_ = new int[INITIAL_SATELLITES];
+  protected boolean[] used_ = new boolean[INITIAL_SATELLITES];
+  protected int[] gnss_id_ = new int[INITIAL_SATELLITES];
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a report.
+ *
+ * @param buffer the buffer holding the report.
+ * @param offset the offset of the report (its '{').
+ * @param length the length of the report.
+ * @return the class of the report (e.g. {@link #CLASS_TPV}) or -1 if
+ * the report is no valid JSON object.
+ */
+  public int decode(byte[] buffer, int offset, int length)
+  {
+    buffer_ = buffer;
+    pos_ = offset;
+    end_ = offset + length;
+    report_class_ = CLASS_OTHER;
+    present_ = 0;
+    flags_present_ = 0;
+    flags_ = 0;
+    time_of_day_ = -1;
+    satellites_present_ = false;
+    satellite_count_ = 0;
+
+    skipWhitespace();
+    if((pos_ >= end_) || (buffer[pos_] != '{'))
+      return(-1);
+    pos_++;
+    if(!decodeReportMembers())
+      return(-1);
+    return(report_class_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes the members of the report object (after the '{').
+ *
+ * @return false on a syntax error.
+ */
+  protected boolean decodeReportMembers()
+  {
+    skipWhitespace();
+    if((pos_ < end_) && (buffer_[pos_] == '}'))
+    {
+      pos_++;
+      return(true);
+    }
+    while(true)
+    {
+      if(!scanString())
+        return(false);
+      int key_start = string_start_;
+      int key_length = pos_ - 1 - key_start;
+      if(!skipColon())
+        return(false);
+
+      int key = findNumberKey(key_start,key_length);
+      if(key >= 0)
+      {
+        double value = decodeNumber();
+        if(Double.isNaN(value))
+        {
+          if(!skipValue())
+            return(false);
+        }
+        else
+        {
+          values_[key] = value;
+          present_ |= 1 << key;
+        }
+      }
+      else if(keyEquals(key_start,key_length,CLASS_KEY))
+      {
+        if(!scanString())
+          return(false);
+        int name_length = pos_ - 1 - string_start_;
+        for(int index = 1; index < CLASS_NAMES.length; index++)
+        {
+          if(keyEquals(string_start_,name_length,CLASS_NAMES[index]))
+            report_class_ = index;
+        }
+      }
+      else if(keyEquals(key_start,key_length,TIME_KEY))
+      {
+        if((pos_ < end_) && (buffer_[pos_] == '"'))
+        {
+          if(!scanString())
+            return(false);
+          decodeTime(string_start_,pos_ - 1);
+        }
+        else
+        {
+              // gpsd before 3.0 (protocol 3.1) sends seconds since 1970
+          double seconds = decodeNumber();
+          if(Double.isNaN(seconds))
+          {
+            if(!skipValue())
+              return(false);
+          }
+          else
+            decodeEpochTime(seconds);
+        }
+      }
+      else if(keyEquals(key_start,key_length,SATELLITES_KEY))
+      {
+        if(!decodeSatellites())
+          return(false);
+      }
+      else if((key = findBooleanKey(key_start,key_length)) >= 0)
+      {
+        if(literalEquals(TRUE))
+        {
+          flags_present_ |= 1 << key;
+          flags_ |= 1 << key;
+        }
+        else if(literalEquals(FALSE))
+          flags_present_ |= 1 << key;
+        else if(!skipValue())
+          return(false);
+      }
+      else if(!skipValue())
+        return(false);
+
+      skipWhitespace();
+      if(pos_ >= end_)
+        return(false);
+      byte data = buffer_[pos_++];
+      if(data == '}')
+        return(true);
+      if(data != ',')
+        return(false);
+      skipWhitespace();
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes the array of satellites of a SKY report.
+ *
+ * @return false on a syntax error.
+ */
+  protected boolean decodeSatellites()
+  {
+    if((pos_ >= end_) || (buffer_[pos_] != '['))
+      return(skipValue());
+    pos_++;
+    satellites_present_ = true;
+    skipWhitespace();
+    if((pos_ < end_) && (buffer_[pos_] == ']'))
+    {
+      pos_++;
+      return(true);
+    }
+    while(true)
+    {
+      skipWhitespace();
+      if((pos_ >= end_) || (buffer_[pos_] != '{'))
+        return(false);
+      pos_++;
+      if(!decodeSatellite())
+        return(false);
+      skipWhitespace();
+      if(pos_ >= end_)
+        return(false);
+      byte data = buffer_[pos_++];
+      if(data == ']')
+        return(true);
+      if(data != ',')
+        return(false);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a satellite object (after the '{').
+ *
+ * @return false on a syntax error.
+ */
+  protected boolean decodeSatellite()
+  {
+    if(satellite_count_ == prn_.length)
+      growSatellites();
+    int index = satellite_count_;
+    prn_[index] = -1;
+    elevation_[index] = Float.NaN;
+    azimuth_[index] = Float.NaN;
+    snr_[index] = 0;
+    used_[index] = false;
+    gnss_id_[index] = -1;
+
+    skipWhitespace();
+    if((pos_ < end_) && (buffer_[pos_] == '}'))
+    {
+      pos_++;
+      return(true);
+    }
+    while(true)
+    {
+      if(!scanString())
+        return(false);
+      int key_start = string_start_;
+      int key_length = pos_ - 1 - key_start;
+      if(!skipColon())
+        return(false);
+
+      if(keyEquals(key_start,key_length,USED_KEY))
+      {
+        used_[index] = (pos_ < end_) && (buffer_[pos_] == 't');
+        if(!skipValue())
+          return(false);
+      }
+      else
+      {
+        double value = Double.NaN;
+        boolean known = true;
+        if(keyEquals(key_start,key_length,PRN_KEY)
+           || keyEquals(key_start,key_length,ELEVATION_KEY)
+           || keyEquals(key_start,key_length,AZIMUTH_KEY)
+           || keyEquals(key_start,key_length,SNR_KEY)
+           || keyEquals(key_start,key_length,GNSS_ID_KEY))
+          value = decodeNumber();
+        else
+          known = false;
+        if(Double.isNaN(value))
+        {
+          if(!skipValue())
+            return(false);
+        }
+        if(known && !Double.isNaN(value))
+        {
+          switch(buffer_[key_start])
+          {
+          case 'P':
+            prn_[index] = (int)value;
+            break;
+          case 'e':
+            elevation_[index] = (float)value;
+            break;
+          case 'a':
+            azimuth_[index] = (float)value;
+            break;
+          case 's':
+            snr_[index] = (int)Math.round(value);
+            break;
+          default:
+            gnss_id_[index] = (int)value;
+          }
+        }
+      }
+
+      skipWhitespace();
+      if(pos_ >= end_)
+        return(false);
+      byte data = buffer_[pos_++];
+      if(data == '}')
+      {
+        if(prn_[index] >= 0)
+          satellite_count_++;
+        return(true);
+      }
+      if(data != ',')
+        return(false);
+      skipWhitespace();
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes an ISO 8601 time ("2010-04-30T11:48:20.10Z").
+ *
+ * @param start the index of the first character.
+ * @param end the index after the last character.
+ */
+  protected void decodeTime(int start, int end)
+  {
+    if((end - start < 19) || (buffer_[start + 4] != '-') || (buffer_[start + 10] != 'T'))
+      return;
+    int year = digits(start,4);
+    int month = digits(start + 5,2);
+    int day = digits(start + 8,2);
+    int hours = digits(start + 11,2);
+    int minutes = digits(start + 14,2);
+    int seconds = digits(start + 17,2);
+    if((year < 0) || (month < 1) || (month > 12) || (day < 1) || (day > 31)
+       || (hours < 0) || (minutes < 0) || (seconds < 0))
+      return;
+    int millis = 0;
+    int index = start + 19;
+    if((index < end) && (buffer_[index] == '.'))
+    {
+      int factor = 100;
+      for(index++; (index < end) && (buffer_[index] >= '0') && (buffer_[index] <= '9'); index++)
+      {
+        millis += (buffer_[index] - '0') * factor;
+        factor /= 10;
+      }
+    }
+    year_ = year;
+    month_ = month;
+    day_ = day;
+    time_of_day_ = ((hours * 60 + minutes) * 60 + seconds) * 1000 + millis;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a time given as seconds since 1970-01-01 UTC (as sent by
+ * older gpsd versions).
+ *
+ * @param seconds the seconds since 1970.
+ */
+  protected void decodeEpochTime(double seconds)
+  {
+    if((seconds < 0) || (seconds > 1e11))
+      return;
+    long millis = (long)(seconds * 1000.0 + 0.5);
+    long days = millis / MILLIS_PER_DAY;
+    int time_of_day = (int)(millis - days * MILLIS_PER_DAY);
+
+        // civil date of the days since 1970 (proleptic gregorian):
+    long shifted = days + 719468; // days since 0000-03-01
+    long era = shifted / 146097;
+    long day_of_era = shifted - era * 146097;
+    long year_of_era = (day_of_era - day_of_era / 1460 + day_of_era / 36524
+                        - day_of_era / 146096) / 365;
+    long day_of_year = day_of_era - (365 * year_of_era + year_of_era / 4 - year_of_era / 100);
+    long month_index = (5 * day_of_year + 2) / 153; // 0 is march
+    int day = (int)(day_of_year - (153 * month_index + 2) / 5 + 1);
+    int month = (int)(month_index < 10 ? month_index + 3 : month_index - 9);
+    int year = (int)(year_of_era + era * 400 + (month <= 2 ? 1 : 0));
+
+    year_ = year;
+    month_ = month;
+    day_ = day;
+    time_of_day_ = time_of_day;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a number of decimal digits.
+ *
+ * @param start the index of the first digit.
+ * @param count the number of digits.
+ * @return the value or -1 if a character is no digit.
+ */
+  protected int digits(int start, int count)
+  {
+    int value = 0;
+    for(int index = start; index < start + count; index++)
+    {
+      int digit = buffer_[index] - '0';
+      if((digit < 0) || (digit > 9))
+        return(-1);
+      value = value * 10 + digit;
+    }
+    return(value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a JSON number at the current position.
+ *
+ * @return the value or NaN if there is no number (the position is not
+ * changed then).
+ */
+  protected double decodeNumber()
+  {
+    int index = pos_;
+    boolean negative = false;
+    if((index < end_) && (buffer_[index] == '-'))
+    {
+      negative = true;
+      index++;
+    }
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean fraction = false;
+    int start = index;
+    byte data;
+    for(; index < end_; index++)
+    {
+      data = buffer_[index];
+      if((data >= '0') && (data <= '9'))
+      {
+        if(digits < 18)
+        {
+          mantissa = mantissa * 10 + (data - '0');
+          if(mantissa != 0)
+            digits++;
+          if(fraction)
+            exponent--;
+        }
+        else if(!fraction)
+          exponent++;
+      }
+      else if((data == '.') && !fraction)
+        fraction = true;
+      else
+        break;
+    }
+    if((index == start) || ((index == start + 1) && fraction))
+      return(Double.NaN);
+
+    if((index < end_) && ((buffer_[index] == 'e') || (buffer_[index] == 'E')))
+    {
+      index++;
+      boolean negative_exponent = false;
+      if((index < end_) && ((buffer_[index] == '-') || (buffer_[index] == '+')))
+        negative_exponent = buffer_[index++] == '-';
+      int value = 0;
+      for(; (index < end_) && (buffer_[index] >= '0') && (buffer_[index] <= '9'); index++)
+        value = Math.min(value * 10 + (buffer_[index] - '0'),1000);
+      exponent += negative_exponent ? -value : value;
+    }
+    pos_ = index;
+
+    double value = mantissa;
+    if(exponent < 0)
+    {
+      if(-exponent < POWERS_OF_TEN.length)
+        value = value / POWERS_OF_TEN[-exponent];
+      else
+        value = value / Math.pow(10,-exponent);
+    }
+    else if(exponent > 0)
+    {
+      if(exponent < POWERS_OF_TEN.length)
+        value = value * POWERS_OF_TEN[exponent];
+      else
+        value = value * Math.pow(10,exponent);
+    }
+    return(negative ? -value : value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Scans a string at the current position. Afterwards the content
+ * starts at <code>string_start_</code> and ends before the closing
+ * quote at <code>pos_ - 1</code>. Escapes are not resolved.
+ *
+ * @return false if there is no string.
+ */
+  protected boolean scanString()
+  {
+    if((pos_ >= end_) || (buffer_[pos_] != '"'))
+      return(false);
+    string_start_ = ++pos_;
+    byte data;
+    while(pos_ < end_)
+    {
+      data = buffer_[pos_++];
+      if(data == '"')
+        return(true);
+      if(data == '\\')
+        pos_++;
+    }
+    return(false);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Skips the ':' between key and value and the whitespace around it.
+ *
+ * @return false if there is no ':'.
+ */
+  protected boolean skipColon()
+  {
+    skipWhitespace();
+    if((pos_ >= end_) || (buffer_[pos_] != ':'))
+      return(false);
+    pos_++;
+    skipWhitespace();
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Skips a value (string, number, literal, object or array).
+ *
+ * @return false on a syntax error.
+ */
+  protected boolean skipValue()
+  {
+    if(pos_ >= end_)
+      return(false);
+    byte data = buffer_[pos_];
+    if(data == '"')
+      return(scanString());
+    if((data == '{') || (data == '['))
+    {
+      int depth = 0;
+      while(pos_ < end_)
+      {
+        data = buffer_[pos_];
+        if(data == '"')
+        {
+          if(!scanString())
+            return(false);
+          continue;
+        }
+        pos_++;
+        if((data == '{') || (data == '['))
+          depth++;
+        else if(((data == '}') || (data == ']')) && (--depth == 0))
+          return(true);
+      }
+      return(false);
+    }
+    int start = pos_;
+    while((pos_ < end_) && ((data = buffer_[pos_]) != ',') && (data != '}') && (data != ']')
+          && (data > ' '))
+      pos_++;
+    return(pos_ > start);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Skips whitespace.
+ */
+  protected void skipWhitespace()
+  {
+    while((pos_ < end_) && (buffer_[pos_] <= ' ') && (buffer_[pos_] >= 0))
+      pos_++;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the key constant of a numeric value.
+ *
+ * @param start the start of the key.
+ * @param length the length of the key.
+ * @return the key constant or -1 if the key is unknown.
+ */
+  protected int findNumberKey(int start, int length)
+  {
+    for(int key = 0; key < NUMBER_KEYS.length; key++)
+    {
+      if(keyEquals(start,length,NUMBER_KEYS[key]))
+        return(key);
+    }
+    return(-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the flag constant of a boolean value.
+ *
+ * @param start the start of the key.
+ * @param length the length of the key.
+ * @return the flag constant or -1 if the key is unknown.
+ */
+  protected int findBooleanKey(int start, int length)
+  {
+    for(int key = 0; key < BOOLEAN_KEYS.length; key++)
+    {
+      if(keyEquals(start,length,BOOLEAN_KEYS[key]))
+        return(key);
+    }
+    return(-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Skips the given literal if it is at the current position.
+ *
+ * @param literal the literal (e.g. true).
+ * @return true if the literal was found (and skipped).
+ */
+  protected boolean literalEquals(byte[] literal)
+  {
+    int end = pos_ + literal.length;
+    if(end > end_)
+      return(false);
+    if(!keyEquals(pos_,literal.length,literal))
+      return(false);
+    if((end < end_) && (buffer_[end] != ',') && (buffer_[end] != '}') && (buffer_[end] > ' '))
+      return(false);
+    pos_ = end;
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Compares a key in the buffer with a known key.
+ *
+ * @param start the start of the key.
+ * @param length the length of the key.
+ * @param key the known key.
+ * @return true if the keys are equal.
+ */
+  protected boolean keyEquals(int start, int length, byte[] key)
+  {
+    if(length != key.length)
+      return(false);
+    for(int index = 0; index < length; index++)
+    {
+      if(buffer_[start + index] != key[index])
+        return(false);
+    }
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Enlarges the satellite arrays.
+ */
+  protected void growSatellites()
+  {
+    int size = prn_.length * 2;
+    int[] prn = new int[size];
+    float[] elevation = new float[size];
+    float[] azimuth = new float[size];
+    int[] snr = new int[size];
+    boolean[] used = new boolean[size];
+    int[] gnss_id = new int[size];
+    System.arraycopy(prn_,0,prn,0,satellite_count_);
+    System.arraycopy(elevation_,0,elevation,0,satellite_count_);
+    System.arraycopy(azimuth_,0,azimuth,0,satellite_count_);
+    System.arraycopy(snr_,0,snr,0,satellite_count_);
+    System.arraycopy(used_,0,used,0,satellite_count_);
+    System.arraycopy(gnss_id_,0,gnss_id,0,satellite_count_);
+    prn_ = prn;
+    elevation_ = elevation;
+    azimuth_ = azimuth;
+    snr_ = snr;
+    used_ = used;
+    gnss_id_ = gnss_id;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Converts an ASCII string to bytes.
+ *
+ * @param string the string.
+ * @return the bytes.
+ */
+  protected static byte[] bytes(String string)
+  {
+    byte[] bytes = new byte[string.length()];
+    for(int index = 0; index < bytes.length; index++)
+      bytes[index] = (byte)string.charAt(index);
+    return(bytes);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the class of the last report.
+ *
+ * @return the class (e.g. {@link #CLASS_TPV}).
+ */
+  public int getReportClass()
+  {
+    return(report_class_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the last report contained the given numeric value.
+ *
+ * @param key the key constant (e.g. {@link #LAT}).
+ * @return true if the value is present.
+ */
+  public boolean has(int key)
+  {
+    return((present_ & (1 << key)) != 0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns a numeric value of the last report.
+ *
+ * @param key the key constant (e.g. {@link #LAT}).
+ * @return the value or NaN if it is not present.
+ */
+  public double get(int key)
+  {
+    if((present_ & (1 << key)) == 0)
+      return(Double.NaN);
+    return(values_[key]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the last report contained the given boolean value.
+ *
+ * @param flag the flag constant (e.g. {@link #FLAG_ENABLE}).
+ * @return true if the value is present.
+ */
+  public boolean hasFlag(int flag)
+  {
+    return((flags_present_ & (1 << flag)) != 0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns a boolean value of the last report.
+ *
+ * @param flag the flag constant (e.g. {@link #FLAG_ENABLE}).
+ * @param default_value the value returned if it is not present.
+ * @return the value.
+ */
+  public boolean getFlag(int flag, boolean default_value)
+  {
+    if((flags_present_ & (1 << flag)) == 0)
+      return(default_value);
+    return((flags_ & (1 << flag)) != 0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the UTC time of day of the last report.
+ *
+ * @return the milliseconds since midnight or -1 if the report
+ * contained no time.
+ */
+  public int getTimeOfDay()
+  {
+    return(time_of_day_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the year of the time of the last report (only valid if
+ * {@link #getTimeOfDay()} is not -1).
+ *
+ * @return the year.
+ */
+  public int getYear()
+  {
+    return(year_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the month of the time of the last report (only valid if
+ * {@link #getTimeOfDay()} is not -1).
+ *
+ * @return the month (1 to 12).
+ */
+  public int getMonth()
+  {
+    return(month_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the day of the time of the last report (only valid if
+ * {@link #getTimeOfDay()} is not -1).
+ *
+ * @return the day of the month.
+ */
+  public int getDay()
+  {
+    return(day_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the last report contained a satellite array (it
+ * may be empty).
+ *
+ * @return true if satellites are present.
+ */
+  public boolean hasSatellites()
+  {
+    return(satellites_present_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of satellites of the last report.
+ *
+ * @return the number of satellites.
+ */
+  public int getSatelliteCount()
+  {
+    return(satellite_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the prn of a satellite.
+ *
+ * @param index the index of the satellite.
+ * @return the prn.
+ */
+  public int getSatellitePRN(int index)
+  {
+    return(prn_[index]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the elevation of a satellite.
+ *
+ * @param index the index of the satellite.
+ * @return the elevation in degrees or NaN if unknown.
+ */
+  public float getSatelliteElevation(int index)
+  {
+    return(elevation_[index]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the azimuth of a satellite.
+ *
+ * @param index the index of the satellite.
+ * @return the azimuth in degrees or NaN if unknown.
+ */
+  public float getSatelliteAzimuth(int index)
+  {
+    return(azimuth_[index]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the signal strength of a satellite.
+ *
+ * @param index the index of the satellite.
+ * @return the signal to noise ratio in dBHz (0 if not tracked).
+ */
+  public int getSatelliteSNR(int index)
+  {
+    return(snr_[index]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if a satellite is used for the fix.
+ *
+ * @param index the index of the satellite.
+ * @return true if the satellite is used.
+ */
+  public boolean isSatelliteUsed(int index)
+  {
+    return(used_[index]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the gnss id of a satellite (0 GPS, 1 SBAS, 2 Galileo, 3
+ * BeiDou, 4 IMES, 5 QZSS, 6 GLONASS).
+ *
+ * @param index the index of the satellite.
+ * @return the gnss id or -1 if not reported.
+ */
+  public int getSatelliteGnssId(int index)
+  {
+    return(gnss_id_[index]);
+  }
+}
@@ -0,0 +1,118 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+import java.io.InputStream;
+import org.dinopolis.gpstool.gpsinput.nmea.NMEA0183Framer;
+
+//----------------------------------------------------------------------
+/**
+ * Splits the stream of a gpsd connection into lines: JSON reports
+ * (starting with '{') and NMEA sentences (starting with '$' or '!'),
+ * which gpsd sends if NMEA output is enabled. Other lines are thrown
+ * away. A '$' or '{' inside a JSON report does not start a new line.
+ * The checksum is only calculated for NMEA sentences.
+ */
+
+public class GpsdJsonFramer extends NMEA0183Framer
+{
+  /** the default maximum length of a line (SKY reports may be long) */
+  public static final int DEFAULT_MAX_LINE_LENGTH = 32768;
+
+  /** true if the current line is a JSON report */
+  protected boolean json_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a framer reading from the given stream.
+ *
+ * @param in_stream the stream to read from.
+ */
+  public GpsdJsonFramer(InputStream in_stream)
+  {
+    super(in_stream,DEFAULT_BUFFER_SIZE,DEFAULT_MAX_LINE_LENGTH);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Scans the data in the buffer for the next complete line.
+ *
+ * @return true if a complete line was found.
+ */
+  protected boolean scanBuffer()
+  {
+    byte[] data = buffer_.array();
+    int limit = buffer_.limit();
+    byte value;
+    while(scan_pos_ < limit)
+    {
+      value = data[scan_pos_];
+      if((value == 13) || (value == 10))
+      {
+        int start = sentence_start_;
+        sentence_start_ = -1;
+        if((start >= 0) && (scan_pos_ - start > 1))
+        {
+          sentence_offset_ = start;
+          sentence_length_ = scan_pos_ - start;
+          calculated_checksum_ = json_ ? -1 : (checksum_ & 0xff);
+          sentence_count_++;
+          scan_pos_++;
+          return(true);
+        }
+        if(start >= 0)
+          garbage_byte_count_ += scan_pos_ - start;
+      }
+      else if((sentence_start_ < 0) || (!json_ && (value == '$')))
+      {
+        if((value == '{') || (value == '$') || (value == '!'))
+        {
+          if(sentence_start_ >= 0)
+          {
+            resync_count_++;
+            garbage_byte_count_ += scan_pos_ - sentence_start_;
+          }
+          sentence_start_ = scan_pos_;
+          json_ = value == '{';
+          checksum_found_ = false;
+          checksum_ = 0;
+        }
+        else
+          garbage_byte_count_++;
+      }
+      else if(!json_ && !checksum_found_)
+      {
+        if(value == '*')
+          checksum_found_ = true;
+        else
+          checksum_ ^= value;
+      }
+      scan_pos_++;
+
+      if((sentence_start_ >= 0) && (scan_pos_ - sentence_start_ > max_sentence_length_))
+      {
+        System.err.println("ERROR: max. line length exceeded! (" + max_sentence_length_ + ")");
+        garbage_byte_count_ += scan_pos_ - sentence_start_;
+        sentence_start_ = -1;
+      }
+    }
+    return(false);
+  }
+}
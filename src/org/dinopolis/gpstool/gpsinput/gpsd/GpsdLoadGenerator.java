@@ -0,0 +1,446 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Hashtable;
+import org.dinopolis.gpstool.gpsinput.GPSDataProcessor;
+import org.dinopolis.gpstool.gpsinput.GPSFix;
+import org.dinopolis.gpstool.gpsinput.GPSFixListener;
+import org.dinopolis.gpstool.gpsinput.GPSNetworkGpsdDevice;
+import org.dinopolis.gpstool.gpsinput.GPSRawByteListener;
+import org.dinopolis.gpstool.gpsinput.nmea.GPSNmeaDataProcessor;
+
+//----------------------------------------------------------------------
+/**
+ * A repeatable benchmark of the gpsd ingest path that needs no gps
+ * hardware: a {@link GpsdMockServer} replays a capture file to a number
+ * of concurrent clients, every client being a data processor reading
+ * from gpsd, and the throughput and the latency (from the moment the
+ * mock sent a sentence until the processor decoded it) are reported
+ * as seen by the clients.
+ * <p>
+ * The clients either use a {@link GPSNetworkGpsdDevice} with a {@link
+ * GPSNmeaDataProcessor} each (two threads per client) or share one
+ * {@link GpsdClient} feeding a {@link GPSGpsdDataProcessor} per client
+ * (option <code>-nio</code>, reconnects after disconnects). Run
+ * without arguments for the options.
+ */
+
+public class GpsdLoadGenerator
+{
+  protected static final long NANOS_PER_MILLI = 1000L * 1000;
+
+//----------------------------------------------------------------------
+/**
+ * Runs the benchmark.
+ *
+ * @param args the options and the capture file.
+ * @exception Exception if the benchmark fails.
+ */
+  public static void main(String[] args)
+    throws Exception
+  {
+    int clients = 1;
+    double speed = 1.0;
+    long duration = 10;
+    long warmup = 2;
+    long latency = 0;
+    long jitter = 0;
+    double disconnect = 0;
+    double garbage = 0;
+    boolean nio = false;
+    String host = null;
+    int port = GpsdServer.DEFAULT_PORT;
+    String capture = null;
+    try
+    {
+      for(int index = 0; index < args.length; index++)
+      {
+        String arg = args[index];
+        if(arg.equals("-clients"))
+          clients = Integer.parseInt(args[++index]);
+        else if(arg.equals("-speed"))
+          speed = Double.parseDouble(args[++index]);
+        else if(arg.equals("-duration"))
+          duration = Long.parseLong(args[++index]);
+        else if(arg.equals("-warmup"))
+          warmup = Long.parseLong(args[++index]);
+        else if(arg.equals("-latency"))
+          latency = Long.parseLong(args[++index]);
+        else if(arg.equals("-jitter"))
+          jitter = Long.parseLong(args[++index]);
+        else if(arg.equals("-disconnect"))
+          disconnect = Double.parseDouble(args[++index]);
+        else if(arg.equals("-garbage"))
+          garbage = Double.parseDouble(args[++index]);
+        else if(arg.equals("-nio"))
+          nio = true;
+        else if(arg.equals("-host"))
+          host = args[++index];
+        else if(arg.equals("-port"))
+          port = Integer.parseInt(args[++index]);
+        else if(!arg.startsWith("-") && (capture == null))
+          capture = arg;
+        else
+          throw new IllegalArgumentException(arg);
+      }
+    }
+    catch(RuntimeException e)
+    {
+      capture = null;
+    }
+    if((capture == null) && (host == null))
+    {
+      printUsage();
+      return;
+    }
+
+    GpsdMockServer mock = null;
+    if(host == null)
+    {
+      mock = new GpsdMockServer(new File(capture));
+      mock.setSpeed(speed);
+      mock.setLatency(latency,jitter);
+      mock.setDisconnectProbability(disconnect);
+      mock.setGarbageProbability(garbage);
+      mock.setStamping(true);
+      mock.start(0);
+      host = "localhost";
+      port = mock.getPort();
+    }
+
+    Probe[] probes = new Probe[clients];
+    GPSDataProcessor[] processors = new GPSDataProcessor[clients];
+    GpsdClient client = null;
+    if(nio)
+    {
+      client = new GpsdClient();
+      client.setBackoff(10,1000);
+      client.start();
+    }
+    for(int index = 0; index < clients; index++)
+    {
+      probes[index] = new Probe();
+      if(nio)
+      {
+        GPSGpsdDataProcessor processor = new GPSGpsdDataProcessor();
+        processors[index] = processor;
+        processor.addGPSRawByteListener(probes[index]);
+        processor.addGPSFixListener(probes[index]);
+        client.addEndpoint(host,port,false,processor);
+      }
+      else
+      {
+        Hashtable environment = new Hashtable();
+        environment.put(GPSNetworkGpsdDevice.GPSD_HOST_KEY,host);
+        environment.put(GPSNetworkGpsdDevice.GPSD_PORT_KEY,new Integer(port));
+        GPSNetworkGpsdDevice device = new GPSNetworkGpsdDevice();
+        device.init(environment);
+        GPSNmeaDataProcessor processor = new GPSNmeaDataProcessor();
+        processors[index] = processor;
+        processor.addGPSRawByteListener(probes[index]);
+        processor.addGPSFixListener(probes[index]);
+        processor.setGPSDevice(device);
+        processor.open();
+      }
+    }
+
+    Thread.sleep(warmup * 1000);
+    for(int index = 0; index < clients; index++)
+      probes[index].recording_ = true;
+    long start = System.nanoTime();
+    long mock_sentences = (mock != null) ? mock.getSentenceCount() : 0;
+    Thread.sleep(duration * 1000);
+    for(int index = 0; index < clients; index++)
+      probes[index].recording_ = false;
+    double seconds = (System.nanoTime() - start) / 1e9;
+    if(mock != null)
+      mock_sentences = mock.getSentenceCount() - mock_sentences;
+
+    Probe total = new Probe();
+    for(int index = 0; index < clients; index++)
+      total.add(probes[index]);
+    System.out.println("clients:       " + clients + (nio ? " (one GpsdClient)" : " (GPSNetworkGpsdDevice)"));
+    System.out.println("duration:      " + format(seconds,1) + " s");
+    if(mock != null)
+    {
+      System.out.println("sent:          " + mock_sentences + " sentences ("
+                         + format(mock_sentences / seconds,0) + "/s), "
+                         + mock.getConnectionCount() + " connections, "
+                         + mock.getDisconnectCount() + " disconnects, "
+                         + mock.getGarbageCount() + " garbage lines");
+    }
+    System.out.println("received:      " + total.sentences_ + " sentences ("
+                       + format(total.sentences_ / seconds,0) + "/s), "
+                       + format(total.bytes_ / seconds / 1024,1) + " KB/s");
+    System.out.println("fixes:         " + total.fixes_ + " (" + format(total.fixes_ / seconds,0) + "/s)");
+    Histogram histogram = total.latency_;
+    if(histogram.getCount() == 0)
+      System.out.println("latency:       no stamps received");
+    else
+    {
+      System.out.println("latency (us):  p50 " + histogram.getPercentile(50)
+                         + ", p90 " + histogram.getPercentile(90)
+                         + ", p99 " + histogram.getPercentile(99)
+                         + ", p99.9 " + histogram.getPercentile(99.9)
+                         + ", max " + histogram.getMax()
+                         + " (" + histogram.getCount() + " samples)");
+    }
+
+    if(client != null)
+      client.close();
+    else
+    {
+      for(int index = 0; index < clients; index++)
+        processors[index].close();
+    }
+    if(mock != null)
+      mock.close();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Prints the options.
+ */
+  protected static void printUsage()
+  {
+    System.out.println("usage: GpsdLoadGenerator [options] <capture file>");
+    System.out.println("  -clients <n>        number of concurrent clients (1)");
+    System.out.println("  -speed <factor>     replay speed, e.g. 1000 (1)");
+    System.out.println("  -duration <s>       measured time in seconds (10)");
+    System.out.println("  -warmup <s>         time before measuring in seconds (2)");
+    System.out.println("  -latency <ms>       delay added to every sentence (0)");
+    System.out.println("  -jitter <ms>        maximum random delay added (0)");
+    System.out.println("  -disconnect <p>     probability of a disconnect per sentence (0)");
+    System.out.println("  -garbage <p>        probability of a garbage line per sentence (0)");
+    System.out.println("  -nio                clients share one GpsdClient");
+    System.out.println("  -host <host>        use this gpsd instead of the mock (no latency)");
+    System.out.println("  -port <port>        port of that gpsd (2947)");
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Formats a number with the given number of decimals.
+ *
+ * @param value the number.
+ * @param decimals the number of decimals.
+ * @return the formatted number.
+ */
+  protected static String format(double value, int decimals)
+  {
+    long scale = 1;
+    for(int count = 0; count < decimals; count++)
+      scale *= 10;
+    long scaled = Math.round(value * scale);
+    if(decimals == 0)
+      return(Long.toString(scaled));
+    String fraction = Long.toString(Math.abs(scaled % scale) + scale).substring(1);
+    return((scaled / scale) + "." + fraction);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Counts the sentences and fixes of a client and measures the latency
+ * of the stamp sentences of the mock (called by the thread decoding
+ * the sentences).
+ */
+  protected static class Probe implements GPSRawByteListener, GPSFixListener
+  {
+    protected volatile boolean recording_;
+    protected long sentences_;
+    protected long bytes_;
+    protected long fixes_;
+    protected Histogram latency_ = new Histogram();
+    protected byte[] stamp_ = new byte[64];
+
+//----------------------------------------------------------------------
+/**
+ * Counts a sentence and measures the latency if it is a stamp.
+ *
+ * @param raw_data the buffer holding the sentence.
+ * @param timestamp the {@link System#nanoTime()} it was received.
+ */
+    public void gpsRawDataReceived(ByteBuffer raw_data, long timestamp)
+    {
+      if(!recording_)
+        return;
+      int length = raw_data.remaining();
+      int position = raw_data.position();
+      if((length > 7) && (raw_data.get(position + 1) == 'P') && (raw_data.get(position + 2) == 'M'))
+      {
+        length = Math.min(length,stamp_.length);
+        raw_data.get(stamp_,0,length);
+        long sent = GpsdMockServer.parseStamp(stamp_,0,length);
+        if(sent != -1)
+        {
+          latency_.record((System.nanoTime() - sent) / 1000);
+          return;
+        }
+      }
+      sentences_++;
+      bytes_ += length;
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Counts a fix.
+ *
+ * @param fix the fix.
+ */
+    public void gpsFixReceived(GPSFix fix)
+    {
+      if(recording_)
+        fixes_++;
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Adds the counts and latencies of another probe.
+ *
+ * @param probe the other probe.
+ */
+    protected void add(Probe probe)
+    {
+      sentences_ += probe.sentences_;
+      bytes_ += probe.bytes_;
+      fixes_ += probe.fixes_;
+      latency_.add(probe.latency_);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * A histogram of latencies in microseconds with buckets of about 3%
+ * width (32 buckets per power of two), so recording is a few shifts and
+ * an increment.
+ */
+  protected static class Histogram
+  {
+    protected static final int SUB_BUCKETS = 32;
+    protected long[] counts_ = new long[64 * SUB_BUCKETS];
+    protected long count_;
+    protected long max_;
+
+//----------------------------------------------------------------------
+/**
+ * Records a value.
+ *
+ * @param value the value (negative values are recorded as 0).
+ */
+    protected void record(long value)
+    {
+      if(value < 0)
+        value = 0;
+      counts_[getBucket(value)]++;
+      count_++;
+      if(value > max_)
+        max_ = value;
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Adds the values of another histogram.
+ *
+ * @param histogram the other histogram.
+ */
+    protected void add(Histogram histogram)
+    {
+      for(int index = 0; index < counts_.length; index++)
+        counts_[index] += histogram.counts_[index];
+      count_ += histogram.count_;
+      max_ = Math.max(max_,histogram.max_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of values recorded.
+ *
+ * @return the number of values.
+ */
+    protected long getCount()
+    {
+      return(count_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the largest value recorded.
+ *
+ * @return the maximum.
+ */
+    protected long getMax()
+    {
+      return(max_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the value below which the given percentage of the values
+ * lie (the upper bound of its bucket).
+ *
+ * @param percentile the percentage (0 to 100).
+ * @return the value.
+ */
+    protected long getPercentile(double percentile)
+    {
+      long rank = (long)Math.ceil(count_ * percentile / 100.0);
+      long seen = 0;
+      for(int index = 0; index < counts_.length; index++)
+      {
+        seen += counts_[index];
+        if((seen >= rank) && (seen > 0))
+          return(Math.min(getUpperBound(index),max_));
+      }
+      return(max_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the bucket of a value.
+ *
+ * @param value the value (not negative).
+ * @return the index of the bucket.
+ */
+    protected static int getBucket(long value)
+    {
+      if(value < 2 * SUB_BUCKETS)
+        return((int)value);
+      int shift = 63 - Long.numberOfLeadingZeros(value) - 5;
+      return(shift * SUB_BUCKETS + (int)(value >>> shift));
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the largest value of a bucket.
+ *
+ * @param bucket the index of the bucket.
+ * @return the largest value.
+ */
+    protected static long getUpperBound(int bucket)
+    {
+      if(bucket < 2 * SUB_BUCKETS)
+        return(bucket);
+      int shift = bucket / SUB_BUCKETS - 1;
+      return((((long)(bucket % SUB_BUCKETS + SUB_BUCKETS + 1)) << shift) - 1);
+    }
+  }
+}
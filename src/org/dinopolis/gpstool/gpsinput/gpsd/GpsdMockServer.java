@@ -0,0 +1,555 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+//----------------------------------------------------------------------
+/**
+ * A mock gpsd for tests and benchmarks without gps hardware. It
+ * answers the <code>?WATCH</code> handshake like gpsd and replays a
+ * capture file (as written by the simulated device: one NMEA sentence
+ * per line, optionally followed by "##" and the delay in milliseconds
+ * to the next sentence, lines starting with '#' are comments) to every
+ * client, at a configurable speed.
+ * <p>
+ * To test the error handling of the clients, the server can delay
+ * every sentence ({@link #setLatency(long,long) latency with
+ * jitter}), close the connection at random ({@link
+ * #setDisconnectProbability(double)}) and send random garbage lines
+ * ({@link #setGarbageProbability(double)}). If {@link
+ * #setStamping(boolean) stamping} is enabled, every sentence is
+ * followed by a proprietary <code>$PMOCK,&lt;nanos&gt;</code> sentence
+ * holding the {@link System#nanoTime()} it was due according to the
+ * capture (so the injected latency is included), a client on the same
+ * machine can measure the latency (see {@link
+ * #parseStamp(byte[],int,int)}).
+ * <p>
+ * Every connection is served by its own thread, the clients are
+ * independent of each other (a mock does not need to scale like the
+ * {@link GpsdServer}).
+ */
+
+public class GpsdMockServer implements Runnable
+{
+  /** the address of the stamp sentence */
+  public static final String STAMP_ADDRESS = "$PMOCK,";
+
+  protected static final String VERSION_REPORT =
+    "{\"class\":\"VERSION\",\"release\":\"3.11\",\"rev\":\"mock\",\"proto_major\":3,\"proto_minor\":11}\r\n";
+  protected static final String DEVICES_REPORT =
+    "{\"class\":\"DEVICES\",\"devices\":[{\"class\":\"DEVICE\",\"path\":\"/dev/mock\","
+    + "\"activated\":\"\",\"flags\":1,\"native\":0}]}\r\n";
+  protected static final String WATCH_REPORT =
+    "{\"class\":\"WATCH\",\"enable\":true,\"json\":false,\"nmea\":true,\"raw\":0,"
+    + "\"scaled\":false,\"timing\":false,\"split24\":false,\"pps\":false}\r\n";
+  protected static final long NANOS_PER_MILLI = 1000L * 1000;
+  protected static final byte[] HEX = new byte[]
+  {'0','1','2','3','4','5','6','7','8','9','A','B','C','D','E','F'};
+
+  /** the sentences of the capture (with CR/LF) */
+  protected byte[][] sentences_;
+  /** the delay (milliseconds) after every sentence */
+  protected int[] delays_;
+
+  protected double speed_ = 1.0;
+  protected long latency_nanos_;
+  protected long jitter_nanos_;
+  protected double disconnect_probability_;
+  protected double garbage_probability_;
+  protected boolean stamping_;
+  protected boolean loop_ = true;
+
+  protected ServerSocket server_socket_;
+  protected Thread thread_;
+  protected volatile boolean running_;
+  /** the open sockets of the clients */
+  protected ArrayList sockets_ = new ArrayList();
+
+  protected volatile long connection_count_;
+  protected volatile long sentence_count_;
+  protected volatile long disconnect_count_;
+  protected volatile long garbage_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a mock replaying the given capture file.
+ *
+ * @param capture the capture file.
+ * @exception IOException if the file cannot be read.
+ */
+  public GpsdMockServer(File capture)
+    throws IOException
+  {
+    ArrayList sentences = new ArrayList();
+    ArrayList delays = new ArrayList();
+    BufferedReader reader = new BufferedReader(new FileReader(capture));
+    try
+    {
+      String line;
+      int separator;
+      while((line = reader.readLine()) != null)
+      {
+        if(line.startsWith("#") || (line.trim().length() == 0))
+          continue;
+        separator = line.indexOf("##");
+        int delay = 0;
+        if(separator >= 0)
+        {
+          try
+          {
+            delay = Integer.parseInt(line.substring(separator + 2).trim());
+          }
+          catch(NumberFormatException ignore) {}
+          line = line.substring(0,separator);
+        }
+        sentences.add(toBytes(line + "\r\n"));
+        delays.add(new Integer(delay));
+      }
+    }
+    finally
+    {
+      reader.close();
+    }
+    if(sentences.size() == 0)
+      throw new IOException("no sentences in " + capture);
+    sentences_ = (byte[][])sentences.toArray(new byte[sentences.size()][]);
+    delays_ = new int[delays.size()];
+    for(int index = 0; index < delays_.length; index++)
+      delays_[index] = ((Integer)delays.get(index)).intValue();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the replay speed.
+ *
+ * @param speed the factor the delays are divided by (e.g. 1000 for a
+ * thousand times faster than captured).
+ */
+  public void setSpeed(double speed)
+  {
+    speed_ = Math.max(speed,0.001);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets an additional delay of every sentence.
+ *
+ * @param latency the delay in milliseconds.
+ * @param jitter the maximum random delay added in milliseconds.
+ */
+  public void setLatency(long latency, long jitter)
+  {
+    latency_nanos_ = Math.max(latency,0) * NANOS_PER_MILLI;
+    jitter_nanos_ = Math.max(jitter,0) * NANOS_PER_MILLI;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the probability that the connection is closed after a sentence.
+ *
+ * @param probability the probability (0 to 1).
+ */
+  public void setDisconnectProbability(double probability)
+  {
+    disconnect_probability_ = probability;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the probability that a garbage line is sent before a sentence.
+ *
+ * @param probability the probability (0 to 1).
+ */
+  public void setGarbageProbability(double probability)
+  {
+    garbage_probability_ = probability;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets if every sentence is followed by a stamp sentence holding the
+ * time it was sent.
+ *
+ * @param stamping true to send stamps.
+ */
+  public void setStamping(boolean stamping)
+  {
+    stamping_ = stamping;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets if the capture is replayed endlessly (the default) or the
+ * connection is closed at its end.
+ *
+ * @param loop true to replay endlessly.
+ */
+  public void setLoop(boolean loop)
+  {
+    loop_ = loop;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Opens the server socket and starts accepting clients (in a daemon
+ * thread).
+ *
+ * @param port the port (0 for any free port).
+ * @exception IOException if the server socket cannot be opened.
+ */
+  public synchronized void start(int port)
+    throws IOException
+  {
+    if(running_)
+      return;
+    server_socket_ = new ServerSocket(port);
+    running_ = true;
+    thread_ = new Thread(this,"GpsdMockServer");
+    thread_.setDaemon(true);
+    thread_.start();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Closes the server socket and all connections.
+ */
+  public void close()
+  {
+    running_ = false;
+    try
+    {
+      if(server_socket_ != null)
+        server_socket_.close();
+    }
+    catch(IOException ignore) {}
+    synchronized(sockets_)
+    {
+      for(int index = 0; index < sockets_.size(); index++)
+        closeSocket((Socket)sockets_.get(index));
+      sockets_.clear();
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the port the server listens on.
+ *
+ * @return the port or -1 if not started.
+ */
+  public int getPort()
+  {
+    if(server_socket_ == null)
+      return(-1);
+    return(server_socket_.getLocalPort());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of connections accepted.
+ *
+ * @return the number of connections.
+ */
+  public long getConnectionCount()
+  {
+    return(connection_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of sentences sent (to all clients).
+ *
+ * @return the number of sentences.
+ */
+  public long getSentenceCount()
+  {
+    return(sentence_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of connections closed on purpose.
+ *
+ * @return the number of disconnects.
+ */
+  public long getDisconnectCount()
+  {
+    return(disconnect_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of garbage lines sent.
+ *
+ * @return the number of garbage lines.
+ */
+  public long getGarbageCount()
+  {
+    return(garbage_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Accepts the clients and starts a thread for every connection.
+ */
+  public void run()
+  {
+    int count = 0;
+    while(running_)
+    {
+      final Socket socket;
+      try
+      {
+        socket = server_socket_.accept();
+      }
+      catch(IOException e)
+      {
+        if(running_)
+          System.err.println("ERROR: mock gpsd cannot accept: " + e.getMessage());
+        break;
+      }
+      connection_count_++;
+      synchronized(sockets_)
+      {
+        sockets_.add(socket);
+      }
+      Thread thread = new Thread(new Runnable()
+        {
+          public void run()
+          {
+            try
+            {
+              serve(socket);
+            }
+            catch(IOException ignore)
+            {
+                  // the client closed the connection
+            }
+            finally
+            {
+              closeSocket(socket);
+              synchronized(sockets_)
+              {
+                sockets_.remove(socket);
+              }
+            }
+          }
+        },"GpsdMockServer-" + (++count));
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Serves a client: answers the handshake and replays the capture.
+ *
+ * @param socket the socket of the client.
+ * @exception IOException if the connection fails.
+ */
+  protected void serve(Socket socket)
+    throws IOException
+  {
+    socket.setTcpNoDelay(true);
+    InputStream in = socket.getInputStream();
+    OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+    out.write(toBytes(VERSION_REPORT));
+    out.flush();
+    waitForWatch(in);
+    out.write(toBytes(DEVICES_REPORT));
+    out.write(toBytes(WATCH_REPORT));
+    out.flush();
+
+    Random random = new Random();
+    byte[] stamp = new byte[64];
+    long send_time = System.nanoTime();
+    long now;
+    int index = 0;
+    while(running_)
+    {
+      long send_at = send_time + latency_nanos_;
+      if(jitter_nanos_ > 0)
+        send_at += (long)(random.nextDouble() * jitter_nanos_);
+      while((now = System.nanoTime()) < send_at)
+        LockSupport.parkNanos(send_at - now);
+
+      if((garbage_probability_ > 0) && (random.nextDouble() < garbage_probability_))
+      {
+        byte[] garbage = new byte[1 + random.nextInt(80)];
+        random.nextBytes(garbage);
+        out.write(garbage);
+        out.write(13);
+        out.write(10);
+        garbage_count_++;
+      }
+      out.write(sentences_[index]);
+      sentence_count_++;
+      if(stamping_)
+        out.write(stamp,0,createStamp(stamp,send_time));
+      send_time += (long)(delays_[index] * NANOS_PER_MILLI / speed_);
+      if(send_time + latency_nanos_ > System.nanoTime())
+        out.flush();  // the next sentence is not due yet
+
+      if((disconnect_probability_ > 0) && (random.nextDouble() < disconnect_probability_))
+      {
+        out.flush();
+        disconnect_count_++;
+        return;
+      }
+      index++;
+      if(index == sentences_.length)
+      {
+        if(!loop_)
+          break;
+        index = 0;
+      }
+    }
+    out.flush();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Reads the commands of the client until a <code>?WATCH</code> was
+ * received.
+ *
+ * @param in the stream of the client.
+ * @exception IOException if the connection fails or is closed.
+ */
+  protected void waitForWatch(InputStream in)
+    throws IOException
+  {
+    StringBuffer command = new StringBuffer();
+    int data;
+    while((data = in.read()) >= 0)
+    {
+      if((data == ';') || (data == 10) || (data == 13))
+      {
+        if(command.toString().trim().startsWith("?WATCH"))
+          return;
+        command.setLength(0);
+      }
+      else if(command.length() < 1024)
+        command.append((char)data);
+    }
+    throw new IOException("connection closed by client");
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Writes a stamp sentence (with checksum and CR/LF).
+ *
+ * @param buffer the buffer to write to.
+ * @param nanos the {@link System#nanoTime()} to stamp.
+ * @return the length of the sentence.
+ */
+  protected static int createStamp(byte[] buffer, long nanos)
+  {
+    int length = 0;
+    for(int index = 0; index < STAMP_ADDRESS.length(); index++)
+      buffer[length++] = (byte)STAMP_ADDRESS.charAt(index);
+    String value = Long.toString(nanos);
+    for(int index = 0; index < value.length(); index++)
+      buffer[length++] = (byte)value.charAt(index);
+    int checksum = 0;
+    for(int index = 1; index < length; index++)
+      checksum ^= buffer[index];
+    buffer[length++] = '*';
+    buffer[length++] = HEX[(checksum >> 4) & 0xf];
+    buffer[length++] = HEX[checksum & 0xf];
+    buffer[length++] = 13;
+    buffer[length++] = 10;
+    return(length);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the time of a stamp sentence.
+ *
+ * @param buffer the buffer holding a sentence.
+ * @param offset the offset of the sentence.
+ * @param length the length of the sentence.
+ * @return the {@link System#nanoTime()} the sentence was due or -1 if
+ * it is no stamp sentence.
+ */
+  public static long parseStamp(byte[] buffer, int offset, int length)
+  {
+    int prefix = STAMP_ADDRESS.length();
+    if(length <= prefix)
+      return(-1);
+    for(int index = 0; index < prefix; index++)
+    {
+      if(buffer[offset + index] != STAMP_ADDRESS.charAt(index))
+        return(-1);
+    }
+    long nanos = 0;
+    boolean negative = false;
+    int index = offset + prefix;
+    int end = offset + length;
+    if(buffer[index] == '-')
+    {
+      negative = true;
+      index++;
+    }
+    for(; (index < end) && (buffer[index] >= '0') && (buffer[index] <= '9'); index++)
+      nanos = nanos * 10 + (buffer[index] - '0');
+    return(negative ? -nanos : nanos);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Closes a socket, ignoring errors.
+ *
+ * @param socket the socket.
+ */
+  protected static void closeSocket(Socket socket)
+  {
+    try
+    {
+      socket.close();
+    }
+    catch(IOException ignore) {}
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Converts ASCII text to bytes.
+ *
+ * @param text the text.
+ * @return the bytes.
+ */
+  protected static byte[] toBytes(String text)
+  {
+    byte[] bytes = new byte[text.length()];
+    for(int index = 0; index < bytes.length; index++)
+      bytes[index] = (byte)text.charAt(index);
+    return(bytes);
+  }
+}
@@ -0,0 +1,1155 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+
+package org.dinopolis.gpstool.gpsinput.gpsd;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.dinopolis.gpstool.gpsinput.GPSDataProcessor;
+import org.dinopolis.gpstool.gpsinput.GPSFix;
+import org.dinopolis.gpstool.gpsinput.GPSFixListener;
+import org.dinopolis.gpstool.gpsinput.GPSPosition;
+import org.dinopolis.gpstool.gpsinput.GPSRawByteListener;
+import org.dinopolis.gpstool.gpsinput.SatelliteInfo;
+import org.dinopolis.gpstool.gpsinput.nmea.NMEA0183SentenceEncoder;
+
+//----------------------------------------------------------------------
+/**
+ * A small gpsd compatible server that republishes the data of a {@link
+ * GPSDataProcessor} on a TCP port, so other tools can share the
+ * receiver read by GpsInspector. Clients send <code>?WATCH</code> as to
+ * gpsd and receive the NMEA sentences of the device and/or the JSON TPV
+ * and SKY reports built from the fixes and satellites. If the processor
+ * does not read NMEA (e.g. Garmin, SiRF or gpsd JSON), RMC, GGA, GSA and
+ * GSV sentences are encoded from the fixes and satellites by a {@link
+ * NMEA0183SentenceEncoder}; <code>?POLL</code> (answered with the last TPV and SKY
+ * reports), <code>?VERSION</code> and <code>?DEVICES</code> are
+ * answered as well.
+ * <p>
+ * Every message is copied once into a shared ring of pre-allocated
+ * slots by the thread of the processor; a single selector thread
+ * writes the slots to all clients with non-blocking writes, every
+ * client reading at its own sequence. A client that falls more than
+ * half a ring behind (its socket buffer is full) does not slow down the
+ * others: depending on the {@link #setSlowClientPolicy(int) policy} it
+ * skips ahead to the newest message or is disconnected.
+ *
+ * @see <a href="https://gpsd.gitlab.io/gpsd/gpsd_json.html">gpsd JSON protocol</a>
+ */
+
+public class GpsdServer
+  implements Runnable, GPSFixListener, GPSRawByteListener, PropertyChangeListener
+{
+  /** slow client policy: the client skips to the newest message */
+  public static final int SLOW_CLIENT_SKIP = 0;
+  /** slow client policy: the client is disconnected */
+  public static final int SLOW_CLIENT_DROP = 1;
+
+  /** the default port (as gpsd) */
+  public static final int DEFAULT_PORT = 2947;
+  /** the default number of messages in the ring */
+  public static final int DEFAULT_CAPACITY = 256;
+  /** the default maximum number of clients */
+  public static final int DEFAULT_MAX_CLIENTS = 64;
+  /** the default device path reported to the clients */
+  public static final String DEFAULT_DEVICE = "/dev/gps";
+
+  /** message type: a NMEA sentence */
+  protected static final int TYPE_NMEA = 1;
+  /** message type: a JSON report */
+  protected static final int TYPE_JSON = 2;
+
+  protected static final String VERSION_REPORT =
+    "{\"class\":\"VERSION\",\"release\":\"3.11\",\"rev\":\"GpsInspector\","
+    + "\"proto_major\":3,\"proto_minor\":11}\r\n";
+  protected static final int MAX_COMMAND_LENGTH = 1024;
+  protected static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+  protected static final double KMH_TO_MPS = 1.0 / 3.6;
+  protected static final long[] POWERS_OF_TEN = new long[]
+  { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L };
+
+  protected int port_;
+  protected String device_ = DEFAULT_DEVICE;
+  /** the device as (quoted) JSON string */
+  protected String device_json_ = toJsonString(DEFAULT_DEVICE);
+  protected int max_clients_ = DEFAULT_MAX_CLIENTS;
+  protected volatile int slow_client_policy_ = SLOW_CLIENT_SKIP;
+
+  protected Slot[] slots_;
+  protected int mask_;
+  /** the sequence of the last published message */
+  protected volatile long head_ = -1;
+  /** true if the selector was woken up and did not run yet */
+  protected AtomicBoolean wakeup_pending_ = new AtomicBoolean();
+
+  protected GPSDataProcessor processor_;
+  protected Selector selector_;
+  protected ServerSocketChannel server_channel_;
+  protected Thread thread_;
+  protected volatile boolean running_;
+  /** the clients (selector thread only) */
+  protected ArrayList clients_ = new ArrayList();
+  /** decodes the argument of ?WATCH commands (selector thread only) */
+  protected GpsdJsonDecoder watch_decoder_ = new GpsdJsonDecoder();
+  protected volatile int client_count_;
+  protected volatile long skip_count_;
+  protected volatile long drop_count_;
+
+  /** the report built by the processor thread */
+  protected byte[] report_ = new byte[1024];
+  protected int report_length_;
+  /** the dops of the last fix (for the SKY report) */
+  protected float hdop_ = Float.NaN;
+  protected float pdop_ = Float.NaN;
+  protected float vdop_ = Float.NaN;
+  protected long fix_time_ = -1;
+  /** the last TPV and SKY reports (without CR/LF, for POLL) */
+  protected byte[] last_tpv_ = new byte[256];
+  protected int last_tpv_length_;
+  protected byte[] last_sky_ = new byte[1024];
+  protected int last_sky_length_;
+  /** true once the processor sent NMEA sentences (no sentences are
+   * encoded from the fixes then) */
+  protected boolean raw_nmea_;
+  protected NMEA0183SentenceEncoder nmea_encoder_ = new NMEA0183SentenceEncoder();
+  protected byte[] nmea_buffer_ = new byte[NMEA0183SentenceEncoder.MAX_ENCODED_LENGTH];
+  /** the date of the last call of {@link #computeDate(long)} */
+  protected int year_;
+  protected int month_;
+  protected int day_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a server on the default port with the default ring capacity.
+ */
+  public GpsdServer()
+  {
+    this(DEFAULT_PORT,DEFAULT_CAPACITY);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates a server.
+ *
+ * @param port the TCP port (0 for any free port).
+ * @param capacity the number of messages in the ring (rounded up to a
+ * power of two).
+ */
+  public GpsdServer(int port, int capacity)
+  {
+    port_ = port;
+    int size = 2;
+    while(size < capacity)
+      size <<= 1;
+    slots_ = new Slot[size];
+    for(int index = 0; index < size; index++)
+      slots_[index] = new Slot();
+    mask_ = size - 1;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the path of the device reported to the clients.
+ *
+ * @param device the path of the device.
+ */
+  public void setDevice(String device)
+  {
+    device_ = device;
+    device_json_ = toJsonString(device);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the maximum number of clients, more connections are refused.
+ *
+ * @param max_clients the maximum number of clients.
+ */
+  public void setMaxClients(int max_clients)
+  {
+    max_clients_ = max_clients;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets what happens to a client that falls more than half a ring
+ * behind.
+ *
+ * @param policy {@link #SLOW_CLIENT_SKIP} or {@link #SLOW_CLIENT_DROP}.
+ */
+  public void setSlowClientPolicy(int policy)
+  {
+    slow_client_policy_ = policy;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Opens the server socket, starts the selector thread (a daemon thread)
+ * and adds the server as listener to the processor.
+ *
+ * @param processor the processor whose data is republished.
+ * @exception IOException if the server socket cannot be opened.
+ */
+  public synchronized void start(GPSDataProcessor processor)
+    throws IOException
+  {
+    if(running_)
+      return;
+    selector_ = Selector.open();
+    server_channel_ = ServerSocketChannel.open();
+    server_channel_.configureBlocking(false);
+    server_channel_.socket().setReuseAddress(true);
+    server_channel_.socket().bind(new InetSocketAddress(port_));
+    server_channel_.register(selector_,SelectionKey.OP_ACCEPT);
+    running_ = true;
+    thread_ = new Thread(this,"GpsdServer");
+    thread_.setDaemon(true);
+    thread_.start();
+
+    processor_ = processor;
+    processor.addGPSFixListener(this);
+    processor.addGPSRawByteListener(this);
+    processor.addGPSDataChangeListener(GPSDataProcessor.SATELLITE_INFO,this);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes the server from the processor, closes all connections and
+ * stops the selector thread.
+ */
+  public synchronized void close()
+  {
+    if(!running_)
+      return;
+    processor_.removeGPSFixListener(this);
+    processor_.removeGPSRawByteListener(this);
+    processor_.removeGPSDataChangeListener(GPSDataProcessor.SATELLITE_INFO,this);
+    running_ = false;
+    selector_.wakeup();
+    try
+    {
+      thread_.join();
+    }
+    catch(InterruptedException ignore) {}
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the port the server listens on.
+ *
+ * @return the port.
+ */
+  public int getPort()
+  {
+    if(server_channel_ != null)
+      return(server_channel_.socket().getLocalPort());
+    return(port_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of connected clients.
+ *
+ * @return the number of clients.
+ */
+  public int getClientCount()
+  {
+    return(client_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns how often a slow client skipped ahead.
+ *
+ * @return the number of skips.
+ */
+  public long getSkipCount()
+  {
+    return(skip_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of slow clients that were disconnected.
+ *
+ * @return the number of clients dropped.
+ */
+  public long getDropCount()
+  {
+    return(drop_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Publishes a NMEA sentence of the processor. Other raw data (e.g.
+ * Garmin packets or gpsd reports) is not republished.
+ *
+ * @param raw_data the buffer holding the raw data.
+ * @param timestamp the {@link System#nanoTime()} the data was
+ * received.
+ */
+  public synchronized void gpsRawDataReceived(ByteBuffer raw_data, long timestamp)
+  {
+    int length = raw_data.remaining();
+    if(length == 0)
+      return;
+    int start = raw_data.position();
+    byte first = raw_data.get(start);
+    if((first != '$') && (first != '!'))
+      return;
+    if(report_.length < length + 2)
+      report_ = new byte[length + 2];
+    raw_data.get(report_,0,length);
+    if(report_[length - 1] != 10)
+    {
+      report_[length++] = 13;
+      report_[length++] = 10;
+    }
+    raw_nmea_ = true;
+    publish(TYPE_NMEA,report_,length);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Publishes a TPV report for a fix of the processor.
+ *
+ * @param fix the fix.
+ */
+  public synchronized void gpsFixReceived(GPSFix fix)
+  {
+    hdop_ = fix.getHDOP();
+    pdop_ = fix.getPDOP();
+    vdop_ = fix.getVDOP();
+    fix_time_ = fix.hasField(GPSFix.TIME | GPSFix.DATE) ? fix.getTime() : -1;
+
+    report_length_ = 0;
+    appendReportStart("TPV");
+    int mode = fix.getFixType();
+    if(mode < 0)
+      mode = fix.hasField(GPSFix.POSITION) ? (fix.hasField(GPSFix.ALTITUDE) ? 3 : 2) : 1;
+    appendInt("mode",mode);
+    appendTime();
+    GPSPosition position = fix.getPosition();
+    if(position != null)
+    {
+      appendDouble("lat",position.getLatitude(),9);
+      appendDouble("lon",position.getLongitude(),9);
+    }
+    if(fix.hasField(GPSFix.ALTITUDE))
+    {
+          // alt (above msl) for clients before gpsd 3.20:
+      appendDouble("alt",fix.getAltitude(),3);
+      appendDouble("altMSL",fix.getAltitude(),3);
+      if(fix.hasField(GPSFix.GEOID_SEPARATION))
+        appendDouble("altHAE",fix.getAltitude() + fix.getGeoidSeparation(),3);
+    }
+    if(fix.hasField(GPSFix.GEOID_SEPARATION))
+      appendDouble("geoidSep",fix.getGeoidSeparation(),3);
+    if(fix.hasField(GPSFix.COURSE))
+      appendDouble("track",fix.getCourse(),4);
+    if(fix.hasField(GPSFix.SPEED))
+      appendDouble("speed",fix.getSpeed() * KMH_TO_MPS,3);
+    appendReportEnd();
+    publish(TYPE_JSON,report_,report_length_);
+    last_tpv_ = copyReport(last_tpv_);
+    last_tpv_length_ = report_length_ - 2;
+    if(!raw_nmea_)
+      publishNmea(fix);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Publishes the RMC, GGA and GSA sentences encoded from a fix (for
+ * processors not reading NMEA).
+ *
+ * @param fix the fix.
+ */
+  protected void publishNmea(GPSFix fix)
+  {
+    double latitude = Double.NaN;
+    double longitude = Double.NaN;
+    GPSPosition position = fix.getPosition();
+    if(position != null)
+    {
+      latitude = position.getLatitude();
+      longitude = position.getLongitude();
+    }
+    int year = -1;
+    if(fix_time_ >= 0)
+    {
+      computeDate(fix_time_);
+      year = year_;
+    }
+    int length = nmea_encoder_.encodeRMC(nmea_buffer_,0,fix.getTimeOfDay(),position != null,
+                                         latitude,longitude,fix.getSpeed(),fix.getCourse(),
+                                         year,month_,day_);
+    publish(TYPE_NMEA,nmea_buffer_,length);
+    int quality = fix.getFixQuality();
+    if((quality < 0) && (position != null))
+      quality = 1;
+    length = nmea_encoder_.encodeGGA(nmea_buffer_,0,fix.getTimeOfDay(),latitude,longitude,
+                                     quality,fix.getSatellitesUsed(),fix.getHDOP(),
+                                     fix.getAltitude(),fix.getGeoidSeparation());
+    publish(TYPE_NMEA,nmea_buffer_,length);
+    if(fix.hasField(GPSFix.FIX_TYPE) || fix.hasField(GPSFix.SATELLITE_IDS))
+    {
+      int[] ids = fix.getSatelliteIds();
+      length = nmea_encoder_.encodeGSA(nmea_buffer_,0,true,fix.getFixType(),ids,ids.length,
+                                       fix.getPDOP(),fix.getHDOP(),fix.getVDOP());
+      publish(TYPE_NMEA,nmea_buffer_,length);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Publishes a SKY report for the satellites of the processor.
+ *
+ * @param event the event.
+ */
+  public synchronized void propertyChange(PropertyChangeEvent event)
+  {
+    if(!(event.getNewValue() instanceof SatelliteInfo[]))
+      return;
+    SatelliteInfo[] satellites = (SatelliteInfo[])event.getNewValue();
+    report_length_ = 0;
+    appendReportStart("SKY");
+    appendTime();
+    if(!Float.isNaN(hdop_))
+      appendDouble("hdop",hdop_,2);
+    if(!Float.isNaN(pdop_))
+      appendDouble("pdop",pdop_,2);
+    if(!Float.isNaN(vdop_))
+      appendDouble("vdop",vdop_,2);
+    append(",\"satellites\":[");
+    SatelliteInfo satellite;
+    for(int index = 0; index < satellites.length; index++)
+    {
+      satellite = satellites[index];
+      if(index > 0)
+        append(",");
+      append("{\"PRN\":");
+      appendLong(satellite.getPRN());
+      appendDouble("el",satellite.getElevation(),1);
+      appendDouble("az",satellite.getAzimuth(),1);
+      appendDouble("ss",Math.max(satellite.getSNR(),0),1);
+      append(satellite.isUsed() ? ",\"used\":true" : ",\"used\":false");
+      int constellation = satellite.getConstellation();
+      if((constellation >= 0) && (constellation < GPSGpsdDataProcessor.GNSS_IDS.length))
+        appendInt("gnssid",GPSGpsdDataProcessor.GNSS_IDS[constellation]);
+      append("}");
+    }
+    append("]");
+    appendReportEnd();
+    publish(TYPE_JSON,report_,report_length_);
+    last_sky_ = copyReport(last_sky_);
+    last_sky_length_ = report_length_ - 2;
+    if(!raw_nmea_)
+    {
+          // a GSV block encoded from the satellites:
+      int count = NMEA0183SentenceEncoder.getGSVMessageCount(satellites.length);
+      for(int message = 1; message <= count; message++)
+        publish(TYPE_NMEA,nmea_buffer_,
+                nmea_encoder_.encodeGSV(nmea_buffer_,0,satellites,satellites.length,message));
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Copies the report just built (without CR/LF).
+ *
+ * @param buffer the buffer to copy to.
+ * @return the buffer or a larger one.
+ */
+  protected byte[] copyReport(byte[] buffer)
+  {
+    if(buffer.length < report_length_)
+      buffer = new byte[report_length_ * 2];
+    System.arraycopy(report_,0,buffer,0,report_length_ - 2);
+    return(buffer);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Builds the POLL response holding the last TPV and SKY report
+ * (called by the selector thread).
+ *
+ * @return the response.
+ */
+  protected synchronized String getPollResponse()
+  {
+    report_length_ = 0;
+    append("{\"class\":\"POLL\"");
+    appendTime();
+    append(",\"active\":1,\"tpv\":[");
+    appendBytes(last_tpv_,last_tpv_length_);
+    append("],\"gst\":[],\"sky\":[");
+    appendBytes(last_sky_,last_sky_length_);
+    append("]}\r\n");
+    char[] chars = new char[report_length_];
+    for(int index = 0; index < report_length_; index++)
+      chars[index] = (char)report_[index];
+    return(new String(chars));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Copies a message into the next slot of the ring and wakes up the
+ * selector thread (called with the lock held).
+ *
+ * @param type the type of the message.
+ * @param buffer the buffer holding the message.
+ * @param length the length of the message.
+ */
+  protected void publish(int type, byte[] buffer, int length)
+  {
+    if(!running_)
+      return;
+    long sequence = head_ + 1;
+    Slot slot = slots_[(int)(sequence & mask_)];
+    if(slot.bytes_.length < length)
+    {
+      slot.bytes_ = new byte[Math.max(length,slot.bytes_.length * 2)];
+      slot.buffer_ = ByteBuffer.wrap(slot.bytes_);
+    }
+    System.arraycopy(buffer,0,slot.bytes_,0,length);
+    slot.length_ = length;
+    slot.type_ = type;
+    head_ = sequence;
+    if(wakeup_pending_.compareAndSet(false,true))
+      selector_.wakeup();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * The loop of the selector thread.
+ */
+  public void run()
+  {
+    Iterator keys;
+    SelectionKey key;
+    Client client;
+    while(running_)
+    {
+      try
+      {
+        selector_.select(1000);
+      }
+      catch(IOException e)
+      {
+        System.err.println("ERROR: gpsd server selector failed: " + e.getMessage());
+        break;
+      }
+      wakeup_pending_.set(false);
+
+      keys = selector_.selectedKeys().iterator();
+      while(keys.hasNext())
+      {
+        key = (SelectionKey)keys.next();
+        keys.remove();
+        if(!key.isValid())
+          continue;
+        if(key.isAcceptable())
+        {
+          accept();
+          continue;
+        }
+        client = (Client)key.attachment();
+        try
+        {
+          if(key.isReadable())
+            read(client);
+        }
+        catch(IOException e)
+        {
+          disconnect(client);
+        }
+      }
+
+      for(int index = clients_.size() - 1; index >= 0; index--)
+      {
+        client = (Client)clients_.get(index);
+        try
+        {
+          write(client);
+        }
+        catch(IOException e)
+        {
+          disconnect(client);
+        }
+      }
+    }
+
+    for(int index = clients_.size() - 1; index >= 0; index--)
+      disconnect((Client)clients_.get(index));
+    try
+    {
+      server_channel_.close();
+      selector_.close();
+    }
+    catch(IOException ignore) {}
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Accepts the pending connections and sends the VERSION report.
+ */
+  protected void accept()
+  {
+    SocketChannel channel;
+    try
+    {
+      while((channel = server_channel_.accept()) != null)
+      {
+        if(clients_.size() >= max_clients_)
+        {
+          channel.close();
+          continue;
+        }
+        channel.configureBlocking(false);
+        Client client = new Client(channel);
+        client.key_ = channel.register(selector_,SelectionKey.OP_READ,client);
+        clients_.add(client);
+        client_count_ = clients_.size();
+        client.reply(VERSION_REPORT);
+      }
+    }
+    catch(IOException e)
+    {
+      System.err.println("ERROR: gpsd server cannot accept: " + e.getMessage());
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Reads the commands of a client.
+ *
+ * @param client the client.
+ * @exception IOException if the read failed or the client closed the
+ * connection.
+ */
+  protected void read(Client client)
+    throws IOException
+  {
+    ByteBuffer buffer = client.command_buffer_;
+    if(client.channel_.read(buffer) < 0)
+      throw new IOException("connection closed by client");
+    byte[] data = buffer.array();
+    int limit = buffer.position();
+    int start = 0;
+    for(int index = 0; index < limit; index++)
+    {
+      if((data[index] != ';') && (data[index] != 10) && (data[index] != 13))
+        continue;
+      if(index > start)
+        handleCommand(client,new String(data,start,index - start,"US-ASCII").trim());
+      start = index + 1;
+    }
+    if(start > 0)
+    {
+      System.arraycopy(data,start,data,0,limit - start);
+      buffer.position(limit - start);
+    }
+    if(!buffer.hasRemaining())
+      buffer.clear();  // a command that long is not understood anyway
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Answers a command of a client.
+ *
+ * @param client the client.
+ * @param command the command (without terminator).
+ */
+  protected void handleCommand(Client client, String command)
+  {
+    if(command.length() == 0)
+      return;
+    if(command.startsWith("?WATCH"))
+    {
+      String arguments = command.substring(6).trim();
+      if(arguments.startsWith("="))
+        arguments = arguments.substring(1).trim();
+      boolean enable = true;
+      boolean nmea = false;
+      boolean json = true;
+      if(arguments.length() > 0)
+      {
+        byte[] bytes = GpsdJsonDecoder.bytes(arguments);
+        if(watch_decoder_.decode(bytes,0,bytes.length) < 0)
+        {
+          client.reply("{\"class\":\"ERROR\",\"message\":\"Invalid WATCH: "
+                       + arguments.replace('"','\'') + "\"}\r\n");
+          return;
+        }
+        enable = watch_decoder_.getFlag(GpsdJsonDecoder.FLAG_ENABLE,true);
+        nmea = watch_decoder_.getFlag(GpsdJsonDecoder.FLAG_NMEA,false);
+        json = watch_decoder_.getFlag(GpsdJsonDecoder.FLAG_JSON,!nmea);
+      }
+      if(!enable)
+        client.mask_ = 0;
+      else
+      {
+        if(client.mask_ == 0)
+        {
+          client.sequence_ = head_ + 1;
+          client.offset_ = 0;
+        }
+        client.mask_ = (nmea ? TYPE_NMEA : 0) | (json ? TYPE_JSON : 0);
+        client.reply(getDevicesReport());
+      }
+      client.reply("{\"class\":\"WATCH\",\"enable\":" + (client.mask_ != 0)
+                   + ",\"json\":" + ((client.mask_ & TYPE_JSON) != 0)
+                   + ",\"nmea\":" + ((client.mask_ & TYPE_NMEA) != 0)
+                   + ",\"raw\":0,\"scaled\":false,\"timing\":false,\"split24\":false,\"pps\":false}\r\n");
+    }
+    else if(command.startsWith("?POLL"))
+      client.reply(getPollResponse());
+    else if(command.startsWith("?VERSION"))
+      client.reply(VERSION_REPORT);
+    else if(command.startsWith("?DEVICES"))
+      client.reply(getDevicesReport());
+    else
+      client.reply("{\"class\":\"ERROR\",\"message\":"
+                   + toJsonString("Unrecognized request '" + command + "'") + "}\r\n");
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the DEVICES report.
+ *
+ * @return the report.
+ */
+  protected String getDevicesReport()
+  {
+    return("{\"class\":\"DEVICES\",\"devices\":[{\"class\":\"DEVICE\",\"path\":"
+           + device_json_ + ",\"activated\":\"\",\"flags\":1,\"native\":0}]}\r\n");
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the given string as a quoted JSON string. Quotes,
+ * backslashes, control and non ASCII characters are escaped, so the
+ * string may be appended byte by byte.
+ *
+ * @param value the string.
+ * @return the JSON string.
+ */
+  protected static String toJsonString(String value)
+  {
+    StringBuffer json = new StringBuffer(value.length() + 2);
+    json.append('"');
+    for(int index = 0; index < value.length(); index++)
+    {
+      char character = value.charAt(index);
+      if((character == '"') || (character == '\\'))
+        json.append('\\').append(character);
+      else if((character < 0x20) || (character > 0x7e))
+      {
+        String hex = Integer.toHexString(character);
+        json.append("\\u");
+        for(int digit = hex.length(); digit < 4; digit++)
+          json.append('0');
+        json.append(hex);
+      }
+      else
+        json.append(character);
+    }
+    json.append('"');
+    return(json.toString());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Writes the pending replies and messages to a client until all are
+ * written or the socket buffer is full. A client more than half a
+ * ring behind skips ahead or is disconnected.
+ *
+ * @param client the client.
+ * @exception IOException if the write failed.
+ */
+  protected void write(Client client)
+    throws IOException
+  {
+    if(client.reply_buffer_.position() > 0)
+    {
+      client.reply_buffer_.flip();
+      client.channel_.write(client.reply_buffer_);
+      client.reply_buffer_.compact();
+      if(client.reply_buffer_.position() > 0)
+      {
+        client.setWriteInterest(true);
+        return;
+      }
+    }
+    if(client.mask_ == 0)
+    {
+      client.setWriteInterest(false);
+      return;
+    }
+
+    long head = head_;
+    if(head - client.sequence_ >= slots_.length / 2)
+    {
+      if((slow_client_policy_ == SLOW_CLIENT_DROP) || (client.offset_ > 0))
+      {
+        drop_count_++;
+        disconnect(client);
+        return;
+      }
+      skip_count_++;
+      client.sequence_ = head + 1;
+      return;
+    }
+
+    Slot slot;
+    ByteBuffer buffer;
+    while(client.sequence_ <= head)
+    {
+      slot = slots_[(int)(client.sequence_ & mask_)];
+      if((slot.type_ & client.mask_) == 0)
+      {
+        client.sequence_++;
+        continue;
+      }
+      buffer = slot.buffer_;
+      buffer.limit(slot.length_);
+      buffer.position(client.offset_);
+      client.offset_ += client.channel_.write(buffer);
+      if(head_ - client.sequence_ >= slots_.length - 1)
+      {
+            // the slot may have been overwritten while it was written:
+        drop_count_++;
+        disconnect(client);
+        return;
+      }
+      if(client.offset_ < slot.length_)
+      {
+        client.setWriteInterest(true);
+        return;
+      }
+      client.offset_ = 0;
+      client.sequence_++;
+    }
+    client.setWriteInterest(false);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Closes the connection of a client.
+ *
+ * @param client the client.
+ */
+  protected void disconnect(Client client)
+  {
+    client.key_.cancel();
+    try
+    {
+      client.channel_.close();
+    }
+    catch(IOException ignore) {}
+    clients_.remove(client);
+    client_count_ = clients_.size();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends the start of a report with class, device and time.
+ *
+ * @param report_class the class of the report.
+ */
+  protected void appendReportStart(String report_class)
+  {
+    append("{\"class\":\"");
+    append(report_class);
+    append("\",\"device\":");
+    append(device_json_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends the end of a report.
+ */
+  protected void appendReportEnd()
+  {
+    append("}\r\n");
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends the time of the last fix (ISO 8601) if it is known.
+ */
+  protected void appendTime()
+  {
+    if(fix_time_ < 0)
+      return;
+    int millis = computeDate(fix_time_);
+
+    append(",\"time\":\"");
+    appendDigits(year_,4);
+    append("-");
+    appendDigits(month_,2);
+    append("-");
+    appendDigits(day_,2);
+    append("T");
+    appendDigits(millis / 3600000,2);
+    append(":");
+    appendDigits((millis / 60000) % 60,2);
+    append(":");
+    appendDigits((millis / 1000) % 60,2);
+    append(".");
+    appendDigits(millis % 1000,3);
+    append("Z\"");
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Computes the UTC date of a time into <code>year_</code>,
+ * <code>month_</code> and <code>day_</code>.
+ *
+ * @param time the milliseconds since 1970-01-01.
+ * @return the milliseconds since midnight.
+ */
+  protected int computeDate(long time)
+  {
+    long days = time / MILLIS_PER_DAY;
+    int millis = (int)(time - days * MILLIS_PER_DAY);
+        // civil date of the days since 1970-01-01:
+    long z = days + 719468;
+    long era = (z >= 0 ? z : z - 146096) / 146097;
+    long day_of_era = z - era * 146097;
+    long year_of_era = (day_of_era - day_of_era / 1460 + day_of_era / 36524
+                        - day_of_era / 146096) / 365;
+    long day_of_year = day_of_era - (365 * year_of_era + year_of_era / 4 - year_of_era / 100);
+    long mp = (5 * day_of_year + 2) / 153;
+    day_ = (int)(day_of_year - (153 * mp + 2) / 5 + 1);
+    month_ = (int)(mp < 10 ? mp + 3 : mp - 9);
+    year_ = (int)(year_of_era + era * 400 + (month_ <= 2 ? 1 : 0));
+    return(millis);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends an int value.
+ *
+ * @param key the key.
+ * @param value the value.
+ */
+  protected void appendInt(String key, int value)
+  {
+    append(",\"");
+    append(key);
+    append("\":");
+    appendLong(value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends a decimal value with a fixed number of decimals.
+ *
+ * @param key the key.
+ * @param value the value (NaN is not appended).
+ * @param decimals the number of decimals (at most 9).
+ */
+  protected void appendDouble(String key, double value, int decimals)
+  {
+    if(Double.isNaN(value) || Double.isInfinite(value))
+      return;
+    append(",\"");
+    append(key);
+    append("\":");
+    long scale = POWERS_OF_TEN[decimals];
+    long scaled = Math.round(Math.abs(value) * scale);
+    if((value < 0) && (scaled != 0))
+      append("-");
+    appendLong(scaled / scale);
+    append(".");
+    appendDigits(scaled % scale,decimals);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends a number.
+ *
+ * @param value the number.
+ */
+  protected void appendLong(long value)
+  {
+    if(value < 0)
+    {
+      append("-");
+      value = -value;
+    }
+    int digits = 1;
+    for(long limit = 10; (digits < 19) && (value >= limit); limit *= 10)
+      digits++;
+    appendDigits(value,digits);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends a positive number with a fixed number of digits (padded with
+ * zeros).
+ *
+ * @param value the number.
+ * @param digits the number of digits.
+ */
+  protected void appendDigits(long value, int digits)
+  {
+    ensureReportCapacity(digits);
+    for(int index = report_length_ + digits - 1; index >= report_length_; index--)
+    {
+      report_[index] = (byte)('0' + (value % 10));
+      value /= 10;
+    }
+    report_length_ += digits;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends ASCII text.
+ *
+ * @param text the text.
+ */
+  protected void append(String text)
+  {
+    int length = text.length();
+    ensureReportCapacity(length);
+    for(int index = 0; index < length; index++)
+      report_[report_length_++] = (byte)text.charAt(index);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends bytes.
+ *
+ * @param bytes the bytes.
+ * @param length the number of bytes.
+ */
+  protected void appendBytes(byte[] bytes, int length)
+  {
+    ensureReportCapacity(length);
+    System.arraycopy(bytes,0,report_,report_length_,length);
+    report_length_ += length;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Makes sure the report buffer can hold more bytes.
+ *
+ * @param length the number of bytes to append.
+ */
+  protected void ensureReportCapacity(int length)
+  {
+    if(report_length_ + length + 2 <= report_.length)
+      return;
+    byte[] report = new byte[Math.max(report_.length * 2,report_length_ + length + 2)];
+    System.arraycopy(report_,0,report,0,report_length_);
+    report_ = report;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * A slot of the ring holding one message.
+ */
+  protected static class Slot
+  {
+    protected byte[] bytes_ = new byte[256];
+    /** wraps the bytes, position and limit are set by the selector thread */
+    protected ByteBuffer buffer_ = ByteBuffer.wrap(bytes_);
+    protected int length_;
+    protected int type_;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * A connected client (used by the selector thread only).
+ */
+  protected static class Client
+  {
+    protected SocketChannel channel_;
+    protected SelectionKey key_;
+    /** the types of messages watched (0 if not watching) */
+    protected int mask_;
+    /** the sequence of the next message to write */
+    protected long sequence_;
+    /** the number of bytes of the next message already written */
+    protected int offset_;
+    protected ByteBuffer command_buffer_ = ByteBuffer.allocate(MAX_COMMAND_LENGTH);
+    /** the replies to commands not written yet (in write mode) */
+    protected ByteBuffer reply_buffer_ = ByteBuffer.allocate(1024);
+    protected boolean write_interest_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a client.
+ *
+ * @param channel the channel of the client.
+ */
+    protected Client(SocketChannel channel)
+    {
+      channel_ = channel;
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Queues a reply (written before the next messages).
+ *
+ * @param reply the reply.
+ */
+    protected void reply(String reply)
+    {
+      int length = reply.length();
+      if(reply_buffer_.remaining() < length)
+      {
+        ByteBuffer buffer = ByteBuffer.allocate(reply_buffer_.position() + length + 1024);
+        reply_buffer_.flip();
+        buffer.put(reply_buffer_);
+        reply_buffer_ = buffer;
+      }
+      for(int index = 0; index < length; index++)
+        reply_buffer_.put((byte)reply.charAt(index));
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Registers or unregisters the interest in writing (if the socket
+ * buffer is full).
+ *
+ * @param write_interest true to be selected when writing is possible.
+ */
+    protected void setWriteInterest(boolean write_interest)
+    {
+      if(write_interest == write_interest_)
+        return;
+      write_interest_ = write_interest;
+      key_.interestOps(write_interest ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                                      : SelectionKey.OP_READ);
+    }
+  }
+}
@@ -48,17 +48,23 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
-import java.util.Calendar;
-import java.util.GregorianCalendar;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 //import org.apache.log4j.Logger;
-import java.util.TimeZone;
+import org.dinopolis.gpstool.gpsinput.GPSClock;
 import org.dinopolis.gpstool.gpsinput.GPSDataProcessor;
 import org.dinopolis.gpstool.gpsinput.GPSException;
+import org.dinopolis.gpstool.gpsinput.GPSFix;
+import org.dinopolis.gpstool.gpsinput.GPSFixAggregator;
+import org.dinopolis.gpstool.gpsinput.GPSFixListener;
 import org.dinopolis.gpstool.gpsinput.GPSGeneralDataProcessor;
 import org.dinopolis.gpstool.gpsinput.GPSPosition;
 import org.dinopolis.gpstool.gpsinput.GPSPositionError;
+import org.dinopolis.gpstool.gpsinput.GPSSatelliteTable;
 import org.dinopolis.gpstool.gpsinput.SatelliteInfo;
 
 // ----------------------------------------------------------------------
@@ -83,24 +89,82 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
   /** the inputstream from the GPSDevice */
   protected InputStream in_stream_ = null;
 
-  /** the reader thread */
+  /** the reader thread (frames the sentences) */
   protected Thread read_thread_;
+  /** the decoder thread (processes the sentences and informs the listeners) */
+  protected Thread decode_thread_;
+  /** passes the sentences from the reader to the decoder thread */
+  protected NMEA0183SentenceRing sentence_ring_;
+  /** the number of sentences the ring can hold */
+  protected int ring_capacity_ = NMEA0183SentenceRing.DEFAULT_CAPACITY;
+  /** what happens if the ring is full */
+  protected int overflow_policy_ = NMEA0183SentenceRing.OVERFLOW_BLOCK;
+  /** the buffer the decoder thread copies the sentences to */
+  protected byte[] decode_buffer_ = new byte[128];
 
+  /**
+   * @deprecated sentences are not limited in length any more, see {@link NMEA0183Framer}.
+   */
   public final static int MAX_NMEA_MESSAGE_LENGTH = 90;
+  /** splits the input stream into sentences */
+  protected NMEA0183Framer framer_;
+  /** the buffer the raw sentences are copied to for the raw data listeners */
+  protected byte[] sentence_buffer_ = new byte[128];
+  /** the view on the current sentence in the sentence buffer */
+  protected NMEA0183SentenceView sentence_view_ = new NMEA0183SentenceView();
+  /** maps the sentence ids to the handlers processing the sentences */
+  protected NMEA0183SentenceRegistry sentence_registry_ = new NMEA0183SentenceRegistry();
+  /** collects the sentences of one epoch into a fix */
+  protected GPSFixAggregator fix_aggregator_;
+  /** the clock disciplined by the time of the fixes */
+  protected GPSClock clock_ = new GPSClock();
+  /** the System.nanoTime() the sentence being processed was received */
+  protected long sentence_nanos_;
+  /** the last heading or -1 (the heading is not kept in the gps data
+   * without property change listeners) */
+  protected volatile float heading_ = -1.0f;
+  /** the handlers of the sentences somebody is interested in */
+  protected NMEA0183SentenceRegistry active_registry_;
+  /** the listener and registry modification counts the active registry was selected for */
+  protected int active_listener_modification_count_;
+  protected int active_registry_modification_count_;
+  /** if true, all sentences are processed, no matter if somebody is interested */
+  protected boolean process_all_sentences_ = false;
+
+  /** the gps data that is always decoded, as it is returned by getGPSPosition/getHeading */
+  protected static final String[] ALWAYS_NEEDED_KEYS = new String[] {LOCATION, HEADING};
+  /** the gps data needed for the fixes passed to the GPSFixListeners */
+  protected static final String[] FIX_KEYS = new String[] {LOCATION, ALTITUDE, SPEED, HEADING, HDOP, PDOP, VDOP,
+      NUMBER_SATELLITES, IDS_SATELLITES, FIX_QUALITY, FIX_INFO, FIXTIME};
   /** if an end of stream is reached, wait some milliseconds and continue */
   private static final long EOFREACHED_WAIT_MS = 50;
   /** the milliseconds to wait for device info on nmea devices */
   private static final long NMEA_DEVICE_INFO_WAIT_MS = 1000;
 
-  SatelliteInfo[] satellite_infos_;
-  int satellite_info_count_;
+  /** the satellites in view of all constellations, updated in place */
+  protected GPSSatelliteTable satellite_table_ = new GPSSatelliteTable();
+  /** the index of the gsv state of mixed (GN) talkers */
+  protected static final int MIXED_CONSTELLATIONS = SatelliteInfo.NUMBER_CONSTELLATIONS;
+  /** the last gsv message number, per constellation (talker) */
+  protected int[] last_gsv_message_number_ = new int[MIXED_CONSTELLATIONS + 1];
+  /** the number of satellites of the current gsv block, per constellation */
+  protected int[] gsv_number_satellites_ = new int[MIXED_CONSTELLATIONS + 1];
+  /** the satellites already reported in the current gsv block, per constellation */
+  protected int[] gsv_satellite_count_ = new int[MIXED_CONSTELLATIONS + 1];
+  int[] used_satellite_ids_ = new int[12];
+  int[] used_constellation_ids_ = new int[12];
+  /** the decoded values of repeating sentences (GSA, GSV) */
+  protected NMEA0183SentenceCache sentence_cache_ = new NMEA0183SentenceCache();
+  /** the cache entry of the last GSA sentence (its values were fired), per constellation */
+  protected NMEA0183SentenceCache.Entry[] last_gsa_entries_ =
+    new NMEA0183SentenceCache.Entry[MIXED_CONSTELLATIONS + 1];
+  /** drops sentences received twice (redundant feeds) or null */
+  protected NMEA0183DuplicateFilter duplicate_filter_;
 
   boolean open_ = false;
 
   int delay_time_ = -1;
 
-  int last_gsv_message_number_ = 0;
-
   boolean ignore_invalid_checksum_ = false;
   boolean print_ignore_warning_ = true;
 
@@ -121,6 +185,14 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
    */
   public GPSNmeaDataProcessor()
   {
+    registerDefaultHandlers();
+    fix_aggregator_ = new GPSFixAggregator(new GPSFixListener()
+    {
+      public void gpsFixReceived(GPSFix fix)
+      {
+        fireGPSFixReceived(fix);
+      }
+    });
   }
 
   // ----------------------------------------------------------------------
@@ -187,9 +259,20 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
       gps_device_.open();
       open_ = true;
       in_stream_ = gps_device_.getInputStream();
+      sentence_ring_ = new NMEA0183SentenceRing(ring_capacity_);
+      sentence_ring_.setOverflowPolicy(overflow_policy_);
       // start this runnable as thread:
       read_thread_ = new Thread(this, "GPSNmeaDataProcessor");
       read_thread_.setDaemon(true); // so thread is finished after exit of application
+      decode_thread_ = new Thread(new Runnable()
+      {
+        public void run()
+        {
+          decodeMessages();
+        }
+      }, "GPSNmeaDataProcessor-decoder");
+      decode_thread_.setDaemon(true);
+      decode_thread_.start();
       read_thread_.start();
 
       sendInitNmea(gps_device_.getOutputStream());
@@ -228,11 +311,55 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
       throw new GPSException("no GPSDevice set!");
     open_ = false;
     gps_device_.close();
+    sentence_ring_.close();
 
     //SEG
     read_thread_.interrupt(); // not nessisarily needed, but might help close faster
   }
 
+  // ----------------------------------------------------------------------
+  /**
+   * Sets the number of sentences that may be waiting for the decoder thread. Takes effect on the
+   * next call of {@link #open()}.
+   *
+   * @param capacity the number of sentences (rounded up to a power of two).
+   */
+  public void setRingCapacity(int capacity)
+  {
+    ring_capacity_ = capacity;
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Sets what happens if the decoder thread falls so far behind that the ring between reader and
+   * decoder thread is full: {@link NMEA0183SentenceRing#OVERFLOW_BLOCK} (the default) stops reading
+   * until there is space again, {@link NMEA0183SentenceRing#OVERFLOW_DROP_OLDEST} throws away the
+   * oldest sentence, so reading from the device never stops.
+   *
+   * @param policy the overflow policy.
+   * @exception IllegalArgumentException if the policy is unknown.
+   */
+  public void setOverflowPolicy(int policy) throws IllegalArgumentException
+  {
+    if (sentence_ring_ != null)
+      sentence_ring_.setOverflowPolicy(policy);
+    else if ((policy != NMEA0183SentenceRing.OVERFLOW_BLOCK) && (policy != NMEA0183SentenceRing.OVERFLOW_DROP_OLDEST))
+      throw new IllegalArgumentException("unknown overflow policy: " + policy);
+    overflow_policy_ = policy;
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the ring between reader and decoder thread (e.g. to get the overflow counters) or
+   * <code>null</code> if the processor was not opened yet.
+   *
+   * @return the sentence ring.
+   */
+  public NMEA0183SentenceRing getSentenceRing()
+  {
+    return (sentence_ring_);
+  }
+
   // ----------------------------------------------------------------------
   /**
    * Returns information about the gps connected (name of device, type of connection, etc.) This
@@ -305,277 +432,473 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
 
   // ----------------------------------------------------------------------
   /**
-   * Reads and parses the NMEA sentences from the inputstream and fires events depending on the nmea
-   * sentence read.
+   * Creates the framer that splits the stream of the device into sentences.
+   *
+   * @param in_stream the stream of the device.
+   * @return the framer.
+   */
+  protected NMEA0183Framer createFramer(InputStream in_stream)
+  {
+    return (new NMEA0183Framer(in_stream));
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Reads the NMEA sentences from the inputstream and passes them to the decoder thread. The
+   * sentences are framed by a {@link NMEA0183Framer} that reads the stream in blocks and are copied
+   * into the pre-allocated slots of the {@link NMEA0183SentenceRing}, so this thread never waits
+   * for listeners (unless the ring is full and the overflow policy is to block).
    */
   protected void readMessages()
   {
 //    if (logger_.isDebugEnabled())
 //      System.out.println("start reading from GPSDevice...");
 
-    char[] buffer;
-    int count;
-    int data;
-    NMEA0183Sentence message;
-    try
+    NMEA0183SentenceRing ring = sentence_ring_;
+    framer_ = createFramer(in_stream_);
+    int length;
+    while (open_) // SEG // maybe a check here to make sure it is still open
     {
+      try
+      {
+        length = framer_.readSentence();
+      }
+      catch (IOException ioe)
+      {
+        if (!open_) // this is the reason for the exception!
+          break;
+        length = -1; // rxtx sometimes throws exceptions instead of returning -1
+      }
 
-//      if (logger_.isDebugEnabled())
-//        System.out.println("inputstream: " + in_stream_);
+      if (length < 0)
+      {
+        // rxtx 2.1.7 on windows has the problem (?) that even if the stream is not ended
+        // it returns -1 here (happens in between nmea sentences)
+        // so we just wait a little and then retry to read
+        try
+        {
+          Thread.sleep(EOFREACHED_WAIT_MS);
+        }
+        catch (InterruptedException ignore)
+        {
+        }
+        continue;
+      }
 
-      if (!readGarbage()) // try to (re)sync with nmea stream
-        return;
+      if (!ring.offer(framer_.getBuffer(), framer_.getSentenceOffset(), length, framer_.getCalculatedChecksum(),
+                      System.nanoTime()))
+        break; // closed
 
-      int loopcount = 0;
-      while (open_) // SEG // maybe a check here to make sure it is still open
+      if (delay_time_ > 0)
       {
-        loopcount++;
-        count = 0;
-        buffer = new char[MAX_NMEA_MESSAGE_LENGTH];
+        try
+        {
+          Thread.sleep(delay_time_);
+        }
+        catch (InterruptedException ie)
+        {
+        }
+      }
+    }
+    ring.close();
+  }
 
-        //System.out.println("here");
+  // ----------------------------------------------------------------------
+  /**
+   * Takes the sentences framed by the reader thread from the ring, parses them and fires events
+   * depending on the nmea sentence read. The sentence view is reused for all sentences, so no
+   * objects are created for the sentences themselves.
+   */
+  protected void decodeMessages()
+  {
+    NMEA0183SentenceRing ring = sentence_ring_;
+    int length;
+    while ((length = ring.take(decode_buffer_)) >= 0)
+    {
+      decode_buffer_ = ring.getBuffer();
+      sentence_nanos_ = ring.getTimestamp();
+      decodeMessage(decode_buffer_, length, ring.getChecksum());
+    }
+    fix_aggregator_.flush();
+  }
 
-        while ((data = getNextByte()) != (char) 13) // read data until CR
+  // ----------------------------------------------------------------------
+  /**
+   * Decodes a message taken from the ring: fires the raw data event and passes the sentence to its
+   * handler if somebody is interested in it and its checksum is valid.
+   *
+   * @param buffer the buffer holding the message.
+   * @param length the length of the message.
+   * @param checksum the checksum calculated by the framer or -1.
+   */
+  protected void decodeMessage(byte[] buffer, int length, int checksum)
+  {
+    NMEA0183SentenceView message = sentence_view_;
+    try
+    {
+      message.wrap(buffer, 0, length, checksum);
+
+      fireRawSentenceReceived(message);
+//      if (logger_message_.isDebugEnabled())
+//      {
+//        System.out.println("message: '" + message + "'");
+//        System.out.println("sentenceId: '" + message.getSentenceId() + "'");
+//      }
+
+      // sentences nobody is interested in are skipped before the checksum is verified:
+      NMEA0183SentenceHandler handler = getNeededHandler(message);
+      if (handler != null)
+      {
+        if (!message.isValid() && ignore_invalid_checksum_ && print_ignore_warning_)
         {
-            //System.out.println(":" + data);
-          if (count >= MAX_NMEA_MESSAGE_LENGTH - 1) 
-          {
-            System.err.println("ERROR: max. message length exceeded! (" + count + "):" + new String(buffer));
-            if (!readGarbage()) // try to (re)sync with nmea stream
-              return;
-            loopcount++;
-            count = 0;
-            buffer = new char[MAX_NMEA_MESSAGE_LENGTH];
-          } else
-          {
-            if (data != (char) 10) // ignore LF
-            {
-              buffer[count] = (char) data; // add data to the buffer
-              count++;
-            }
-          }
-        } // end of while (read until end of line)
+            System.out.println("ERORR: invalid checksum in NMEA message: " + message);
+//          logger_.error("checksum of sentence: " + message.getChecksum() + ", calculated checksum: " + message.getCalculatedChecksum());
+//          logger_.warn("WARNING: As you chose to ingore invalid messages, this message is only printed once!");
+          print_ignore_warning_ = false;
+        }
 
-        if (buffer[0] != '$') // no valid nmea sentence
+        if (ignore_invalid_checksum_ || message.isValid() || message.sentenceIdEquals("RFTXT"))
         {
-          if (!readGarbage()) // try to (re)sync with nmea stream
-            return;
-        } else
-        { // valid sentence, no garbage
           try
           {
-            message = new NMEA0183Sentence(buffer, 0, count);
-
-            buffer[count] = 13; // add CR from NMEA message
-            buffer[count + 1] = 10; // add LF from NMEA message
-            fireRawDataReceived(buffer, 0, count + 2);
-//            if (logger_message_.isDebugEnabled())
-//            {
-//              System.out.println("message: '" + message + "'");
-//              System.out.println("sentenceId: '" + message.getSentenceId() + "'");
-//            }
-
-            if (!message.isValid() && ignore_invalid_checksum_ && print_ignore_warning_)
-            {
-                System.out.println("ERORR: invalid checksum in NMEA message: " + message);
-//              logger_.error("checksum of sentence: " + message.getChecksum() + ", calculated checksum: " + message.getCalculatedChecksum());
-//              logger_.warn("WARNING: As you chose to ingore invalid messages, this message is only printed once!");
-              print_ignore_warning_ = false;
-            }
-
-            if (ignore_invalid_checksum_ || message.isValid() || message.getSentenceId().equals("RFTXT"))
-            {
-              try
-              {
-                processNmeaSentence(message);
-              }
-              catch (Exception e)
-              {
-                System.out.println("ERROR: Exception thrown on processing of NMEA sentences:");
-//                logger_.error(message);
-                e.printStackTrace();
-              }
-            } else
-            {
-              System.out.println("ERORR: invalid checksum in NMEA message: " + message);
-//              logger_.error("checksum of sentence: " + message.getChecksum() + ", calculated checksum: " + message.getCalculatedChecksum());
-            }
-
-            // destroy message object -- to save memory?
-            //message = null;
-            //System.gc();
-
+            processNmeaSentence(message, handler);
           }
           catch (Exception e)
           {
-            System.out.println("ERROR: Exception thrown on creation or processing of NMEA sentences:");
-//            logger_.error(new String(buffer));
+            System.out.println("ERROR: Exception thrown on processing of NMEA sentences:");
+//            logger_.error(message);
             e.printStackTrace();
           }
-        }
-
-        if (delay_time_ > 0)
+        } else
         {
-          try
-          {
-            Thread.sleep(delay_time_);
-          }
-          catch (InterruptedException ie)
-          {
-          }
+          System.out.println("ERORR: invalid checksum in NMEA message: " + message);
+//          logger_.error("checksum of sentence: " + message.getChecksum() + ", calculated checksum: " + message.getCalculatedChecksum());
         }
       }
     }
-    catch (IOException ioe)
+    catch (Exception e)
     {
-      if (open_) // otherwise, this is the reason for the exception!
-        ioe.printStackTrace();
+      System.out.println("ERROR: Exception thrown on creation or processing of NMEA sentences:");
+//      logger_.error(message);
+      e.printStackTrace();
     }
   }
 
+  // ----------------------------------------------------------------------
   /**
-   * Fetches the next byte from the input stream and returns it.
+   * Fires the raw data event for the given sentence (with CR/LF appended, as it was sent by the
+   * device). The sentence is only copied if a raw data listener is registered.
    *
-   * @return the next byte from the input stream.
-   * @throws IOException if an error occurs.
+   * @param sentence the sentence.
    */
-  private int getNextByte() throws IOException
+  protected void fireRawSentenceReceived(NMEA0183SentenceView sentence)
   {
-    int data = -1;
-    // rxtx 2.1.7 on windows has the problem (?) that even if the stream is not ended
-    // it returns -1 here (happens in between nmea sentences)
-    // so we just wait a little and then retry to read
-      try // SEG
-      {  // SEG
-          while((data = in_stream_.read()) < 0 && open_)  // SEG added the && open_
-          {
-              try
-              {
-                  Thread.sleep(EOFREACHED_WAIT_MS);
-              }
-              catch(InterruptedException ignore)
-              {
-              }
-          } // while
-      } // try // SEG
-      catch(Exception e)
-      {
-          //System.out.println("Error reading data from stream:" + e.toString());
-      }
+    if (!hasRawDataListeners())
+      return;
+    int length = sentence.getLength();
+    if (sentence_buffer_.length < length + 2)
+      sentence_buffer_ = new byte[length + 2];
+    System.arraycopy(sentence.getBuffer(), sentence.getOffset(), sentence_buffer_, 0, length);
+    sentence_buffer_[length] = 13; // add CR from NMEA message
+    sentence_buffer_[length + 1] = 10; // add LF from NMEA message
+    fireRawDataReceived(sentence_buffer_, 0, length + 2, sentence_nanos_);
+  }
 
-    return data;
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the aggregator that collects the sentences of one epoch into a {@link GPSFix} (e.g. to
+   * change the required fields or the epoch timeout).
+   *
+   * @return the fix aggregator.
+   */
+  public GPSFixAggregator getFixAggregator()
+  {
+    return (fix_aggregator_);
   }
 
   // ----------------------------------------------------------------------
   /**
-   * Reads garbage from the input stream and tries to find the beginning of the next valid nmea
-   * sentence (by searching the next CR/LF pair).
+   * Returns the framer used to split the input stream into sentences (e.g. to get statistics about
+   * garbage or resynchronizations) or <code>null</code> if the processor was not opened yet.
    *
-   * @return true if everything was fine, false otherwise (e.g. if the end of the input stream was
-   *         reached!)
+   * @return the framer.
    */
-  protected boolean readGarbage()
+  public NMEA0183Framer getFramer()
   {
-    int data;
-    try
+    return (framer_);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Sets the filter that drops sentences received twice before they are decoded (e.g. if the same
+   * receiver is read through two feeds, or sends GP and GN copies of its sentences). The raw data
+   * listeners still get all sentences. By default, no sentences are dropped.
+   *
+   * @param filter the filter or null to decode all sentences.
+   */
+  public void setDuplicateFilter(NMEA0183DuplicateFilter filter)
+  {
+    duplicate_filter_ = filter;
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the filter that drops sentences received twice.
+   *
+   * @return the filter (with the counters of checked and dropped sentences) or null.
+   */
+  public NMEA0183DuplicateFilter getDuplicateFilter()
+  {
+    return (duplicate_filter_);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the registry that maps sentence ids to the handlers processing them.
+   *
+   * @return the sentence registry.
+   */
+  public NMEA0183SentenceRegistry getSentenceRegistry()
+  {
+    return (sentence_registry_);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Registers a handler for the given sentence id. Standard sentences are registered without
+   * talker id (e.g. "GGA"), proprietary sentences with their full address (e.g. "PGRME" or
+   * "PUBX"). A handler registered for the same id before (also one of the default handlers) is
+   * replaced.
+   *
+   * @param sentence_id the sentence id.
+   * @param handler the handler.
+   */
+  public void registerSentenceHandler(String sentence_id, NMEA0183SentenceHandler handler)
+  {
+    sentence_registry_.registerHandler(sentence_id, handler);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Registers a handler for the given sentence id that produces the gps data with the given keys.
+   * The sentences are only processed if a listener is interested in at least one of these keys
+   * (see {@link #setProcessAllSentences(boolean)}).
+   *
+   * @param sentence_id the sentence id.
+   * @param handler the handler.
+   * @param data_keys the keys of the gps data produced (e.g. {@link GPSDataProcessor#SPEED}) or
+   *          <code>null</code> if the sentences should always be processed.
+   */
+  public void registerSentenceHandler(String sentence_id, NMEA0183SentenceHandler handler, String[] data_keys)
+  {
+    sentence_registry_.registerHandler(sentence_id, handler, data_keys);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Removes the handler for the given sentence id, so these sentences are ignored.
+   *
+   * @param sentence_id the sentence id.
+   * @return the handler removed or <code>null</code> if none was registered.
+   */
+  public NMEA0183SentenceHandler unregisterSentenceHandler(String sentence_id)
+  {
+    return (sentence_registry_.unregisterHandler(sentence_id));
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * If set to true, all sentences are processed. Otherwise (the default) only the sentences that
+   * produce gps data somebody is interested in (a data change listener for this key or for all
+   * keys, a fix listener) are processed. Location and heading are always processed, as they are
+   * returned by {@link #getGPSPosition()} and {@link #getHeading()}.
+   *
+   * @param process_all_sentences true if all sentences should be processed.
+   */
+  public void setProcessAllSentences(boolean process_all_sentences)
+  {
+    process_all_sentences_ = process_all_sentences;
+    active_registry_ = null;
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Returns true if all sentences are processed, no matter if somebody is interested.
+   *
+   * @return true if all sentences are processed.
+   */
+  public boolean isProcessAllSentences()
+  {
+    return (process_all_sentences_);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the handler for the given sentence if somebody is interested in the data it produces.
+   * The selection of the needed handlers is only repeated if listeners or handlers changed.
+   *
+   * @param sentence the sentence.
+   * @return the handler or <code>null</code> if the sentence can be skipped.
+   */
+  protected NMEA0183SentenceHandler getNeededHandler(NMEA0183SentenceView sentence)
+  {
+    if (process_all_sentences_)
+      return (sentence_registry_.getHandler(sentence));
+
+    NMEA0183SentenceRegistry registry = active_registry_;
+    int listener_count = listener_modification_count_;
+    int registry_count = sentence_registry_.getModificationCount();
+    if ((registry == null) || (listener_count != active_listener_modification_count_)
+        || (registry_count != active_registry_modification_count_))
     {
-      while (open_) // SEG - not true -- should stop when file is closed
+      Set needed_keys = new HashSet();
+      Iterator data_keys = sentence_registry_.getDataKeys().iterator();
+      while (data_keys.hasNext())
       {
-        // read until CR/LF>
-        while ((data = getNextByte()) != (char) 13) // read data until CR
-        {
-        }
-        data = getNextByte(); // char after CR
-        if (data == (char) 10) // linefeed
-        {
-          return (true);
-        }
-//        if (logger_message_.isDebugEnabled())
-//          System.out.println("reading garbage...");
+        String key = (String) data_keys.next();
+        if (hasGPSDataChangeListeners(key))
+          needed_keys.add(key);
       }
-
-      // file closed
-      return false;
-    }
-    catch (IOException ioe)
-    {
-      System.err.println("GPS Nmea Reading: IOException on beginning of reading, try once more: " + ioe.getMessage());
-      return (false);
+      needed_keys.addAll(Arrays.asList(ALWAYS_NEEDED_KEYS));
+      if (hasGPSFixListeners())
+        needed_keys.addAll(Arrays.asList(FIX_KEYS));
+      registry = sentence_registry_.select(needed_keys);
+      active_registry_ = registry;
+      active_listener_modification_count_ = listener_count;
+      active_registry_modification_count_ = registry_count;
     }
+    return (registry.getHandler(sentence));
   }
 
   // ----------------------------------------------------------------------
   /**
-   * Processes the different nmea sentences.
-   *
-   * @param sentence a NMEA sentence.
+   * Registers the handlers for the sentences this processor understands.
    */
-  protected void processNmeaSentence(NMEA0183Sentence sentence)
+  protected void registerDefaultHandlers()
   {
-    String id = sentence.getSentenceId().toUpperCase();
-    if (id.equals("GLL"))
+    registerSentenceHandler("GLL", new NMEA0183SentenceHandler()
     {
-      processGLL(sentence);
-      return;
-    }
-    if (id.equals("RMC"))
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processGLL(sentence);
+      }
+    }, new String[] {LOCATION});
+    registerSentenceHandler("RMC", new NMEA0183SentenceHandler()
     {
-      processRMC(sentence);
-      return;
-    }
-    if (id.equals("HDG"))
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processRMC(sentence);
+      }
+    }, new String[] {LOCATION, SPEED, HEADING, FIXTIME});
+    registerSentenceHandler("HDG", new NMEA0183SentenceHandler()
     {
-      processHDG(sentence);
-      return;
-    }
-    if (id.equals("GGA"))
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processHDG(sentence);
+      }
+    }, new String[] {HEADING});
+    registerSentenceHandler("GGA", new NMEA0183SentenceHandler()
     {
-      processGGA(sentence);
-      return;
-    }
-    if (id.equals("GSV"))
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processGGA(sentence);
+      }
+    }, new String[] {LOCATION, ALTITUDE, NUMBER_SATELLITES, HDOP, FIX_QUALITY});
+    registerSentenceHandler("GSV", new NMEA0183SentenceHandler()
     {
-      processGSV(sentence);
-      return;
-    }
-    if (id.equals("DBT"))
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processGSV(sentence);
+      }
+    }, new String[] {SATELLITE_INFO});
+    registerSentenceHandler("DBT", new NMEA0183SentenceHandler()
     {
-      processDBT(sentence);
-      return;
-    }
-
-    if (id.equals("VTG"))
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processDBT(sentence);
+      }
+    }, new String[] {DEPTH});
+    registerSentenceHandler("VTG", new NMEA0183SentenceHandler()
     {
-      processVTG(sentence);
-      return;
-    }
-
-    if (id.equals("HDT"))
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processVTG(sentence);
+      }
+    }, new String[] {HEADING, SPEED});
+    registerSentenceHandler("HDT", new NMEA0183SentenceHandler()
     {
-      processHDT(sentence);
-      return;
-    }
-
-    if (id.equals("RME"))
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processHDT(sentence);
+      }
+    }, new String[] {HEADING});
+    registerSentenceHandler("PGRME", new NMEA0183SentenceHandler()
     {
-      processRME(sentence);
-      return;
-    }
-
-    if (id.equals("RFTXT"))
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processRME(sentence);
+      }
+    }, new String[] {EPE});
+    registerSentenceHandler("ZDA", new NMEA0183SentenceHandler()
     {
-      processRFTXT(sentence);
-      return;
-    }
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processZDA(sentence);
+      }
+    }, new String[] {FIXTIME});
+    registerSentenceHandler("PSRFTXT", new NMEA0183SentenceHandler()
+    {
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processRFTXT(sentence);
+      }
+    });
     // PHILIPPE START
-    if (id.equals("GSA"))
+    registerSentenceHandler("GSA", new NMEA0183SentenceHandler()
     {
-    	processGSA(sentence);
-    	return;
-    }
+      public void handleSentence(NMEA0183SentenceView sentence)
+      {
+        processGSA(sentence);
+      }
+    }, new String[] {PDOP, HDOP, VDOP, IDS_SATELLITES, FIX_INFO, SATELLITE_INFO});
     // PHILIPPE STOP
   }
 
+  // ----------------------------------------------------------------------
+  /**
+   * Processes the different nmea sentences by passing them to the handler registered for their
+   * sentence id. Sentences without handler or that nobody is interested in are ignored (before
+   * their fields are split). After the handler, the fix aggregator may publish the fix of the
+   * current epoch.
+   *
+   * @param sentence a NMEA sentence.
+   */
+  protected void processNmeaSentence(NMEA0183SentenceView sentence)
+  {
+    NMEA0183SentenceHandler handler = getNeededHandler(sentence);
+    if (handler == null)
+      return;
+    sentence_nanos_ = System.nanoTime();
+    processNmeaSentence(sentence, handler);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Processes a nmea sentence by the given handler, unless the duplicate filter recognizes it as a
+   * copy of a sentence received a moment ago. After the handler, the fix aggregator may publish the
+   * fix of the current epoch.
+   *
+   * @param sentence a NMEA sentence.
+   * @param handler the handler for the sentence.
+   */
+  protected void processNmeaSentence(NMEA0183SentenceView sentence, NMEA0183SentenceHandler handler)
+  {
+    if ((duplicate_filter_ != null) && duplicate_filter_.isDuplicate(sentence, sentence_nanos_))
+      return;
+    handler.handleSentence(sentence);
+    fix_aggregator_.endSentence();
+  }
+
   // ----------------------------------------------------------------------
   /**
    * Processes a GLL nmea sentences and fires the specific events about the information contained in
@@ -583,31 +906,20 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
    *
    * @param sentence a NMEA sentence.
    */
-  protected void processGLL(NMEA0183Sentence sentence)
+  protected void processGLL(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("GLL detected: " + sentence);
-    List data_fields = sentence.getDataFields();
-
-    String valid = (String) data_fields.get(5);
-    if (valid.equals("V")) // invalid
+    if (sentence.fieldEquals(5, "V")) // invalid
       return;
 
-    String latitude = (String) data_fields.get(0);
-    String north_south = (String) data_fields.get(1);
-    String longitude = (String) data_fields.get(2);
-    String east_west = (String) data_fields.get(3);
-    String utc_time = (String) data_fields.get(4);
-
     // check for empty messages:
-    if (latitude.length() == 0)
+    GPSPosition pos = nmeaPositionToWGS84(sentence, 0);
+    if (pos == null)
       return;
 
-    double wgs84_lat = nmeaLatOrLongToWGS84(latitude);
-    double wgs84_long = nmeaLatOrLongToWGS84(longitude);
-
-    GPSPosition pos = new GPSPosition(wgs84_lat, north_south, wgs84_long, east_west);
     changeGPSData(LOCATION, pos);
+    firePosition(pos.getLatitude(), pos.getLongitude(), sentence_nanos_);
   }
 
   // ----------------------------------------------------------------------
@@ -618,22 +930,15 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
    *
    * @param sentence a NMEA sentence.
    */
-  protected void processDBT(NMEA0183Sentence sentence)
+  protected void processDBT(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("DBT detected: " + sentence);
-    List data_fields = sentence.getDataFields();
-    String depth_str = (String) sentence.getDataFields().get(2);
-    Float depth = null;
-    try
+    float depth = sentence.fieldAsFloat(2);
+    if (!Float.isNaN(depth))
     {
-      depth = new Float(depth_str);
       changeGPSData(DEPTH, depth);
-    }
-    catch (NumberFormatException nfe)
-    {
-//      if (logger_nmea_.isDebugEnabled())
-//        nfe.printStackTrace();
+      fireDepth(depth);
     }
   }
 
@@ -645,55 +950,62 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
    *
    * @param sentence a NMEA sentence.
    */
-  protected void processGGA(NMEA0183Sentence sentence)
+  protected void processGGA(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      System.out.println("GGA detected: " + sentence);
-    List data_fields = sentence.getDataFields();
-    String latitude = (String) data_fields.get(1);
-    String north_south = (String) data_fields.get(2);
-    String longitude = (String) data_fields.get(3);
-    String east_west = (String) data_fields.get(4);
-    int valid_fix = Integer.parseInt((String) data_fields.get(5));
+    int valid_fix = sentence.fieldAsInt(5, 0);
+    int time_of_day = sentence.fieldAsTimeOfDay(0);
+    fix_aggregator_.beginSentence(time_of_day);
+    clock_.update(time_of_day, sentence_nanos_);
+    fix_aggregator_.setFixQuality(valid_fix);
 
     if (valid_fix == 0)
       return;
 
     // check for empty messages:
-    if (latitude.length() == 0)
+    GPSPosition pos = nmeaPositionToWGS84(sentence, 1);
+    if (pos == null)
       return;
 
-    double wgs84_lat = nmeaLatOrLongToWGS84(latitude);
-    double wgs84_long = nmeaLatOrLongToWGS84(longitude);
-
      // SEG -- before location!!!
-    try
-    {
-      String altitude = (String) data_fields.get(8);
-      changeGPSData(ALTITUDE, new Float(altitude));
-    }
-    catch (NumberFormatException nfe)
+    fix_aggregator_.setPosition(pos);
+    float altitude = sentence.fieldAsFloat(8);
+    if (!Float.isNaN(altitude))
     {
-//      if (logger_nmea_.isDebugEnabled())
-//        nfe.printStackTrace();
+      fix_aggregator_.setAltitude(altitude);
+      changeGPSData(ALTITUDE, altitude);
+      fireAltitude(altitude);
     }
+    float geoid_separation = sentence.fieldAsFloat(10);
+    if (!Float.isNaN(geoid_separation))
+      fix_aggregator_.setGeoidSeparation(geoid_separation);
 
-    GPSPosition pos = new GPSPosition(wgs84_lat, north_south, wgs84_long, east_west);
     changeGPSData(LOCATION, pos);
+    firePosition(pos.getLatitude(), pos.getLongitude(), sentence_nanos_);
 
-    String num_sat = (String) data_fields.get(6);
-    changeGPSData(NUMBER_SATELLITES, new Integer(num_sat));
+    int number_satellites = sentence.fieldAsInt(6);
+    if (number_satellites != NMEA0183FieldDecoder.NO_INT)
+    {
+      fix_aggregator_.setSatellitesUsed(number_satellites);
+      changeGPSData(NUMBER_SATELLITES, number_satellites);
+      fireSatellitesUsed(number_satellites);
+    }
 
     // PHILIPPE START
-    String hdop = (String) data_fields.get(7);
-    changeGPSData(HDOP, new Float(hdop));
+    float hdop = sentence.fieldAsFloat(7);
+    if (!Float.isNaN(hdop))
+    {
+      fix_aggregator_.setHDOP(hdop);
+      changeGPSData(HDOP, hdop);
+      fireDop(Float.NaN, hdop, Float.NaN);
+    }
     // PHILIPPE END
 
    
     // SEG - fix quality
-    String fixQual = (String)data_fields.get(5);
-    if(fixQual.length() > 0)
-        changeGPSData(FIX_QUALITY, Integer.parseInt(fixQual));
+    changeGPSData(FIX_QUALITY, valid_fix);
+    fireFixQuality(valid_fix);
 
 
   }
@@ -703,208 +1015,473 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
   /**
    * Processes a GSA nmea sentences and fires the specific events about the information contained in
    * this sentence (property name {@link GPSDataProcessor#PDOP}, {@link GPSDataProcessor#HDOP}
-   * {@link GPSDataProcessor#VDOP} and {@link GPSDataProcessor#IDS_SATELLITES}).
+   * {@link GPSDataProcessor#VDOP} and {@link GPSDataProcessor#IDS_SATELLITES}). If the satellites
+   * used for the fix changed, {@link GPSDataProcessor#SATELLITE_INFO} is fired as well.
+   * <p>
+   * The decoded values are cached: if the same sentence is received again, it is not parsed again
+   * and, if it repeats the previous GSA sentence of its constellation (system id or talker), none
+   * of its values is fired again. So receivers sending one GSA sentence per constellation and
+   * epoch do not fire the unchanged values of every constellation in turn.
    *
    * @param sentence a NMEA sentence.
    */
-  protected void processGSA(NMEA0183Sentence sentence)
+  protected void processGSA(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("GSA detected: " + sentence);
-    List data_fields = sentence.getDataFields();
-    Integer[] satellites_ids = new Integer[12];
-    String pdop = (String) data_fields.get(14);
-    String hdop = (String) data_fields.get(15);
-    String vdop = (String) data_fields.get(16);
-    int valid_fix = Integer.parseInt((String) data_fields.get(1));
+    NMEA0183SentenceCache.Entry entry = sentence_cache_.lookup(sentence);
+    boolean cached = entry != null;
+    if (!cached)
+    {
+      entry = decodeGSA(sentence);
+      if (entry == null)
+        return;
+    }
 
+    int[] values = entry.getIntValues();
+    float[] dops = entry.getFloatValues();
+    int valid_fix = values[0];
+    int satellite_count = 0;
     for (int i=0; i < 12; i++) {
-    	String id = (String) data_fields.get(i+2);
-    	if (id != null && id.length()>0) {
-    		satellites_ids[i] = new Integer(Integer.parseInt(id));
-    	}
+      if (values[i+2] != NMEA0183FieldDecoder.NO_INT)
+        used_satellite_ids_[satellite_count++] = values[i+2];
     }
 
-    if(pdop.length() > 0)
-    changeGPSData(PDOP,new Float(pdop));
+    int constellation = getGSAConstellation(sentence, values[1], satellite_count);
+    boolean changed = !cached || (entry != last_gsa_entries_[constellation]);
+    last_gsa_entries_[constellation] = entry;
+    fix_aggregator_.setFixType(valid_fix);
+    fix_aggregator_.setSatelliteIds(used_satellite_ids_, satellite_count);
+    updateUsedSatellites(sentence, values[1], satellite_count);
 
-    if(hdop.length() > 0)
-    changeGPSData(HDOP,new Float(hdop));
+    float dop = dops[0];
+    if (!Float.isNaN(dop))
+    {
+      fix_aggregator_.setPDOP(dop);
+      if (changed)
+        changeGPSData(PDOP, dop);
+    }
 
-    if(vdop.length() > 0)
-    changeGPSData(VDOP, new Float(vdop));
-    
+    dop = dops[1];
+    if (!Float.isNaN(dop))
+    {
+      fix_aggregator_.setHDOP(dop);
+      if (changed)
+        changeGPSData(HDOP, dop);
+    }
+
+    dop = dops[2];
+    if (!Float.isNaN(dop))
+    {
+      fix_aggregator_.setVDOP(dop);
+      if (changed)
+        changeGPSData(VDOP, dop);
+    }
+
+    if(!changed)
+      return;
+
+    fireDop(dops[0], dops[1], dops[2]);
+
+    Integer[] satellites_ids = new Integer[12];
+    for (int i=0; i < 12; i++) {
+      if (values[i+2] != NMEA0183FieldDecoder.NO_INT)
+        satellites_ids[i] = new Integer(values[i+2]);
+    }
     changeGPSData(IDS_SATELLITES, satellites_ids);
+    fireSatelliteIds(used_satellite_ids_, satellite_count);
 
     // SEG - fix info
-    String fixInfo = (String)data_fields.get(1);
-    if(fixInfo.length() > 0)
-        changeGPSData(FIX_INFO, Integer.parseInt(fixInfo));
+    changeGPSData(FIX_INFO, valid_fix);
+    fireFixType(valid_fix);
     
 
   }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the constellation a GSA sentence reports the dops and used satellites of: the system
+   * id (NMEA 4.10), the talker or (for GN talkers) the prn range of the first used satellite.
+   *
+   * @param sentence the GSA sentence.
+   * @param system_id the system id of the sentence or NO_INT.
+   * @param satellite_count the number of satellite ids in <code>used_satellite_ids_</code>.
+   * @return the constellation or {@link #MIXED_CONSTELLATIONS} if it is not known.
+   */
+  protected int getGSAConstellation(NMEA0183SentenceView sentence, int system_id, int satellite_count)
+  {
+    if ((system_id >= 1) && (system_id <= SatelliteInfo.NUMBER_CONSTELLATIONS))
+      return (system_id - 1);
+    int constellation = getTalkerConstellation(sentence);
+    if ((constellation < 0) && (satellite_count > 0))
+      constellation = getPrnConstellation(used_satellite_ids_[0]);
+    if (constellation < 0)
+      return (MIXED_CONSTELLATIONS);
+    return (constellation);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Parses a GSA sentence and stores the values in the sentence cache: the fix type, the system id
+   * and the twelve satellite ids (NO_INT for empty fields) as int values, pdop, hdop and vdop as
+   * float values.
+   *
+   * @param sentence the GSA sentence.
+   * @return the cache entry or <code>null</code> if the sentence contains no fix type.
+   */
+  protected NMEA0183SentenceCache.Entry decodeGSA(NMEA0183SentenceView sentence)
+  {
+    int valid_fix = sentence.fieldAsInt(1);
+    if (valid_fix == NMEA0183FieldDecoder.NO_INT)
+      return (null);
+
+    NMEA0183SentenceCache.Entry entry = sentence_cache_.store(sentence);
+    int[] values = entry.getIntValues();
+    float[] dops = entry.getFloatValues();
+    values[0] = valid_fix;
+    values[1] = sentence.fieldAsInt(17); // system id (NMEA 4.10)
+    for (int i=0; i < 12; i++)
+      values[i+2] = sentence.fieldAsInt(i+2);
+    dops[0] = sentence.fieldAsFloat(14);
+    dops[1] = sentence.fieldAsFloat(15);
+    dops[2] = sentence.fieldAsFloat(16);
+    return (entry);
+  }
   // PHILIPPE END
   
   // ----------------------------------------------------------------------
   /**
    * Processes a RMC nmea sentences and fires the specific events about the information contained in
-   * this sentence (property name GPSDataProcessor.LOCATION, GPSDataProcessor.SPEED).
+   * this sentence (property name GPSDataProcessor.LOCATION, GPSDataProcessor.SPEED,
+   * GPSDataProcessor.HEADING and GPSDataProcessor.FIXTIME). The time of the fix is passed to the
+   * clock and fired as UTC milliseconds since 1970.
    *
    * @param sentence a NMEA sentence.
    */
-  protected void processRMC(NMEA0183Sentence sentence)
+  protected void processRMC(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("RMC detected: " + sentence);
-    List data_fields = sentence.getDataFields();
-    String latitude = (String) data_fields.get(2);
-    String north_south = (String) data_fields.get(3);
-    String longitude = (String) data_fields.get(4);
-    String east_west = (String) data_fields.get(5);
+
+    int time_of_day = sentence.fieldAsTimeOfDay(0);
+    fix_aggregator_.beginSentence(time_of_day);
 
     // check for empty messages:
-    if (latitude.length() == 0)
+    GPSPosition pos = nmeaPositionToWGS84(sentence, 2);
+    if (pos == null)
       return;
 
-    double wgs84_lat = nmeaLatOrLongToWGS84(latitude);
-    double wgs84_long = nmeaLatOrLongToWGS84(longitude);
-
-    GPSPosition pos = new GPSPosition(wgs84_lat, north_south, wgs84_long, east_west);
+    fix_aggregator_.setPosition(pos);
     changeGPSData(LOCATION, pos);
+    firePosition(pos.getLatitude(), pos.getLongitude(), sentence_nanos_);
 
-    String speed_knots = (String) data_fields.get(6);
-    try
+    float speed = sentence.fieldAsFloat(6);
+    if (!Float.isNaN(speed))
     {
-      float speed = Float.parseFloat(speed_knots);
       speed = speed / KM2NAUTIC;
 
-      changeGPSData(SPEED, new Float(speed));
-    }
-    catch (NumberFormatException nfe)
-    {
-//      if (logger_nmea_.isDebugEnabled())
-        //nfe.printStackTrace();
+      fix_aggregator_.setSpeed(speed);
+      changeGPSData(SPEED, speed);
+      fireSpeed(speed);
     }
 
     // SEG
-    String headingStr = (String) data_fields.get(7);
-    try
+    float heading = sentence.fieldAsFloat(7);
+    if (!Float.isNaN(heading))
     {
-      Float heading = new Float(headingStr);
+      fix_aggregator_.setCourse(heading);
+      heading_ = heading;
       changeGPSData(HEADING, heading);
-    }
-    catch (NumberFormatException nfe)
-    {
-//      if (logger_nmea_.isDebugEnabled())
-        //nfe.printStackTrace();
+      fireHeading(heading);
     }
 
-    // SEG date and time
-    String dateGPSformat = (String) data_fields.get(8);
-    String timeGPSformat = (String) data_fields.get(0); // UTC
-    try
+    // SEG date and time (date is field 8 as ddmmyy, UTC time is field 0 as hhmmss)
+    int yr = sentence.fieldTwoDigitsAt(8, 4);
+    int month = sentence.fieldTwoDigitsAt(8, 2);
+    int date = sentence.fieldTwoDigitsAt(8, 0);
+    if ((yr >= 0) && (month >= 1) && (month <= 12) && (date >= 1) && (time_of_day >= 0))
     {
-        GregorianCalendar cal = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
-        //year-month-date
-        int yr = Integer.parseInt(dateGPSformat.substring(4, 6));
         if(yr >80)
             yr += 1900;
         else
             yr += 2000;
-        cal.set(Calendar.YEAR, yr);
-        cal.set(Calendar.MONTH, Integer.parseInt(dateGPSformat.substring(2,4))-1);
-        cal.set(Calendar.DATE, Integer.parseInt(dateGPSformat.substring(0,2)));
-        // time
-        cal.set(Calendar.SECOND, Integer.parseInt(timeGPSformat.substring(4,6)));
-        cal.set(Calendar.MINUTE, Integer.parseInt(timeGPSformat.substring(2,4)));
-        cal.set(Calendar.HOUR_OF_DAY, Integer.parseInt(timeGPSformat.substring(0,2)));
+        fix_aggregator_.setDate(yr, month, date);
+        clock_.setDate(yr, month, date);
+        long fix_time = clock_.update(time_of_day, sentence_nanos_);
+        changeGPSData(FIXTIME, fix_time);
+        fireFixTime(fix_time);
+    }
 
-        changeGPSData(FIXTIME, cal);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Marks the satellites used for the fix (as reported in a GSA sentence) in the satellite table and
+   * fires {@link GPSDataProcessor#SATELLITE_INFO} if this changed the table. The constellation is
+   * given by the system id (NMEA 4.10), the talker or (for GN talkers) the prn ranges.
+   *
+   * @param sentence the GSA sentence.
+   * @param system_id the system id of the sentence or NO_INT.
+   * @param satellite_count the number of satellite ids in <code>used_satellite_ids_</code>.
+   */
+  protected void updateUsedSatellites(NMEA0183SentenceView sentence, int system_id, int satellite_count)
+  {
+    int constellation = -1;
+    if ((system_id >= 1) && (system_id <= SatelliteInfo.NUMBER_CONSTELLATIONS))
+      constellation = system_id - 1; // GPS, GLONASS, Galileo, BeiDou, QZSS
+    else
+      constellation = getTalkerConstellation(sentence);
 
+    if (constellation >= 0)
+      satellite_table_.setUsed(constellation, used_satellite_ids_, satellite_count);
+    else
+    {
+      for (int prn_constellation = 0; prn_constellation < SatelliteInfo.NUMBER_CONSTELLATIONS; prn_constellation++)
+      {
+        int count = 0;
+        for (int index = 0; index < satellite_count; index++)
+        {
+          if (getPrnConstellation(used_satellite_ids_[index]) == prn_constellation)
+            used_constellation_ids_[count++] = used_satellite_ids_[index];
+        }
+        if (count > 0)
+          satellite_table_.setUsed(prn_constellation, used_constellation_ids_, count);
+      }
     }
-    catch (Exception nfe)
+    if (satellite_table_.commit())
     {
-//      if (logger_nmea_.isDebugEnabled())
-        //nfe.printStackTrace();
+      changeGPSData(SATELLITE_INFO, satellite_table_.getSatelliteInfos());
+      fireSatellites(satellite_table_.getSatelliteInfos());
     }
+  }
 
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the constellation of the satellites reported in the sentence from its talker id.
+   *
+   * @param sentence the sentence.
+   * @return the constellation (e.g. {@link SatelliteInfo#CONSTELLATION_GLONASS}) or -1 for mixed
+   *         (GN) talkers.
+   */
+  protected int getTalkerConstellation(NMEA0183SentenceView sentence)
+  {
+    byte[] buffer = sentence.getBuffer();
+    int offset = sentence.getOffset();
+    if ((sentence.getLength() < 3) || (buffer[offset + 1] != 'G'))
+    {
+      if ((sentence.getLength() >= 3) && (buffer[offset + 1] == 'B') && (buffer[offset + 2] == 'D'))
+        return (SatelliteInfo.CONSTELLATION_BEIDOU);
+      return (SatelliteInfo.CONSTELLATION_GPS);
+    }
+    switch (buffer[offset + 2])
+    {
+    case 'L':
+      return (SatelliteInfo.CONSTELLATION_GLONASS);
+    case 'A':
+      return (SatelliteInfo.CONSTELLATION_GALILEO);
+    case 'B':
+      return (SatelliteInfo.CONSTELLATION_BEIDOU);
+    case 'Q':
+      return (SatelliteInfo.CONSTELLATION_QZSS);
+    case 'N':
+      return (-1);
+    default:
+      return (SatelliteInfo.CONSTELLATION_GPS);
+    }
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the constellation of a satellite reported by a mixed (GN) talker from the prn ranges
+   * used by NMEA (GLONASS 65-96) and common receivers (QZSS 193-200, BeiDou 201-263, Galileo
+   * 301-336).
+   *
+   * @param prn the prn.
+   * @return the constellation.
+   */
+  protected static int getPrnConstellation(int prn)
+  {
+    if ((prn >= 65) && (prn <= 96))
+      return (SatelliteInfo.CONSTELLATION_GLONASS);
+    if ((prn >= 193) && (prn <= 200))
+      return (SatelliteInfo.CONSTELLATION_QZSS);
+    if ((prn >= 201) && (prn <= 263))
+      return (SatelliteInfo.CONSTELLATION_BEIDOU);
+    if ((prn >= 301) && (prn <= 336))
+      return (SatelliteInfo.CONSTELLATION_GALILEO);
+    return (SatelliteInfo.CONSTELLATION_GPS);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Processes a ZDA nmea sentences (UTC time and date) and fires the specific events about the
+   * information contained in this sentence (property name GPSDataProcessor.FIXTIME).
+   *
+   * @param sentence a NMEA sentence.
+   */
+  protected void processZDA(NMEA0183SentenceView sentence)
+  {
+    int time_of_day = sentence.fieldAsTimeOfDay(0);
+    int day = sentence.fieldAsInt(1);
+    int month = sentence.fieldAsInt(2);
+    int year = sentence.fieldAsInt(3);
+    if ((time_of_day < 0) || (day < 1) || (day > 31) || (month < 1) || (month > 12) || (year < 1980))
+      return;
+
+    fix_aggregator_.beginSentence(time_of_day);
+    fix_aggregator_.setDate(year, month, day);
+    clock_.setDate(year, month, day);
+    long fix_time = clock_.update(time_of_day, sentence_nanos_);
+    changeGPSData(FIXTIME, fix_time);
+    fireFixTime(fix_time);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the clock that is disciplined by the UTC time of the fixes reported by the device.
+   *
+   * @return the clock.
+   */
+  public GPSClock getClock()
+  {
+    return (clock_);
   }
 
   // ----------------------------------------------------------------------
   /**
    * Processes a GSV nmea sentences and fires the specific events about the information contained in
-   * this sentence (property name GPSDataProcessor.SATELLITE_INFO). This event is not fired for each
-   * RMC sentence as there might more than one GSV sentences belonging to one GSV block. So the
-   * event is fired only on occurrence of the last message of the block. Missing messages of a block
-   * are detected and the whole block is thrown away in the case of incorrect occurrence of
-   * messages.
+   * this sentence (property name GPSDataProcessor.SATELLITE_INFO). The satellites are updated in
+   * the satellite table, which holds the satellites of all constellations (GP, GL, GA, GB/BD, GQ
+   * and GN talkers). The event is only fired on occurrence of the last message of a block and only
+   * if a value of a satellite changed. Missing messages of a block are detected per talker, so
+   * blocks of different talkers may interleave; satellites of a block with missing messages are
+   * not removed from the table. The decoded values are cached, so repeated sentences are not
+   * parsed again.
    *
    * @param sentence a NMEA sentence.
    */
-  protected void processGSV(NMEA0183Sentence sentence)
+  protected void processGSV(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("GSV detected: " + sentence);
 
-    try
+    int talker_constellation = getTalkerConstellation(sentence);
+    int block = talker_constellation < 0 ? MIXED_CONSTELLATIONS : talker_constellation;
+    NMEA0183SentenceCache.Entry entry = sentence_cache_.lookup(sentence);
+    if (entry == null)
+      entry = decodeGSV(sentence);
+    if (entry == null)
+    {
+      last_gsv_message_number_[block] = 0; // incomplete satellite info, throw away the whole block
+      return;
+    }
+    int[] values = entry.getIntValues();
+    float[] angles = entry.getFloatValues();
+    int total_number_messages = values[0];
+    int message_number = values[1];
+    int number_satellites = values[2];
+
+    // plausability check for gsv sentences:
+    if ((message_number != last_gsv_message_number_[block] + 1)
+        || ((message_number > 1) && (number_satellites != gsv_number_satellites_[block])))
     {
-      List data_fields = sentence.getDataFields();
-      int total_number_messages = Integer.parseInt((String) data_fields.get(0));
-      int message_number = Integer.parseInt((String) data_fields.get(1));
-      int number_satellites = Integer.parseInt((String) data_fields.get(2));
+//      if (logger_nmea_.isDebugEnabled())
+//        logger_nmea_.debug("GSV-message in wrong order, ignoring it!");
+      // System.err.println("WARNING: NMEA message: GSV-message part in wrong order!");
+      last_gsv_message_number_[block] = 0; // reset, so ready for next gsv message
+      return;
+    }
+    last_gsv_message_number_[block] = message_number;
 
-      // plausability check for gsv sentences:
-      if ((message_number != last_gsv_message_number_ + 1) || ((message_number > 1) && (number_satellites != satellite_infos_.length)))
+    int cycle_constellation = talker_constellation < 0 ? GPSSatelliteTable.ALL_CONSTELLATIONS : talker_constellation;
+    if (message_number == 1)
+    {
+      gsv_number_satellites_[block] = number_satellites;
+      gsv_satellite_count_[block] = 0;
+      satellite_table_.beginCycle(cycle_constellation);
+    }
+
+    int number_satellites_message = values[3];
+    for (int sat_count = 0; sat_count < number_satellites_message; sat_count++)
+    {
+      if (gsv_satellite_count_[block] >= number_satellites)
       {
-//        if (logger_nmea_.isDebugEnabled())
-//          logger_nmea_.debug("GSV-message in wrong order, ignoring it!");
-        // System.err.println("WARNING: NMEA message: GSV-message part in wrong order!");
-        last_gsv_message_number_ = 0; // reset, so ready for next gsv message
+        last_gsv_message_number_[block] = 0; // too many satellites, do not finish the block
         return;
       }
-      last_gsv_message_number_ = message_number;
+      int prn = values[4 + 2 * sat_count];
+      int constellation = talker_constellation < 0 ? getPrnConstellation(prn) : talker_constellation;
+      satellite_table_.update(constellation, prn, angles[2 * sat_count], angles[2 * sat_count + 1],
+                              values[5 + 2 * sat_count]);
+      gsv_satellite_count_[block]++;
+    }
 
-      if (message_number == 1)
-      {
-        satellite_infos_ = new SatelliteInfo[number_satellites];
-        satellite_info_count_ = 0;
-      } else
+    if (message_number == total_number_messages) // last message
+    {
+      satellite_table_.endCycle(cycle_constellation);
+      last_gsv_message_number_[block] = 0;
+      if (satellite_table_.commit())
       {
-        if (satellite_infos_ == null)
-          return;
+        changeGPSData(SATELLITE_INFO, satellite_table_.getSatelliteInfos());
+        fireSatellites(satellite_table_.getSatelliteInfos());
       }
+    }
+  }
 
-      int sat_count = 0;
-      while ((sat_count < 4) && ((message_number - 1) * 4 + sat_count < number_satellites))
-      {
-        int prn = Integer.parseInt((String) data_fields.get(3 + 4 * sat_count));
-        float elevation = Float.parseFloat((String) data_fields.get(4 + 4 * sat_count));
-        float azimuth = Float.parseFloat((String) data_fields.get(5 + 4 * sat_count));
-        String srn_string = (String) data_fields.get(6 + 4 * sat_count);
-        int srn;
-        if (srn_string.length() > 0)
-          srn = Integer.parseInt((String) data_fields.get(6 + 4 * sat_count));
-        else
-          srn = 0; // denotes not tracking
-        satellite_infos_[satellite_info_count_++] = new SatelliteInfo(prn, elevation, azimuth, srn);
-        sat_count++;
-      }
+  // ----------------------------------------------------------------------
+  /**
+   * Parses a GSV sentence and stores the values in the sentence cache: the number of messages, the
+   * message number, the number of satellites, the number of satellites in this message and prn and
+   * snr of every satellite as int values, elevation and azimuth of every satellite as float values.
+   *
+   * @param sentence the GSV sentence.
+   * @return the cache entry or <code>null</code> if the sentence is incomplete.
+   */
+  protected NMEA0183SentenceCache.Entry decodeGSV(NMEA0183SentenceView sentence)
+  {
+    int total_number_messages = sentence.fieldAsInt(0);
+    int message_number = sentence.fieldAsInt(1);
+    int number_satellites = sentence.fieldAsInt(2);
+    if ((total_number_messages == NMEA0183FieldDecoder.NO_INT) || (message_number == NMEA0183FieldDecoder.NO_INT)
+        || (number_satellites < 0))
+      return (null);
 
-      if (message_number == total_number_messages) // last message
+    NMEA0183SentenceCache.Entry entry = sentence_cache_.store(sentence);
+    int[] values = entry.getIntValues();
+    float[] angles = entry.getFloatValues();
+    values[0] = total_number_messages;
+    values[1] = message_number;
+    values[2] = number_satellites;
+    int sat_count = 0;
+    while ((sat_count < 4) && ((message_number - 1) * 4 + sat_count < number_satellites))
+    {
+      int prn = sentence.fieldAsInt(3 + 4 * sat_count);
+      float elevation = sentence.fieldAsFloat(4 + 4 * sat_count);
+      float azimuth = sentence.fieldAsFloat(5 + 4 * sat_count);
+      if ((prn == NMEA0183FieldDecoder.NO_INT) || Float.isNaN(elevation) || Float.isNaN(azimuth))
       {
-        changeGPSData(SATELLITE_INFO, satellite_infos_);
-        last_gsv_message_number_ = 0;
+        sentence_cache_.invalidate(entry);
+        return (null);
       }
+      values[4 + 2 * sat_count] = prn;
+      values[5 + 2 * sat_count] = sentence.fieldAsInt(6 + 4 * sat_count, 0); // 0 denotes not tracking
+      angles[2 * sat_count] = elevation;
+      angles[2 * sat_count + 1] = azimuth;
+      sat_count++;
     }
-    catch (NumberFormatException nfe)
-    {
-//      if (logger_nmea_.isDebugEnabled())
-        nfe.printStackTrace();
-    }
-    catch (ArrayIndexOutOfBoundsException aiobe)
-    {
-      System.err.println("WARNING: ArrayIndexOutOfBoundsException in NMEA Sentence: " + sentence + ": " + aiobe.getMessage());
-    }
+    values[3] = sat_count;
+    return (entry);
+  }
+
+  // ----------------------------------------------------------------------
+  /**
+   * Returns the table of the satellites in view of all constellations.
+   *
+   * @return the satellite table.
+   */
+  public GPSSatelliteTable getSatelliteTable()
+  {
+    return (satellite_table_);
   }
 
   // ----------------------------------------------------------------------
@@ -914,21 +1491,16 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
    *
    * @param sentence a NMEA sentence.
    */
-  protected void processHDG(NMEA0183Sentence sentence)
+  protected void processHDG(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("HDG detected: " + sentence);
-    String heading_str = (String) sentence.getDataFields().get(0);
-    Float heading = null;
-    try
+    float heading = sentence.fieldAsFloat(0);
+    if (!Float.isNaN(heading))
     {
-      heading = new Float(heading_str);
+      heading_ = heading;
       changeGPSData(HEADING, heading);
-    }
-    catch (NumberFormatException nfe)
-    {
-//      if (logger_nmea_.isDebugEnabled())
-        nfe.printStackTrace();
+      fireHeading(heading);
     }
   }
 
@@ -939,28 +1511,17 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
    *
    * @param sentence a NMEA sentence.
    */
-  protected void processRME(NMEA0183Sentence sentence)
+  protected void processRME(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("RME detected: " + sentence);
-    String horizontal_str = (String) sentence.getDataFields().get(0);
-    String vertical_str = (String) sentence.getDataFields().get(2);
-    String spherical_str = (String) sentence.getDataFields().get(2);
-    Double horizontal_error = null;
-    Double vertical_error = null;
-    Double spherical_error = null;
-    try
-    {
-      horizontal_error = new Double(horizontal_str);
-      vertical_error = new Double(vertical_str);
-      spherical_error = new Double(spherical_str);
-      changeGPSData(EPE, new GPSPositionError(spherical_error.doubleValue(), horizontal_error.doubleValue(), vertical_error.doubleValue()));
-    }
-    catch (NumberFormatException nfe)
-    {
-//      if (logger_nmea_.isDebugEnabled())
-        nfe.printStackTrace();
-    }
+    double horizontal_error = sentence.fieldAsDouble(0);
+    double vertical_error = sentence.fieldAsDouble(2);
+    double spherical_error = sentence.fieldAsDouble(2);
+    if (Double.isNaN(horizontal_error) || Double.isNaN(vertical_error) || Double.isNaN(spherical_error))
+      return;
+    changeGPSData(EPE, new GPSPositionError(spherical_error, horizontal_error, vertical_error));
+    firePositionError(spherical_error, horizontal_error, vertical_error);
   }
 
   // ----------------------------------------------------------------------
@@ -973,41 +1534,31 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
    * @link http://home.mira.net/~gnb/gps/nmea.html#gpvtg
    */
 
-  protected void processVTG(NMEA0183Sentence sentence)
+  protected void processVTG(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("VTG detected: " + sentence);
-    List data_fields = sentence.getDataFields();
-    String trueCourse = (String) data_fields.get(0); // True course made good over ground,
-                                                            // degrees
-    // String magneticCourse = (String)data_fields.get(2); // Magnetic course made good over
-    // ground, degrees
-    // String groundSpeedKnots = (String)data_fields.get(4); // Ground speed, N=Knots
-    String groundSpeedKms = (String) data_fields.get(6); // Ground speed, K=Kilometers per
-                                                                // hour
-
-    Float heading = null;
-    try
+    // field 0: True course made good over ground, degrees
+    // field 2: Magnetic course made good over ground, degrees
+    // field 4: Ground speed, N=Knots
+    // field 6: Ground speed, K=Kilometers per hour
+
+    float heading = sentence.fieldAsFloat(0);
+    if (!Float.isNaN(heading))
     {
-      heading = new Float(trueCourse);
+      fix_aggregator_.setCourse(heading);
+      heading_ = heading;
       changeGPSData(HEADING, heading);
-    }
-    catch (NumberFormatException nfe)
-    {
-//      if (logger_nmea_.isDebugEnabled())
-        nfe.printStackTrace();
+      fireHeading(heading);
     }
 
-    try
+    float speed = sentence.fieldAsFloat(6);
+    if (!Float.isNaN(speed))
     {
-      float speed = Float.parseFloat(groundSpeedKms);
       // speed = speed / KM2NAUTIC;
-      changeGPSData(SPEED, new Float(speed));
-    }
-    catch (NumberFormatException nfe)
-    {
-//      if (logger_nmea_.isDebugEnabled())
-        nfe.printStackTrace();
+      fix_aggregator_.setSpeed(speed);
+      changeGPSData(SPEED, speed);
+      fireSpeed(speed);
     }
   }
 
@@ -1020,29 +1571,24 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
    *
    * @link http://home.mira.net/~gnb/gps/nmea.html#gphdt
    */
-  protected void processHDT(NMEA0183Sentence sentence)
+  protected void processHDT(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("HDT detected: " + sentence);
-    String heading_str = (String) sentence.getDataFields().get(0);
-    Float heading = null;
-    try
+    float heading = sentence.fieldAsFloat(0);
+    if (!Float.isNaN(heading))
     {
-      heading = new Float(heading_str);
+      heading_ = heading;
       changeGPSData(HEADING, heading);
-    }
-    catch (NumberFormatException nfe)
-    {
-//      if (logger_nmea_.isDebugEnabled())
-        nfe.printStackTrace();
+      fireHeading(heading);
     }
   }
 
-  protected void processRFTXT(NMEA0183Sentence sentence)
+  protected void processRFTXT(NMEA0183SentenceView sentence)
   {
 //    if (logger_nmea_.isDebugEnabled())
 //      logger_nmea_.debug("RFTXT detected: " + sentence);
-    String data = (String) sentence.getDataFields().get(0);
+    String data = sentence.getField(0);
     if(gps_infos_ == null || data.startsWith("Version:"))
     {
       gps_infos_ = new ArrayList();
@@ -1142,6 +1688,32 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
     return (wgs84_pos);
   }
 
+  // ----------------------------------------------------------------------
+  /**
+   * Converts the latitude/longitude fields of a NMEA sentence (latitude, north/south, longitude,
+   * east/west in this order) to a position (positive values for north/east, negative for
+   * south/west).
+   *
+   * @param sentence the NMEA sentence.
+   * @param latitude_field the index of the latitude field.
+   * @return the position or <code>null</code> if the fields are empty or invalid.
+   * @see NMEA0183FieldDecoder#decodeDegrees(byte[],int,int)
+   */
+  protected static GPSPosition nmeaPositionToWGS84(NMEA0183SentenceView sentence, int latitude_field)
+  {
+    double wgs84_lat = sentence.fieldAsDegrees(latitude_field);
+    double wgs84_long = sentence.fieldAsDegrees(latitude_field + 2);
+    if (Double.isNaN(wgs84_lat) || Double.isNaN(wgs84_long))
+      return (null);
+    char north_south = sentence.fieldCharAt(latitude_field + 1, 0);
+    char east_west = sentence.fieldCharAt(latitude_field + 3, 0);
+    if (north_south == 'S' || north_south == 's')
+      wgs84_lat = -wgs84_lat;
+    if (east_west == 'W' || east_west == 'w')
+      wgs84_long = -wgs84_long;
+    return (new GPSPosition(wgs84_lat, wgs84_long));
+  }
+
   // ----------------------------------------------------------------------
   /**
    * Returns the last received heading (direction) from the GPSDevice or <code>-1.0</code> if no
@@ -1155,11 +1727,7 @@ public class GPSNmeaDataProcessor extends GPSGeneralDataProcessor implements Run
     // if(sentence == null)
     // return(-1.0);
 
-    Float heading = (Float) getGPSData(HEADING);
-    if (heading != null)
-      return (heading.floatValue());
-    else
-      return (-1);
+    return (heading_);
   }
 
   // ----------------------------------------------------------------------
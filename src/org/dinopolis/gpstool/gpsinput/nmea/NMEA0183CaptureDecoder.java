@@ -0,0 +1,473 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.dinopolis.gpstool.gpsinput.GPSFixAggregator;
+import org.dinopolis.gpstool.gpsinput.GPSFixColumns;
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a capture file of NMEA sentences (as written by the
+ * simulated device: one sentence per line, optionally followed by "##"
+ * and the delay to the next sentence, lines starting with '#' are
+ * comments) into a {@link GPSFixColumns} track, without a device and
+ * without firing events.
+ * <p>
+ * The file is memory mapped and split at line boundaries into chunks
+ * that are decoded in parallel. Every chunk is decoded by the sentence
+ * handlers and the fix aggregator of its own {@link
+ * GPSNmeaDataProcessor}; the tracks of the chunks are then appended
+ * in file order. As sentences without time (e.g. GSA) belong to the
+ * epoch before, a chunk decodes the lines after its end until the next
+ * epoch starts. The next chunk decodes some lines before its start
+ * (without publishing) to know the epoch there and ignores its lines
+ * until this epoch ends, so every epoch is published by exactly one
+ * chunk and the track is the same as the one of a serial decode.
+ */
+
+public class NMEA0183CaptureDecoder
+{
+  /** the default size of the chunks decoded in parallel */
+  public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+  /** the maximum size of a chunk (a chunk is mapped at once, a mapping
+   * is limited to 2 GB) */
+  public static final int MAX_CHUNK_SIZE = 256 * 1024 * 1024;
+  /** the bytes read to search the end of a line at a chunk boundary */
+  protected static final int BOUNDARY_SEARCH_SIZE = 512;
+  /** the bytes decoded after the end of a chunk to finish its last
+   * epoch (and before the start of a chunk to find the epoch there) */
+  protected static final int EPOCH_OVERRUN_SIZE = 16 * 1024;
+
+  protected int threads_;
+  protected int chunk_size_ = DEFAULT_CHUNK_SIZE;
+  protected boolean ignore_invalid_checksum_ = false;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a decoder that uses one thread per available processor.
+ */
+  public NMEA0183CaptureDecoder()
+  {
+    this(Runtime.getRuntime().availableProcessors());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates a decoder that uses the given number of threads.
+ *
+ * @param threads the number of threads.
+ */
+  public NMEA0183CaptureDecoder(int threads)
+  {
+    threads_ = Math.max(threads,1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the size of the chunks the file is split into.
+ *
+ * @param chunk_size the size in bytes (at most {@link
+ * #MAX_CHUNK_SIZE}).
+ */
+  public void setChunkSize(int chunk_size)
+  {
+    chunk_size_ = Math.min(Math.max(chunk_size,BOUNDARY_SEARCH_SIZE),MAX_CHUNK_SIZE);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the size of the chunks the file is split into.
+ *
+ * @return the size in bytes.
+ */
+  public int getChunkSize()
+  {
+    return(chunk_size_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets if sentences with invalid checksum are decoded as well.
+ *
+ * @param ignore_invalid_checksum if true, sentences with invalid
+ * checksum are decoded.
+ */
+  public void setIgnoreInvalidChecksum(boolean ignore_invalid_checksum)
+  {
+    ignore_invalid_checksum_ = ignore_invalid_checksum;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns if sentences with invalid checksum are decoded as well.
+ *
+ * @return true if sentences with invalid checksum are decoded.
+ */
+  public boolean isIgnoreInvalidChecksum()
+  {
+    return(ignore_invalid_checksum_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes the given capture file.
+ *
+ * @param file the capture file.
+ * @return the fixes of the file.
+ * @exception IOException if the file cannot be read.
+ */
+  public GPSFixColumns decode(File file)
+    throws IOException
+  {
+    RandomAccessFile random_file = new RandomAccessFile(file,"r");
+    ExecutorService executor = null;
+    try
+    {
+      FileChannel channel = random_file.getChannel();
+      long[] boundaries = findChunkBoundaries(channel);
+      int chunks = boundaries.length - 1;
+      if(chunks == 1 || threads_ == 1)
+      {
+        GPSFixColumns track = new GPSFixColumns();
+        for(int chunk = 0; chunk < chunks; chunk++)
+          track.append(decodeChunk(channel,boundaries[chunk],boundaries[chunk + 1],
+                                   boundaries[chunks]));
+        return(track);
+      }
+
+      executor = Executors.newFixedThreadPool(Math.min(threads_,chunks));
+      List results = new ArrayList(chunks);
+      for(int chunk = 0; chunk < chunks; chunk++)
+        results.add(executor.submit(new ChunkDecoder(channel,boundaries[chunk],boundaries[chunk + 1],
+                                                       boundaries[chunks])));
+
+      GPSFixColumns track = new GPSFixColumns();
+      for(int chunk = 0; chunk < chunks; chunk++)
+        track.append((GPSFixColumns)((Future)results.get(chunk)).get());
+      return(track);
+    }
+    catch(InterruptedException ie)
+    {
+      throw new IOException("decoding interrupted");
+    }
+    catch(ExecutionException ee)
+    {
+      Throwable cause = ee.getCause();
+      if(cause instanceof IOException)
+        throw (IOException)cause;
+      if(cause instanceof RuntimeException)
+        throw (RuntimeException)cause;
+      throw new IOException("decoding failed: " + cause);
+    }
+    finally
+    {
+      if(executor != null)
+        executor.shutdownNow();
+      random_file.close();
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Splits the file into chunks of about the chunk size that end after
+ * a line feed (or at the end of the file).
+ *
+ * @param channel the channel of the file.
+ * @return the offsets of the chunks plus the size of the file.
+ * @exception IOException if the file cannot be read.
+ */
+  protected long[] findChunkBoundaries(FileChannel channel)
+    throws IOException
+  {
+    long size = channel.size();
+    List boundaries = new ArrayList();
+    boundaries.add(new Long(0));
+    ByteBuffer search_buffer = ByteBuffer.allocate(BOUNDARY_SEARCH_SIZE);
+    long position = chunk_size_;
+    while(position < size)
+    {
+          // search the next line feed:
+      long boundary = -1;
+      while((boundary < 0) && (position < size))
+      {
+        search_buffer.clear();
+        int read = channel.read(search_buffer,position);
+        if(read <= 0)
+          break;
+        for(int index = 0; index < read; index++)
+        {
+          if(search_buffer.get(index) == '\n')
+          {
+            boundary = position + index + 1;
+            break;
+          }
+        }
+        position += read;
+      }
+      if((boundary < 0) || (boundary >= size))
+        break;
+      boundaries.add(new Long(boundary));
+      position = boundary + chunk_size_;
+    }
+    long[] result = new long[boundaries.size() + 1];
+    for(int index = 0; index < result.length - 1; index++)
+      result[index] = ((Long)boundaries.get(index)).longValue();
+    result[result.length - 1] = size;
+    return(result);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes the lines between the given offsets and the lines after the
+ * end offset that belong to the last epoch. The lines at the start
+ * that belong to the epoch before the start offset are ignored (they
+ * are decoded by the chunk before).
+ *
+ * @param channel the channel of the file.
+ * @param start the offset of the first line.
+ * @param end the offset after the last line.
+ * @param file_size the size of the file.
+ * @return the fixes of the chunk.
+ * @exception IOException if the file cannot be read.
+ */
+  protected GPSFixColumns decodeChunk(FileChannel channel, long start, long end, long file_size)
+    throws IOException
+  {
+    long mapped_start = Math.max(start - EPOCH_OVERRUN_SIZE,0);
+    long mapped_end = Math.min(end + EPOCH_OVERRUN_SIZE,file_size);
+    MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,mapped_start,
+                                        mapped_end - mapped_start);
+    int chunk_start = (int)(start - mapped_start);
+    int chunk_end = (int)(end - mapped_start);
+
+    GPSFixColumns track = new GPSFixColumns();
+    GPSNmeaDataProcessor processor = new GPSNmeaDataProcessor();
+    GPSFixAggregator aggregator = processor.getFixAggregator();
+    aggregator.setEpochTimeout(0); // no wall clock for files
+    aggregator.setRequiredFields(0); // no latency to save, publish complete epochs
+    boolean leading = (start > 0);
+    if(!leading)
+      processor.addGPSFixListener(track);
+    NMEA0183SentenceView sentence = new NMEA0183SentenceView();
+    byte[] line = new byte[128];
+
+    int limit = data.limit();
+    int line_start = 0;
+    if(mapped_start > 0)
+    {
+          // the lead in starts within a line:
+      while((line_start < chunk_start) && (data.get(line_start) != '\n'))
+        line_start++;
+      line_start++;
+    }
+    while(line_start < limit)
+    {
+          // find end of line and end of sentence ('#' of "##delay"):
+      int line_end = line_start;
+      int sentence_end = -1;
+      byte value;
+      while((line_end < limit) && ((value = data.get(line_end)) != '\n'))
+      {
+        if((sentence_end < 0) && ((value == '#') || (value == '\r')))
+          sentence_end = line_end;
+        line_end++;
+      }
+      if(sentence_end < 0)
+        sentence_end = line_end;
+
+      int length = sentence_end - line_start;
+      if((length > 0) && (data.get(line_start) != '#'))
+      {
+        if(line.length < length)
+          line = new byte[length * 2];
+        data.position(line_start);
+        data.get(line,0,length);
+        if(line_start < chunk_start)
+        {
+              // before the chunk: only find the epoch at its start
+          decodeSentence(processor,sentence,line,length);
+        }
+        else if(leading)
+        {
+              // the lines of the epoch before belong to the chunk before
+          if(line_start >= chunk_end)
+            break;
+          int epoch = aggregator.getEpochTimeOfDay();
+          decodeSentence(processor,sentence,line,length);
+          if(aggregator.getEpochTimeOfDay() != epoch)
+          {
+            processor.addGPSFixListener(track);
+            leading = false;
+          }
+        }
+        else if(line_start < chunk_end)
+          decodeSentence(processor,sentence,line,length);
+        else
+        {
+              // after the end of the chunk: only finish the last epoch
+          int epoch = aggregator.getEpochTimeOfDay();
+          decodeSentence(processor,sentence,line,length);
+          if(aggregator.getEpochTimeOfDay() != epoch)
+          {
+            aggregator.discardEpoch(); // belongs to the next chunk
+            break;
+          }
+        }
+      }
+      line_start = line_end + 1;
+    }
+    if(!leading)
+      aggregator.flush();
+    return(track);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a sentence by the handlers of the given processor.
+ *
+ * @param processor the processor of the chunk.
+ * @param sentence the view to use.
+ * @param line the buffer holding the sentence.
+ * @param length the length of the sentence.
+ */
+  protected void decodeSentence(GPSNmeaDataProcessor processor, NMEA0183SentenceView sentence,
+                                byte[] line, int length)
+  {
+    if((line[0] != '$') && (line[0] != '!'))
+      return;  // garbage in the capture
+    sentence.wrap(line,0,length);
+    if(!ignore_invalid_checksum_ && !sentence.isValid())
+      return;
+    try
+    {
+      processor.processNmeaSentence(sentence);
+    }
+    catch(RuntimeException e)
+    {
+          // a malformed sentence must not stop decoding the file
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the first row that differs in the given tracks.
+ *
+ * @param track the one track.
+ * @param other the other track.
+ * @return the first row that differs or -1 if the tracks are equal.
+ */
+  public static int findDifference(GPSFixColumns track, GPSFixColumns other)
+  {
+    int size = Math.min(track.size(),other.size());
+    for(int row = 0; row < size; row++)
+    {
+      if((track.getFields(row) != other.getFields(row))
+         || (track.getTime(row) != other.getTime(row))
+         || (Double.compare(track.getLatitude(row),other.getLatitude(row)) != 0)
+         || (Double.compare(track.getLongitude(row),other.getLongitude(row)) != 0)
+         || (Float.compare(track.getAltitude(row),other.getAltitude(row)) != 0)
+         || (Float.compare(track.getSpeed(row),other.getSpeed(row)) != 0)
+         || (Float.compare(track.getCourse(row),other.getCourse(row)) != 0)
+         || (Float.compare(track.getHDOP(row),other.getHDOP(row)) != 0)
+         || (Float.compare(track.getPDOP(row),other.getPDOP(row)) != 0)
+         || (Float.compare(track.getVDOP(row),other.getVDOP(row)) != 0))
+        return(row);
+    }
+    if(track.size() != other.size())
+      return(size);
+    return(-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a capture file serially (in chunks of the maximum size, one
+ * after the other) and in chunks of the given size and checks that
+ * both give the same fixes.
+ *
+ * @param args the capture file and the chunk size (optional).
+ */
+  public static void main(String[] args)
+    throws IOException
+  {
+    if(args.length < 1)
+    {
+      System.err.println("usage: NMEA0183CaptureDecoder <capture file> [chunk size]");
+      return;
+    }
+    File file = new File(args[0]);
+    NMEA0183CaptureDecoder serial_decoder = new NMEA0183CaptureDecoder(1);
+    serial_decoder.setChunkSize(MAX_CHUNK_SIZE);
+    GPSFixColumns serial = serial_decoder.decode(file);
+
+    NMEA0183CaptureDecoder chunk_decoder = new NMEA0183CaptureDecoder();
+    if(args.length > 1)
+      chunk_decoder.setChunkSize(Integer.parseInt(args[1]));
+    else
+      chunk_decoder.setChunkSize(BOUNDARY_SEARCH_SIZE);
+    GPSFixColumns chunked = chunk_decoder.decode(file);
+
+    int row = findDifference(serial,chunked);
+    System.out.println("fixes serial: "+serial.size()+", in chunks of "
+                       +chunk_decoder.getChunkSize()+" bytes: "+chunked.size());
+    if(row < 0)
+      System.out.println("equal");
+    else
+      System.out.println("differ at fix "+row);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes one chunk of the file (in a thread of the pool).
+ */
+  class ChunkDecoder implements Callable
+  {
+    FileChannel channel_;
+    long start_;
+    long end_;
+    long file_size_;
+
+    ChunkDecoder(FileChannel channel, long start, long end, long file_size)
+    {
+      channel_ = channel;
+      start_ = start;
+      end_ = end;
+      file_size_ = file_size;
+    }
+
+    public Object call()
+      throws IOException
+    {
+      return(decodeChunk(channel_,start_,end_,file_size_));
+    }
+  }
+}
@@ -0,0 +1,242 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+//----------------------------------------------------------------------
+/**
+ * Recognizes sentences that were already received a moment ago, e.g.
+ * if the same receiver is read through two feeds (gpsd and a serial
+ * tap) or if a receiver sends GP and GN copies of the same sentence.
+ * <p>
+ * The filter remembers the last sentences (a rolling window of a
+ * given size) with their hash and receive time. A sentence is a
+ * duplicate if the window holds a byte-identical sentence (the
+ * checksum is not compared) received not longer than {@link
+ * #setMaxAge(long) the maximum age} ago. The maximum age keeps
+ * sentences that legitimately repeat every epoch (e.g. GSA) from
+ * being dropped, so it should be shorter than the epoch. If the
+ * talker id is ignored, "$GPGGA,..." and "$GNGGA,..." with the same
+ * fields are duplicates as well (proprietary sentences are always
+ * compared as a whole).
+ * <p>
+ * This class is not thread safe, it is meant to be used by the thread
+ * decoding the sentences.
+ */
+
+public class NMEA0183DuplicateFilter
+{
+  /** the default number of sentences remembered */
+  public static final int DEFAULT_WINDOW_SIZE = 32;
+  /** the default maximum age (in nanoseconds) of a duplicated sentence */
+  public static final long DEFAULT_MAX_AGE = 300L * 1000 * 1000;
+
+  protected boolean ignore_talker_id_;
+  protected long max_age_ = DEFAULT_MAX_AGE;
+
+  /** the window of the last sentences (without talker id if ignored) */
+  protected byte[][] bytes_;
+  protected int[] lengths_;
+  protected int[] hashes_;
+  protected long[] timestamps_;
+  /** the index the next sentence is stored at */
+  protected int next_;
+
+  protected long sentence_count_;
+  protected long duplicate_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a filter with the default window size that compares the
+ * talker ids as well.
+ */
+  public NMEA0183DuplicateFilter()
+  {
+    this(DEFAULT_WINDOW_SIZE,false);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates a filter.
+ *
+ * @param window_size the number of sentences remembered.
+ * @param ignore_talker_id if true, sentences that only differ in the
+ * talker id are duplicates.
+ */
+  public NMEA0183DuplicateFilter(int window_size, boolean ignore_talker_id)
+  {
+    window_size = Math.max(window_size,1);
+    bytes_ = new byte[window_size][128];
+    lengths_ = new int[window_size];
+    hashes_ = new int[window_size];
+    timestamps_ = new long[window_size];
+    ignore_talker_id_ = ignore_talker_id;
+    clear();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets if sentences that only differ in the talker id are duplicates.
+ *
+ * @param ignore_talker_id if true, the talker id is ignored.
+ */
+  public void setIgnoreTalkerId(boolean ignore_talker_id)
+  {
+    ignore_talker_id_ = ignore_talker_id;
+    clear();
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if sentences that only differ in the talker id are
+ * duplicates.
+ *
+ * @return true if the talker id is ignored.
+ */
+  public boolean isIgnoreTalkerId()
+  {
+    return(ignore_talker_id_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the maximum time between a sentence and its duplicate.
+ *
+ * @param max_age the maximum age in nanoseconds.
+ */
+  public void setMaxAge(long max_age)
+  {
+    max_age_ = max_age;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the maximum time between a sentence and its duplicate.
+ *
+ * @return the maximum age in nanoseconds.
+ */
+  public long getMaxAge()
+  {
+    return(max_age_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Checks if the given sentence is a duplicate of a recent sentence.
+ * Sentences that are no duplicates are remembered.
+ *
+ * @param sentence the sentence.
+ * @param timestamp the {@link System#nanoTime()} the sentence was
+ * received.
+ * @return true if the sentence is a duplicate and should be dropped.
+ */
+  public boolean isDuplicate(NMEA0183SentenceView sentence, long timestamp)
+  {
+    sentence_count_++;
+    byte[] buffer = sentence.buffer_;
+    int start = sentence.start_;
+    if(ignore_talker_id_ && (sentence.address_end_ - start == 6) && (buffer[start + 1] != 'P'))
+      start += 3;  // skip '$' and the talker id
+    int length = sentence.data_end_ - start;
+    int hash = NMEA0183SentenceCache.hash(buffer,start,length);
+
+    for(int index = 0; index < hashes_.length; index++)
+    {
+      if((hashes_[index] == hash) && (lengths_[index] == length)
+         && (timestamp - timestamps_[index] <= max_age_)
+         && equals(bytes_[index],buffer,start,length))
+      {
+        duplicate_count_++;
+        return(true);
+      }
+    }
+
+    int slot = next_;
+    if(bytes_[slot].length < length)
+      bytes_[slot] = new byte[length];
+    System.arraycopy(buffer,start,bytes_[slot],0,length);
+    lengths_[slot] = length;
+    hashes_[slot] = hash;
+    timestamps_[slot] = timestamp;
+    next_ = (slot + 1) % hashes_.length;
+    return(false);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Forgets all remembered sentences (the counters are kept).
+ */
+  public void clear()
+  {
+    for(int index = 0; index < lengths_.length; index++)
+      lengths_[index] = -1;
+    next_ = 0;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of sentences checked.
+ *
+ * @return the number of sentences.
+ */
+  public long getSentenceCount()
+  {
+    return(sentence_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of sentences recognized as duplicates.
+ *
+ * @return the number of duplicates.
+ */
+  public long getDuplicateCount()
+  {
+    return(duplicate_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Resets the counters.
+ */
+  public void resetCounters()
+  {
+    sentence_count_ = 0;
+    duplicate_count_ = 0;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Compares the remembered bytes with the bytes of a sentence.
+ *
+ * @param remembered the remembered bytes.
+ * @param buffer the buffer holding the sentence.
+ * @param start the index of the first byte to compare.
+ * @param length the number of bytes to compare.
+ * @return true if the bytes are identical.
+ */
+  protected static boolean equals(byte[] remembered, byte[] buffer, int start, int length)
+  {
+    for(int index = 0; index < length; index++)
+    {
+      if(remembered[index] != buffer[start + index])
+        return(false);
+    }
+    return(true);
+  }
+}
@@ -0,0 +1,293 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+//----------------------------------------------------------------------
+/**
+ * Decodes the numeric fields of NMEA sentences directly from the bytes
+ * of a buffer (between <code>start</code> inclusive and
+ * <code>end</code> exclusive). No objects are created and no
+ * exceptions are thrown: empty or invalid fields are reported by a
+ * sentinel value ({@link Double#NaN}, {@link #NO_INT}, {@link
+ * #NO_LONG} or -1 as documented at the methods). Receivers without a
+ * fix send lots of sentences with empty fields, so this case has to be
+ * cheap.
+ */
+
+public class NMEA0183FieldDecoder
+{
+  /** returned by the integer decoders for empty or invalid fields */
+  public static final int NO_INT = Integer.MIN_VALUE;
+  /** returned by the fixed point decoder for empty or invalid fields */
+  public static final long NO_LONG = Long.MIN_VALUE;
+
+  /** powers of ten used to scale decimal numbers */
+  protected static final double[] POWERS_OF_TEN =
+  { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+    1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18 };
+
+  /** the maximum number of digits that fit into a long */
+  protected static final int MAX_LONG_DIGITS = 18;
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a decimal number (like "-12.345").
+ *
+ * @param buffer the buffer holding the field.
+ * @param start the index of the first character of the field.
+ * @param end the index after the last character of the field.
+ * @return the value or {@link Double#NaN} if the field is empty or no
+ * number.
+ */
+  public static double decodeDecimal(byte[] buffer, int start, int end)
+  {
+    if(start >= end)
+      return(Double.NaN);
+    int index = start;
+    boolean negative = buffer[index] == '-';
+    if(negative || (buffer[index] == '+'))
+      index++;
+    long mantissa = 0;
+    int digits = 0;
+    int exponent = 0;
+    boolean fraction = false;
+    boolean has_digits = false;
+    byte data;
+    for(; index < end; index++)
+    {
+      data = buffer[index];
+      if((data >= '0') && (data <= '9'))
+      {
+        if(digits < MAX_LONG_DIGITS)
+        {
+          mantissa = mantissa * 10 + (data - '0');
+          if(mantissa != 0)
+            digits++;  // leading zeros are not significant
+          if(fraction)
+            exponent--;
+        }
+        else if(!fraction)
+          exponent++;  // digits that do not fit only scale the value
+        has_digits = true;
+      }
+      else if((data == '.') && !fraction)
+        fraction = true;
+      else
+        return(Double.NaN);
+    }
+    if(!has_digits)
+      return(Double.NaN);
+
+    double value = mantissa;
+    if(exponent < -MAX_LONG_DIGITS)
+      value = value / Math.pow(10,-exponent);
+    else if(exponent < 0)
+      value = value / POWERS_OF_TEN[-exponent];
+    else if(exponent > 0)
+      value = value * Math.pow(10,exponent);
+    return(negative ? -value : value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a decimal number into a fixed point value with the given
+ * number of decimals (e.g. "12.3456" with three decimals is 12345).
+ * Additional decimals are cut off.
+ *
+ * @param buffer the buffer holding the field.
+ * @param start the index of the first character of the field.
+ * @param end the index after the last character of the field.
+ * @param decimals the number of decimals of the result.
+ * @return the scaled value or {@link #NO_LONG} if the field is empty,
+ * no number or too large.
+ */
+  public static long decodeFixedPoint(byte[] buffer, int start, int end, int decimals)
+  {
+    if(start >= end)
+      return(NO_LONG);
+    int index = start;
+    boolean negative = buffer[index] == '-';
+    if(negative || (buffer[index] == '+'))
+      index++;
+    long value = 0;
+    int digits = 0;
+    int field_decimals = -1;
+    boolean has_digits = false;
+    byte data;
+    for(; index < end; index++)
+    {
+      data = buffer[index];
+      if((data >= '0') && (data <= '9'))
+      {
+        if(field_decimals < decimals)
+        {
+          value = value * 10 + (data - '0');
+          if((value != 0) && (++digits > MAX_LONG_DIGITS))
+            return(NO_LONG);
+          has_digits = true;
+        }
+        if(field_decimals >= 0)
+          field_decimals++;
+      }
+      else if((data == '.') && (field_decimals < 0))
+        field_decimals = 0;
+      else
+        return(NO_LONG);
+    }
+    if(!has_digits && (field_decimals <= 0))
+      return(NO_LONG);
+    if(field_decimals < 0)
+      field_decimals = 0;
+    for(; field_decimals < decimals; field_decimals++)
+    {
+      value *= 10;
+      if((value != 0) && (++digits > MAX_LONG_DIGITS))
+        return(NO_LONG);
+    }
+    return(negative ? -value : value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes an integer (with optional sign).
+ *
+ * @param buffer the buffer holding the field.
+ * @param start the index of the first character of the field.
+ * @param end the index after the last character of the field.
+ * @return the value or {@link #NO_INT} if the field is empty, no
+ * integer or longer than nine digits.
+ */
+  public static int decodeInt(byte[] buffer, int start, int end)
+  {
+    if(start >= end)
+      return(NO_INT);
+    int index = start;
+    boolean negative = buffer[index] == '-';
+    if(negative || (buffer[index] == '+'))
+      index++;
+    if((index == end) || (end - index > 9))
+      return(NO_INT);
+    int value = 0;
+    byte data;
+    for(; index < end; index++)
+    {
+      data = buffer[index];
+      if((data < '0') || (data > '9'))
+        return(NO_INT);
+      value = value * 10 + (data - '0');
+    }
+    return(negative ? -value : value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes the value of the two digits at the given index (used for
+ * the hhmmss and ddmmyy fields).
+ *
+ * @param buffer the buffer holding the field.
+ * @param index the index of the first digit.
+ * @param end the index after the last character of the field.
+ * @return the value of the two digits or -1 if there are no two digits
+ * at this index.
+ */
+  public static int decodeTwoDigits(byte[] buffer, int index, int end)
+  {
+    if(index + 2 > end)
+      return(-1);
+    int high = buffer[index] - '0';
+    int low = buffer[index + 1] - '0';
+    if((high < 0) || (high > 9) || (low < 0) || (low > 9))
+      return(-1);
+    return(high * 10 + low);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a latitude or longitude in the NMEA format (e.g. 4916.45 for
+ * 49 degrees, 16.45 minutes, or 02311.12 for 23 degrees, 11.12
+ * minutes) to degrees (49.27416 for the first example). The sign (N/S
+ * or E/W) is part of another field and is not handled here.
+ *
+ * @param buffer the buffer holding the field.
+ * @param start the index of the first character of the field.
+ * @param end the index after the last character of the field.
+ * @return the degrees or {@link Double#NaN} if the field is empty or
+ * not in the format ddmm.mmmm or dddmm.mmmm.
+ */
+  public static double decodeDegrees(byte[] buffer, int start, int end)
+  {
+    int dot_pos = start;
+    while((dot_pos < end) && (buffer[dot_pos] != '.'))
+      dot_pos++;
+    int minutes_start = dot_pos - 2;
+    if((dot_pos == end) || ((minutes_start - start != 2) && (minutes_start - start != 3)))
+      return(Double.NaN);
+    int degrees = 0;
+    int digit;
+    for(int index = start; index < minutes_start; index++)
+    {
+      digit = buffer[index] - '0';
+      if((digit < 0) || (digit > 9))
+        return(Double.NaN);
+      degrees = degrees * 10 + digit;
+    }
+    double minutes = decodeDecimal(buffer,minutes_start,end);
+    if(!(minutes >= 0.0))  // also true for NaN
+      return(Double.NaN);
+    return(degrees + minutes / 60.0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes a UTC time of day in the format hhmmss or hhmmss.sss.
+ *
+ * @param buffer the buffer holding the field.
+ * @param start the index of the first character of the field.
+ * @param end the index after the last character of the field.
+ * @return the milliseconds since midnight or -1 if the field is empty
+ * or not a valid time.
+ */
+  public static int decodeTimeOfDay(byte[] buffer, int start, int end)
+  {
+    int hours = decodeTwoDigits(buffer,start,end);
+    int minutes = decodeTwoDigits(buffer,start + 2,end);
+    int seconds = decodeTwoDigits(buffer,start + 4,end);
+    if((hours < 0) || (hours > 23) || (minutes < 0) || (minutes > 59)
+       || (seconds < 0) || (seconds > 60))
+      return(-1);
+    int millis = 0;
+    int index = start + 6;
+    if(index < end)
+    {
+      if(buffer[index] != '.')
+        return(-1);
+      int scale = 100;
+      int digit;
+      for(index++; index < end; index++)
+      {
+        digit = buffer[index] - '0';
+        if((digit < 0) || (digit > 9))
+          return(-1);
+        millis += digit * scale;
+        scale /= 10;
+      }
+    }
+    return(((hours * 60 + minutes) * 60 + seconds) * 1000 + millis);
+  }
+}
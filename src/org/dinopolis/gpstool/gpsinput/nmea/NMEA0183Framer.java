@@ -0,0 +1,306 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+//----------------------------------------------------------------------
+/**
+ * Splits a stream of bytes into NMEA sentences. The data is read in
+ * blocks into a {@link ByteBuffer} and the sentence boundaries ('$'
+ * at the beginning, CR or LF at the end) are searched inside this
+ * buffer. The XOR checksum is calculated while scanning.
+ * <p>
+ * If a '$' is found in the middle of a sentence (e.g. because some
+ * bytes were lost on a noisy serial line), the broken part is thrown
+ * away and the framer resynchronizes on this '$', so the following
+ * sentence is not lost. Sentences are not limited to the 82 characters
+ * of the NMEA standard; the buffer grows up to
+ * <code>max_sentence_length</code> if necessary.
+ * <p>
+ * The framed sentence stays in the buffer until the next call of
+ * {@link #readSentence()}.
+ */
+
+public class NMEA0183Framer
+{
+  /** the default number of bytes read from the stream at once */
+  public static final int DEFAULT_BUFFER_SIZE = 4096;
+  /** the default maximum length of a sentence */
+  public static final int DEFAULT_MAX_SENTENCE_LENGTH = 4096;
+
+  protected InputStream in_stream_;
+  protected ByteBuffer buffer_;
+  protected int max_sentence_length_;
+
+  /** the index in the buffer where scanning continues */
+  protected int scan_pos_ = 0;
+  /** the index of the '$' of the current sentence or -1 if searching */
+  protected int sentence_start_ = -1;
+  /** true if the '*' of the current sentence was already found */
+  protected boolean checksum_found_;
+  /** the checksum of the current sentence calculated so far */
+  protected int checksum_;
+
+  protected int sentence_offset_;
+  protected int sentence_length_;
+  protected int calculated_checksum_;
+
+  protected long sentence_count_;
+  protected long garbage_byte_count_;
+  protected long resync_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a framer reading from the given stream using the default
+ * buffer size and maximum sentence length.
+ *
+ * @param in_stream the stream to read from.
+ */
+  public NMEA0183Framer(InputStream in_stream)
+  {
+    this(in_stream,DEFAULT_BUFFER_SIZE,DEFAULT_MAX_SENTENCE_LENGTH);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates a framer reading from the given stream.
+ *
+ * @param in_stream the stream to read from.
+ * @param buffer_size the number of bytes to read at once.
+ * @param max_sentence_length the maximum length of a sentence. Longer
+ * sentences are thrown away.
+ */
+  public NMEA0183Framer(InputStream in_stream, int buffer_size, int max_sentence_length)
+  {
+    in_stream_ = in_stream;
+    max_sentence_length_ = max_sentence_length;
+    buffer_ = ByteBuffer.allocate(Math.max(buffer_size,128));
+    buffer_.limit(0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Reads the next sentence from the stream. The sentence can be
+ * accessed by {@link #getBuffer()}, {@link #getSentenceOffset()} and
+ * {@link #getSentenceLength()}; it starts with the '$' and does not
+ * contain the CR/LF.
+ *
+ * @return the length of the sentence or -1 if the stream did not
+ * deliver any data (end of stream).
+ * @exception IOException if an error occured on reading.
+ */
+  public int readSentence()
+    throws IOException
+  {
+    while(true)
+    {
+      if(scanBuffer())
+        return(sentence_length_);
+      if(fillBuffer() <= 0)
+        return(-1);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Scans the data in the buffer for the next complete sentence.
+ *
+ * @return true if a complete sentence was found.
+ */
+  protected boolean scanBuffer()
+  {
+    byte[] data = buffer_.array();
+    int limit = buffer_.limit();
+    byte value;
+    while(scan_pos_ < limit)
+    {
+      value = data[scan_pos_];
+      if(value == '$')
+      {
+        if(sentence_start_ >= 0)
+        {
+              // start of a sentence within a sentence: resync on this one
+          resync_count_++;
+          garbage_byte_count_ += scan_pos_ - sentence_start_;
+        }
+        sentence_start_ = scan_pos_;
+        checksum_found_ = false;
+        checksum_ = 0;
+      }
+      else if(sentence_start_ < 0)
+      {
+        if((value != 13) && (value != 10))
+          garbage_byte_count_++;
+      }
+      else if((value == 13) || (value == 10))
+      {
+        int start = sentence_start_;
+        sentence_start_ = -1;
+        if(scan_pos_ - start > 1)
+        {
+          sentence_offset_ = start;
+          sentence_length_ = scan_pos_ - start;
+          calculated_checksum_ = checksum_ & 0xff;
+          sentence_count_++;
+          scan_pos_++;
+          return(true);
+        }
+        garbage_byte_count_ += scan_pos_ - start;
+      }
+      else if(!checksum_found_)
+      {
+        if(value == '*')
+          checksum_found_ = true;
+        else
+          checksum_ ^= value;
+      }
+      scan_pos_++;
+
+      if((sentence_start_ >= 0) && (scan_pos_ - sentence_start_ > max_sentence_length_))
+      {
+        System.err.println("ERROR: max. message length exceeded! (" + max_sentence_length_ + ")");
+        garbage_byte_count_ += scan_pos_ - sentence_start_;
+        sentence_start_ = -1;
+      }
+    }
+    return(false);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Moves the beginning of an incomplete sentence to the start of the
+ * buffer (growing it if necessary) and reads the next block of data
+ * from the stream.
+ *
+ * @return the number of bytes read or -1 if the end of the stream was
+ * reached.
+ * @exception IOException if an error occured on reading.
+ */
+  protected int fillBuffer()
+    throws IOException
+  {
+    int keep_from = (sentence_start_ >= 0) ? sentence_start_ : scan_pos_;
+    if(keep_from > 0)
+    {
+      buffer_.position(keep_from);
+      buffer_.compact();
+      buffer_.flip();
+      scan_pos_ -= keep_from;
+      if(sentence_start_ >= 0)
+        sentence_start_ -= keep_from;
+    }
+    if(buffer_.limit() == buffer_.capacity())
+    {
+      ByteBuffer new_buffer = ByteBuffer.allocate(buffer_.capacity() * 2);
+      new_buffer.put(buffer_.array(),0,buffer_.limit());
+      new_buffer.flip();
+      buffer_ = new_buffer;
+    }
+
+    int limit = buffer_.limit();
+    int count = in_stream_.read(buffer_.array(),limit,buffer_.capacity() - limit);
+    if(count > 0)
+      buffer_.limit(limit + count);
+    return(count);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the buffer the last sentence was framed in. The buffer may
+ * change on every call of {@link #readSentence()}.
+ *
+ * @return the buffer.
+ */
+  public byte[] getBuffer()
+  {
+    return(buffer_.array());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the offset of the last sentence in the buffer.
+ *
+ * @return the offset of the last sentence.
+ */
+  public int getSentenceOffset()
+  {
+    return(sentence_offset_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the length of the last sentence (without CR/LF).
+ *
+ * @return the length of the last sentence.
+ */
+  public int getSentenceLength()
+  {
+    return(sentence_length_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the checksum calculated for the last sentence (XOR of all
+ * characters between '$' and '*').
+ *
+ * @return the calculated checksum.
+ */
+  public int getCalculatedChecksum()
+  {
+    return(calculated_checksum_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of sentences framed.
+ *
+ * @return the number of sentences framed.
+ */
+  public long getSentenceCount()
+  {
+    return(sentence_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of bytes that were thrown away because they did
+ * not belong to a sentence.
+ *
+ * @return the number of bytes thrown away.
+ */
+  public long getGarbageByteCount()
+  {
+    return(garbage_byte_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns how often the framer had to resynchronize because a '$' was
+ * found within a sentence.
+ *
+ * @return the number of resynchronizations.
+ */
+  public long getResyncCount()
+  {
+    return(resync_count_);
+  }
+}
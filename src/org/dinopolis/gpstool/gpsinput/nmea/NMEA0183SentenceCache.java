@@ -0,0 +1,260 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+//----------------------------------------------------------------------
+/**
+ * A small cache of decoded sentences, keyed by a hash of the raw
+ * sentence bytes. Many receivers send byte-identical sentences (e.g.
+ * GSA and GSV) every second while the constellation does not change;
+ * for these sentences the handler can reuse the values it decoded
+ * before instead of parsing the sentence again.
+ * <p>
+ * The cache is direct mapped: every hash value has exactly one entry,
+ * a sentence with the same hash replaces the entry. A hit is verified
+ * against the stored bytes, so different sentences with the same hash
+ * are never confused.
+ * <p>
+ * The decoded values are stored by the handler in the int and float
+ * arrays of the {@link Entry}; their layout is up to the handler.
+ * This class is not thread safe, it is meant to be used by the thread
+ * decoding the sentences.
+ */
+
+public class NMEA0183SentenceCache
+{
+  /** the default number of entries */
+  public static final int DEFAULT_CAPACITY = 64;
+  /** the number of int values an entry can hold */
+  public static final int MAX_INT_VALUES = 24;
+  /** the number of float values an entry can hold */
+  public static final int MAX_FLOAT_VALUES = 8;
+
+  protected Entry[] entries_;
+  protected int mask_;
+  protected long hit_count_;
+  protected long miss_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a cache with the default number of entries.
+ */
+  public NMEA0183SentenceCache()
+  {
+    this(DEFAULT_CAPACITY);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates a cache with the given number of entries.
+ *
+ * @param capacity the number of entries (rounded up to a power of
+ * two).
+ */
+  public NMEA0183SentenceCache(int capacity)
+  {
+    int size = 1;
+    while(size < capacity)
+      size <<= 1;
+    entries_ = new Entry[size];
+    mask_ = size - 1;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the entry of a byte-identical sentence decoded before.
+ *
+ * @param sentence the sentence.
+ * @return the entry holding the decoded values or <code>null</code> if
+ * the sentence is not in the cache.
+ */
+  public Entry lookup(NMEA0183SentenceView sentence)
+  {
+    byte[] buffer = sentence.getBuffer();
+    int offset = sentence.getOffset();
+    int length = sentence.getLength();
+    int hash = hash(buffer,offset,length);
+    Entry entry = entries_[hash & mask_];
+    if((entry != null) && entry.matches(hash,buffer,offset,length))
+    {
+      hit_count_++;
+      return(entry);
+    }
+    miss_count_++;
+    return(null);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Stores a sentence (replacing the entry of another sentence with the
+ * same hash). The handler must fill in the decoded values or {@link
+ * #invalidate(NMEA0183SentenceCache.Entry) invalidate} the entry if
+ * the sentence could not be decoded.
+ *
+ * @param sentence the sentence.
+ * @return the entry to store the decoded values in.
+ */
+  public Entry store(NMEA0183SentenceView sentence)
+  {
+    byte[] buffer = sentence.getBuffer();
+    int offset = sentence.getOffset();
+    int length = sentence.getLength();
+    int hash = hash(buffer,offset,length);
+    int index = hash & mask_;
+    Entry entry = entries_[index];
+    if(entry == null)
+    {
+      entry = new Entry();
+      entries_[index] = entry;
+    }
+    if(entry.bytes_.length < length)
+      entry.bytes_ = new byte[length];
+    System.arraycopy(buffer,offset,entry.bytes_,0,length);
+    entry.length_ = length;
+    entry.hash_ = hash;
+    return(entry);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes an entry (e.g. if the sentence could not be decoded).
+ *
+ * @param entry the entry.
+ */
+  public void invalidate(Entry entry)
+  {
+    entry.length_ = -1;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes all entries.
+ */
+  public void clear()
+  {
+    for(int index = 0; index < entries_.length; index++)
+    {
+      if(entries_[index] != null)
+        entries_[index].length_ = -1;
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of sentences found in the cache.
+ *
+ * @return the number of hits.
+ */
+  public long getHitCount()
+  {
+    return(hit_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of sentences not found in the cache.
+ *
+ * @return the number of misses.
+ */
+  public long getMissCount()
+  {
+    return(miss_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Calculates the hash of the bytes of a sentence (FNV-1a).
+ *
+ * @param buffer the buffer holding the sentence.
+ * @param offset the offset of the sentence.
+ * @param length the length of the sentence.
+ * @return the hash value.
+ */
+  protected static int hash(byte[] buffer, int offset, int length)
+  {
+    int hash = 0x811c9dc5;
+    int end = offset + length;
+    for(int index = offset; index < end; index++)
+    {
+      hash ^= buffer[index];
+      hash *= 0x01000193;
+    }
+    return(hash ^ (hash >>> 16));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * An entry of the cache: the bytes of a sentence and the values the
+ * handler decoded from it.
+ */
+  public static class Entry
+  {
+    protected int hash_;
+    protected byte[] bytes_ = new byte[128];
+    protected int length_ = -1;
+    protected int[] int_values_ = new int[MAX_INT_VALUES];
+    protected float[] float_values_ = new float[MAX_FLOAT_VALUES];
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if this entry holds the given sentence.
+ *
+ * @param hash the hash of the sentence.
+ * @param buffer the buffer holding the sentence.
+ * @param offset the offset of the sentence.
+ * @param length the length of the sentence.
+ * @return true if the bytes are identical.
+ */
+    protected boolean matches(int hash, byte[] buffer, int offset, int length)
+    {
+      if((hash != hash_) || (length != length_))
+        return(false);
+      for(int index = 0; index < length; index++)
+      {
+        if(bytes_[index] != buffer[offset + index])
+          return(false);
+      }
+      return(true);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the int values decoded by the handler (the array is not
+ * copied, {@link NMEA0183SentenceCache#MAX_INT_VALUES} elements).
+ *
+ * @return the int values.
+ */
+    public int[] getIntValues()
+    {
+      return(int_values_);
+    }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the float values decoded by the handler (the array is not
+ * copied, {@link NMEA0183SentenceCache#MAX_FLOAT_VALUES} elements).
+ *
+ * @return the float values.
+ */
+    public float[] getFloatValues()
+    {
+      return(float_values_);
+    }
+  }
+}
@@ -0,0 +1,569 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+import org.dinopolis.gpstool.gpsinput.SatelliteInfo;
+
+//----------------------------------------------------------------------
+/**
+ * Encodes GGA, RMC, GSA, GSV and VTG sentences directly into a byte
+ * buffer (the counterpart of {@link NMEA0183FieldDecoder}). The
+ * numbers are formatted as fixed point values and the checksum is
+ * calculated while the bytes are written, so no objects are created
+ * per sentence. The headers ("$GPGGA" ...) are prepared when the
+ * talker id is set.
+ * <p>
+ * Every encode method writes one complete sentence (including
+ * checksum and CR/LF) at the given offset and returns the offset after
+ * the sentence. The buffer must have room for {@link
+ * #MAX_ENCODED_LENGTH} bytes. Unknown values (NaN floats, negative
+ * counts or times) are written as empty fields. Speeds are given in
+ * km/h as everywhere else in this package.
+ * <p>
+ * An encoder is not thread safe, every thread needs its own.
+ */
+
+public class NMEA0183SentenceEncoder
+{
+  /** the maximum number of bytes an encoded sentence may need */
+  public static final int MAX_ENCODED_LENGTH = 128;
+  /** the default talker id */
+  public static final String DEFAULT_TALKER_ID = "GP";
+  /** the number of satellites in a GSV sentence */
+  public static final int SATELLITES_PER_GSV = 4;
+  /** the number of satellite ids in a GSA sentence */
+  public static final int SATELLITES_PER_GSA = 12;
+
+  protected static final double KNOTS_PER_KMH = 1.0 / 1.852;
+
+  protected static final long[] POWERS_OF_TEN =
+  { 1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L };
+
+  protected static final byte[] HEX_DIGITS =
+  { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'A', 'B', 'C', 'D', 'E', 'F' };
+
+  protected String talker_id_;
+  protected byte[] gga_header_;
+  protected byte[] rmc_header_;
+  protected byte[] gsa_header_;
+  protected byte[] gsv_header_;
+  protected byte[] vtg_header_;
+
+  protected int time_decimals_ = 3;
+  protected int position_decimals_ = 4;
+
+  /** the sentence that is written at the moment */
+  protected byte[] buffer_;
+  protected int position_;
+  protected int checksum_;
+  /** scratch space for the digits of a number (in reverse order) */
+  protected byte[] digits_ = new byte[32];
+
+//----------------------------------------------------------------------
+/**
+ * Creates an encoder for the talker id "GP".
+ */
+  public NMEA0183SentenceEncoder()
+  {
+    this(DEFAULT_TALKER_ID);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates an encoder for the given talker id.
+ *
+ * @param talker_id the talker id (e.g. "GP" or "GN").
+ */
+  public NMEA0183SentenceEncoder(String talker_id)
+  {
+    setTalkerId(talker_id);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the talker id of the sentences and prepares their headers.
+ *
+ * @param talker_id the talker id (e.g. "GP" or "GN").
+ */
+  public void setTalkerId(String talker_id)
+  {
+    talker_id_ = talker_id;
+    gga_header_ = createHeader(talker_id,"GGA");
+    rmc_header_ = createHeader(talker_id,"RMC");
+    gsa_header_ = createHeader(talker_id,"GSA");
+    gsv_header_ = createHeader(talker_id,"GSV");
+    vtg_header_ = createHeader(talker_id,"VTG");
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the talker id of the sentences.
+ *
+ * @return the talker id.
+ */
+  public String getTalkerId()
+  {
+    return(talker_id_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the number of decimals of the seconds of the time fields (the
+ * default is 3, as "hhmmss.sss").
+ *
+ * @param decimals the number of decimals (0 to 3).
+ */
+  public void setTimeDecimals(int decimals)
+  {
+    time_decimals_ = Math.max(0,Math.min(decimals,3));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the number of decimals of the minutes of latitude and
+ * longitude (the default is 4, as "ddmm.mmmm").
+ *
+ * @param decimals the number of decimals (0 to 7).
+ */
+  public void setPositionDecimals(int decimals)
+  {
+    position_decimals_ = Math.max(0,Math.min(decimals,7));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Encodes a GGA sentence (fix data). The age of the differential
+ * corrections and the reference station are left empty.
+ *
+ * @param buffer the buffer to write to.
+ * @param offset the offset to write the sentence at.
+ * @param time_of_day the milliseconds since midnight (UTC).
+ * @param latitude the latitude in degrees (negative for south).
+ * @param longitude the longitude in degrees (negative for west).
+ * @param quality the fix quality (0 = invalid, 1 = GPS fix, 2 = DGPS
+ * fix, ...).
+ * @param satellites_used the number of satellites used for the fix.
+ * @param hdop the horizontal dilution of precision.
+ * @param altitude the altitude above mean sea level in meters.
+ * @param geoid_separation the height of the geoid above the WGS84
+ * ellipsoid in meters.
+ * @return the offset after the sentence.
+ */
+  public int encodeGGA(byte[] buffer, int offset, int time_of_day, double latitude,
+                       double longitude, int quality, int satellites_used, float hdop,
+                       float altitude, float geoid_separation)
+  {
+    begin(buffer,offset,gga_header_);
+    separator();
+    appendTimeOfDay(time_of_day);
+    separator();
+    appendCoordinate(latitude,2,'N','S');
+    separator();
+    appendCoordinate(longitude,3,'E','W');
+    separator();
+    appendInt(quality,1);
+    separator();
+    appendInt(satellites_used,2);
+    separator();
+    appendDecimal(hdop,1);
+    separator();
+    appendDecimal(altitude,1);
+    separator();
+    if(!Float.isNaN(altitude))
+      append('M');
+    separator();
+    appendDecimal(geoid_separation,1);
+    separator();
+    if(!Float.isNaN(geoid_separation))
+      append('M');
+    separator();
+    separator();
+    return(end());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Encodes a RMC sentence (recommended minimum data). The magnetic
+ * variation is left empty.
+ *
+ * @param buffer the buffer to write to.
+ * @param offset the offset to write the sentence at.
+ * @param time_of_day the milliseconds since midnight (UTC).
+ * @param valid true if the fix is valid.
+ * @param latitude the latitude in degrees (negative for south).
+ * @param longitude the longitude in degrees (negative for west).
+ * @param speed the speed over ground in km/h.
+ * @param course the course over ground in degrees.
+ * @param year the year (e.g. 2010, or -1 if unknown).
+ * @param month the month (1 to 12).
+ * @param day the day of the month (1 to 31).
+ * @return the offset after the sentence.
+ */
+  public int encodeRMC(byte[] buffer, int offset, int time_of_day, boolean valid,
+                       double latitude, double longitude, float speed, float course,
+                       int year, int month, int day)
+  {
+    begin(buffer,offset,rmc_header_);
+    separator();
+    appendTimeOfDay(time_of_day);
+    separator();
+    append(valid ? 'A' : 'V');
+    separator();
+    appendCoordinate(latitude,2,'N','S');
+    separator();
+    appendCoordinate(longitude,3,'E','W');
+    separator();
+    appendDecimal(speed * KNOTS_PER_KMH,2);
+    separator();
+    appendDecimal(course,2);
+    separator();
+    if((year >= 0) && (month > 0) && (day > 0))
+    {
+      appendInt(day,2);
+      appendInt(month,2);
+      appendInt(year % 100,2);
+    }
+    separator();
+    separator();
+    return(end());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Encodes a GSA sentence (dilution of precision and active
+ * satellites). Only the first twelve satellite ids are written.
+ *
+ * @param buffer the buffer to write to.
+ * @param offset the offset to write the sentence at.
+ * @param automatic true if the receiver selects 2D/3D automatically.
+ * @param fix_type the fix type (1 = no fix, 2 = 2D, 3 = 3D).
+ * @param satellite_ids the ids (prns) of the satellites used.
+ * @param count the number of ids to use from the array.
+ * @param pdop the position dilution of precision.
+ * @param hdop the horizontal dilution of precision.
+ * @param vdop the vertical dilution of precision.
+ * @return the offset after the sentence.
+ */
+  public int encodeGSA(byte[] buffer, int offset, boolean automatic, int fix_type,
+                       int[] satellite_ids, int count, float pdop, float hdop, float vdop)
+  {
+    begin(buffer,offset,gsa_header_);
+    separator();
+    append(automatic ? 'A' : 'M');
+    separator();
+    appendInt(fix_type,1);
+    for(int index = 0; index < SATELLITES_PER_GSA; index++)
+    {
+      separator();
+      if(index < count)
+        appendInt(satellite_ids[index],2);
+    }
+    separator();
+    appendDecimal(pdop,1);
+    separator();
+    appendDecimal(hdop,1);
+    separator();
+    appendDecimal(vdop,1);
+    return(end());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of GSV sentences needed for the given number of
+ * satellites.
+ *
+ * @param satellites the number of satellites in view.
+ * @return the number of GSV sentences (at least one).
+ */
+  public static int getGSVMessageCount(int satellites)
+  {
+    return(Math.max(1,(satellites + SATELLITES_PER_GSV - 1) / SATELLITES_PER_GSV));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Encodes one GSV sentence (satellites in view) of a block. A block of
+ * {@link #getGSVMessageCount(int)} sentences reports all satellites,
+ * four per sentence. Satellites without signal (snr 0) are written
+ * with an empty snr field.
+ *
+ * @param buffer the buffer to write to.
+ * @param offset the offset to write the sentence at.
+ * @param satellites the satellites in view.
+ * @param count the number of satellites to use from the array.
+ * @param message_number the number of the sentence in the block
+ * (starting at 1).
+ * @return the offset after the sentence.
+ */
+  public int encodeGSV(byte[] buffer, int offset, SatelliteInfo[] satellites, int count,
+                       int message_number)
+  {
+    begin(buffer,offset,gsv_header_);
+    separator();
+    appendInt(getGSVMessageCount(count),1);
+    separator();
+    appendInt(message_number,1);
+    separator();
+    appendInt(count,2);
+    int first = (message_number - 1) * SATELLITES_PER_GSV;
+    int last = Math.min(first + SATELLITES_PER_GSV,count);
+    SatelliteInfo satellite;
+    for(int index = first; index < last; index++)
+    {
+      satellite = satellites[index];
+      separator();
+      appendInt(satellite.getPRN(),2);
+      separator();
+      appendInt(Math.round(satellite.getElevation()),2);
+      separator();
+      appendInt(Math.round(satellite.getAzimuth()),3);
+      separator();
+      if(satellite.getSNR() > 0)
+        appendInt(satellite.getSNR(),2);
+    }
+    return(end());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Encodes a VTG sentence (course and speed over ground). The magnetic
+ * course is left empty.
+ *
+ * @param buffer the buffer to write to.
+ * @param offset the offset to write the sentence at.
+ * @param course the true course over ground in degrees.
+ * @param speed the speed over ground in km/h.
+ * @return the offset after the sentence.
+ */
+  public int encodeVTG(byte[] buffer, int offset, float course, float speed)
+  {
+    begin(buffer,offset,vtg_header_);
+    separator();
+    appendDecimal(course,2);
+    separator();
+    append('T');
+    separator();
+    separator();
+    append('M');
+    separator();
+    appendDecimal(speed * KNOTS_PER_KMH,2);
+    separator();
+    append('N');
+    separator();
+    appendDecimal(speed,2);
+    separator();
+    append('K');
+    return(end());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Starts a sentence: writes the header and resets the checksum.
+ *
+ * @param buffer the buffer to write to.
+ * @param offset the offset to write the sentence at.
+ * @param header the header ('$', talker id and sentence id).
+ */
+  protected void begin(byte[] buffer, int offset, byte[] header)
+  {
+    buffer_ = buffer;
+    position_ = offset;
+    buffer[position_++] = header[0];  // '$' is not part of the checksum
+    checksum_ = 0;
+    for(int index = 1; index < header.length; index++)
+      append(header[index]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Ends a sentence: writes the checksum and CR/LF.
+ *
+ * @return the offset after the sentence.
+ */
+  protected int end()
+  {
+    byte[] buffer = buffer_;
+    buffer[position_++] = '*';
+    buffer[position_++] = HEX_DIGITS[(checksum_ >> 4) & 0x0f];
+    buffer[position_++] = HEX_DIGITS[checksum_ & 0x0f];
+    buffer[position_++] = '\r';
+    buffer[position_++] = '\n';
+    buffer_ = null;
+    return(position_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends a byte and updates the checksum.
+ *
+ * @param value the byte.
+ */
+  protected void append(byte value)
+  {
+    buffer_[position_++] = value;
+    checksum_ ^= value;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends an (ASCII) character and updates the checksum.
+ *
+ * @param value the character.
+ */
+  protected void append(char value)
+  {
+    append((byte)value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends a field separator.
+ */
+  protected void separator()
+  {
+    append((byte)',');
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends an integer with leading zeros. Negative values are unknown
+ * and result in an empty field.
+ *
+ * @param value the value.
+ * @param min_digits the minimum number of digits.
+ */
+  protected void appendInt(long value, int min_digits)
+  {
+    if(value >= 0)
+      appendFixedPoint(value,0,min_digits);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends a decimal number rounded to the given number of decimals.
+ * NaN results in an empty field.
+ *
+ * @param value the value.
+ * @param decimals the number of decimals (0 to 8).
+ */
+  protected void appendDecimal(double value, int decimals)
+  {
+    if(Double.isNaN(value))
+      return;
+    appendFixedPoint(Math.round(value * POWERS_OF_TEN[decimals]),decimals,1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends a fixed point value (e.g. 12345 with three decimals is
+ * written as "12.345").
+ *
+ * @param value the scaled value.
+ * @param decimals the number of decimals.
+ * @param min_int_digits the minimum number of digits before the
+ * decimal point (padded with zeros).
+ */
+  protected void appendFixedPoint(long value, int decimals, int min_int_digits)
+  {
+    if(value < 0)
+    {
+      append('-');
+      value = -value;
+    }
+    byte[] digits = digits_;
+    int min_digits = decimals + Math.max(min_int_digits,1);
+    int count = 0;
+    do
+    {
+      digits[count++] = (byte)('0' + (value % 10));
+      value /= 10;
+    }
+    while((value != 0) || (count < min_digits));
+    for(int index = count - 1; index >= 0; index--)
+    {
+      if(index == decimals - 1)
+        append('.');
+      append(digits[index]);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends a UTC time of day in the format hhmmss.sss (with the
+ * configured number of decimals). Negative values result in an empty
+ * field.
+ *
+ * @param time_of_day the milliseconds since midnight.
+ */
+  protected void appendTimeOfDay(int time_of_day)
+  {
+    if(time_of_day < 0)
+      return;
+    int seconds = time_of_day / 1000;
+    appendFixedPoint(seconds / 3600,0,2);
+    appendFixedPoint((seconds / 60) % 60,0,2);
+    int millis = time_of_day % 60000;
+    appendFixedPoint(millis / POWERS_OF_TEN[3 - time_decimals_],time_decimals_,2);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Appends a latitude or longitude as two fields: the degrees and
+ * minutes (ddmm.mmmm or dddmm.mmmm) and the hemisphere. NaN results in
+ * two empty fields.
+ *
+ * @param degrees the coordinate in degrees.
+ * @param degree_digits the number of digits of the degrees (2 or 3).
+ * @param positive the hemisphere of positive values ('N' or 'E').
+ * @param negative the hemisphere of negative values ('S' or 'W').
+ */
+  protected void appendCoordinate(double degrees, int degree_digits, char positive, char negative)
+  {
+    if(Double.isNaN(degrees))
+    {
+      separator();
+      return;
+    }
+    long scale = POWERS_OF_TEN[position_decimals_];
+    long minutes = Math.round(Math.abs(degrees) * 60.0 * scale);
+    long whole_degrees = minutes / (60 * scale);
+    minutes -= whole_degrees * 60 * scale;
+    appendFixedPoint(whole_degrees,0,degree_digits);
+    appendFixedPoint(minutes,position_decimals_,2);
+    separator();
+    append(degrees < 0.0 ? negative : positive);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates the header of a sentence.
+ *
+ * @param talker_id the talker id.
+ * @param sentence_id the sentence id.
+ * @return the bytes of '$', talker id and sentence id.
+ */
+  protected static byte[] createHeader(String talker_id, String sentence_id)
+  {
+    String header = "$" + talker_id + sentence_id;
+    byte[] bytes = new byte[header.length()];
+    for(int index = 0; index < bytes.length; index++)
+      bytes[index] = (byte)header.charAt(index);
+    return(bytes);
+  }
+}
@@ -0,0 +1,41 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+//----------------------------------------------------------------------
+/**
+ * Handles one type of NMEA sentence (e.g. GGA or a proprietary
+ * sentence like PGRME). Handlers are registered at the {@link
+ * NMEA0183SentenceRegistry} of a {@link GPSNmeaDataProcessor}.
+ *
+ * @see GPSNmeaDataProcessor#registerSentenceHandler(String,NMEA0183SentenceHandler)
+ */
+
+public interface NMEA0183SentenceHandler
+{
+
+//----------------------------------------------------------------------
+/**
+ * Handles a sentence. The sentence view (and the buffer it points to)
+ * is only valid during this call, so it must not be stored.
+ *
+ * @param sentence the sentence.
+ */
+  public void handleSentence(NMEA0183SentenceView sentence);
+}
@@ -0,0 +1,368 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+import java.util.HashSet;
+import java.util.Set;
+
+//----------------------------------------------------------------------
+/**
+ * Maps NMEA sentence ids to {@link NMEA0183SentenceHandler}s. The ids
+ * are packed into an int (six bits per character) and looked up in a
+ * small open addressed hash table, so dispatching a sentence costs
+ * neither a string nor a chain of <code>equals</code> calls.
+ * <p>
+ * Standard sentences are registered without talker id (e.g. "GGA"
+ * handles $GPGGA, $GNGGA, $GLGGA, ...). Proprietary sentences start
+ * with 'P' and are registered with their full address (e.g. "PGRME",
+ * "PUBX", "PMTK001"). Only the first five characters after the 'P' are
+ * significant, longer ids with the same prefix share one handler.
+ * <p>
+ * A handler may declare the keys of the gps data it produces (see
+ * {@link org.dinopolis.gpstool.gpsinput.GPSDataProcessor}). {@link
+ * #select(Set)} uses them to create a registry that only contains the
+ * handlers somebody is interested in.
+ * <p>
+ * Lookups do not need any synchronization: every change creates a new
+ * table that replaces the old one.
+ */
+
+public class NMEA0183SentenceRegistry
+{
+  /** flag set in the key of proprietary sentences */
+  protected static final int PROPRIETARY_FLAG = 1 << 30;
+  /** the number of significant characters of a sentence id */
+  protected static final int MAX_ID_LENGTH = 5;
+
+  /** the current table, replaced on every change */
+  protected volatile Table table_ = new Table(16);
+  /** incremented on every change */
+  protected volatile int modification_count_;
+
+//----------------------------------------------------------------------
+/**
+ * Registers a handler for the given sentence id. A handler registered
+ * before for this id is replaced.
+ *
+ * @param sentence_id the sentence id (e.g. "GGA" or "PGRME").
+ * @param handler the handler.
+ * @exception IllegalArgumentException if the id or the handler is
+ * <code>null</code> or the id is empty.
+ */
+  public void registerHandler(String sentence_id, NMEA0183SentenceHandler handler)
+    throws IllegalArgumentException
+  {
+    registerHandler(sentence_id,handler,null);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Registers a handler for the given sentence id that produces the gps
+ * data with the given keys. A handler registered before for this id is
+ * replaced.
+ *
+ * @param sentence_id the sentence id (e.g. "GGA" or "PGRME").
+ * @param handler the handler.
+ * @param data_keys the keys of the gps data the handler produces or
+ * <code>null</code> if the handler is always needed.
+ * @exception IllegalArgumentException if the id or the handler is
+ * <code>null</code> or the id is empty.
+ */
+  public synchronized void registerHandler(String sentence_id, NMEA0183SentenceHandler handler,
+                                           String[] data_keys)
+    throws IllegalArgumentException
+  {
+    if (handler == null)
+      throw new IllegalArgumentException("The handler must not be <null>.");
+    int key = packSentenceId(sentence_id);
+    Table old_table = table_;
+    int capacity = old_table.keys_.length;
+    if((old_table.size_ + 1) * 2 > capacity)
+      capacity *= 2;
+    Table table = new Table(capacity);
+    table.putAll(old_table);
+    table.put(key,handler,data_keys);
+    table_ = table;
+    modification_count_++;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Removes the handler for the given sentence id.
+ *
+ * @param sentence_id the sentence id (e.g. "GGA" or "PGRME").
+ * @return the handler removed or <code>null</code> if none was
+ * registered.
+ * @exception IllegalArgumentException if the id is <code>null</code>
+ * or empty.
+ */
+  public synchronized NMEA0183SentenceHandler unregisterHandler(String sentence_id)
+    throws IllegalArgumentException
+  {
+    int key = packSentenceId(sentence_id);
+    Table old_table = table_;
+    NMEA0183SentenceHandler handler = old_table.get(key);
+    if(handler == null)
+      return(null);
+    Table table = new Table(old_table.keys_.length);
+    for(int index = 0; index < old_table.keys_.length; index++)
+    {
+      if((old_table.keys_[index] != 0) && (old_table.keys_[index] != key))
+        table.put(old_table.keys_[index],old_table.handlers_[index],old_table.data_keys_[index]);
+    }
+    table_ = table;
+    modification_count_++;
+    return(handler);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the handler registered for the given key.
+ *
+ * @param key the packed sentence id.
+ * @return the handler or <code>null</code> if none is registered.
+ * @see #packSentenceId(String)
+ */
+  public NMEA0183SentenceHandler getHandler(int key)
+  {
+    return(table_.get(key));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the handler registered for the given sentence id.
+ *
+ * @param sentence_id the sentence id (e.g. "GGA" or "PGRME").
+ * @return the handler or <code>null</code> if none is registered.
+ */
+  public NMEA0183SentenceHandler getHandler(String sentence_id)
+  {
+    return(table_.get(packSentenceId(sentence_id)));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the handler for the given sentence.
+ *
+ * @param sentence the sentence.
+ * @return the handler or <code>null</code> if none is registered.
+ */
+  public NMEA0183SentenceHandler getHandler(NMEA0183SentenceView sentence)
+  {
+    return(table_.get(sentence.getSentenceKey()));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of changes of this registry (e.g. to find out if
+ * a registry created by {@link #select(Set)} is outdated).
+ *
+ * @return the number of changes.
+ */
+  public int getModificationCount()
+  {
+    return(modification_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the keys of the gps data produced by all handlers.
+ *
+ * @return the data keys.
+ */
+  public Set getDataKeys()
+  {
+    Table table = table_;
+    Set data_keys = new HashSet();
+    for(int index = 0; index < table.keys_.length; index++)
+    {
+      String[] keys = table.data_keys_[index];
+      if(keys != null)
+      {
+        for(int key_index = 0; key_index < keys.length; key_index++)
+          data_keys.add(keys[key_index]);
+      }
+    }
+    return(data_keys);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Creates a registry that only contains the handlers that produce at
+ * least one of the given gps data keys (and the handlers that did not
+ * declare any keys).
+ *
+ * @param needed_keys the keys of the gps data needed.
+ * @return the new registry.
+ */
+  public NMEA0183SentenceRegistry select(Set needed_keys)
+  {
+    Table table = table_;
+    NMEA0183SentenceRegistry registry = new NMEA0183SentenceRegistry();
+    Table selected = new Table(table.keys_.length);
+    for(int index = 0; index < table.keys_.length; index++)
+    {
+      if(table.keys_[index] == 0)
+        continue;
+      String[] keys = table.data_keys_[index];
+      boolean needed = keys == null;
+      for(int key_index = 0; !needed && (key_index < keys.length); key_index++)
+        needed = needed_keys.contains(keys[key_index]);
+      if(needed)
+        selected.put(table.keys_[index],table.handlers_[index],keys);
+    }
+    registry.table_ = selected;
+    return(registry);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Packs a sentence id as used for registration into an int. Ids
+ * starting with 'P' are treated as proprietary, all others as the
+ * sentence id of a standard sentence (without talker id).
+ *
+ * @param sentence_id the sentence id.
+ * @return the packed id.
+ * @exception IllegalArgumentException if the id is <code>null</code>
+ * or empty.
+ */
+  public static int packSentenceId(String sentence_id)
+    throws IllegalArgumentException
+  {
+    if((sentence_id == null) || (sentence_id.length() == 0))
+      throw new IllegalArgumentException("The sentence id must not be empty.");
+    int start = 0;
+    int key = 0;
+    if((sentence_id.charAt(0) == 'P') && (sentence_id.length() > 3))
+    {
+      key = PROPRIETARY_FLAG;
+      start = 1;
+    }
+    int end = Math.min(sentence_id.length(),start + MAX_ID_LENGTH);
+    for(int index = start; index < end; index++)
+      key = (key & PROPRIETARY_FLAG) | ((key & ~PROPRIETARY_FLAG) << 6) | packChar(sentence_id.charAt(index));
+    return(key);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Packs the address field of a sentence (the characters between '$'
+ * and the first ',') into an int. For standard sentences the two
+ * characters of the talker id are skipped.
+ *
+ * @param buffer the buffer holding the sentence.
+ * @param start the index of the first character after the '$'.
+ * @param end the index of the first ',' (or of the end of the address
+ * field).
+ * @return the packed id.
+ */
+  public static int packSentenceId(byte[] buffer, int start, int end)
+  {
+    int key = 0;
+    if((end - start > 3) && (buffer[start] == 'P'))
+    {
+      key = PROPRIETARY_FLAG;
+      start++;
+    }
+    else if(end - start > 2)
+    {
+      start += 2; // skip talker id
+    }
+    end = Math.min(end,start + MAX_ID_LENGTH);
+    for(int index = start; index < end; index++)
+      key = (key & PROPRIETARY_FLAG) | ((key & ~PROPRIETARY_FLAG) << 6) | packChar((char)buffer[index]);
+    return(key);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Maps a character of a sentence id to six bits (lower case letters
+ * are treated like upper case letters).
+ *
+ * @param character the character.
+ * @return the six bit value.
+ */
+  protected static int packChar(char character)
+  {
+    if((character >= 'a') && (character <= 'z'))
+      character -= 'a' - 'A';
+    return((character - 0x20) & 0x3f);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * The open addressed hash table (linear probing, key 0 marks an empty
+ * slot). A table is never changed after it was published.
+ */
+  protected static class Table
+  {
+    int[] keys_;
+    NMEA0183SentenceHandler[] handlers_;
+    String[][] data_keys_;
+    int mask_;
+    int size_;
+
+    Table(int capacity)
+    {
+      keys_ = new int[capacity];
+      handlers_ = new NMEA0183SentenceHandler[capacity];
+      data_keys_ = new String[capacity][];
+      mask_ = capacity - 1;
+    }
+
+    int indexOf(int key)
+    {
+      return(((key * 0x9E3779B9) >>> 16) & mask_);
+    }
+
+    NMEA0183SentenceHandler get(int key)
+    {
+      int index = indexOf(key);
+      int slot_key;
+      while((slot_key = keys_[index]) != 0)
+      {
+        if(slot_key == key)
+          return(handlers_[index]);
+        index = (index + 1) & mask_;
+      }
+      return(null);
+    }
+
+    void put(int key, NMEA0183SentenceHandler handler, String[] data_keys)
+    {
+      int index = indexOf(key);
+      while((keys_[index] != 0) && (keys_[index] != key))
+        index = (index + 1) & mask_;
+      if(keys_[index] == 0)
+        size_++;
+      keys_[index] = key;
+      handlers_[index] = handler;
+      data_keys_[index] = data_keys;
+    }
+
+    void putAll(Table table)
+    {
+      for(int index = 0; index < table.keys_.length; index++)
+      {
+        if(table.keys_[index] != 0)
+          put(table.keys_[index],table.handlers_[index],table.data_keys_[index]);
+      }
+    }
+  }
+}
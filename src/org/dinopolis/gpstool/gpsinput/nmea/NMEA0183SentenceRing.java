@@ -0,0 +1,363 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+//----------------------------------------------------------------------
+/**
+ * A ring of pre-allocated byte slots that passes framed sentences from
+ * exactly one producer thread (reading from the gps device) to exactly
+ * one consumer thread (decoding the sentences). No locks are used:
+ * the producer publishes a slot by advancing the tail, the consumer
+ * copies the sentence out of the slot and releases it by advancing the
+ * head.
+ * <p>
+ * If the ring is full, the {@link #setOverflowPolicy(int) overflow
+ * policy} decides what happens: {@link #OVERFLOW_BLOCK} makes the
+ * producer wait until the consumer released a slot, {@link
+ * #OVERFLOW_DROP_OLDEST} throws away the oldest sentence, so the
+ * producer never waits. With the latter, the producer may take a slot
+ * away while the consumer copies it; the consumer detects this as its
+ * release fails and simply takes the next sentence.
+ */
+
+public class NMEA0183SentenceRing
+{
+  /** overflow policy: the producer waits for a free slot */
+  public static final int OVERFLOW_BLOCK = 0;
+  /** overflow policy: the oldest sentence is thrown away */
+  public static final int OVERFLOW_DROP_OLDEST = 1;
+
+  /** the default number of slots */
+  public static final int DEFAULT_CAPACITY = 1024;
+  /** the initial size of a slot (longer sentences grow the slot) */
+  protected static final int SLOT_SIZE = 128;
+  /** the nanoseconds a waiting thread sleeps before checking again */
+  protected static final long PARK_NANOS = 10L * 1000 * 1000;
+
+  protected byte[][] slots_;
+  protected int[] lengths_;
+  protected int[] checksums_;
+  protected long[] timestamps_;
+  protected int mask_;
+
+  /** the index of the next sentence to consume */
+  protected AtomicLong head_ = new AtomicLong();
+  /** the index of the next slot to fill */
+  protected AtomicLong tail_ = new AtomicLong();
+
+  protected volatile int overflow_policy_ = OVERFLOW_BLOCK;
+  protected volatile boolean closed_;
+  protected volatile Thread waiting_consumer_;
+  protected volatile Thread waiting_producer_;
+
+  /** the buffer the last sentence was copied to by the consumer */
+  protected byte[] taken_buffer_;
+  /** the checksum of the last sentence taken by the consumer */
+  protected int taken_checksum_;
+  /** the receive time of the last sentence taken by the consumer */
+  protected long taken_timestamp_;
+
+  protected volatile long dropped_count_;
+  protected volatile long blocked_count_;
+  protected volatile int high_water_mark_;
+
+//----------------------------------------------------------------------
+/**
+ * Creates a ring with the given number of slots.
+ *
+ * @param capacity the number of slots (rounded up to a power of two).
+ */
+  public NMEA0183SentenceRing(int capacity)
+  {
+    int size = 2;
+    while(size < capacity)
+      size <<= 1;
+    slots_ = new byte[size][SLOT_SIZE];
+    lengths_ = new int[size];
+    checksums_ = new int[size];
+    timestamps_ = new long[size];
+    mask_ = size - 1;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Sets the policy used if the ring is full.
+ *
+ * @param policy {@link #OVERFLOW_BLOCK} or {@link
+ * #OVERFLOW_DROP_OLDEST}.
+ * @exception IllegalArgumentException if the policy is unknown.
+ */
+  public void setOverflowPolicy(int policy)
+    throws IllegalArgumentException
+  {
+    if((policy != OVERFLOW_BLOCK) && (policy != OVERFLOW_DROP_OLDEST))
+      throw new IllegalArgumentException("unknown overflow policy: " + policy);
+    overflow_policy_ = policy;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the policy used if the ring is full.
+ *
+ * @return the overflow policy.
+ */
+  public int getOverflowPolicy()
+  {
+    return(overflow_policy_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a sentence received now to the ring. Must only be called by the
+ * producer thread.
+ *
+ * @param buffer the buffer holding the sentence.
+ * @param offset the offset of the sentence in the buffer.
+ * @param length the length of the sentence.
+ * @param checksum the calculated checksum of the sentence (or -1).
+ * @return false if the ring was closed while waiting for a free slot.
+ */
+  public boolean offer(byte[] buffer, int offset, int length, int checksum)
+  {
+    return(offer(buffer,offset,length,checksum,System.nanoTime()));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds a sentence to the ring. Must only be called by the producer
+ * thread.
+ *
+ * @param buffer the buffer holding the sentence.
+ * @param offset the offset of the sentence in the buffer.
+ * @param length the length of the sentence.
+ * @param checksum the calculated checksum of the sentence (or -1).
+ * @param timestamp the {@link System#nanoTime()} the sentence was
+ * received.
+ * @return false if the ring was closed while waiting for a free slot.
+ */
+  public boolean offer(byte[] buffer, int offset, int length, int checksum, long timestamp)
+  {
+    long tail = tail_.get();
+    boolean blocked = false;
+    while(tail - head_.get() >= slots_.length)
+    {
+      if(closed_)
+        return(false);
+      if(overflow_policy_ == OVERFLOW_DROP_OLDEST)
+      {
+        long head = head_.get();
+        if((tail - head >= slots_.length) && head_.compareAndSet(head,head + 1))
+          dropped_count_++;
+      }
+      else
+      {
+        if(!blocked)
+        {
+          blocked_count_++;
+          blocked = true;
+        }
+        waiting_producer_ = Thread.currentThread();
+        if(tail - head_.get() >= slots_.length)
+          LockSupport.parkNanos(PARK_NANOS);
+        waiting_producer_ = null;
+      }
+    }
+
+    int slot = (int)tail & mask_;
+    byte[] data = slots_[slot];
+    if(data.length < length)
+    {
+      data = new byte[Math.max(length,data.length * 2)];
+      slots_[slot] = data;
+    }
+    System.arraycopy(buffer,offset,data,0,length);
+    lengths_[slot] = length;
+    checksums_[slot] = checksum;
+    timestamps_[slot] = timestamp;
+    tail_.set(tail + 1);
+
+    int fill = (int)(tail + 1 - head_.get());
+    if(fill > high_water_mark_)
+      high_water_mark_ = fill;
+    Thread consumer = waiting_consumer_;
+    if(consumer != null)
+      LockSupport.unpark(consumer);
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Copies the next sentence into the given buffer, waiting if the ring
+ * is empty. Must only be called by the consumer thread.
+ *
+ * @param buffer the buffer to copy the sentence to. If it is too small,
+ * a larger one is allocated and the sentence is copied there.
+ * @return the length of the sentence or -1 if the ring was closed.
+ * @see #getBuffer()
+ * @see #getChecksum()
+ */
+  public int take(byte[] buffer)
+  {
+    while(true)
+    {
+      long head = head_.get();
+      if(head == tail_.get())
+      {
+        if(closed_)
+          return(-1);
+        waiting_consumer_ = Thread.currentThread();
+        if(head == tail_.get() && !closed_)
+          LockSupport.parkNanos(PARK_NANOS);
+        waiting_consumer_ = null;
+        continue;
+      }
+
+      int slot = (int)head & mask_;
+      byte[] data = slots_[slot];
+      int length = Math.min(lengths_[slot],data.length);
+      int checksum = checksums_[slot];
+      long timestamp = timestamps_[slot];
+      if(buffer.length < length)
+        buffer = new byte[Math.max(length,buffer.length * 2)];
+      System.arraycopy(data,0,buffer,0,length);
+      if(!head_.compareAndSet(head,head + 1))
+        continue;  // the producer dropped this sentence while it was copied
+
+      taken_buffer_ = buffer;
+      taken_checksum_ = checksum;
+      taken_timestamp_ = timestamp;
+      Thread producer = waiting_producer_;
+      if(producer != null)
+        LockSupport.unpark(producer);
+      return(length);
+    }
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the buffer the last sentence was copied to by {@link
+ * #take(byte[])} (the buffer passed or a larger one).
+ *
+ * @return the buffer holding the last sentence taken.
+ */
+  public byte[] getBuffer()
+  {
+    return(taken_buffer_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the calculated checksum of the last sentence taken.
+ *
+ * @return the checksum or -1 if it was not calculated.
+ */
+  public int getChecksum()
+  {
+    return(taken_checksum_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the {@link System#nanoTime()} the last sentence taken was
+ * received.
+ *
+ * @return the receive time.
+ */
+  public long getTimestamp()
+  {
+    return(taken_timestamp_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Closes the ring: waiting threads return, the consumer gets the
+ * remaining sentences and then -1.
+ */
+  public void close()
+  {
+    closed_ = true;
+    Thread thread = waiting_consumer_;
+    if(thread != null)
+      LockSupport.unpark(thread);
+    thread = waiting_producer_;
+    if(thread != null)
+      LockSupport.unpark(thread);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of slots.
+ *
+ * @return the capacity.
+ */
+  public int getCapacity()
+  {
+    return(slots_.length);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of sentences waiting to be consumed.
+ *
+ * @return the number of sentences in the ring.
+ */
+  public int size()
+  {
+    return((int)(tail_.get() - head_.get()));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of sentences thrown away because the ring was full
+ * (policy {@link #OVERFLOW_DROP_OLDEST}).
+ *
+ * @return the number of sentences dropped.
+ */
+  public long getDroppedCount()
+  {
+    return(dropped_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns how often the producer had to wait for a free slot (policy
+ * {@link #OVERFLOW_BLOCK}).
+ *
+ * @return the number of waits.
+ */
+  public long getBlockedCount()
+  {
+    return(blocked_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the maximum number of sentences that were in the ring at the
+ * same time.
+ *
+ * @return the high water mark.
+ */
+  public int getHighWaterMark()
+  {
+    return(high_water_mark_);
+  }
+}
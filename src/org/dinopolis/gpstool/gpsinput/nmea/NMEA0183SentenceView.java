@@ -0,0 +1,665 @@
+/*
+    This file is part of GpsInspector.
+
+    GpsInspector is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    GpsInspector is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with GpsInspector.  If not, see <http://www.gnu.org/licenses/>.
+
+ */
+
+package org.dinopolis.gpstool.gpsinput.nmea;
+
+//----------------------------------------------------------------------
+/**
+ * A reusable (flyweight) view on a NMEA 0183 sentence that lies in a
+ * byte buffer. In contrast to {@link NMEA0183Sentence} no strings are
+ * created: {@link #wrap(byte[],int,int)} only locates the address
+ * field and the checksum, the start and end offsets of the data fields
+ * are recorded on the first access to a field. The typed
+ * accessors (<code>fieldAsDouble</code>, <code>fieldAsInt</code>,
+ * <code>fieldEquals</code>, ...) work directly on the bytes and
+ * report empty fields by a sentinel value (see {@link
+ * NMEA0183FieldDecoder}) instead of an exception. So one instance can
+ * be used for all sentences read from a gps device without producing
+ * any garbage.
+ * <p>
+ * The view is only valid as long as the content of the wrapped buffer
+ * is not changed. Use {@link #toString()} or {@link #getField(int)} if
+ * a copy is needed.
+ *
+ * @see NMEA0183Sentence
+ */
+
+public class NMEA0183SentenceView
+{
+  /** initial number of data fields the offset tables can hold */
+  protected static final int INITIAL_FIELD_CAPACITY = 32;
+
+  protected byte[] buffer_;
+  /** index of the '$' (or '!') in the buffer */
+  protected int start_;
+  /** index after the last character of the sentence (without CR/LF) */
+  protected int end_;
+  /** index of the '*' or <code>end_</code> if there is no checksum */
+  protected int data_end_;
+  /** index of the first ',' or <code>data_end_</code> if there is none */
+  protected int address_end_;
+
+  protected int[] field_start_ = new int[INITIAL_FIELD_CAPACITY];
+  protected int[] field_end_ = new int[INITIAL_FIELD_CAPACITY];
+  protected int field_count_;
+  /** true if the field offsets were already calculated */
+  protected boolean fields_indexed_;
+
+  protected int checksum_ = -1;
+  protected int calculated_checksum_ = -1;
+
+//----------------------------------------------------------------------
+/**
+ * Creates an empty view. Call {@link #wrap(byte[],int,int)} before
+ * using it.
+ */
+  public NMEA0183SentenceView()
+  {
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Makes this view point to the sentence in the given buffer. The
+ * sentence must start with '$' (or '!') and must not contain the
+ * trailing CR/LF.
+ *
+ * @param buffer the buffer holding the sentence.
+ * @param offset the offset of the sentence in the buffer.
+ * @param length the length of the sentence.
+ * @return this view.
+ * @exception IllegalArgumentException if the data does not start
+ * with '$' or '!'.
+ */
+  public NMEA0183SentenceView wrap(byte[] buffer, int offset, int length)
+    throws IllegalArgumentException
+  {
+    return(wrap(buffer,offset,length,-1));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Makes this view point to the sentence in the given buffer. If the
+ * checksum was already calculated (e.g. by the {@link
+ * NMEA0183Framer}), it is not calculated again.
+ *
+ * @param buffer the buffer holding the sentence.
+ * @param offset the offset of the sentence in the buffer.
+ * @param length the length of the sentence.
+ * @param calculated_checksum the calculated checksum of the sentence
+ * or -1 if it should be calculated by this view.
+ * @return this view.
+ * @exception IllegalArgumentException if the data does not start
+ * with '$' or '!'.
+ */
+  public NMEA0183SentenceView wrap(byte[] buffer, int offset, int length,
+                                   int calculated_checksum)
+    throws IllegalArgumentException
+  {
+    if((length < 1) || ((buffer[offset] != '$') && (buffer[offset] != '!')))
+      throw new IllegalArgumentException("Invalid NMEA Sentence (no '$')");
+
+    buffer_ = buffer;
+    start_ = offset;
+    end_ = offset + length;
+    fields_indexed_ = false;
+    field_count_ = 0;
+    checksum_ = -1;
+    calculated_checksum_ = calculated_checksum;
+
+    int index = offset + 1;
+    byte data;
+    while((index < end_) && ((data = buffer[index]) != ',') && (data != '*'))
+      index++;
+    address_end_ = index;
+
+        // the checksum follows the last field, so search it from the end:
+    data_end_ = end_;
+    for(index = end_ - 1; index >= address_end_; index--)
+    {
+      data = buffer[index];
+      if(data == '*')
+      {
+        data_end_ = index;
+        checksum_ = decodeHexByte(buffer,index + 1,end_);
+        break;
+      }
+      if(data == ',')
+        break;
+    }
+    return(this);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Splits the data fields of the sentence (records their start and end
+ * offsets). This is done on the first access to a field, so sentences
+ * nobody is interested in are never split.
+ */
+  protected void indexFields()
+  {
+    fields_indexed_ = true;
+    field_count_ = 0;
+    if(address_end_ >= data_end_)
+      return;
+    int field_start = address_end_ + 1;
+    for(int index = field_start; index < data_end_; index++)
+    {
+      if(buffer_[index] == ',')
+      {
+        addField(field_start,index);
+        field_start = index + 1;
+      }
+    }
+    addField(field_start,data_end_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Adds the boundaries of a field to the offset tables (growing them
+ * if necessary).
+ *
+ * @param start the index of the first character of the field.
+ * @param end the index after the last character of the field.
+ */
+  protected void addField(int start, int end)
+  {
+    if(field_count_ == field_start_.length)
+    {
+      int[] new_start = new int[field_count_ * 2];
+      int[] new_end = new int[field_count_ * 2];
+      System.arraycopy(field_start_,0,new_start,0,field_count_);
+      System.arraycopy(field_end_,0,new_end,0,field_count_);
+      field_start_ = new_start;
+      field_end_ = new_end;
+    }
+    field_start_[field_count_] = start;
+    field_end_[field_count_] = end;
+    field_count_++;
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Decodes the two hex characters of a checksum.
+ *
+ * @param buffer the buffer.
+ * @param start the index of the first hex character.
+ * @param end the index after the last character to look at.
+ * @return the checksum or -1 if the checksum could not be decoded.
+ */
+  protected static int decodeHexByte(byte[] buffer, int start, int end)
+  {
+    if(end - start < 2)
+      return(-1);
+    int high = hexValue(buffer[start]);
+    int low = hexValue(buffer[start + 1]);
+    if((high < 0) || (low < 0))
+      return(-1);
+    return((high << 4) | low);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the value of a hex character or -1 if it is none.
+ *
+ * @param hex_char the hex character.
+ * @return the value of the character.
+ */
+  protected static int hexValue(byte hex_char)
+  {
+    if((hex_char >= '0') && (hex_char <= '9'))
+      return(hex_char - '0');
+    if((hex_char >= 'A') && (hex_char <= 'F'))
+      return(hex_char - 'A' + 10);
+    if((hex_char >= 'a') && (hex_char <= 'f'))
+      return(hex_char - 'a' + 10);
+    return(-1);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the buffer this view points to.
+ *
+ * @return the buffer this view points to.
+ */
+  public byte[] getBuffer()
+  {
+    return(buffer_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the index of the '$' of the sentence in the buffer.
+ *
+ * @return the index of the sentence in the buffer.
+ */
+  public int getOffset()
+  {
+    return(start_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the length of the sentence (without CR/LF).
+ *
+ * @return the length of the sentence.
+ */
+  public int getLength()
+  {
+    return(end_ - start_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the sentence id (the address field without the two
+ * characters of the talker id) equals the given id. The comparison
+ * ignores the case of the characters.
+ *
+ * @param sentence_id the sentence id (e.g. "GGA").
+ * @return true if the ids are equal.
+ */
+  public boolean sentenceIdEquals(String sentence_id)
+  {
+    int start = start_ + 3;
+    int length = sentence_id.length();
+    if(address_end_ - start != length)
+      return(false);
+    for(int index = 0; index < length; index++)
+    {
+      int data = buffer_[start + index];
+      if((data >= 'a') && (data <= 'z'))
+        data -= 'a' - 'A';
+      if(data != sentence_id.charAt(index))
+        return(false);
+    }
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the packed id of this sentence as used by the {@link
+ * NMEA0183SentenceRegistry}.
+ *
+ * @return the packed sentence id.
+ */
+  public int getSentenceKey()
+  {
+    return(NMEA0183SentenceRegistry.packSentenceId(buffer_,start_ + 1,address_end_));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the talker id of this NMEA sentence. This method creates a
+ * new string, so do not use it on the hot path.
+ *
+ * @return the talker id of this NMEA sentence.
+ */
+  public String getTalkerId()
+  {
+    return(new String(buffer_,start_ + 1,Math.min(2,address_end_ - start_ - 1)));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the sentence id of this NMEA sentence. This method creates a
+ * new string, so do not use it on the hot path.
+ *
+ * @return the sentence id of this NMEA sentence.
+ */
+  public String getSentenceId()
+  {
+    int start = Math.min(start_ + 3,address_end_);
+    return(new String(buffer_,start,address_end_ - start));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of data fields of this sentence.
+ *
+ * @return the number of data fields.
+ */
+  public int getFieldCount()
+  {
+    if(!fields_indexed_)
+      indexFields();
+    return(field_count_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the index of the first character of the given field in the
+ * buffer.
+ *
+ * @param field the index of the data field.
+ * @return the start index of the field in the buffer.
+ * @exception IndexOutOfBoundsException if there is no such field.
+ */
+  public int getFieldStart(int field)
+  {
+    if(!fields_indexed_)
+      indexFields();
+    if(field >= field_count_)
+      throw new IndexOutOfBoundsException("field " + field + " of " + field_count_);
+    return(field_start_[field]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the index after the last character of the given field in
+ * the buffer.
+ *
+ * @param field the index of the data field.
+ * @return the end index of the field in the buffer.
+ * @exception IndexOutOfBoundsException if there is no such field.
+ */
+  public int getFieldEnd(int field)
+  {
+    if(!fields_indexed_)
+      indexFields();
+    if(field >= field_count_)
+      throw new IndexOutOfBoundsException("field " + field + " of " + field_count_);
+    return(field_end_[field]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the number of characters of the given field. Fields that
+ * are not present in the sentence have a length of 0.
+ *
+ * @param field the index of the data field.
+ * @return the length of the field.
+ */
+  public int getFieldLength(int field)
+  {
+    if(!fields_indexed_)
+      indexFields();
+    if(field >= field_count_)
+      return(0);
+    return(field_end_[field] - field_start_[field]);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the given field is empty or not present.
+ *
+ * @param field the index of the data field.
+ * @return true if the field is empty.
+ */
+  public boolean isFieldEmpty(int field)
+  {
+    return(getFieldLength(field) == 0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the character at the given position of the field.
+ *
+ * @param field the index of the data field.
+ * @param position the position in the field.
+ * @return the character or 0 if the field is too short.
+ */
+  public char fieldCharAt(int field, int position)
+  {
+    if(position >= getFieldLength(field))
+      return(0);
+    return((char)(buffer_[field_start_[field] + position] & 0xff));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the content of the field equals the given string.
+ *
+ * @param field the index of the data field.
+ * @param value the value to compare to.
+ * @return true if the field equals the value.
+ */
+  public boolean fieldEquals(int field, String value)
+  {
+    int length = value.length();
+    if(getFieldLength(field) != length)
+      return(false);
+    int start = field_start_[field];
+    for(int index = 0; index < length; index++)
+    {
+      if(buffer_[start + index] != value.charAt(index))
+        return(false);
+    }
+    return(true);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the content of the field as a string. This method creates a
+ * new string, so only use it for text fields.
+ *
+ * @param field the index of the data field.
+ * @return the content of the field.
+ */
+  public String getField(int field)
+  {
+    int length = getFieldLength(field);
+    if(length == 0)
+      return("");
+    return(new String(buffer_,field_start_[field],length));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Parses the field as a decimal number (like "-12.345").
+ *
+ * @param field the index of the data field.
+ * @return the value of the field or {@link Double#NaN} if the field is
+ * empty or no number.
+ * @see NMEA0183FieldDecoder#decodeDecimal(byte[],int,int)
+ */
+  public double fieldAsDouble(int field)
+  {
+    int length = getFieldLength(field);
+    if(length == 0)
+      return(Double.NaN);
+    int start = field_start_[field];
+    return(NMEA0183FieldDecoder.decodeDecimal(buffer_,start,start + length));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Parses the field as a float.
+ *
+ * @param field the index of the data field.
+ * @return the value of the field or {@link Float#NaN} if the field is
+ * empty or no number.
+ * @see #fieldAsDouble(int)
+ */
+  public float fieldAsFloat(int field)
+  {
+    return((float)fieldAsDouble(field));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Parses the field as an integer.
+ *
+ * @param field the index of the data field.
+ * @return the value of the field or {@link
+ * NMEA0183FieldDecoder#NO_INT} if the field is empty or no integer.
+ */
+  public int fieldAsInt(int field)
+  {
+    int length = getFieldLength(field);
+    if(length == 0)
+      return(NMEA0183FieldDecoder.NO_INT);
+    int start = field_start_[field];
+    return(NMEA0183FieldDecoder.decodeInt(buffer_,start,start + length));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Parses the field as an integer.
+ *
+ * @param field the index of the data field.
+ * @param default_value the value to return if the field is empty or no
+ * integer.
+ * @return the value of the field or the default value.
+ */
+  public int fieldAsInt(int field, int default_value)
+  {
+    int value = fieldAsInt(field);
+    if(value == NMEA0183FieldDecoder.NO_INT)
+      return(default_value);
+    return(value);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Parses the field as a fixed point number with the given number of
+ * decimals (e.g. "12.3456" with three decimals is 12345).
+ *
+ * @param field the index of the data field.
+ * @param decimals the number of decimals of the result.
+ * @return the scaled value or {@link NMEA0183FieldDecoder#NO_LONG} if
+ * the field is empty or no number.
+ * @see NMEA0183FieldDecoder#decodeFixedPoint(byte[],int,int,int)
+ */
+  public long fieldAsFixedPoint(int field, int decimals)
+  {
+    int length = getFieldLength(field);
+    if(length == 0)
+      return(NMEA0183FieldDecoder.NO_LONG);
+    int start = field_start_[field];
+    return(NMEA0183FieldDecoder.decodeFixedPoint(buffer_,start,start + length,decimals));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Parses a latitude or longitude field (ddmm.mmmm or dddmm.mmmm) to
+ * degrees.
+ *
+ * @param field the index of the data field.
+ * @return the degrees (always positive) or {@link Double#NaN} if the
+ * field is empty or invalid.
+ * @see NMEA0183FieldDecoder#decodeDegrees(byte[],int,int)
+ */
+  public double fieldAsDegrees(int field)
+  {
+    int length = getFieldLength(field);
+    if(length == 0)
+      return(Double.NaN);
+    int start = field_start_[field];
+    return(NMEA0183FieldDecoder.decodeDegrees(buffer_,start,start + length));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Parses a time field (hhmmss or hhmmss.sss).
+ *
+ * @param field the index of the data field.
+ * @return the milliseconds since midnight or -1 if the field is empty
+ * or invalid.
+ */
+  public int fieldAsTimeOfDay(int field)
+  {
+    int length = getFieldLength(field);
+    if(length == 0)
+      return(-1);
+    int start = field_start_[field];
+    return(NMEA0183FieldDecoder.decodeTimeOfDay(buffer_,start,start + length));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the value of the two digits at the given position of a
+ * field (e.g. the month of a ddmmyy field).
+ *
+ * @param field the index of the data field.
+ * @param position the position of the first digit in the field.
+ * @return the value of the two digits or -1 if there are none.
+ */
+  public int fieldTwoDigitsAt(int field, int position)
+  {
+    int length = getFieldLength(field);
+    if(length == 0)
+      return(-1);
+    int start = field_start_[field];
+    return(NMEA0183FieldDecoder.decodeTwoDigits(buffer_,start + position,start + length));
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the sentence contains a checksum.
+ *
+ * @return true if the sentence contains a checksum.
+ */
+  public boolean hasChecksum()
+  {
+    return(checksum_ >= 0);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the checksum sent with this NMEA sentence or -1 if there was
+ * none.
+ *
+ * @return the checksum of this NMEA sentence.
+ */
+  public int getChecksum()
+  {
+    return(checksum_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the calculated checksum of this NMEA sentence.
+ *
+ * @return the calculated checksum of this NMEA sentence.
+ */
+  public int getCalculatedChecksum()
+  {
+    if(calculated_checksum_ < 0)
+    {
+      int checksum = 0;
+      for(int index = start_ + 1; index < data_end_; index++)
+        checksum ^= buffer_[index];
+      calculated_checksum_ = checksum & 0xff;
+    }
+    return(calculated_checksum_);
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns true if the sentence is valid (by using the checksum).
+ *
+ * @return true if the sentence is valid (by using the checksum).
+ */
+  public boolean isValid()
+  {
+    return(checksum_ == getCalculatedChecksum());
+  }
+
+//----------------------------------------------------------------------
+/**
+ * Returns the string representation of this NMEA sentence. This
+ * method creates a new string.
+ *
+ * @return the string representation of this NMEA sentence.
+ */
+  public String toString()
+  {
+    if(buffer_ == null)
+      return("");
+    return(new String(buffer_,start_,end_ - start_));
+  }
+}